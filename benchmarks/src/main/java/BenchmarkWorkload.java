@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.swing.table.DefaultTableModel;
+
+// Default-package side of the benchmarks; see hms.benchmarks.Workload
+public class BenchmarkWorkload implements hms.benchmarks.Workload {
+
+    private static final String[] FIRST_NAMES = {"Aarav", "Maria", "Rohan", "Mark", "Priya", "John", "Sneha", "Li",
+            "Fatima", "Carlos", "Anita", "David", "Meera", "Omar", "Sara", "Vikram", "Elena", "Arjun", "Grace", "Kiran"};
+    private static final String[] LAST_NAMES = {"Sharma", "Patel", "Smith", "Johnson", "Kulkarni", "Garcia", "Khan",
+            "Wagh", "Brown", "Desai", "Nguyen", "Joshi", "Wilson", "Iyer", "Martin", "Rao", "Lopez", "Mehta", "Clark",
+            "Singh", "Das", "Taylor", "Pawar", "Lee", "Shah"};
+    private static final String[] BLOOD_GROUPS = {"A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-", null};
+    private static final String[] COLUMNS = {"ID", "Name", "Age", "Gender", "Phone", "Blood Group", "Address"};
+    private static final String[] FILTER_BLOOD_GROUPS = {"A+", "B+", "O-"};
+    private static final PatientSnapshot.Filter SNAPSHOT_FILTER =
+            new PatientSnapshot.Filter(30, 60, new String[] {"F"}, FILTER_BLOOD_GROUPS, null);
+    private static final PatientSnapshot.Filter NO_FILTER =
+            new PatientSnapshot.Filter(0, Integer.MAX_VALUE, null, null, null);
+
+    private PatientRepository patientDAO;
+    private PatientRepository instrumentedDAO;
+    private EmbeddedStore embeddedStore;
+    private long changeToken;
+    private int patientCount;
+    private AppointmentScheduler scheduler;
+    private ExecutorService clerks;
+    private int clerkCount;
+    private int[] doctorIds;
+    private LocalDate nextDay = LocalDate.of(2030, 1, 1);
+    private VisitBatch visitBatch;
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+
+    // Deterministic patient number i; a tenth of the addresses need CSV quoting
+    static Patient patient(int i) {
+        String name = FIRST_NAMES[i % FIRST_NAMES.length] + " " + LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+        String address = i % 10 == 0 ? i + " \"Green Park\", Pune" : i + " Main Road, Pune";
+        return new Patient(i, name, 1 + i % 99, i % 2 == 0 ? "M" : "F", String.valueOf(9_000_000_000L + i),
+                address, BLOOD_GROUPS[i % BLOOD_GROUPS.length]);
+    }
+
+    @Override
+    public void openDatabase(Path dir, String storage, int patients, int statementCacheSize) throws Exception {
+        Files.createDirectories(dir);
+        patientCount = patients;
+        if (Storage.EMBEDDED.equals(storage)) {
+            Path file = dir.resolve("hms-" + patients + ".db");
+            embeddedStore = EmbeddedStore.open(file);
+            if (embeddedStore.countPatients() != patients) {
+                embeddedStore.close();
+                Files.delete(file);
+                embeddedStore = EmbeddedStore.open(file);
+                System.out.println("Seeding " + patients + " patients into " + file);
+                embeddedStore.insertPatients(generated(patients), 50000, (byte) 0);
+            }
+            patientDAO = new EmbeddedPatientRepository(embeddedStore);
+            instrumentedDAO = Metrics.instrument(PatientRepository.class, patientDAO, "patients");
+            changeToken = patientDAO.getChangeToken();
+            visitBatch = new VisitBatch(patientDAO, new EmbeddedVisitRepository(embeddedStore), new DoctorDirectory(null));
+            return;
+        }
+        // H2 spools results over MAX_MEMORY_ROWS to disk, which would dominate the full-table reads
+        System.setProperty("hms.db.url", "jdbc:h2:file:" + dir.toAbsolutePath().resolve("hms-" + patients) + ";MODE=Oracle;MAX_MEMORY_ROWS=2000000");
+        System.setProperty("hms.db.user", "sa");
+        System.setProperty("hms.db.password", "");
+        System.setProperty("hms.pool.statementCacheSize", String.valueOf(statementCacheSize));
+        DatabaseConfig.initializeDatabase();
+        patientDAO = new PatientDAO();
+        if (patientDAO.countPatients() != patients) {
+            try (Connection conn = DatabaseConfig.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("DELETE FROM visits");
+                stmt.execute("DELETE FROM patients");
+            }
+            System.out.println("Seeding " + patients + " patients into " + dir);
+            patientDAO.addPatients(generated(patients), 1000, 50000);
+        }
+        instrumentedDAO = Metrics.instrument(PatientRepository.class, patientDAO, "patients");
+        changeToken = patientDAO.getChangeToken();
+        DoctorDirectory doctors = new DoctorDirectory(new DoctorDAO());
+        visitBatch = new VisitBatch(patientDAO, new VisitDAO(doctors), doctors);
+    }
+
+    private static List<Patient> generated(int count) {
+        return new AbstractList<Patient>() {
+            @Override
+            public Patient get(int index) {
+                return patient(index + 1);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public void closeDatabase() throws IOException {
+        if (embeddedStore != null) {
+            embeddedStore.close();
+        } else {
+            DatabaseConfig.shutdown();
+        }
+    }
+
+    @Override
+    public Object getAllPatients() throws SQLException {
+        return patientDAO.getAllPatients();
+    }
+
+    @Override
+    public Object searchPatients(String term) throws SQLException {
+        return patientDAO.searchPatients(term);
+    }
+
+    @Override
+    public Object getPatientsPage(int afterId, int pageSize) throws SQLException {
+        return patientDAO.getPatientsPage(afterId, pageSize);
+    }
+
+    @Override
+    public Object getPatientById(int id) throws SQLException {
+        return patientDAO.getPatientById(id);
+    }
+
+    @Override
+    public Object getPatientByIdInstrumented(int id) throws SQLException {
+        return instrumentedDAO.getPatientById(id);
+    }
+
+    @Override
+    public Object updateAndFetchChanges(int id) throws SQLException {
+        patientDAO.updatePatient(patient(id));
+        PatientChanges changes = patientDAO.getPatientsChangedSince(changeToken);
+        changeToken = changes.getToken();
+        return changes;
+    }
+
+    @Override
+    public Object updateAndReload(int id) throws SQLException {
+        patientDAO.updatePatient(patient(id));
+        patientDAO.countPatients();
+        return patientDAO.getPatientsPage(0, PatientPagedTableModel.PAGE_SIZE);
+    }
+
+    @Override
+    public long mapPatientsByIndex() throws SQLException {
+        return checksum(PatientDAO.PATIENT_MAPPER);
+    }
+
+    @Override
+    public long mapPatientsByLabel() throws SQLException {
+        // How every DAO method mapped rows before the shared mapper
+        return checksum(rs -> r -> new Patient(
+                r.getInt("id"),
+                r.getString("name"),
+                r.getInt("age"),
+                r.getString("gender"),
+                r.getString("phone"),
+                r.getString("address"),
+                r.getString("blood_group")));
+    }
+
+    private long checksum(QueryTemplate.MapperFactory<Patient> mapper) throws SQLException {
+        long[] sum = new long[1];
+        template.forEach("SELECT id, name, age, gender, phone, address, blood_group FROM patients ORDER BY id",
+                QueryTemplate.NO_PARAMS, PatientCsvExporter.FETCH_SIZE, mapper, p -> {
+                    sum[0] += p.getId() + p.getAge() + p.getName().length();
+                    return true;
+                });
+        return sum[0];
+    }
+
+    @Override
+    public long exportCsv(Path target) throws Exception {
+        return new PatientCsvExporter(patientDAO).export(target, null);
+    }
+
+    @Override
+    public Object generatePatients(int count) {
+        return new ArrayList<>(generated(count));
+    }
+
+    @Override
+    public String escapeCsv(String value) {
+        return Csv.escape(value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeCsv(Object patients, Writer out) throws IOException {
+        // Same loop as PatientCsvExporter, minus the database
+        try (Csv.RecordWriter csv = new Csv.RecordWriter(out, 1 << 16)) {
+            csv.writeLine(Csv.PATIENT_HEADER);
+            for (Patient p : (List<Patient>) patients) {
+                csv.writeField(p.getId())
+                        .writeField(p.getName())
+                        .writeField(p.getAge())
+                        .writeField(p.getGender())
+                        .writeField(p.getPhone())
+                        .writeField(p.getBloodGroup())
+                        .writeField(p.getAddress())
+                        .endRecord();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object fillDefaultTableModel(Object patients) {
+        DefaultTableModel model = new DefaultTableModel(COLUMNS, 0);
+        for (Patient p : (List<Patient>) patients) {
+            model.addRow(new Object[] {p.getId(), p.getName(), p.getAge(), p.getGender(), p.getPhone(),
+                    p.getBloodGroup(), p.getAddress()});
+        }
+        return model;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object fillPagedTableModel(Object patients) {
+        PatientPagedTableModel model = new PatientPagedTableModel(null);
+        model.showPatients((List<Patient>) patients);
+        return model;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object buildSnapshot(Object patients) {
+        PatientSnapshot.Builder builder = new PatientSnapshot.Builder(1024);
+        for (Patient p : (List<Patient>) patients) {
+            builder.add(p);
+        }
+        return builder.build(-1);
+    }
+
+    @Override
+    public int filterSnapshot(Object snapshot) {
+        return ((PatientSnapshot) snapshot).filter(SNAPSHOT_FILTER).length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int filterPatients(Object patients) {
+        List<String> bloodGroups = Arrays.asList(FILTER_BLOOD_GROUPS);
+        int count = 0;
+        for (Patient p : (List<Patient>) patients) {
+            if (p.getAge() >= 30 && p.getAge() <= 60 && "F".equals(p.getGender())
+                    && bloodGroups.contains(p.getBloodGroup())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int sortSnapshot(Object snapshot, int column) {
+        PatientSnapshot rows = (PatientSnapshot) snapshot;
+        return rows.sort(rows.filter(NO_FILTER), column, true).length;
+    }
+
+    @Override
+    public void openScheduler(int doctors, int clerks) throws SQLException {
+        if (embeddedStore != null) {
+            throw new IllegalStateException("Appointments are only booked on the oracle storage");
+        }
+        try (Connection conn = DatabaseConfig.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM appointments");
+            stmt.execute("DELETE FROM doctor_days");
+            // Doctors visits refer to stay
+            stmt.execute("DELETE FROM doctors WHERE id NOT IN (SELECT doctor_id FROM visits WHERE doctor_id IS NOT NULL)");
+        }
+        scheduler = new AppointmentScheduler(new AppointmentDAO(), new DoctorDirectory(new DoctorDAO()));
+        doctorIds = new int[doctors];
+        for (int i = 0; i < doctors; i++) {
+            doctorIds[i] = scheduler.addDoctor(new Doctor(0, "Dr " + LAST_NAMES[i % LAST_NAMES.length] + " " + i, "General"));
+        }
+        this.clerks = Executors.newFixedThreadPool(clerks);
+        clerkCount = clerks;
+    }
+
+    @Override
+    public int bookConcurrently(int bookings) throws Exception {
+        LocalDate day = nextDay;
+        nextDay = nextDay.plusDays(1);
+        int opens = DaySchedule.unitOf(AppointmentScheduler.OPENS);
+        int closes = DaySchedule.unitOf(AppointmentScheduler.CLOSES);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int clerk = 0; clerk < clerkCount; clerk++) {
+            int share = bookings / clerkCount + (clerk < bookings % clerkCount ? 1 : 0);
+            results.add(clerks.submit(() -> {
+                go.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int booked = 0;
+                for (int i = 0; i < share; i++) {
+                    int minutes = random.nextBoolean() ? 15 : 30;
+                    int from = opens + random.nextInt(closes - opens - minutes / DaySchedule.GRAIN_MINUTES + 1);
+                    try {
+                        scheduler.book(new Appointment(doctorIds[random.nextInt(doctorIds.length)],
+                                1 + random.nextInt(patientCount), day.atTime(DaySchedule.timeOf(from)), minutes, "Check-up"));
+                        booked++;
+                    } catch (SlotUnavailableException e) {
+                        // Someone else got the time first
+                    }
+                }
+                return booked;
+            }));
+        }
+        go.countDown();
+        int booked = 0;
+        for (Future<Integer> result : results) {
+            booked += result.get();
+        }
+        return booked;
+    }
+
+    @Override
+    public int countDoubleBookings() throws SQLException {
+        // Start order per doctor, so each appointment need only be compared with the latest end before it
+        long[] state = {-1, Long.MIN_VALUE, 0};
+        template.forEach("SELECT doctor_id, starts_at, minutes FROM appointments WHERE status = 'B' "
+                + "ORDER BY doctor_id, starts_at", QueryTemplate.NO_PARAMS, 1000,
+                rs -> r -> new long[] {r.getInt(1), r.getTimestamp(2).getTime(), r.getInt(3) * 60_000L}, a -> {
+                    if (a[0] != state[0]) {
+                        state[0] = a[0];
+                        state[1] = Long.MIN_VALUE;
+                    }
+                    if (a[1] < state[1]) {
+                        state[2]++;
+                    }
+                    state[1] = Math.max(state[1], a[1] + a[2]);
+                    return true;
+                });
+        return (int) state[2];
+    }
+
+    @Override
+    public void closeScheduler() {
+        if (clerks != null) {
+            clerks.shutdownNow();
+        }
+    }
+
+    @Override
+    public int recordVisits(int rows) throws SQLException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String date = LocalDate.of(2020, 1, 1).plusDays(random.nextInt(1000)).toString();
+        List<VisitBatch.Row> batch = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            // Doctors typed in lower case, as the canonical spelling is looked up for every row
+            String doctor = "dr " + LAST_NAMES[random.nextInt(LAST_NAMES.length)].toLowerCase(Locale.ROOT);
+            batch.add(new VisitBatch.Row(String.valueOf(1 + random.nextInt(patientCount)), date, doctor, "Follow-up"));
+        }
+        int saved = visitBatch.save(batch);
+        if (saved != rows) {
+            throw new IllegalStateException("Saved " + saved + " of " + rows + " visits");
+        }
+        return saved;
+    }
+}
@@ -0,0 +1,67 @@
+package hms.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Booking attempts per second with many clerks booking at once, each invocation on a fresh day so
+// the first attempts find it empty and the last compete for what is left. Few doctors means most
+// attempts collide on the same days' locks and versions; many spreads them out. The trial fails
+// if any doctor ends up double booked.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class AppointmentBookingBenchmark {
+
+    static final int BOOKINGS = 400;
+
+    @Param({"50", "200"})
+    public int clerks;
+
+    @Param({"5", "100"})
+    public int doctors;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create();
+        workload.openDatabase(Paths.get(System.getProperty("hms.bench.dbDir", "target/bench-db")), "oracle", 10000, 50);
+        workload.openScheduler(doctors, clerks);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try {
+            int doubleBooked = workload.countDoubleBookings();
+            if (doubleBooked != 0) {
+                throw new IllegalStateException(doubleBooked + " appointments overlap another of the same doctor");
+            }
+        } finally {
+            workload.closeScheduler();
+            workload.closeDatabase();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BOOKINGS)
+    public int bookConcurrently() throws Exception {
+        return workload.bookConcurrently(BOOKINGS);
+    }
+}
@@ -0,0 +1,107 @@
+package hms.benchmarks;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CSV field escaping, the export write loop over in-memory rows, and the full streamed export
+// from the embedded database to a file.
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class CsvExportBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fields {
+        Workload workload = Workload.create();
+        String plain = "Priya Kulkarni";
+        String withComma = "12 Main Road, Pune";
+        String withQuotes = "40 \"Green Park\", Pune";
+    }
+
+    @State(Scope.Benchmark)
+    public static class Rows {
+        @Param({"10000", "100000", "1000000"})
+        public int patients;
+
+        Workload workload;
+        Object rows;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workload.create();
+            rows = workload.generatePatients(patients);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Database {
+        @Param({"10000", "100000", "1000000"})
+        public int patients;
+
+        @Param({"oracle", "embedded"})
+        public String storage;
+
+        Workload workload;
+        Path target;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            workload = Workload.create();
+            workload.openDatabase(Paths.get(System.getProperty("hms.bench.dbDir", "target/bench-db")), storage, patients, 50);
+            target = Files.createTempFile("patients-export", ".csv");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            workload.closeDatabase();
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String escapePlain(Fields f) {
+        return f.workload.escapeCsv(f.plain);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String escapeComma(Fields f) {
+        return f.workload.escapeCsv(f.withComma);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String escapeQuotes(Fields f) {
+        return f.workload.escapeCsv(f.withQuotes);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void writeLoop(Rows r) throws Exception {
+        r.workload.writeCsv(r.rows, Writer.nullWriter());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long exportFromDatabase(Database d) throws Exception {
+        return d.workload.exportCsv(d.target);
+    }
+}
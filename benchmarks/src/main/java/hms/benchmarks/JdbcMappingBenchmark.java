@@ -0,0 +1,65 @@
+package hms.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Row mapping by resolved column index against the old per-row label lookups, and point reads
+// with the pooled statement cache on and off. Run with -prof gc to compare allocations per row.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class JdbcMappingBenchmark {
+
+    private static final int PATIENTS = 100000;
+
+    @Param({"0", "50"})
+    public int statementCacheSize;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create();
+        workload.openDatabase(Paths.get(System.getProperty("hms.bench.dbDir", "target/bench-db")), "oracle",
+                PATIENTS, statementCacheSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.closeDatabase();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long mapByColumnIndex() throws Exception {
+        return workload.mapPatientsByIndex();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long mapByColumnLabel() throws Exception {
+        return workload.mapPatientsByLabel();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object getPatientById() throws Exception {
+        return workload.getPatientById(1 + ThreadLocalRandom.current().nextInt(PATIENTS));
+    }
+}
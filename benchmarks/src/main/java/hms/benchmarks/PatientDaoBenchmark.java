@@ -0,0 +1,101 @@
+package hms.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Patient repository reads for both storage backends: the Oracle implementation against an
+// embedded H2 database in Oracle mode, and the single-file embedded store. H2 has no function-based
+// indexes, so name-prefix search scans here where Oracle uses PATIENTS_LOWER_NAME_IDX; compare
+// results between runs of this benchmark, not against production timings.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PatientDaoBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int patients;
+
+    @Param({"oracle", "embedded"})
+    public String storage;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create();
+        workload.openDatabase(Paths.get(System.getProperty("hms.bench.dbDir", "target/bench-db")), storage, patients, 50);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.closeDatabase();
+    }
+
+    @Benchmark
+    public Object getAllPatients() throws Exception {
+        return workload.getAllPatients();
+    }
+
+    @Benchmark
+    public Object searchByNamePrefix() throws Exception {
+        return workload.searchPatients("Mar");
+    }
+
+    @Benchmark
+    public Object searchByExactPhone() throws Exception {
+        return workload.searchPatients(String.valueOf(9_000_000_000L + patients / 2));
+    }
+
+    @Benchmark
+    public Object searchBySubstring() throws Exception {
+        return workload.searchPatients("*desai");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object keysetPage() throws Exception {
+        return workload.getPatientsPage(ThreadLocalRandom.current().nextInt(patients), 200);
+    }
+
+    // Compare with getPatientByIdInstrumented for the cost of Metrics on the cheapest repository call
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object getPatientById() throws Exception {
+        return workload.getPatientById(1 + ThreadLocalRandom.current().nextInt(patients));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object getPatientByIdInstrumented() throws Exception {
+        return workload.getPatientByIdInstrumented(1 + ThreadLocalRandom.current().nextInt(patients));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object saveThenFetchChanges() throws Exception {
+        return workload.updateAndFetchChanges(1 + ThreadLocalRandom.current().nextInt(patients));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object saveThenReload() throws Exception {
+        return workload.updateAndReload(1 + ThreadLocalRandom.current().nextInt(patients));
+    }
+}
@@ -0,0 +1,65 @@
+package hms.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Filtering and sorting the patient table in memory: the PatientSnapshot kernels against the same
+// multi-column filter over Patient objects. Name sorts after the first reuse the cached ranks.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class PatientSnapshotBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int patients;
+
+    private Workload workload;
+    private Object rows;
+    private Object snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create();
+        rows = workload.generatePatients(patients);
+        snapshot = workload.buildSnapshot(rows);
+    }
+
+    @Benchmark
+    public Object build() {
+        return workload.buildSnapshot(rows);
+    }
+
+    @Benchmark
+    public int filterSnapshot() {
+        return workload.filterSnapshot(snapshot);
+    }
+
+    @Benchmark
+    public int filterPatientObjects() {
+        return workload.filterPatients(rows);
+    }
+
+    @Benchmark
+    public int sortByAge() {
+        return workload.sortSnapshot(snapshot, 2);
+    }
+
+    @Benchmark
+    public int sortByName() {
+        return workload.sortSnapshot(snapshot, 1);
+    }
+}
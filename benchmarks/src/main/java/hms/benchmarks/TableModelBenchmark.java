@@ -0,0 +1,48 @@
+package hms.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Populating the patient table from an already loaded result: the original refreshTable()
+// DefaultTableModel rows against the column-oriented PatientPagedTableModel.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class TableModelBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int patients;
+
+    private Workload workload;
+    private Object rows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create();
+        rows = workload.generatePatients(patients);
+    }
+
+    @Benchmark
+    public Object defaultTableModel() {
+        return workload.fillDefaultTableModel(rows);
+    }
+
+    @Benchmark
+    public Object pagedTableModel() {
+        return workload.fillPagedTableModel(rows);
+    }
+}
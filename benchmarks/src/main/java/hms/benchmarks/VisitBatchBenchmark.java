@@ -0,0 +1,53 @@
+package hms.benchmarks;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Visits per second saved from the Record Visits grid: a clinic session's rows validated (patient
+// lookups, doctor spellings) and written as one batch in one transaction
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class VisitBatchBenchmark {
+
+    static final int ROWS = 500;
+
+    @Param({"oracle", "embedded"})
+    public String storage;
+
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = Workload.create();
+        workload.openDatabase(Paths.get(System.getProperty("hms.bench.dbDir", "target/bench-db")), storage, 10000, 50);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        workload.closeDatabase();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int recordVisits() throws Exception {
+        return workload.recordVisits(ROWS);
+    }
+}
@@ -0,0 +1,93 @@
+package hms.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+
+// Operations the benchmarks measure. The application lives in the default package, which named
+// packages cannot import and JMH refuses to generate code for, so the benchmarks reach it through
+// this interface, implemented by the default-package BenchmarkWorkload. Only create() is reflective;
+// every measured call is a plain interface call.
+public interface Workload {
+
+    static Workload create() {
+        try {
+            return (Workload) Class.forName("BenchmarkWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkWorkload is not on the classpath", e);
+        }
+    }
+
+    // Opens a database in dir holding exactly the given number of generated patients, seeding it on
+    // first use. storage "oracle" runs the Oracle repositories against embedded H2 in Oracle mode,
+    // "embedded" the single-file store. Must run before any other database call in the JVM.
+    void openDatabase(Path dir, String storage, int patients, int statementCacheSize) throws Exception;
+
+    void closeDatabase() throws IOException;
+
+    Object getAllPatients() throws Exception;
+
+    Object searchPatients(String term) throws Exception;
+
+    Object getPatientsPage(int afterId, int pageSize) throws Exception;
+
+    Object getPatientById(int id) throws Exception;
+
+    // The same call through the Metrics proxy Storage puts around every repository
+    Object getPatientByIdInstrumented(int id) throws Exception;
+
+    // A patient save followed by what the table runs next: the change-log delta since the previous
+    // save, or what a reload costs before any scrolling (the row count and the first page)
+    Object updateAndFetchChanges(int id) throws Exception;
+
+    Object updateAndReload(int id) throws Exception;
+
+    // Full JDBC scans that differ only in how rows become Patient objects; return a checksum of the rows
+    long mapPatientsByIndex() throws Exception;
+
+    long mapPatientsByLabel() throws Exception;
+
+    long exportCsv(Path target) throws Exception;
+
+    // An opaque in-memory list of generated patients for the non-database benchmarks
+    Object generatePatients(int count);
+
+    String escapeCsv(String value);
+
+    void writeCsv(Object patients, Writer out) throws IOException;
+
+    // The pre-paging refreshTable(): one DefaultTableModel row array per patient
+    Object fillDefaultTableModel(Object patients);
+
+    // The current path: PatientPagedTableModel.showPatients into primitive columns
+    Object fillPagedTableModel(Object patients);
+
+    // A PatientSnapshot of the given generated patients, as the table builds one from a scan
+    Object buildSnapshot(Object patients);
+
+    // The table's filter bar over a snapshot: ages 30-60, women, three blood groups; returns the row count
+    int filterSnapshot(Object snapshot);
+
+    // The same filter over the generated Patient objects, as the table did before snapshots
+    int filterPatients(Object patients);
+
+    // Every row of a snapshot ordered by a table column, descending
+    int sortSnapshot(Object snapshot, int column);
+
+    // Starts clerks booking threads against the Oracle repositories of openDatabase(), with the given
+    // number of doctors and every earlier appointment removed
+    void openScheduler(int doctors, int clerks) throws Exception;
+
+    // All clerks book at once, bookings in all, at random doctors and times on a day no earlier call
+    // used; returns how many were booked rather than refused as taken
+    int bookConcurrently(int bookings) throws Exception;
+
+    // Booked appointments overlapping another of the same doctor; anything but 0 is a bug
+    int countDoubleBookings() throws Exception;
+
+    void closeScheduler();
+
+    // Validates and saves rows visits of random patients and doctors, typed as strings, through the
+    // Record Visits grid's VisitBatch against the storage of openDatabase(); returns how many were saved
+    int recordVisits(int rows) throws Exception;
+}
@@ -0,0 +1,248 @@
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.HierarchyEvent;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableCellRenderer;
+
+// The Dashboard tab: PatientAnalytics results as tables. Computed when the tab is first shown;
+// after that, writes reported by PatientAnalytics are applied incrementally a second after they
+// stop arriving, or when the tab is next shown. Recompute runs every job from scratch.
+class AnalyticsPanel extends JPanel {
+
+    private static final int SETTLE_MILLIS = 1000;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final PatientAnalytics analytics;
+    private final JLabel statusLabel = new JLabel(" ");
+    private final JLabel returnVisitLabel = new JLabel(" ");
+    private final DefaultTableModel ageModel = shareModel("Age");
+    private final DefaultTableModel genderModel = shareModel("Gender");
+    private final DefaultTableModel bloodGroupModel = shareModel("Blood group");
+    private final DoctorTableModel doctorModel = new DoctorTableModel();
+    private final JComboBox<String> periodBox = new JComboBox<>(new String[] {"Per day", "Per week"});
+    private final Timer settleTimer = new Timer(SETTLE_MILLIS, e -> update(false));
+
+    private PatientStatistics shown;
+    // Changes arrived while the tab was hidden
+    private boolean stale;
+    private boolean running;
+    private boolean runAgain;
+    private boolean runAgainFull;
+
+    public AnalyticsPanel(PatientAnalytics analytics) {
+        this.analytics = analytics;
+        setLayout(new BorderLayout(5, 5));
+        setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+
+        JPanel top = new JPanel(new BorderLayout());
+        top.add(statusLabel, BorderLayout.CENTER);
+        JButton recomputeButton = new JButton("Recompute");
+        recomputeButton.addActionListener(e -> update(true));
+        top.add(recomputeButton, BorderLayout.EAST);
+        add(top, BorderLayout.NORTH);
+
+        JPanel patientPanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        patientPanel.add(titled("Patients by age", shareTable(ageModel)));
+        patientPanel.add(titled("Patients by gender", shareTable(genderModel)));
+        patientPanel.add(titled("Patients by blood group", shareTable(bloodGroupModel)));
+
+        JPanel visitPanel = new JPanel(new BorderLayout(5, 5));
+        JPanel returnPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        returnPanel.add(returnVisitLabel);
+        visitPanel.add(titled("Return visits", returnPanel), BorderLayout.NORTH);
+        JTable doctorTable = new JTable(doctorModel);
+        doctorTable.setAutoCreateRowSorter(true);
+        JPanel doctorPanel = new JPanel(new BorderLayout());
+        JPanel periodPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        periodPanel.add(periodBox);
+        doctorPanel.add(periodPanel, BorderLayout.NORTH);
+        doctorPanel.add(new JScrollPane(doctorTable), BorderLayout.CENTER);
+        visitPanel.add(titled("Visits per doctor", doctorPanel), BorderLayout.CENTER);
+        periodBox.addActionListener(e -> showDoctors());
+
+        JPanel center = new JPanel(new GridLayout(1, 2, 5, 5));
+        center.add(patientPanel);
+        center.add(visitPanel);
+        add(center, BorderLayout.CENTER);
+
+        settleTimer.setRepeats(false);
+        analytics.setPendingListener(() -> DatabaseExecutor.EDT.execute(this::changesPending));
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()
+                    && (shown == null || stale || analytics.hasPendingChanges())) {
+                update(false);
+            }
+        });
+    }
+
+    private static DefaultTableModel shareModel(String label) {
+        return new DefaultTableModel(new Object[] {label, "Patients", "Share"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 1 ? Long.class : column == 2 ? Double.class : String.class;
+            }
+        };
+    }
+
+    private static JTable shareTable(DefaultTableModel model) {
+        JTable table = new JTable(model);
+        table.getColumnModel().getColumn(2).setCellRenderer(new ShareRenderer());
+        return table;
+    }
+
+    private static JPanel titled(String title, Component content) {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createTitledBorder(title));
+        panel.add(content instanceof JTable ? new JScrollPane(content) : content, BorderLayout.CENTER);
+        return panel;
+    }
+
+    private void changesPending() {
+        if (isShowing()) {
+            settleTimer.restart();
+        } else {
+            stale = true;
+        }
+    }
+
+    // One run at a time; a request made meanwhile runs once the current one is done
+    private void update(boolean full) {
+        if (running) {
+            runAgain = true;
+            runAgainFull |= full;
+            return;
+        }
+        running = true;
+        stale = false;
+        settleTimer.stop();
+        statusLabel.setText(shown == null || full ? "Computing statistics..." : "Updating statistics...");
+        DatabaseExecutor.supply(full ? analytics::recompute : analytics::refresh).whenCompleteAsync((statistics, error) -> {
+            running = false;
+            if (error != null) {
+                statusLabel.setText("Statistics unavailable: " + DatabaseExecutor.unwrap(error).getMessage());
+            } else {
+                display(statistics);
+            }
+            if (runAgain) {
+                boolean againFull = runAgainFull;
+                runAgain = false;
+                runAgainFull = false;
+                update(againFull);
+            }
+        }, DatabaseExecutor.EDT);
+    }
+
+    private void display(PatientStatistics statistics) {
+        shown = statistics;
+        statusLabel.setText(String.format("%d patients, %d visits as of %s (%s, %d ms)", statistics.getPatients(),
+                statistics.getVisits(), LocalTime.now().format(TIME_FORMAT), statistics.getMethod(),
+                statistics.getElapsedMillis()));
+        ageModel.setRowCount(0);
+        for (int bucket = 0; bucket < PatientStatistics.AGE_BUCKETS; bucket++) {
+            addShareRow(ageModel, PatientStatistics.ageBucketLabel(bucket), statistics.getAgeBucket(bucket),
+                    statistics.getPatients());
+        }
+        showShares(genderModel, statistics.getGenders(), statistics.getPatients());
+        showShares(bloodGroupModel, statistics.getBloodGroups(), statistics.getPatients());
+        returnVisitLabel.setText(String.format("%.1f%% of %d patients seen came back (%d with more than one visit)",
+                statistics.getReturnVisitRate() * 100, statistics.getPatientsWithVisits(),
+                statistics.getReturningPatients()));
+        showDoctors();
+    }
+
+    private static void showShares(DefaultTableModel model, Map<String, Long> counts, long total) {
+        model.setRowCount(0);
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            addShareRow(model, e.getKey().isEmpty() ? "(not given)" : e.getKey(), e.getValue(), total);
+        }
+    }
+
+    private static void addShareRow(DefaultTableModel model, String label, long count, long total) {
+        model.addRow(new Object[] {label, count, total == 0 ? 0.0 : (double) count / total});
+    }
+
+    private void showDoctors() {
+        if (shown != null) {
+            doctorModel.setRows(periodBox.getSelectedIndex() == 0
+                    ? shown.getVisitsPerDoctorPerDay() : shown.getVisitsPerDoctorPerWeek());
+        }
+    }
+
+    private static class ShareRenderer implements TableCellRenderer {
+        private final JProgressBar bar = new JProgressBar(0, 1000);
+
+        ShareRenderer() {
+            bar.setStringPainted(true);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            double share = value == null ? 0 : (Double) value;
+            bar.setValue((int) Math.round(share * 1000));
+            bar.setString(String.format("%.1f%%", share * 100));
+            return bar;
+        }
+    }
+
+    private static class DoctorTableModel extends AbstractTableModel {
+
+        private static final String[] COLUMN_NAMES = {"Doctor", "Date", "Visits"};
+
+        private List<PatientStatistics.DoctorCount> rows = Collections.emptyList();
+
+        void setRows(List<PatientStatistics.DoctorCount> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 2 ? Long.class : column == 1 ? LocalDate.class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            PatientStatistics.DoctorCount count = rows.get(row);
+            return column == 0 ? count.getDoctor() : column == 1 ? count.getPeriod() : count.getVisits();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Everything the analytics jobs read, as primitive columns: patients in id order, and their visits
+// grouped by patient (patient id, then visit id) with dates as epoch days and doctors as codes in a
+// StringDictionary. A snapshot never changes; withChanges() builds the next one and moves the
+// counts along by exactly the rows that differ. count() scans it with fork-join.
+class AnalyticsSnapshot {
+
+    // Rows one fork-join task counts without splitting further
+    static final int TASK_ROWS = Integer.getInteger("hms.analytics.taskRows", 16384);
+
+    private final int[] patientIds;
+    private final int[] ages;
+    private final byte[] genders;
+    private final byte[] bloodGroups;
+    private final int patientCount;
+
+    private final int[] visitPatientIds;
+    private final int[] visitIds;
+    private final int[] visitDays;
+    private final int[] visitDoctors;
+    private final int visitCount;
+
+    private AnalyticsSnapshot(int[] patientIds, int[] ages, byte[] genders, byte[] bloodGroups, int patientCount,
+                              int[] visitPatientIds, int[] visitIds, int[] visitDays, int[] visitDoctors, int visitCount) {
+        this.patientIds = patientIds;
+        this.ages = ages;
+        this.genders = genders;
+        this.bloodGroups = bloodGroups;
+        this.patientCount = patientCount;
+        this.visitPatientIds = visitPatientIds;
+        this.visitIds = visitIds;
+        this.visitDays = visitDays;
+        this.visitDoctors = visitDoctors;
+        this.visitCount = visitCount;
+    }
+
+    // Streams both tables; the columns grow as rows arrive instead of holding Patient and Visit objects
+    static AnalyticsSnapshot load(PatientRepository patients, VisitRepository visits, StringDictionary doctors,
+                                  int fetchSize) throws SQLException {
+        Columns p = Columns.forPatients(1024);
+        patients.forEachPatient(fetchSize, patient -> {
+            p.addPatient(patient);
+            return true;
+        });
+        Columns v = Columns.forVisits(1024);
+        visits.forEachVisit(fetchSize, visit -> {
+            v.addVisit(visit, doctors);
+            return true;
+        });
+        // Patients arrive in id order; visits in id order too, and are regrouped by patient here
+        long[] order = new long[v.size];
+        for (int i = 0; i < v.size; i++) {
+            order[i] = ((long) v.ids[i] << 32) | i;
+        }
+        Arrays.parallelSort(order);
+        int[] visitPatientIds = new int[v.size];
+        int[] visitIds = new int[v.size];
+        int[] visitDays = new int[v.size];
+        int[] visitDoctors = new int[v.size];
+        for (int i = 0; i < v.size; i++) {
+            int from = (int) order[i];
+            visitPatientIds[i] = v.ids[from];
+            visitIds[i] = v.ints[from];
+            visitDays[i] = v.days[from];
+            visitDoctors[i] = v.doctors[from];
+        }
+        return new AnalyticsSnapshot(p.ids, p.ints, p.genders, p.bloodGroups, p.size,
+                visitPatientIds, visitIds, visitDays, visitDoctors, v.size);
+    }
+
+    public int getPatientCount() {
+        return patientCount;
+    }
+
+    public int getVisitCount() {
+        return visitCount;
+    }
+
+    // Counts every row in parallel on the common fork-join pool
+    StatisticsCounts count(StringDictionary doctors) {
+        return ForkJoinPool.commonPool().invoke(new CountTask(doctors, 0, patientCount, 0, visitCount));
+    }
+
+    private class CountTask extends RecursiveTask<StatisticsCounts> {
+        private final StringDictionary doctors;
+        private final int patientFrom;
+        private final int patientTo;
+        private final int visitFrom;
+        private final int visitTo;
+
+        CountTask(StringDictionary doctors, int patientFrom, int patientTo, int visitFrom, int visitTo) {
+            this.doctors = doctors;
+            this.patientFrom = patientFrom;
+            this.patientTo = patientTo;
+            this.visitFrom = visitFrom;
+            this.visitTo = visitTo;
+        }
+
+        @Override
+        protected StatisticsCounts compute() {
+            int patients = patientTo - patientFrom;
+            int visits = visitTo - visitFrom;
+            // Halve whichever range is too big. The visit split is moved to a patient boundary so each
+            // patient's visits are counted by one task, which return visits depend on.
+            int patientMid = patients > TASK_ROWS ? patientFrom + patients / 2 : patientTo;
+            int visitMid = visitTo;
+            if (visits > TASK_ROWS) {
+                int mid = visitFrom + visits / 2;
+                visitMid = lowerBound(visitPatientIds, visitFrom, mid, visitPatientIds[mid]);
+                if (visitMid == visitFrom) {
+                    visitMid = patientEnd(mid);
+                }
+            }
+            if (patientMid < patientTo || visitMid < visitTo) {
+                CountTask left = new CountTask(doctors, patientFrom, patientMid, visitFrom, visitMid);
+                CountTask right = new CountTask(doctors, patientMid, patientTo, visitMid, visitTo);
+                left.fork();
+                StatisticsCounts counts = right.compute();
+                counts.merge(left.join());
+                return counts;
+            }
+            StatisticsCounts counts = new StatisticsCounts(doctors);
+            for (int i = patientFrom; i < patientTo; i++) {
+                counts.addPatient(ages[i], genders[i], bloodGroups[i], 1);
+            }
+            for (int i = visitFrom; i < visitTo; ) {
+                int end = patientEnd(i);
+                counts.addVisits(visitDoctors, visitDays, i, end, 1);
+                i = end;
+            }
+            return counts;
+        }
+    }
+
+    // Row after the last visit of the patient owning row i
+    private int patientEnd(int i) {
+        return lowerBound(visitPatientIds, i, visitCount, visitPatientIds[i] + 1);
+    }
+
+    // First index in [from, to) whose value is at least key
+    private static int lowerBound(int[] values, int from, int to, int key) {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // The snapshot after the given writes: upserts are patients as they are now, deletedIds patients
+    // gone (with their visits), histories the full visit lists of patients whose visits changed.
+    // The rows replaced are counted out of counts and their replacements in.
+    AnalyticsSnapshot withChanges(Collection<Patient> upserts, Collection<Integer> deletedIds,
+                                  Map<Integer, List<Visit>> histories, StringDictionary doctors, StatisticsCounts counts) {
+        TreeMap<Integer, Patient> changed = new TreeMap<>();
+        for (Patient p : upserts) {
+            changed.put(p.getId(), p);
+        }
+        for (int id : deletedIds) {
+            changed.put(id, null);
+        }
+
+        // Patients: copy the runs between changed ids, swapping in the changed rows
+        Columns p = Columns.forPatients(patientCount + changed.size());
+        int pos = 0;
+        for (Map.Entry<Integer, Patient> e : changed.entrySet()) {
+            int at = lowerBound(patientIds, pos, patientCount, e.getKey());
+            p.copyPatients(this, pos, at);
+            pos = at;
+            if (at < patientCount && patientIds[at] == e.getKey()) {
+                counts.addPatient(ages[at], genders[at], bloodGroups[at], -1);
+                pos++;
+            }
+            if (e.getValue() != null) {
+                p.addPatient(e.getValue());
+                counts.addPatient(e.getValue().getAge(), p.genders[p.size - 1], p.bloodGroups[p.size - 1], 1);
+            }
+        }
+        p.copyPatients(this, pos, patientCount);
+
+        // Visits: the same for each patient whose history changed or who was deleted
+        Set<Integer> deleted = new HashSet<>(deletedIds);
+        TreeSet<Integer> replaced = new TreeSet<>(histories.keySet());
+        replaced.addAll(deleted);
+        int added = 0;
+        for (List<Visit> history : histories.values()) {
+            added += history.size();
+        }
+        Columns v = Columns.forVisits(visitCount + added);
+        pos = 0;
+        for (int patientId : replaced) {
+            int from = lowerBound(visitPatientIds, pos, visitCount, patientId);
+            int to = lowerBound(visitPatientIds, from, visitCount, patientId + 1);
+            v.copyVisits(this, pos, from);
+            counts.addVisits(visitDoctors, visitDays, from, to, -1);
+            pos = to;
+            List<Visit> history = deleted.contains(patientId) ? null : histories.get(patientId);
+            if (history != null) {
+                List<Visit> byId = new ArrayList<>(history);
+                byId.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+                int start = v.size;
+                for (Visit visit : byId) {
+                    v.addVisit(visit, doctors);
+                }
+                counts.addVisits(v.doctors, v.days, start, v.size, 1);
+            }
+        }
+        v.copyVisits(this, pos, visitCount);
+
+        return new AnalyticsSnapshot(p.ids, p.ints, p.genders, p.bloodGroups, p.size,
+                v.ids, v.ints, v.days, v.doctors, v.size);
+    }
+
+    // Growable columns for building a snapshot. For patients ids/ints are id/age; for visits they
+    // are patient id/visit id.
+    private static class Columns {
+        int[] ids;
+        int[] ints;
+        byte[] genders;
+        byte[] bloodGroups;
+        int[] days;
+        int[] doctors;
+        int size;
+
+        private Columns(int capacity) {
+            ids = new int[Math.max(16, capacity)];
+            ints = new int[ids.length];
+        }
+
+        static Columns forPatients(int capacity) {
+            Columns columns = new Columns(capacity);
+            columns.genders = new byte[columns.ids.length];
+            columns.bloodGroups = new byte[columns.ids.length];
+            return columns;
+        }
+
+        static Columns forVisits(int capacity) {
+            Columns columns = new Columns(capacity);
+            columns.days = new int[columns.ids.length];
+            columns.doctors = new int[columns.ids.length];
+            return columns;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > ids.length) {
+                int capacity = Math.max(size + extra, ids.length * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                ints = Arrays.copyOf(ints, capacity);
+                if (genders != null) {
+                    genders = Arrays.copyOf(genders, capacity);
+                    bloodGroups = Arrays.copyOf(bloodGroups, capacity);
+                }
+                if (days != null) {
+                    days = Arrays.copyOf(days, capacity);
+                    doctors = Arrays.copyOf(doctors, capacity);
+                }
+            }
+        }
+
+        void addPatient(Patient patient) {
+            ensure(1);
+            ids[size] = patient.getId();
+            ints[size] = patient.getAge();
+            genders[size] = PatientColumns.GENDERS.encode(patient.getGender());
+            bloodGroups[size] = PatientColumns.BLOOD_GROUPS.encode(patient.getBloodGroup());
+            size++;
+        }
+
+        void copyPatients(AnalyticsSnapshot source, int from, int to) {
+            int length = to - from;
+            ensure(length);
+            System.arraycopy(source.patientIds, from, ids, size, length);
+            System.arraycopy(source.ages, from, ints, size, length);
+            System.arraycopy(source.genders, from, genders, size, length);
+            System.arraycopy(source.bloodGroups, from, bloodGroups, size, length);
+            size += length;
+        }
+
+        void addVisit(Visit visit, StringDictionary dictionary) {
+            ensure(1);
+            ids[size] = visit.getPatientId();
+            ints[size] = visit.getId();
+            days[size] = (int) visit.getVisitDate().toLocalDate().toEpochDay();
+            doctors[size] = dictionary.encode(visit.getDoctor());
+            size++;
+        }
+
+        void copyVisits(AnalyticsSnapshot source, int from, int to) {
+            int length = to - from;
+            ensure(length);
+            System.arraycopy(source.visitPatientIds, from, ids, size, length);
+            System.arraycopy(source.visitIds, from, ints, size, length);
+            System.arraycopy(source.visitDays, from, days, size, length);
+            System.arraycopy(source.visitDoctors, from, doctors, size, length);
+            size += length;
+        }
+    }
+}
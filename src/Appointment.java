@@ -0,0 +1,79 @@
+import java.time.LocalDateTime;
+
+// A booked or cancelled appointment. Starts and lengths are whole DaySchedule.GRAIN_MINUTES units
+// within one day; patientName is filled in by the queries that list appointments.
+class Appointment {
+
+    static final String BOOKED = "B";
+    static final String CANCELLED = "C";
+
+    private final int id;
+    private final int doctorId;
+    private final int patientId;
+    private final LocalDateTime start;
+    private final int minutes;
+    private final String reason;
+    private final String status;
+    private final String patientName;
+
+    public Appointment(int id, int doctorId, int patientId, LocalDateTime start, int minutes, String reason,
+                       String status, String patientName) {
+        this.id = id;
+        this.doctorId = doctorId;
+        this.patientId = patientId;
+        this.start = start;
+        this.minutes = minutes;
+        this.reason = reason;
+        this.status = status;
+        this.patientName = patientName;
+    }
+
+    // A request to book
+    public Appointment(int doctorId, int patientId, LocalDateTime start, int minutes, String reason) {
+        this(0, doctorId, patientId, start, minutes, reason, BOOKED, null);
+    }
+
+    public Appointment withId(int id) {
+        return new Appointment(id, doctorId, patientId, start, minutes, reason, status, patientName);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getDoctorId() {
+        return doctorId;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return start.plusMinutes(minutes);
+    }
+
+    public int getMinutes() {
+        return minutes;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isCancelled() {
+        return CANCELLED.equals(status);
+    }
+
+    public String getPatientName() {
+        return patientName;
+    }
+}
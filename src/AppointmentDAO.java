@@ -0,0 +1,88 @@
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+// Oracle access for AppointmentScheduler: appointments, and the doctor_days row per doctor
+// and day whose version every booking or cancellation for that day bumps in its own transaction.
+// A writer that read the day at an older version finds no row to bump and has to read it again;
+// that is how two workstations are kept from booking the same time.
+class AppointmentDAO {
+
+    private static final String APPOINTMENT_COLUMNS = "a.id, a.doctor_id, a.patient_id, a.starts_at, a.minutes, "
+            + "a.reason, a.status, p.name";
+
+    static final QueryTemplate.MapperFactory<Appointment> APPOINTMENT_MAPPER = rs -> r -> new Appointment(
+            r.getInt(1), r.getInt(2), r.getInt(3), r.getTimestamp(4).toLocalDateTime(), r.getInt(5),
+            r.getString(6), r.getString(7), r.getString(8));
+
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+
+    // Booked and cancelled appointments of the day, in start order
+    public List<Appointment> getAppointments(int doctorId, LocalDate day) throws SQLException {
+        return template.query("SELECT " + APPOINTMENT_COLUMNS + " FROM appointments a "
+                + "JOIN patients p ON p.id = a.patient_id "
+                + "WHERE a.doctor_id = ? AND a.starts_at >= ? AND a.starts_at < ? ORDER BY a.starts_at, a.id", ps -> {
+                    ps.setInt(1, doctorId);
+                    ps.setTimestamp(2, Timestamp.valueOf(day.atStartOfDay()));
+                    ps.setTimestamp(3, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+                }, APPOINTMENT_MAPPER);
+    }
+
+    // The version is read before the appointments: a booking landing in between then shows up with an
+    // older version, which only costs a retry. The other way round it could be missed.
+    public DaySchedule loadDay(int doctorId, LocalDate day) throws SQLException {
+        Long version = template.queryOne("SELECT version FROM doctor_days WHERE doctor_id = ? AND schedule_day = ?",
+                ps -> {
+                    ps.setInt(1, doctorId);
+                    ps.setDate(2, Date.valueOf(day));
+                }, rs -> r -> r.getLong(1));
+        return DaySchedule.of(getAppointments(doctorId, day), version == null ? 0 : version);
+    }
+
+    // Moves the day from expectedVersion to the next; false if another writer got there first.
+    // Must run inside DatabaseConfig.inTransaction() with the write it guards.
+    public boolean bumpVersion(int doctorId, LocalDate day, long expectedVersion) throws SQLException {
+        if (expectedVersion == 0) {
+            try {
+                template.update("INSERT INTO doctor_days (doctor_id, schedule_day, version) VALUES (?, ?, 1)", ps -> {
+                    ps.setInt(1, doctorId);
+                    ps.setDate(2, Date.valueOf(day));
+                });
+                return true;
+            } catch (SQLIntegrityConstraintViolationException e) {
+                return false;
+            }
+        }
+        return template.update("UPDATE doctor_days SET version = version + 1 "
+                + "WHERE doctor_id = ? AND schedule_day = ? AND version = ?", ps -> {
+                    ps.setInt(1, doctorId);
+                    ps.setDate(2, Date.valueOf(day));
+                    ps.setLong(3, expectedVersion);
+                }) == 1;
+    }
+
+    // Returns the id generated for the new appointment
+    public int insertAppointment(Appointment a) throws SQLException {
+        return template.insert("INSERT INTO appointments (doctor_id, patient_id, starts_at, minutes, reason, status) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", "id", ps -> {
+                    ps.setInt(1, a.getDoctorId());
+                    ps.setInt(2, a.getPatientId());
+                    ps.setTimestamp(3, Timestamp.valueOf(a.getStart()));
+                    ps.setInt(4, a.getMinutes());
+                    ps.setString(5, a.getReason());
+                    ps.setString(6, Appointment.BOOKED);
+                });
+    }
+
+    // False if it was already cancelled
+    public boolean cancelAppointment(int appointmentId) throws SQLException {
+        return template.update("UPDATE appointments SET status = ? WHERE id = ? AND status = ?", ps -> {
+            ps.setString(1, Appointment.CANCELLED);
+            ps.setInt(2, appointmentId);
+            ps.setString(3, Appointment.BOOKED);
+        }) == 1;
+    }
+}
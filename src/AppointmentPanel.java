@@ -0,0 +1,334 @@
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.HierarchyEvent;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.AbstractTableModel;
+
+// The Appointments tab: one doctor's day, with its appointments on the left and the free slots of
+// the chosen length on the right. Booking takes the selected slot; a slot another clerk took
+// meanwhile is reported and the day shown again.
+class AppointmentPanel extends JPanel {
+
+    private static final Integer[] LENGTHS = {15, 30, 45, 60};
+
+    private final AppointmentScheduler scheduler;
+    private final JComboBox<Doctor> doctorBox = new JComboBox<>();
+    private final JTextField dateField = new JTextField(LocalDate.now().toString(), 10);
+    private final JComboBox<Integer> lengthBox = new JComboBox<>(LENGTHS);
+    private final AppointmentTableModel appointmentModel = new AppointmentTableModel();
+    private final JTable appointmentTable = new JTable(appointmentModel);
+    private final DefaultListModel<LocalTime> slotModel = new DefaultListModel<>();
+    private final JList<LocalTime> slotList = new JList<>(slotModel);
+    private final JTextField patientIdField = new JTextField(6);
+    private final JTextField reasonField = new JTextField(25);
+    private final JLabel statusLabel = new JLabel(" ");
+
+    private boolean doctorsLoaded;
+    // Bumped per refresh so an older, slower one does not overwrite a newer one
+    private int generation;
+
+    public AppointmentPanel(AppointmentScheduler scheduler) {
+        this.scheduler = scheduler;
+        setLayout(new BorderLayout(5, 5));
+        setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("Doctor:"));
+        top.add(doctorBox);
+        JButton newDoctorButton = new JButton("New Doctor...");
+        newDoctorButton.addActionListener(e -> addDoctor());
+        top.add(newDoctorButton);
+        top.add(new JLabel("Date (YYYY-MM-DD):"));
+        top.add(dateField);
+        JButton previousButton = new JButton("<");
+        previousButton.addActionListener(e -> moveDay(-1));
+        top.add(previousButton);
+        JButton nextButton = new JButton(">");
+        nextButton.addActionListener(e -> moveDay(1));
+        top.add(nextButton);
+        top.add(new JLabel("Length (min):"));
+        lengthBox.setSelectedItem(30);
+        top.add(lengthBox);
+        add(top, BorderLayout.NORTH);
+
+        appointmentTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        slotList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        JPanel center = new JPanel(new GridLayout(1, 2, 5, 5));
+        JPanel appointmentPanel = new JPanel(new BorderLayout());
+        appointmentPanel.setBorder(BorderFactory.createTitledBorder("Appointments"));
+        appointmentPanel.add(new JScrollPane(appointmentTable), BorderLayout.CENTER);
+        center.add(appointmentPanel);
+        JPanel slotPanel = new JPanel(new BorderLayout());
+        slotPanel.setBorder(BorderFactory.createTitledBorder("Free slots"));
+        slotPanel.add(new JScrollPane(slotList), BorderLayout.CENTER);
+        center.add(slotPanel);
+        add(center, BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new GridLayout(2, 1));
+        JPanel bookPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        bookPanel.add(new JLabel("Patient ID:"));
+        bookPanel.add(patientIdField);
+        bookPanel.add(new JLabel("Reason:"));
+        bookPanel.add(reasonField);
+        JButton bookButton = new JButton("Book Selected Slot");
+        bookButton.addActionListener(e -> book());
+        bookPanel.add(bookButton);
+        JButton cancelButton = new JButton("Cancel Appointment");
+        cancelButton.addActionListener(e -> cancelAppointment());
+        bookPanel.add(cancelButton);
+        bottom.add(bookPanel);
+        JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        statusPanel.add(statusLabel);
+        bottom.add(statusPanel);
+        add(bottom, BorderLayout.SOUTH);
+
+        doctorBox.addActionListener(e -> refresh());
+        lengthBox.addActionListener(e -> refresh());
+        dateField.addActionListener(e -> refresh());
+        addHierarchyListener(e -> {
+            if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0 && isShowing()) {
+                if (doctorsLoaded) {
+                    refresh();
+                } else {
+                    loadDoctors(0);
+                }
+            }
+        });
+    }
+
+    // Selects the doctor with the given id once loaded, or the first one if 0
+    private void loadDoctors(int selectId) {
+        DatabaseExecutor.supply(scheduler::getDoctors).whenCompleteAsync((doctors, error) -> {
+            if (error != null) {
+                statusLabel.setText("Doctors unavailable: " + DatabaseExecutor.unwrap(error).getMessage());
+                return;
+            }
+            doctorsLoaded = true;
+            DefaultComboBoxModel<Doctor> model = new DefaultComboBoxModel<>();
+            Doctor selected = null;
+            for (Doctor d : doctors) {
+                model.addElement(d);
+                if (d.getId() == selectId) {
+                    selected = d;
+                }
+            }
+            if (selected != null) {
+                model.setSelectedItem(selected);
+            }
+            // Fires refresh()
+            doctorBox.setModel(model);
+            if (doctors.isEmpty()) {
+                statusLabel.setText("No doctors yet - add one with New Doctor...");
+                refresh();
+            }
+        }, DatabaseExecutor.EDT);
+    }
+
+    private void addDoctor() {
+        JTextField nameField = new JTextField(20);
+        JTextField specialtyField = new JTextField(20);
+        JPanel form = new JPanel(new GridLayout(2, 2, 5, 5));
+        form.add(new JLabel("Name:"));
+        form.add(nameField);
+        form.add(new JLabel("Specialty:"));
+        form.add(specialtyField);
+        if (JOptionPane.showConfirmDialog(this, form, "New Doctor", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        String name = nameField.getText().trim();
+        if (name.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Please enter the doctor's name", "Validation Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        Doctor doctor = new Doctor(0, name, specialtyField.getText().trim());
+        DatabaseExecutor.supply(() -> scheduler.addDoctor(doctor)).whenCompleteAsync((id, error) -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error adding doctor: " + DatabaseExecutor.unwrap(error).getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            loadDoctors(id);
+        }, DatabaseExecutor.EDT);
+    }
+
+    private void moveDay(int days) {
+        LocalDate day = parseDate();
+        if (day != null) {
+            dateField.setText(day.plusDays(days).toString());
+            refresh();
+        }
+    }
+
+    private LocalDate parseDate() {
+        try {
+            return LocalDate.parse(dateField.getText().trim());
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Invalid date format. Use YYYY-MM-DD", "Validation Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    private void refresh() {
+        Doctor doctor = (Doctor) doctorBox.getSelectedItem();
+        LocalDate day = parseDate();
+        int gen = ++generation;
+        if (doctor == null || day == null) {
+            appointmentModel.setRows(Collections.emptyList());
+            slotModel.clear();
+            return;
+        }
+        int minutes = (Integer) lengthBox.getSelectedItem();
+        DatabaseExecutor.supply(() -> new DayView(scheduler.getAppointments(doctor.getId(), day),
+                scheduler.getFreeSlots(doctor.getId(), day, minutes))).whenCompleteAsync((view, error) -> {
+                    if (gen != generation) {
+                        return;
+                    }
+                    if (error != null) {
+                        statusLabel.setText("Schedule unavailable: " + DatabaseExecutor.unwrap(error).getMessage());
+                        return;
+                    }
+                    appointmentModel.setRows(view.appointments);
+                    slotModel.clear();
+                    for (LocalTime slot : view.freeSlots) {
+                        slotModel.addElement(slot);
+                    }
+                }, DatabaseExecutor.EDT);
+    }
+
+    private void book() {
+        Doctor doctor = (Doctor) doctorBox.getSelectedItem();
+        LocalTime slot = slotList.getSelectedValue();
+        LocalDate day = parseDate();
+        if (doctor == null || slot == null || day == null) {
+            JOptionPane.showMessageDialog(this, "Please choose a doctor and a free slot", "Validation Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        int patientId;
+        try {
+            patientId = Integer.parseInt(patientIdField.getText().trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a valid patient ID", "Validation Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        Appointment request = new Appointment(doctor.getId(), patientId, day.atTime(slot),
+                (Integer) lengthBox.getSelectedItem(), reasonField.getText().trim());
+        DatabaseExecutor.supply(() -> scheduler.book(request)).whenCompleteAsync((booked, error) -> {
+            if (error != null) {
+                Throwable cause = DatabaseExecutor.unwrap(error);
+                if (cause instanceof SlotUnavailableException) {
+                    JOptionPane.showMessageDialog(this, cause.getMessage(), "Slot Unavailable",
+                            JOptionPane.WARNING_MESSAGE);
+                    refresh();
+                } else {
+                    JOptionPane.showMessageDialog(this, "Error booking appointment: " + cause.getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                }
+                return;
+            }
+            statusLabel.setText("Booked " + doctor.getName() + " at " + booked.getStart().toLocalTime()
+                    + " for patient " + booked.getPatientId());
+            reasonField.setText("");
+            refresh();
+        }, DatabaseExecutor.EDT);
+    }
+
+    private void cancelAppointment() {
+        int row = appointmentTable.getSelectedRow();
+        Appointment appointment = row < 0 ? null : appointmentModel.getAppointmentAt(row);
+        if (appointment == null || appointment.isCancelled()) {
+            JOptionPane.showMessageDialog(this, "Please select a booked appointment", "Validation Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (JOptionPane.showConfirmDialog(this, "Cancel the appointment at " + appointment.getStart().toLocalTime() + "?",
+                "Confirm Cancellation", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+            return;
+        }
+        DatabaseExecutor.run(() -> scheduler.cancel(appointment)).whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error cancelling appointment: " + DatabaseExecutor.unwrap(error).getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            statusLabel.setText("Cancelled the appointment at " + appointment.getStart().toLocalTime());
+            refresh();
+        }, DatabaseExecutor.EDT);
+    }
+
+    private static class DayView {
+        final List<Appointment> appointments;
+        final List<LocalTime> freeSlots;
+
+        DayView(List<Appointment> appointments, List<LocalTime> freeSlots) {
+            this.appointments = appointments;
+            this.freeSlots = freeSlots;
+        }
+    }
+
+    private static class AppointmentTableModel extends AbstractTableModel {
+
+        private static final String[] COLUMN_NAMES = {"Time", "Until", "Patient", "Reason", "Status"};
+
+        private List<Appointment> rows = Collections.emptyList();
+
+        void setRows(List<Appointment> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        Appointment getAppointmentAt(int row) {
+            return rows.get(row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Appointment a = rows.get(row);
+            switch (column) {
+                case 0: return a.getStart().toLocalTime();
+                case 1: return a.getEnd().toLocalTime();
+                case 2: return a.getPatientName() + " (" + a.getPatientId() + ")";
+                case 3: return a.getReason();
+                case 4: return a.isCancelled() ? "Cancelled" : "Booked";
+                default: return null;
+            }
+        }
+    }
+}
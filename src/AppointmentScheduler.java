@@ -0,0 +1,193 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Books and cancels appointments so no doctor is ever double booked, however many clerks on however
+// many workstations book at once. Each doctor's day is a DaySchedule bitmap, cached here, against
+// which conflicts and free slots are checked without a query. Writes are optimistic across
+// workstations (AppointmentDAO.bumpVersion(): a day changed elsewhere since it was cached is read
+// again and the check repeated) and serialized per doctor and day within this one by striped locks,
+// so clerks here queue for the same day instead of failing each other's version checks.
+class AppointmentScheduler {
+
+    static final LocalTime OPENS = LocalTime.parse(System.getProperty("hms.schedule.opens", "08:00"));
+    static final LocalTime CLOSES = LocalTime.parse(System.getProperty("hms.schedule.closes", "18:00"));
+    // Power of two
+    static final int LOCK_STRIPES = Integer.highestOneBit(Integer.getInteger("hms.schedule.lockStripes", 64));
+    static final int MAX_ATTEMPTS = Integer.getInteger("hms.schedule.maxAttempts", 10);
+    // Cached days are re-read after this long, which bounds how stale free slots shown here can be
+    private static final int CACHE_DAYS = Integer.getInteger("hms.schedule.cacheDays", 4096);
+    private static final long CACHE_TTL_MILLIS = Long.getLong("hms.schedule.cacheTtlMillis", 60000);
+
+    // book and cancel time the whole write, retries included; loadDay times reading a day that was
+    // not cached, had expired, or was changed by another workstation
+    private static final Metrics.Timer BOOK_TIMER = Metrics.timer("schedule.book");
+    private static final Metrics.Timer CANCEL_TIMER = Metrics.timer("schedule.cancel");
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("schedule.loadDay");
+
+    private final AppointmentDAO dao;
+    private final DoctorDirectory doctors;
+    private final BoundedCache<Long, DaySchedule> days = new BoundedCache<>(CACHE_DAYS, CACHE_TTL_MILLIS);
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+
+    public AppointmentScheduler(AppointmentDAO dao, DoctorDirectory doctors) {
+        this.dao = dao;
+        this.doctors = doctors;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public List<Doctor> getDoctors() throws SQLException {
+        return doctors.getDoctors();
+    }
+
+    // Returns the id of the doctor, which is the existing one if the name is already known
+    public int addDoctor(Doctor doctor) throws SQLException {
+        return doctors.addDoctor(doctor.getName(), doctor.getSpecialty()).getId();
+    }
+
+    public List<Appointment> getAppointments(int doctorId, LocalDate day) throws SQLException {
+        return dao.getAppointments(doctorId, day);
+    }
+
+    // Start times during opening hours, a slot length apart, at which the doctor is free
+    public List<LocalTime> getFreeSlots(int doctorId, LocalDate day, int minutes) throws SQLException {
+        return daySchedule(doctorId, day).freeSlots(units(minutes), DaySchedule.unitOf(OPENS), DaySchedule.unitOf(CLOSES));
+    }
+
+    // Returns the booked appointment with its id. Throws SlotUnavailableException if the time is
+    // taken or outside opening hours.
+    public Appointment book(Appointment request) throws SQLException {
+        long start = System.nanoTime();
+        LocalDate day = request.getStart().toLocalDate();
+        int from = DaySchedule.unitOf(request.getStart().toLocalTime());
+        int to = from + units(request.getMinutes());
+        validate(request, from, to);
+        long key = DaySchedule.key(request.getDoctorId(), day);
+        ReentrantLock lock = stripeFor(key);
+        lock.lock();
+        try {
+            DaySchedule schedule = days.get(key);
+            boolean fresh = false;
+            for (int attempt = 1; ; attempt++) {
+                if (schedule == null) {
+                    schedule = reload(request.getDoctorId(), day, key);
+                    fresh = true;
+                }
+                if (!schedule.isFree(from, to)) {
+                    if (!fresh) {
+                        // The cached day may be behind a cancellation made elsewhere
+                        schedule = null;
+                        continue;
+                    }
+                    BOOK_TIMER.record(start, 0);
+                    throw new SlotUnavailableException("The doctor already has an appointment between "
+                            + request.getStart().toLocalTime() + " and " + request.getEnd().toLocalTime());
+                }
+                long version = schedule.getVersion();
+                Integer id = DatabaseConfig.inTransaction(() -> dao.bumpVersion(request.getDoctorId(), day, version)
+                        ? dao.insertAppointment(request) : null);
+                if (id != null) {
+                    days.put(key, schedule.withBooked(from, to, version + 1));
+                    BOOK_TIMER.record(start, 1);
+                    return request.withId(id);
+                }
+                if (attempt == MAX_ATTEMPTS) {
+                    throw new SQLException("Could not book after " + attempt + " attempts; the schedule keeps changing");
+                }
+                // Another workstation wrote this day since it was read
+                schedule = null;
+            }
+        } catch (SlotUnavailableException e) {
+            throw e;
+        } catch (SQLException | RuntimeException e) {
+            BOOK_TIMER.recordError(start);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void cancel(Appointment appointment) throws SQLException {
+        long start = System.nanoTime();
+        LocalDate day = appointment.getStart().toLocalDate();
+        int from = DaySchedule.unitOf(appointment.getStart().toLocalTime());
+        int to = from + units(appointment.getMinutes());
+        long key = DaySchedule.key(appointment.getDoctorId(), day);
+        ReentrantLock lock = stripeFor(key);
+        lock.lock();
+        try {
+            DaySchedule schedule = days.get(key);
+            for (int attempt = 1; ; attempt++) {
+                if (schedule == null) {
+                    schedule = reload(appointment.getDoctorId(), day, key);
+                }
+                long version = schedule.getVersion();
+                Boolean written = DatabaseConfig.inTransaction(() -> {
+                    if (!dao.bumpVersion(appointment.getDoctorId(), day, version)) {
+                        return null;
+                    }
+                    return dao.cancelAppointment(appointment.getId());
+                });
+                if (written != null) {
+                    if (written) {
+                        days.put(key, schedule.withReleased(from, to, version + 1));
+                    } else {
+                        // Cancelled elsewhere already, so the time may be someone else's by now
+                        days.invalidate(key);
+                    }
+                    CANCEL_TIMER.record(start, written ? 1 : 0);
+                    return;
+                }
+                if (attempt == MAX_ATTEMPTS) {
+                    throw new SQLException("Could not cancel after " + attempt + " attempts; the schedule keeps changing");
+                }
+                schedule = null;
+            }
+        } catch (SQLException | RuntimeException e) {
+            CANCEL_TIMER.recordError(start);
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DaySchedule daySchedule(int doctorId, LocalDate day) throws SQLException {
+        long key = DaySchedule.key(doctorId, day);
+        DaySchedule schedule = days.get(key);
+        return schedule != null ? schedule : reload(doctorId, day, key);
+    }
+
+    private DaySchedule reload(int doctorId, LocalDate day, long key) throws SQLException {
+        long start = System.nanoTime();
+        DaySchedule schedule = dao.loadDay(doctorId, day);
+        days.put(key, schedule);
+        LOAD_TIMER.record(start, 1);
+        return schedule;
+    }
+
+    private ReentrantLock stripeFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> 32) & (stripes.length - 1)];
+    }
+
+    private static int units(int minutes) {
+        return minutes / DaySchedule.GRAIN_MINUTES;
+    }
+
+    private static void validate(Appointment request, int from, int to) throws SQLException {
+        LocalDateTime start = request.getStart();
+        if (request.getMinutes() <= 0 || request.getMinutes() % DaySchedule.GRAIN_MINUTES != 0
+                || start.getMinute() % DaySchedule.GRAIN_MINUTES != 0 || start.getSecond() != 0 || start.getNano() != 0) {
+            throw new IllegalArgumentException("Appointments start and last in whole multiples of "
+                    + DaySchedule.GRAIN_MINUTES + " minutes");
+        }
+        if (from < DaySchedule.unitOf(OPENS) || to > DaySchedule.unitOf(CLOSES)) {
+            throw new SlotUnavailableException("Appointments must fall between " + OPENS + " and " + CLOSES);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Non-blocking facade over PatientDAO for use from Swing code.
+// Chain UI updates with DatabaseExecutor.EDT, e.g. future.thenAcceptAsync(..., DatabaseExecutor.EDT).
+class AsyncPatientDAO {
+
+    private final PatientRepository patientDAO;
+
+    public AsyncPatientDAO(PatientRepository patientDAO) {
+        this.patientDAO = patientDAO;
+    }
+
+    public PatientRepository getDelegate() {
+        return patientDAO;
+    }
+
+    public CompletableFuture<Integer> addPatient(Patient p) {
+        return DatabaseExecutor.supply(() -> patientDAO.addPatient(p));
+    }
+
+    public CompletableFuture<Void> updatePatient(Patient p) {
+        return DatabaseExecutor.run(() -> patientDAO.updatePatient(p));
+    }
+
+    public CompletableFuture<Void> deletePatient(int id) {
+        return DatabaseExecutor.run(() -> patientDAO.deletePatient(id));
+    }
+
+    public CompletableFuture<List<Patient>> getAllPatients() {
+        return DatabaseExecutor.supply(patientDAO::getAllPatients);
+    }
+
+    // Cancelling a search's future cancels its query too; see DatabaseExecutor.supplyCancellable()
+    public CompletableFuture<List<Patient>> searchPatients(String searchTerm) {
+        return DatabaseExecutor.supplyCancellable(() -> patientDAO.searchPatients(searchTerm));
+    }
+
+    public CompletableFuture<List<Patient>> searchPatients(SearchPlan plan) {
+        return DatabaseExecutor.supplyCancellable(() -> patientDAO.searchPatients(plan));
+    }
+
+    public CompletableFuture<Integer> countPatients() {
+        return DatabaseExecutor.supply(patientDAO::countPatients);
+    }
+
+    public CompletableFuture<PatientPage> getPatientsPage(int afterId, int pageSize) {
+        return DatabaseExecutor.supply(() -> patientDAO.getPatientsPage(afterId, pageSize));
+    }
+
+    public CompletableFuture<PatientPage> getPatientsPageAt(int offset, int pageSize) {
+        return DatabaseExecutor.supply(() -> patientDAO.getPatientsPageAt(offset, pageSize));
+    }
+
+    public CompletableFuture<Patient> getPatientById(int id) {
+        return DatabaseExecutor.supply(() -> patientDAO.getPatientById(id));
+    }
+
+    public CompletableFuture<PatientChanges> getPatientsChangedSince(long token) {
+        return DatabaseExecutor.supply(() -> patientDAO.getPatientsChangedSince(token));
+    }
+
+    public CompletableFuture<PatientSnapshot> loadSnapshot(int fetchSize) {
+        return DatabaseExecutor.supply(() -> PatientSnapshot.load(patientDAO, fetchSize));
+    }
+
+    // {change token, row count} as of one moment
+    public CompletableFuture<long[]> getChangeTokenAndCount() {
+        return DatabaseExecutor.supply(patientDAO::getChangeTokenAndCount);
+    }
+}
@@ -0,0 +1,34 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Non-blocking facade over VisitDAO; see AsyncPatientDAO.
+class AsyncVisitDAO {
+
+    private final VisitRepository visitDAO;
+
+    public AsyncVisitDAO(VisitRepository visitDAO) {
+        this.visitDAO = visitDAO;
+    }
+
+    public VisitRepository getDelegate() {
+        return visitDAO;
+    }
+
+    public CompletableFuture<Integer> addVisit(Visit v) {
+        return DatabaseExecutor.supply(() -> visitDAO.addVisit(v));
+    }
+
+    public CompletableFuture<VisitPage> getVisitsPage(int patientId, Visit after, int pageSize) {
+        return DatabaseExecutor.supply(() -> visitDAO.getVisitsPage(patientId, after, pageSize));
+    }
+
+    public CompletableFuture<List<Visit>> getVisitsForPatient(int patientId) {
+        return DatabaseExecutor.supply(() -> visitDAO.getVisitsForPatient(patientId));
+    }
+
+    public CompletableFuture<Map<Integer, List<Visit>>> getVisitsForPatients(Collection<Integer> patientIds) {
+        return DatabaseExecutor.supply(() -> visitDAO.getVisitsForPatients(patientIds));
+    }
+}
@@ -0,0 +1,80 @@
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// PatientDAO whose getPatientById() reads through a bounded cache.
+// Writes made through this DAO update or invalidate the cached entry via the change listener hook.
+class CachingPatientDAO extends PatientDAO {
+
+    static final int DEFAULT_MAX_SIZE = Integer.getInteger("hms.cache.patients.maxSize", 1000);
+    static final long DEFAULT_TTL_MILLIS = Long.getLong("hms.cache.patients.ttlSeconds", 300) * 1000;
+
+    private final BoundedCache<Integer, Patient> cache;
+    // Bumped on every write so a read that raced with a write does not cache what it read
+    private final AtomicLong writeCount = new AtomicLong();
+
+    public CachingPatientDAO() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS);
+    }
+
+    public CachingPatientDAO(int maxSize, long ttlMillis) {
+        cache = new BoundedCache<>(maxSize, ttlMillis);
+        addChangeListener(new PatientChangeListener() {
+            @Override
+            public void patientAdded(Patient patient) {
+                writeCount.incrementAndGet();
+                cache.put(patient.getId(), patient);
+            }
+
+            @Override
+            public void patientUpdated(Patient patient) {
+                writeCount.incrementAndGet();
+                cache.put(patient.getId(), patient);
+            }
+
+            @Override
+            public void patientDeleted(int patientId) {
+                writeCount.incrementAndGet();
+                cache.invalidate(patientId);
+            }
+        });
+    }
+
+    @Override
+    public Patient getPatientById(int id) throws SQLException {
+        Patient cached = cache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long writesBefore = writeCount.get();
+        Patient patient = super.getPatientById(id);
+        if (patient != null && writeCount.get() == writesBefore) {
+            cache.put(id, patient);
+        }
+        return patient;
+    }
+
+    // For writes that reached the table without going through this DAO
+    public void invalidate(int id) {
+        writeCount.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        writeCount.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public BoundedCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    // Publishes the cache counters as the Metrics gauges "<prefix>.size", ".hits", ".misses",
+    // ".evictions" and ".expirations"
+    public void publishStats(String prefix) {
+        Metrics.gauge(prefix + ".size", () -> getCacheStats().size);
+        Metrics.gauge(prefix + ".hits", () -> getCacheStats().hits);
+        Metrics.gauge(prefix + ".misses", () -> getCacheStats().misses);
+        Metrics.gauge(prefix + ".evictions", () -> getCacheStats().evictions);
+        Metrics.gauge(prefix + ".expirations", () -> getCacheStats().expirations);
+    }
+}
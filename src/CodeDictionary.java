@@ -0,0 +1,45 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Interns a small set of repeated strings (gender, blood group, ...) as byte codes.
+// Code -1 stands for null. Values not seen at construction are added on first use.
+class CodeDictionary {
+
+    private final Map<String, Byte> codes = new HashMap<>();
+    // Copied on write and published whole, so decode() and size() need no lock
+    private volatile String[] values = new String[0];
+
+    public CodeDictionary(String... initialValues) {
+        for (String value : initialValues) {
+            encode(value);
+        }
+    }
+
+    public synchronized byte encode(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Byte code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (values.length == Byte.MAX_VALUE) {
+            throw new IllegalStateException("Too many distinct values: " + value);
+        }
+        byte newCode = (byte) values.length;
+        String[] grown = Arrays.copyOf(values, values.length + 1);
+        grown[newCode] = value;
+        values = grown;
+        codes.put(value, newCode);
+        return newCode;
+    }
+
+    public String decode(byte code) {
+        return code < 0 ? null : values[code];
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,518 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fixed-credential JDBC connection pool shared by all DAOs through DatabaseConfig.
+// Connections handed out are proxies: close() returns the physical connection to the pool.
+// Each physical connection also keeps an LRU cache of prepared statements, so DAOs that
+// prepare the same SQL on every call only parse it once per connection.
+class ConnectionPool {
+
+    // Connections returned to the pool more recently than this are handed out without a ping
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 5000;
+    // Records where each connection was borrowed, for leak reports; a stack capture per borrow, so off
+    // by default. Without it a leak report shows where the borrowing thread is now.
+    private static final boolean TRACE_BORROWS = Boolean.getBoolean("hms.pool.traceBorrows");
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> active = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    // Metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long leakThresholdMillis, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                HOUSEKEEPING_INTERVAL_MILLIS, HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection ("
+                        + active.size() + " of " + maxSize + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (isUsable(pc)) {
+                    break;
+                }
+                validationFailureCount.incrementAndGet();
+                pc.closePhysical();
+            }
+            if (pc == null) {
+                pc = createConnection();
+            }
+            Connection leased = pc.lease(leakThresholdMillis > 0 && TRACE_BORROWS);
+            active.add(pc);
+            recordWait(System.nanoTime() - start);
+            return leased;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.lastReturnedAt < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void recordWait(long nanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private void release(PooledConnection pc) {
+        if (!active.remove(pc)) {
+            return;
+        }
+        boolean reusable = !closed;
+        try {
+            if (pc.physical.isClosed()) {
+                reusable = false;
+            } else if (!pc.physical.getAutoCommit()) {
+                // Never hand out a connection with someone else's open transaction
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        if (reusable) {
+            pc.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(pc);
+        } else {
+            pc.closePhysical();
+        }
+        permits.release();
+    }
+
+    // Runs every HOUSEKEEPING_INTERVAL_MILLIS; package-private so tests need not wait for it
+    void housekeep() {
+        if (closed) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+
+        // Leak detection: report connections held longer than the threshold, once each
+        if (leakThresholdMillis > 0) {
+            for (PooledConnection pc : active) {
+                if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMillis) {
+                    pc.leakReported = true;
+                    leakCount.incrementAndGet();
+                    Thread borrower = pc.borrower;
+                    System.err.println("Possible connection leak: connection held for " + (now - pc.borrowedAt)
+                            + " ms by thread " + borrower.getName());
+                    if (pc.borrowSite != null) {
+                        pc.borrowSite.printStackTrace();
+                    } else if (borrower.isAlive()) {
+                        Throwable current = new Throwable("Borrowing thread is now here");
+                        current.setStackTrace(borrower.getStackTrace());
+                        current.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        // Retire connections idle for too long while keeping the minimum warm
+        int total = idle.size() + active.size();
+        for (PooledConnection pc : idle) {
+            if (total <= minSize) {
+                break;
+            }
+            if (now - pc.lastReturnedAt > IDLE_TIMEOUT_MILLIS && idle.remove(pc)) {
+                pc.closePhysical();
+                total--;
+            }
+        }
+        while (idle.size() + active.size() < minSize && permits.tryAcquire()) {
+            try {
+                PooledConnection pc = createConnection();
+                pc.lastReturnedAt = now;
+                idle.offerLast(pc);
+            } catch (SQLException e) {
+                System.err.println("Could not pre-open pooled connection: " + e.getMessage());
+                break;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            pc.closePhysical();
+        }
+        // Active connections are closed as their borrowers return them
+    }
+
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public Stats getStats() {
+        long borrows = borrowCount.get();
+        return new Stats(active.size(), idle.size(), maxSize, borrows,
+                borrows == 0 ? 0 : totalWaitNanos.get() / borrows / 1000,
+                maxWaitNanos.get() / 1000, timeoutCount.get(), createdCount.get(),
+                validationFailureCount.get(), leakCount.get(), statementHits.get(), statementMisses.get());
+    }
+
+    static class Stats {
+        final int active;
+        final int idle;
+        final int maxSize;
+        final long borrows;
+        final long averageWaitMicros;
+        final long maxWaitMicros;
+        final long timeouts;
+        final long created;
+        final long validationFailures;
+        final long leaks;
+        final long statementHits;
+        final long statementMisses;
+
+        Stats(int active, int idle, int maxSize, long borrows, long averageWaitMicros, long maxWaitMicros,
+              long timeouts, long created, long validationFailures, long leaks, long statementHits,
+              long statementMisses) {
+            this.active = active;
+            this.idle = idle;
+            this.maxSize = maxSize;
+            this.borrows = borrows;
+            this.averageWaitMicros = averageWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.timeouts = timeouts;
+            this.created = created;
+            this.validationFailures = validationFailures;
+            this.leaks = leaks;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        @Override
+        public String toString() {
+            return "active=" + active + ", idle=" + idle + ", max=" + maxSize + ", borrows=" + borrows
+                    + ", avgWait=" + averageWaitMicros + "us, maxWait=" + maxWaitMicros + "us, timeouts=" + timeouts
+                    + ", created=" + created + ", validationFailures=" + validationFailures + ", leaks=" + leaks
+                    + ", statementHits=" + statementHits + ", statementMisses=" + statementMisses;
+        }
+    }
+
+    private class PooledConnection {
+        final Connection physical;
+        final StatementCache statements;
+        volatile long borrowedAt;
+        volatile long lastReturnedAt;
+        volatile Thread borrower;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical);
+        }
+
+        // Each borrow gets its own proxy so a stale handle cannot touch the next borrower's session
+        Connection lease(boolean captureSite) {
+            borrowedAt = System.currentTimeMillis();
+            borrower = Thread.currentThread();
+            borrowSite = captureSite ? new Throwable("Connection borrowed here") : null;
+            leakReported = false;
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new Lease(this));
+        }
+
+        void closePhysical() {
+            statements.closeAll();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                // Already broken; nothing else to do
+            }
+        }
+    }
+
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pc;
+        private volatile boolean closed;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.physical + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed");
+            }
+            if (method.getName().equals("prepareStatement") && statementCacheSize > 0) {
+                // prepareStatement(sql) and prepareStatement(sql, columnNames) are the forms the DAOs use
+                if (args.length == 1) {
+                    return pc.statements.prepare((Connection) proxy, (String) args[0], null);
+                }
+                if (args.length == 2 && args[1] instanceof String[]) {
+                    return pc.statements.prepare((Connection) proxy, (String) args[0], (String[]) args[1]);
+                }
+            }
+            try {
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // LRU of open statements on one physical connection. A statement is handed out to one caller at a
+    // time; closing the handle resets it and puts it back. Statements evicted while in use are closed
+    // when their handle is.
+    private class StatementCache {
+        private final Connection physical;
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        StatementCache(Connection physical) {
+            this.physical = physical;
+        }
+
+        synchronized PreparedStatement prepare(Connection owner, String sql, String[] keyColumns) throws SQLException {
+            String key = keyColumns == null ? sql : sql + "\u0000" + Arrays.toString(keyColumns);
+            CachedStatement cached = statements.get(key);
+            if (cached != null && !cached.inUse) {
+                statementHits.incrementAndGet();
+            } else {
+                statementMisses.incrementAndGet();
+                PreparedStatement ps = keyColumns == null
+                        ? physical.prepareStatement(sql)
+                        : physical.prepareStatement(sql, keyColumns);
+                if (cached != null) {
+                    // Same SQL already open by this borrower (nested use); don't cache the second one
+                    return handle(owner, new CachedStatement(ps, false));
+                }
+                cached = new CachedStatement(ps, true);
+                statements.put(key, cached);
+                evictOverflow();
+            }
+            cached.inUse = true;
+            return handle(owner, cached);
+        }
+
+        private void evictOverflow() {
+            Iterator<CachedStatement> it = statements.values().iterator();
+            while (statements.size() > statementCacheSize && it.hasNext()) {
+                CachedStatement eldest = it.next();
+                it.remove();
+                eldest.cached = false;
+                if (!eldest.inUse) {
+                    eldest.closeQuietly();
+                }
+            }
+        }
+
+        private PreparedStatement handle(Connection owner, CachedStatement cached) {
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, new StatementHandle(owner, cached));
+        }
+
+        synchronized void giveBack(CachedStatement cached) {
+            if (cached.cached) {
+                try {
+                    cached.reset();
+                    cached.inUse = false;
+                    return;
+                } catch (SQLException e) {
+                    statements.values().remove(cached);
+                }
+            }
+            cached.inUse = false;
+            cached.closeQuietly();
+        }
+
+        synchronized void closeAll() {
+            for (CachedStatement cached : statements.values()) {
+                cached.closeQuietly();
+            }
+            statements.clear();
+        }
+
+        private class StatementHandle implements InvocationHandler {
+            private final Connection owner;
+            private final CachedStatement cached;
+            private boolean closed;
+
+            StatementHandle(Connection owner, CachedStatement cached) {
+                this.owner = owner;
+                this.cached = cached;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            giveBack(cached);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed;
+                    case "getConnection":
+                        return owner;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Cached[" + cached.statement + "]";
+                    default:
+                        break;
+                }
+                if (closed) {
+                    throw new SQLException("Statement is closed");
+                }
+                try {
+                    return method.invoke(cached.statement, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+    }
+
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        final int defaultFetchSize;
+        boolean cached;
+        boolean inUse;
+
+        CachedStatement(PreparedStatement statement, boolean cached) throws SQLException {
+            this.statement = statement;
+            this.defaultFetchSize = statement.getFetchSize();
+            this.cached = cached;
+        }
+
+        // Clears what a caller may have left behind so the next one starts clean
+        void reset() throws SQLException {
+            statement.clearParameters();
+            statement.clearBatch();
+            statement.clearWarnings();
+            if (statement.getFetchSize() != defaultFetchSize) {
+                statement.setFetchSize(defaultFetchSize);
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // Connection is going away anyway
+            }
+        }
+    }
+}
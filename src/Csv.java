@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// CSV helpers for the patient export/import format: comma separated, fields quoted when they
+// contain a comma, quote or newline, quotes doubled inside quoted fields.
+class Csv {
+
+    static final String PATIENT_HEADER = "ID,Name,Age,Gender,Phone,Blood Group,Address";
+
+    private Csv() {
+    }
+
+    static String escape(String value) {
+        if (value == null) return "";
+        int special = firstSpecialChar(value);
+        if (special < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 8).append('"');
+        appendQuotedBody(sb, value, special);
+        return sb.append('"').toString();
+    }
+
+    // Index of the first character that forces quoting, or -1
+    private static int firstSpecialChar(String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendQuotedBody(StringBuilder sb, String value, int from) {
+        sb.append(value, 0, from);
+        int start = from;
+        for (int i = from, n = value.length(); i < n; i++) {
+            if (value.charAt(i) == '"') {
+                sb.append(value, start, i + 1).append('"');
+                start = i + 1;
+            }
+        }
+        sb.append(value, start, value.length());
+    }
+
+    // Buffered record writer that encodes fields straight into a char buffer:
+    // no per-row String.format, no intermediate escaped strings, ints written digit by digit.
+    static class RecordWriter implements AutoCloseable {
+        private static final int MIN_BUFFER_SIZE = 16;
+
+        private final java.io.Writer out;
+        private final char[] buffer;
+        private int pos;
+        private boolean firstField = true;
+
+        RecordWriter(java.io.Writer out, int bufferSize) {
+            this.out = out;
+            // Room for any int, which is written into the buffer in one piece
+            this.buffer = new char[Math.max(bufferSize, MIN_BUFFER_SIZE)];
+        }
+
+        RecordWriter writeField(String value) throws IOException {
+            separator();
+            if (value == null) {
+                return this;
+            }
+            int special = firstSpecialChar(value);
+            if (special < 0) {
+                append(value, 0, value.length());
+                return this;
+            }
+            append('"');
+            append(value, 0, special);
+            int start = special;
+            for (int i = special, n = value.length(); i < n; i++) {
+                if (value.charAt(i) == '"') {
+                    append(value, start, i + 1);
+                    append('"');
+                    start = i + 1;
+                }
+            }
+            append(value, start, value.length());
+            append('"');
+            return this;
+        }
+
+        RecordWriter writeField(int value) throws IOException {
+            separator();
+            if (value == Integer.MIN_VALUE) {
+                String s = Integer.toString(value);
+                append(s, 0, s.length());
+                return this;
+            }
+            if (value < 0) {
+                append('-');
+                value = -value;
+            }
+            ensure(10);
+            int digits = 1;
+            for (int v = value; v >= 10; v /= 10) {
+                digits++;
+            }
+            for (int i = pos + digits - 1; i >= pos; i--) {
+                buffer[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            pos += digits;
+            return this;
+        }
+
+        // Writes a pre-formatted line, e.g. the header
+        void writeLine(String line) throws IOException {
+            append(line, 0, line.length());
+            endRecord();
+        }
+
+        void endRecord() throws IOException {
+            append('\n');
+            firstField = true;
+        }
+
+        private void separator() throws IOException {
+            if (!firstField) {
+                append(',');
+            }
+            firstField = false;
+        }
+
+        private void append(char c) throws IOException {
+            ensure(1);
+            buffer[pos++] = c;
+        }
+
+        private void append(String s, int from, int to) throws IOException {
+            while (from < to) {
+                if (pos == buffer.length) {
+                    flushBuffer();
+                }
+                int n = Math.min(to - from, buffer.length - pos);
+                s.getChars(from, from + n, buffer, pos);
+                pos += n;
+                from += n;
+            }
+        }
+
+        private void ensure(int n) throws IOException {
+            if (pos + n > buffer.length) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, pos);
+            pos = 0;
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBuffer();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Streaming record reader; quoted fields may span lines
+    static class RecordReader {
+        private final Reader in;
+        private final StringBuilder field = new StringBuilder();
+        private final StringBuilder raw = new StringBuilder();
+        private int lineNumber = 1;
+        private int recordLine;
+        private int pushedBack = -2;
+
+        RecordReader(Reader in) {
+            this.in = in;
+        }
+
+        // Line on which the record last returned by next() started
+        int getRecordLine() {
+            return recordLine;
+        }
+
+        // The record last returned by next() exactly as it appeared in the file, without the line break
+        String getRawRecord() {
+            return raw.toString();
+        }
+
+        // Returns the next record's fields, or null at end of input
+        List<String> next() throws IOException {
+            raw.setLength(0);
+            field.setLength(0);
+            recordLine = lineNumber;
+            List<String> fields = new ArrayList<>();
+            boolean quoted = false;
+            boolean any = false;
+            int c;
+            while ((c = read()) != -1) {
+                any = true;
+                char ch = (char) c;
+                if (quoted) {
+                    if (ch == '"') {
+                        int next = read();
+                        if (next == '"') {
+                            field.append('"');
+                            raw.append("\"\"");
+                            continue;
+                        }
+                        quoted = false;
+                        raw.append('"');
+                        unread(next);
+                        continue;
+                    }
+                    if (ch == '\n') {
+                        lineNumber++;
+                    }
+                    field.append(ch);
+                    raw.append(ch);
+                    continue;
+                }
+                if (ch == '"' && field.length() == 0) {
+                    quoted = true;
+                    raw.append(ch);
+                } else if (ch == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    raw.append(ch);
+                } else if (ch == '\r') {
+                    // Tolerate CRLF line endings
+                } else if (ch == '\n') {
+                    lineNumber++;
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append(ch);
+                    raw.append(ch);
+                }
+            }
+            if (!any) {
+                return null;
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            return in.read();
+        }
+
+        private void unread(int c) {
+            pushedBack = c;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+
+// Runs blocking JDBC work off the Event Dispatch Thread.
+// Uses virtual threads when the JDK provides them; concurrency is capped either way
+// so the async layer can never ask for more connections than the pool holds.
+class DatabaseExecutor {
+
+    interface SqlTask<T> {
+        T call() throws SQLException;
+    }
+
+    interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    static final int MAX_CONCURRENCY = Integer.getInteger("hms.db.maxConcurrency",
+            Integer.getInteger("hms.pool.maxSize", 10));
+
+    // Completion stages chained with this executor run on the EDT, in the trace of the work they follow
+    static final Executor EDT = command -> {
+        if (SwingUtilities.isEventDispatchThread()) {
+            command.run();
+        } else {
+            SwingUtilities.invokeLater(Tracing.handOff(command));
+        }
+    };
+
+    private static final Semaphore PERMITS = new Semaphore(MAX_CONCURRENCY);
+    private static final ExecutorService EXECUTOR = createExecutor();
+    // Set on a worker thread while it runs a supplyCancellable() task
+    private static final ThreadLocal<RunningStatement> RUNNING = new ThreadLocal<>();
+
+    private DatabaseExecutor() {
+    }
+
+    // The task runs in the trace of the caller, so its queries show up under the click that asked for them
+    static <T> CompletableFuture<T> supply(SqlTask<T> task) {
+        return supply(task, null);
+    }
+
+    // For reads a newer request may replace: cancelling the returned future also cancels the query
+    // the task is running, so a superseded search stops holding its connection and the database
+    static <T> CompletableFuture<T> supplyCancellable(SqlTask<T> task) {
+        return supply(task, new RunningStatement());
+    }
+
+    private static <T> CompletableFuture<T> supply(SqlTask<T> task, RunningStatement running) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (running != null) {
+            future.whenComplete((result, error) -> {
+                if (future.isCancelled()) {
+                    // Statement.cancel() is a round trip; keep it off the cancelling thread, usually the EDT
+                    EXECUTOR.execute(running::cancel);
+                }
+            });
+        }
+        EXECUTOR.execute(Tracing.handOff(() -> {
+            // A request superseded while still queued never touches the database
+            if (future.isDone()) {
+                return;
+            }
+            PERMITS.acquireUninterruptibly();
+            RUNNING.set(running);
+            try {
+                if (!future.isDone()) {
+                    future.complete(task.call());
+                }
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                RUNNING.remove();
+                PERMITS.release();
+            }
+        }));
+        return future;
+    }
+
+    static CompletableFuture<Void> run(SqlAction action) {
+        return supply(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // QueryTemplate brackets each query with these two calls, so that supplyCancellable() can cancel it
+    static void statementStarted(Statement statement) throws SQLException {
+        RunningStatement running = RUNNING.get();
+        if (running != null) {
+            running.start(statement);
+        }
+    }
+
+    static void statementFinished() {
+        RunningStatement running = RUNNING.get();
+        if (running != null) {
+            running.finish();
+        }
+    }
+
+    private static class RunningStatement {
+        private Statement statement;
+        private boolean cancelled;
+
+        synchronized void start(Statement statement) throws SQLException {
+            if (cancelled) {
+                throw new SQLException("Cancelled");
+            }
+            this.statement = statement;
+        }
+
+        synchronized void finish() {
+            statement = null;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (statement != null) {
+                try {
+                    statement.cancel();
+                } catch (SQLException e) {
+                    // The query ends on its own; nobody waits for its result
+                }
+            }
+        }
+    }
+
+    // Unwraps CompletionException so UI code can report the underlying SQL error
+    static Throwable unwrap(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    static boolean isCancellation(Throwable t) {
+        return unwrap(t) instanceof CancellationException;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // Pre-Loom JDK: a fixed pool of daemon platform threads
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_CONCURRENCY, MAX_CONCURRENCY,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "db-worker-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,99 @@
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// One doctor's booked time on one day as a bitmap: bit u is set when the GRAIN_MINUTES unit
+// starting u units after midnight is taken. Checking or marking a range is a mask test per
+// 64 units, so a conflict check costs the same however many appointments the day holds.
+// Immutable; version is the doctor_days version the bitmap was read at or written with.
+class DaySchedule {
+
+    static final int GRAIN_MINUTES = 5;
+    static final int UNITS = 24 * 60 / GRAIN_MINUTES;
+
+    private final long[] busy;
+    private final long version;
+
+    private DaySchedule(long[] busy, long version) {
+        this.busy = busy;
+        this.version = version;
+    }
+
+    // Cancelled appointments are skipped
+    static DaySchedule of(List<Appointment> appointments, long version) {
+        long[] busy = new long[(UNITS + 63) / 64];
+        for (Appointment a : appointments) {
+            if (!a.isCancelled()) {
+                int from = unitOf(a.getStart().toLocalTime());
+                set(busy, from, from + a.getMinutes() / GRAIN_MINUTES, true);
+            }
+        }
+        return new DaySchedule(busy, version);
+    }
+
+    // Cache key of a doctor's day
+    static long key(int doctorId, LocalDate day) {
+        return ((long) doctorId << 32) | (day.toEpochDay() & 0xFFFFFFFFL);
+    }
+
+    static int unitOf(LocalTime time) {
+        return (time.getHour() * 60 + time.getMinute()) / GRAIN_MINUTES;
+    }
+
+    static LocalTime timeOf(int unit) {
+        return LocalTime.MIDNIGHT.plusMinutes((long) unit * GRAIN_MINUTES);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Whether units [from, to) are all free
+    public boolean isFree(int from, int to) {
+        for (int word = from >>> 6; word <= (to - 1) >>> 6; word++) {
+            if ((busy[word] & mask(word, from, to)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public DaySchedule withBooked(int from, int to, long newVersion) {
+        long[] next = busy.clone();
+        set(next, from, to, true);
+        return new DaySchedule(next, newVersion);
+    }
+
+    public DaySchedule withReleased(int from, int to, long newVersion) {
+        long[] next = busy.clone();
+        set(next, from, to, false);
+        return new DaySchedule(next, newVersion);
+    }
+
+    // Start times between opens and closes, a slot length apart, at which a slot of that many units is free
+    public List<LocalTime> freeSlots(int units, int opens, int closes) {
+        List<LocalTime> slots = new ArrayList<>();
+        for (int from = opens; from + units <= closes; from += units) {
+            if (isFree(from, from + units)) {
+                slots.add(timeOf(from));
+            }
+        }
+        return slots;
+    }
+
+    private static void set(long[] bits, int from, int to, boolean taken) {
+        for (int word = from >>> 6; word <= (to - 1) >>> 6; word++) {
+            long mask = mask(word, from, to);
+            bits[word] = taken ? bits[word] | mask : bits[word] & ~mask;
+        }
+    }
+
+    // Bits of the given word that fall within [from, to)
+    private static long mask(int word, int from, int to) {
+        int first = Math.max(from - (word << 6), 0);
+        int last = Math.min(to - (word << 6), 64);
+        long upTo = last == 64 ? -1L : (1L << last) - 1;
+        return upTo & (-1L << first);
+    }
+}
@@ -0,0 +1,123 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+// Live view of the Metrics timers, with the gauges on a line below, shown above the status bar from
+// Help > Diagnostics. Refreshes once a second while visible; latencies in milliseconds.
+class DiagnosticsPanel extends JPanel {
+
+    private static final String[] COLUMN_NAMES = {"Operation", "Count", "Errors", "Rows", "p50", "p90", "p99", "Max"};
+
+    private final TimerTableModel model = new TimerTableModel();
+    private final JLabel gauges = new JLabel(" ");
+    private final Timer refresher = new Timer(1000, e -> refresh());
+
+    public DiagnosticsPanel() {
+        setLayout(new BorderLayout());
+        setBorder(BorderFactory.createTitledBorder("Diagnostics"));
+        setPreferredSize(new Dimension(getWidth(), 200));
+
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        table.getColumnModel().getColumn(0).setPreferredWidth(220);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel footer = new JPanel(new BorderLayout());
+        footer.add(gauges, BorderLayout.CENTER);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        if (!Metrics.ENABLED) {
+            buttons.add(new JLabel("Metrics are off (-Dhms.metrics=false)"));
+        }
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            Metrics.resetAll();
+            refresh();
+        });
+        buttons.add(resetButton);
+        footer.add(buttons, BorderLayout.EAST);
+        add(footer, BorderLayout.SOUTH);
+        setVisible(false);
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        super.setVisible(visible);
+        if (visible) {
+            refresh();
+            refresher.start();
+        } else {
+            refresher.stop();
+        }
+    }
+
+    private void refresh() {
+        model.refresh();
+        StringBuilder text = new StringBuilder(" ");
+        for (Map.Entry<String, Long> gauge : Metrics.gauges().entrySet()) {
+            text.append(gauge.getKey()).append(' ').append(gauge.getValue()).append("   ");
+        }
+        gauges.setText(text.toString());
+    }
+
+    private static class TimerTableModel extends AbstractTableModel {
+
+        private List<Object[]> rows = new ArrayList<>();
+
+        void refresh() {
+            List<Object[]> fresh = new ArrayList<>();
+            for (Metrics.Timer timer : Metrics.timers()) {
+                LatencyHistogram.Snapshot latency = timer.getLatency();
+                if (latency.getCount() == 0) {
+                    continue;
+                }
+                fresh.add(new Object[] {timer.getName(), latency.getCount(), timer.getErrors(), timer.getRows(),
+                        Metrics.millis(latency.getValueAtPercentile(50)), Metrics.millis(latency.getValueAtPercentile(90)),
+                        Metrics.millis(latency.getValueAtPercentile(99)), Metrics.millis(latency.getMax())});
+            }
+            // Same timers in the same order as last time: update in place so the selection and sort survive
+            if (fresh.size() == rows.size()) {
+                rows = fresh;
+                fireTableRowsUpdated(0, rows.size() - 1);
+            } else {
+                rows = fresh;
+                fireTableDataChanged();
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMN_NAMES.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMN_NAMES[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : column <= 3 ? Long.class : Double.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row)[column];
+        }
+    }
+}
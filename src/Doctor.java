@@ -0,0 +1,31 @@
+// A doctor patients visit and can be booked with; see DoctorDirectory and AppointmentScheduler
+class Doctor {
+
+    private final int id;
+    private final String name;
+    private final String specialty;
+
+    public Doctor(int id, String name, String specialty) {
+        this.id = id;
+        this.name = name;
+        this.specialty = specialty;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSpecialty() {
+        return specialty;
+    }
+
+    // Shown as is in combo boxes
+    @Override
+    public String toString() {
+        return specialty == null || specialty.isEmpty() ? name : name + " (" + specialty + ")";
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.List;
+import java.util.Locale;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+// Inline autocomplete for a doctor name field: typing the start of a known doctor's name fills in
+// the rest, selected, so typing on replaces it and Tab keeps it. Completes from the DoctorDirectory
+// cache only, never the database. Deleting does not complete again, or backspace could not undo it.
+class DoctorCompletion implements DocumentListener {
+
+    private final JTextField field;
+    private final DoctorDirectory doctors;
+    // Set while the field is being filled in here, so that does not complete again
+    private boolean completing;
+
+    private DoctorCompletion(JTextField field, DoctorDirectory doctors) {
+        this.field = field;
+        this.doctors = doctors;
+    }
+
+    static void install(JTextField field, DoctorDirectory doctors) {
+        field.getDocument().addDocumentListener(new DoctorCompletion(field, doctors));
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        if (!completing) {
+            // A document can't be changed from its own listener
+            SwingUtilities.invokeLater(this::complete);
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+
+    private void complete() {
+        String typed = field.getText();
+        if (field.getCaretPosition() != typed.length() || field.getSelectionStart() != field.getSelectionEnd()) {
+            return;
+        }
+        List<String> names = doctors.complete(typed, 1);
+        String prefix = DoctorDirectory.normalize(typed);
+        // Only names that extend the text as typed: not after a trailing space, a doubled one, ...
+        if (names.isEmpty() || names.get(0).length() == prefix.length()
+                || !typed.toLowerCase(Locale.ROOT).endsWith(prefix.toLowerCase(Locale.ROOT))) {
+            return;
+        }
+        completing = true;
+        try {
+            field.setText(typed + names.get(0).substring(prefix.length()));
+        } finally {
+            completing = false;
+        }
+        field.select(typed.length(), field.getText().length());
+    }
+}
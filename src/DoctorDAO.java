@@ -0,0 +1,156 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Oracle access for DoctorDirectory: the doctors table, unique on name_key (the lower-cased
+// normalized name), and the migration of visits that still carry the doctor as typed text.
+class DoctorDAO {
+
+    static final QueryTemplate.MapperFactory<Doctor> DOCTOR_MAPPER = rs -> r -> new Doctor(
+            r.getInt(1), r.getString(2), r.getString(3));
+
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+
+    public List<Doctor> getDoctors() throws SQLException {
+        return template.query("SELECT id, name, specialty FROM doctors ORDER BY name_key",
+                QueryTemplate.NO_PARAMS, DOCTOR_MAPPER);
+    }
+
+    public Doctor findByKey(String nameKey) throws SQLException {
+        return template.queryOne("SELECT id, name, specialty FROM doctors WHERE name_key = ?",
+                ps -> ps.setString(1, nameKey), DOCTOR_MAPPER);
+    }
+
+    // Returns the id generated for the new doctor. Throws SQLIntegrityConstraintViolationException
+    // if another workstation added the same name first.
+    public int addDoctor(String name, String nameKey, String specialty) throws SQLException {
+        return template.insert("INSERT INTO doctors (name, name_key, specialty) VALUES (?, ?, ?)", "id", ps -> {
+            ps.setString(1, name);
+            ps.setString(2, nameKey);
+            ps.setString(3, specialty);
+        });
+    }
+
+    // Gives doctors added before name_key existed their normalized name and key; run before
+    // DoctorDirectory.load(). Doctors whose names only differ in spelling, or that match a doctor
+    // keyed since, are merged into one, a transaction per name (see mergeDoctors()). Returns how many
+    // unkeyed doctors were keyed or merged.
+    public int keyDoctorNames(int batchSize) throws SQLException {
+        List<Doctor> unkeyed = template.query("SELECT id, name, specialty FROM doctors WHERE name_key IS NULL ORDER BY id",
+                QueryTemplate.NO_PARAMS, DOCTOR_MAPPER);
+        if (unkeyed.isEmpty()) {
+            return 0;
+        }
+        Set<String> keyed = new HashSet<>(template.query("SELECT name_key FROM doctors WHERE name_key IS NOT NULL",
+                QueryTemplate.NO_PARAMS, rs -> r -> r.getString(1)));
+        Map<String, List<Doctor>> byKey = new LinkedHashMap<>();
+        for (Doctor d : unkeyed) {
+            byKey.computeIfAbsent(DoctorDirectory.keyOf(keyedName(d)), k -> new ArrayList<>()).add(d);
+        }
+        List<Doctor> unique = new ArrayList<>();
+        int count = 0;
+        for (Map.Entry<String, List<Doctor>> e : byKey.entrySet()) {
+            if (e.getValue().size() == 1 && !keyed.contains(e.getKey())) {
+                unique.add(e.getValue().get(0));
+            } else {
+                mergeDoctors(e.getKey(), e.getValue());
+                count += e.getValue().size();
+            }
+        }
+        if (!unique.isEmpty()) {
+            count += template.batch("UPDATE doctors SET name = ?, name_key = ? WHERE id = ? AND name_key IS NULL",
+                    unique, batchSize, batchSize, (ps, d) -> {
+                        String name = keyedName(d);
+                        ps.setString(1, name);
+                        ps.setString(2, DoctorDirectory.keyOf(name));
+                        ps.setInt(3, d.getId());
+                    });
+        }
+        return count;
+    }
+
+    private static String keyedName(Doctor d) {
+        String name = DoctorDirectory.normalize(d.getName());
+        return name == null ? DoctorDirectory.UNKNOWN : name;
+    }
+
+    // Keeps the doctor that already holds the key, or else the oldest duplicate, which is keyed here.
+    // The others' days, appointments and visits move to it before they are deleted, as deleting
+    // first would cascade to their appointments.
+    private void mergeDoctors(String nameKey, List<Doctor> duplicates) throws SQLException {
+        DatabaseConfig.inTransaction(() -> {
+            Doctor existing = findByKey(nameKey);
+            int keep;
+            if (existing != null) {
+                keep = existing.getId();
+            } else {
+                Doctor oldest = duplicates.get(0);
+                keep = oldest.getId();
+                template.update("UPDATE doctors SET name = ?, name_key = ? WHERE id = ? AND name_key IS NULL", ps -> {
+                    ps.setString(1, keyedName(oldest));
+                    ps.setString(2, nameKey);
+                    ps.setInt(3, keep);
+                });
+            }
+            for (Doctor d : duplicates) {
+                if (d.getId() != keep) {
+                    moveDoctor(d.getId(), keep);
+                }
+            }
+            return null;
+        });
+    }
+
+    // A day both doctors have a doctor_days row for keeps the kept doctor's row, at a new version so
+    // that a booking made against either old version has to read the merged day again
+    private void moveDoctor(int from, int to) throws SQLException {
+        QueryTemplate.Binder toFrom = ps -> {
+            ps.setInt(1, to);
+            ps.setInt(2, from);
+        };
+        template.update("UPDATE doctor_days SET version = version + 1 WHERE doctor_id = ? "
+                + "AND schedule_day IN (SELECT schedule_day FROM doctor_days WHERE doctor_id = ?)", toFrom);
+        template.update("DELETE FROM doctor_days WHERE doctor_id = ? "
+                + "AND schedule_day IN (SELECT schedule_day FROM doctor_days WHERE doctor_id = ?)", ps -> {
+                    ps.setInt(1, from);
+                    ps.setInt(2, to);
+                });
+        for (String table : new String[] {"doctor_days", "appointments", "visits"}) {
+            template.update("UPDATE " + table + " SET doctor_id = ? WHERE doctor_id = ?", toFrom);
+        }
+        template.update("DELETE FROM doctors WHERE id = ?", ps -> ps.setInt(1, from));
+    }
+
+    // Moves visits from the typed doctor column to doctor_id, batchSize rows per transaction, and
+    // returns how many were moved. Each batch is read, resolved and written on its own, so an
+    // interrupted migration picks up where it stopped, and workstations running it at once only
+    // repeat each other's updates.
+    public int migrateVisitDoctors(DoctorDirectory doctors, int batchSize) throws SQLException {
+        int migrated = 0;
+        while (true) {
+            List<Object[]> rows = new ArrayList<>(batchSize);
+            template.forEach("SELECT id, doctor FROM visits WHERE doctor_id IS NULL AND doctor IS NOT NULL "
+                    + "FETCH FIRST ? ROWS ONLY", ps -> ps.setInt(1, batchSize), batchSize,
+                    rs -> r -> new Object[] {r.getInt(1), r.getString(2)}, rows::add);
+            if (rows.isEmpty()) {
+                return migrated;
+            }
+            // Resolved before the update so that new doctors are committed, and cached, on their own
+            Set<String> names = new LinkedHashSet<>();
+            for (Object[] row : rows) {
+                names.add((String) row[1]);
+            }
+            Map<String, Doctor> resolved = doctors.resolveAll(names);
+            migrated += template.batch("UPDATE visits SET doctor_id = ?, doctor = NULL WHERE id = ? AND doctor_id IS NULL",
+                    rows, batchSize, batchSize, (ps, row) -> {
+                        ps.setInt(1, resolved.get((String) row[1]).getId());
+                        ps.setInt(2, (Integer) row[0]);
+                    });
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Client-side dictionary of doctors. Every spelling typed for a doctor ("dr.  a mehta", "A Mehta")
+// normalizes to one canonical name, interned so that all visits of the doctor share one String,
+// and on the oracle backend to the doctors.id visits store instead of the text (see VisitDAO).
+// An id is looked up or inserted once per name and then answered from memory. Also backs the
+// doctor autocomplete. Without a DoctorDAO (the embedded backend) names are only normalized and
+// interned, and every Doctor has id 0.
+class DoctorDirectory {
+
+    // What a visit with a blank doctor is filed under by the migration
+    static final String UNKNOWN = "Unknown";
+
+    private static final Pattern TITLE = Pattern.compile("^(dr\\.\\s*|dr\\s+|doctor\\s+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Comparator<Doctor> BY_KEY = Comparator.comparing(d -> keyOf(d.getName()));
+
+    private final DoctorDAO dao;
+    private final Map<String, Doctor> byKey = new ConcurrentHashMap<>();
+    private final Map<Integer, Doctor> byId = new ConcurrentHashMap<>();
+    // byKey's doctors in key order for complete(); dropped whenever a doctor is added
+    private Doctor[] sorted;
+
+    public DoctorDirectory(DoctorDAO dao) {
+        this.dao = dao;
+    }
+
+    // Trims, collapses runs of whitespace, drops a leading "Dr." or "Doctor", and capitalizes names
+    // typed all in one case. Null for a blank name.
+    static String normalize(String typed) {
+        if (typed == null) {
+            return null;
+        }
+        String name = TITLE.matcher(SPACES.matcher(typed.trim()).replaceAll(" ")).replaceFirst("");
+        if (name.isEmpty()) {
+            return null;
+        }
+        if (name.equals(name.toLowerCase(Locale.ROOT)) || name.equals(name.toUpperCase(Locale.ROOT))) {
+            StringBuilder capitalized = new StringBuilder(name.length());
+            boolean wordStart = true;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                capitalized.append(wordStart ? Character.toUpperCase(c) : Character.toLowerCase(c));
+                wordStart = c == ' ' || c == '-' || c == '.' || c == '\'';
+            }
+            name = capitalized.toString();
+        }
+        return name;
+    }
+
+    // doctors.name_key of a normalized name
+    static String keyOf(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Fills the cache with every doctor, or on the embedded backend with the doctors of every visit
+    public void load(VisitRepository visits) throws SQLException {
+        if (dao != null) {
+            for (Doctor d : dao.getDoctors()) {
+                remember(d);
+            }
+        } else {
+            visits.forEachVisit(1000, v -> {
+                canonical(v.getDoctor());
+                return true;
+            });
+        }
+    }
+
+    // Refetched from the database, so doctors other workstations added are included
+    public List<Doctor> getDoctors() throws SQLException {
+        if (dao == null) {
+            return Arrays.asList(sorted());
+        }
+        List<Doctor> doctors = new ArrayList<>();
+        for (Doctor d : dao.getDoctors()) {
+            doctors.add(new Doctor(d.getId(), remember(d).getName(), d.getSpecialty()));
+        }
+        return doctors;
+    }
+
+    // The canonical spelling of a typed name, without going to the database; null for a blank name.
+    // A name not seen before is returned normalized.
+    public String canonical(String typed) {
+        String name = normalize(typed);
+        if (name == null) {
+            return null;
+        }
+        Doctor known = byKey.get(keyOf(name));
+        if (known != null) {
+            return known.getName();
+        }
+        // With a database, only ids read from it may be cached
+        return dao == null ? remember(new Doctor(0, name, null)).getName() : name;
+    }
+
+    // The doctor for a typed name, added to the doctors table if new. Inside
+    // DatabaseConfig.inTransaction() a doctor read or added is not cached, as the caller may roll back.
+    public Doctor resolve(String typed) throws SQLException {
+        return resolve(typed, null);
+    }
+
+    // A name already present keeps its specialty
+    public Doctor addDoctor(String name, String specialty) throws SQLException {
+        return resolve(name, specialty);
+    }
+
+    // Resolves each distinct name once; keyed by the names as given
+    public Map<String, Doctor> resolveAll(Collection<String> typed) throws SQLException {
+        Map<String, Doctor> resolved = new HashMap<>();
+        for (String name : typed) {
+            if (!resolved.containsKey(name)) {
+                resolved.put(name, resolve(name));
+            }
+        }
+        return resolved;
+    }
+
+    // Decodes a visits.doctor_id read together with the doctor's name: while the doctor is cached
+    // the cached name is returned, so all its visits share one String
+    public String intern(int id, String name) {
+        Doctor known = byId.get(id);
+        if (known != null) {
+            return known.getName();
+        }
+        return DatabaseConfig.isInTransaction() ? name : remember(new Doctor(id, name, null)).getName();
+    }
+
+    // Up to limit canonical names starting with what was typed, ignoring case and a title, in order
+    public List<String> complete(String typed, int limit) {
+        String name = normalize(typed);
+        if (name == null) {
+            return Collections.emptyList();
+        }
+        String prefix = keyOf(name);
+        Doctor[] doctors = sorted();
+        int low = 0;
+        int high = doctors.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyOf(doctors[mid].getName()).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (int i = low; i < doctors.length && names.size() < limit; i++) {
+            String candidate = doctors[i].getName();
+            if (!keyOf(candidate).startsWith(prefix)) {
+                break;
+            }
+            names.add(candidate);
+        }
+        return names;
+    }
+
+    public int size() {
+        return byKey.size();
+    }
+
+    private Doctor resolve(String typed, String specialty) throws SQLException {
+        String name = normalize(typed);
+        if (name == null) {
+            name = UNKNOWN;
+        }
+        String key = keyOf(name);
+        Doctor known = byKey.get(key);
+        if (known != null) {
+            return known;
+        }
+        if (dao == null) {
+            return remember(new Doctor(0, name, specialty));
+        }
+        Doctor stored = dao.findByKey(key);
+        if (stored == null) {
+            try {
+                stored = new Doctor(dao.addDoctor(name, key, specialty), name, specialty);
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // Another workstation added the same doctor a moment ago
+                stored = dao.findByKey(key);
+                if (stored == null) {
+                    throw e;
+                }
+            }
+        }
+        return DatabaseConfig.isInTransaction() ? stored : remember(stored);
+    }
+
+    // The doctor cached under the same key, if any, wins, so every caller sees one instance per name
+    private Doctor remember(Doctor doctor) {
+        Doctor existing = byKey.putIfAbsent(keyOf(doctor.getName()), doctor);
+        if (existing != null) {
+            return existing;
+        }
+        if (doctor.getId() > 0) {
+            byId.put(doctor.getId(), doctor);
+        }
+        synchronized (this) {
+            sorted = null;
+        }
+        return doctor;
+    }
+
+    private synchronized Doctor[] sorted() {
+        Doctor[] doctors = sorted;
+        if (doctors == null) {
+            doctors = byKey.values().toArray(new Doctor[0]);
+            Arrays.sort(doctors, BY_KEY);
+            sorted = doctors;
+        }
+        return doctors;
+    }
+}
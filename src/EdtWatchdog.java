@@ -0,0 +1,167 @@
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InvocationEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.time.Instant;
+import java.util.List;
+import javax.swing.AbstractButton;
+
+// Watches the Event Dispatch Thread for stalls. install() pushes an EventQueue that notes when each
+// event's dispatch began; a daemon thread looks every STALL_MILLIS / 4 and, when one event has held
+// the EDT for STALL_MILLIS, writes the EDT stack and the SQL executing at that moment to the trace
+// file (see Tracing), then one more line with the full length once the event is done. Every dispatch
+// is also timed into the edt.dispatch metric, and stalls into edt.stall.
+class EdtWatchdog extends EventQueue {
+
+    // 0 disables the watchdog thread
+    static final long STALL_MILLIS = Long.getLong("hms.edt.stallMillis", 1000);
+
+    private static final Metrics.Timer DISPATCH_TIMER = Metrics.timer("edt.dispatch");
+    private static final Metrics.Timer STALL_TIMER = Metrics.timer("edt.stall");
+
+    // When the EDT last started or resumed work on the event being dispatched; 0 while idle
+    private static volatile long dispatchStartNanos;
+    private static volatile AWTEvent dispatching;
+    private static volatile Thread edt;
+    // dispatchStartNanos of the stall last reported, so each stall is written once
+    private static volatile long reportedStart;
+    // Counts dispatches, so an event can tell whether a modal dialog ran others inside it
+    private static long dispatchCount;
+    private static boolean installed;
+
+    private EdtWatchdog() {
+    }
+
+    static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EdtWatchdog());
+        if (STALL_MILLIS > 0) {
+            Thread watcher = new Thread(EdtWatchdog::watch, "edt-watchdog");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    static long getDispatchStartNanos() {
+        return dispatchStartNanos;
+    }
+
+    static String describeCurrentEvent() {
+        return describe(dispatching);
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long outerStart = dispatchStartNanos;
+        AWTEvent outerEvent = dispatching;
+        Tracing.Dispatch outerSpans = Tracing.beginDispatch();
+        long count = ++dispatchCount;
+        long start = System.nanoTime();
+        edt = Thread.currentThread();
+        dispatching = event;
+        dispatchStartNanos = start;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            Tracing.endDispatch(outerSpans);
+            // An event that ran a modal dialog kept the EDT pumping; its length says nothing about stalls
+            if (count == dispatchCount) {
+                DISPATCH_TIMER.record(start, 0);
+            }
+            long resumed = dispatchStartNanos;
+            long stalledMillis = (System.nanoTime() - resumed) / 1_000_000;
+            if (STALL_MILLIS > 0 && stalledMillis >= STALL_MILLIS) {
+                STALL_TIMER.record(resumed, 0);
+                if (reportedStart == resumed) {
+                    Tracing.write("{\"type\":\"stall-end\",\"time\":" + Tracing.quote(Instant.now().toString())
+                            + ",\"event\":" + Tracing.quote(describe(event)) + ",\"stalledMillis\":" + stalledMillis + "}");
+                }
+            }
+            dispatching = outerEvent;
+            // The outer event resumes now; time spent in the nested events is not its stall
+            dispatchStartNanos = outerStart == 0 ? 0 : System.nanoTime();
+        }
+    }
+
+    private static void watch() {
+        long interval = Math.max(10, STALL_MILLIS / 4);
+        try {
+            while (true) {
+                Thread.sleep(interval);
+                long start = dispatchStartNanos;
+                AWTEvent event = dispatching;
+                if (start != 0 && start != reportedStart && System.nanoTime() - start >= STALL_MILLIS * 1_000_000) {
+                    reportedStart = start;
+                    report(event, start);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Exiting
+        }
+    }
+
+    private static void report(AWTEvent event, long start) {
+        Thread thread = edt;
+        StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"stall\",\"time\":").append(Tracing.quote(Instant.now().toString()))
+                .append(",\"event\":").append(Tracing.quote(describe(event)))
+                .append(",\"stalledMillis\":").append((System.nanoTime() - start) / 1_000_000)
+                .append(",\"edtStack\":[");
+        StackTraceElement[] stack = thread == null ? new StackTraceElement[0] : thread.getStackTrace();
+        for (int i = 0; i < stack.length; i++) {
+            json.append(i == 0 ? "" : ",").append(Tracing.quote(stack[i].toString()));
+        }
+        json.append("],\"sqlInFlight\":[");
+        List<Tracing.Span> sql = Tracing.sqlInFlight();
+        for (int i = 0; i < sql.size(); i++) {
+            Tracing.Span span = sql.get(i);
+            json.append(i == 0 ? "{" : ",{")
+                    .append("\"trace\":").append(span.getTraceId())
+                    .append(",\"name\":").append(Tracing.quote(span.getRootName()))
+                    .append(",\"thread\":").append(Tracing.quote(span.getThread()))
+                    .append(",\"runningMillis\":").append(span.getRunningMillis())
+                    .append(",\"sql\":").append(Tracing.quote(span.getSql()))
+                    .append('}');
+        }
+        json.append("]}");
+        Tracing.write(json.toString());
+        System.err.println("EDT stalled for " + STALL_MILLIS + " ms handling " + describe(event) + "; see " + Tracing.FILE);
+    }
+
+    // A short name for the user action behind an event, e.g. "mouse 'Save Patient'"
+    static String describe(AWTEvent event) {
+        if (event == null) {
+            return "unknown event";
+        }
+        String kind;
+        if (event instanceof ActionEvent) {
+            kind = "action";
+        } else if (event instanceof MouseEvent) {
+            kind = "mouse";
+        } else if (event instanceof KeyEvent) {
+            kind = "key";
+        } else if (event instanceof InvocationEvent) {
+            kind = "invokeLater";
+        } else {
+            kind = event.getClass().getSimpleName();
+        }
+        Object source = event.getSource();
+        if (source instanceof AbstractButton) {
+            String text = ((AbstractButton) source).getText();
+            if (text != null && !text.isEmpty()) {
+                return kind + " '" + text + "'";
+            }
+        }
+        if (source instanceof Component) {
+            return kind + " on " + source.getClass().getName();
+        }
+        return kind;
+    }
+}
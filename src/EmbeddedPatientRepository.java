@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// PatientRepository over the single-file EmbeddedStore, for running without an Oracle server.
+// With EmbeddedStore.PENDING as flags, writes are recorded for OfflineSync to replay to Oracle.
+class EmbeddedPatientRepository implements PatientRepository {
+
+    private final EmbeddedStore store;
+    private final byte flags;
+    // No Oracle Text here; substring search scans memory, which is what TEXT plans would do anyway
+    private final PatientSearchPlanner searchPlanner = new PatientSearchPlanner(false);
+    private final List<PatientChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    // Recent writes for getPatientsChangedSince(). Only this process writes the file, so the log can
+    // live in memory; tokens from before its oldest entry get a reload.
+    private static final int CHANGE_LOG_SIZE = PatientDAO.MAX_CHANGES;
+    private final ArrayDeque<LoggedChange> changeLog = new ArrayDeque<>();
+    private long changeSeq;
+    // Held from a write that adds or removes rows until its change is logged, so that
+    // getChangeTokenAndCount() sees both or neither
+    private final Object countLock = new Object();
+
+    private static final class LoggedChange {
+        final long seq;
+        final int patientId;
+        final String changeType;
+
+        LoggedChange(long seq, int patientId, String changeType) {
+            this.seq = seq;
+            this.patientId = patientId;
+            this.changeType = changeType;
+        }
+    }
+
+    public EmbeddedPatientRepository(EmbeddedStore store) {
+        this(store, (byte) 0);
+    }
+
+    public EmbeddedPatientRepository(EmbeddedStore store, byte flags) {
+        this.store = store;
+        this.flags = flags;
+    }
+
+    @Override
+    public void addChangeListener(PatientChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(PatientChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    @Override
+    public PatientSearchPlanner getSearchPlanner() {
+        return searchPlanner;
+    }
+
+    @Override
+    public int addPatient(Patient p) throws SQLException {
+        Patient added;
+        synchronized (countLock) {
+            try {
+                added = store.insertPatient(p, flags);
+            } catch (IOException e) {
+                throw storageError(e);
+            } catch (IllegalArgumentException e) {
+                // What a column length check reports in Oracle
+                throw new SQLException(e.getMessage(), e);
+            }
+            logChange(added.getId(), PatientChanges.INSERTED);
+        }
+        for (PatientChangeListener listener : changeListeners) {
+            listener.patientAdded(added);
+        }
+        return added.getId();
+    }
+
+    @Override
+    public void updatePatient(Patient p) throws SQLException {
+        List<Patient> updated;
+        try {
+            updated = store.updatePatients(List.of(p), 1, flags);
+        } catch (IOException e) {
+            throw storageError(e);
+        } catch (IllegalArgumentException e) {
+            // What a column length check reports in Oracle
+            throw new SQLException(e.getMessage(), e);
+        }
+        if (updated.isEmpty()) {
+            throw new SQLException("Patient " + p.getId() + " no longer exists");
+        }
+        logChange(p.getId(), PatientChanges.UPDATED);
+        for (PatientChangeListener listener : changeListeners) {
+            listener.patientUpdated(p);
+        }
+    }
+
+    @Override
+    public void deletePatient(int id) throws SQLException {
+        synchronized (countLock) {
+            try {
+                store.deletePatient(id, flags);
+            } catch (IOException e) {
+                throw storageError(e);
+            } catch (IllegalArgumentException e) {
+                // What a column length check reports in Oracle
+                throw new SQLException(e.getMessage(), e);
+            }
+            logChange(id, PatientChanges.DELETED);
+        }
+        for (PatientChangeListener listener : changeListeners) {
+            listener.patientDeleted(id);
+        }
+    }
+
+    // batchSize has no meaning without a server round trip; commitInterval sets the sync points
+    @Override
+    public int addPatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Batch size and commit interval must be positive");
+        }
+        int count;
+        synchronized (countLock) {
+            try {
+                count = store.insertPatients(patients, commitInterval, flags);
+            } catch (IOException e) {
+                throw storageError(e);
+            } catch (IllegalArgumentException e) {
+                // What a column length check reports in Oracle
+                throw new SQLException(e.getMessage(), e);
+            }
+            if (count > 0) {
+                logChange(0, PatientChanges.RELOAD);
+            }
+        }
+        if (count > 0) {
+            for (PatientChangeListener listener : changeListeners) {
+                listener.patientsReloaded();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int updatePatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Batch size and commit interval must be positive");
+        }
+        List<Patient> updated;
+        try {
+            updated = store.updatePatients(patients, commitInterval, flags);
+        } catch (IOException e) {
+            throw storageError(e);
+        } catch (IllegalArgumentException e) {
+            // What a column length check reports in Oracle
+            throw new SQLException(e.getMessage(), e);
+        }
+        // Only the rows that existed, as PatientDAO.updatePatients() does
+        for (Patient p : updated) {
+            logChange(p.getId(), PatientChanges.UPDATED);
+            for (PatientChangeListener listener : changeListeners) {
+                listener.patientUpdated(p);
+            }
+        }
+        return updated.size();
+    }
+
+    @Override
+    public List<Patient> getAllPatients() {
+        return store.getPatientsAfter(0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int forEachPatient(int fetchSize, PatientHandler handler) {
+        int chunkSize = fetchSize > 0 ? fetchSize : 1000;
+        int count = 0;
+        int lastId = 0;
+        List<Patient> chunk;
+        // Chunks are copied out under the store's read lock, so the handler never runs while holding it
+        while (!(chunk = store.getPatientsAfter(lastId, chunkSize)).isEmpty()) {
+            for (Patient p : chunk) {
+                count++;
+                if (!handler.handle(p)) {
+                    return count;
+                }
+            }
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+        return count;
+    }
+
+    @Override
+    public List<Patient> searchPatients(SearchPlan plan) {
+        return store.findPatients(plan);
+    }
+
+    @Override
+    public int countPatients() {
+        return store.countPatients();
+    }
+
+    @Override
+    public PatientPage getPatientsPage(int afterId, int pageSize) {
+        return toPage(store.getPatientsAfter(afterId, pageSize + 1), pageSize);
+    }
+
+    @Override
+    public PatientPage getPatientsPageAt(int offset, int pageSize) {
+        return toPage(store.getPatientsAt(offset, pageSize + 1), pageSize);
+    }
+
+    private static PatientPage toPage(List<Patient> patients, int pageSize) {
+        boolean hasMore = patients.size() > pageSize;
+        return new PatientPage(hasMore ? patients.subList(0, pageSize) : patients, hasMore);
+    }
+
+    @Override
+    public Patient getPatientById(int id) {
+        return store.getPatient(id);
+    }
+
+    private synchronized void logChange(int patientId, String changeType) {
+        if (changeLog.size() == CHANGE_LOG_SIZE) {
+            changeLog.removeFirst();
+        }
+        changeLog.addLast(new LoggedChange(++changeSeq, patientId, changeType));
+    }
+
+    @Override
+    public synchronized long getChangeToken() {
+        return changeSeq;
+    }
+
+    // Updates don't change the count, and one landing in between is only applied twice
+    @Override
+    public long[] getChangeTokenAndCount() {
+        synchronized (countLock) {
+            return new long[] {getChangeToken(), store.countPatients()};
+        }
+    }
+
+    @Override
+    public PatientChanges getPatientsChangedSince(long token) {
+        List<LoggedChange> entries = new ArrayList<>();
+        synchronized (this) {
+            LoggedChange oldest = changeLog.peekFirst();
+            if (token > changeSeq || (oldest != null && oldest.seq > token + 1)) {
+                return PatientChanges.reloadRequired(changeSeq);
+            }
+            for (LoggedChange entry : changeLog) {
+                if (entry.seq > token) {
+                    entries.add(entry);
+                }
+            }
+        }
+        PatientChanges.Builder changes = new PatientChanges.Builder(token);
+        for (LoggedChange entry : entries) {
+            changes.add(entry.seq, entry.patientId, entry.changeType, store.getPatient(entry.patientId));
+        }
+        return changes.build();
+    }
+
+    static SQLException storageError(IOException e) {
+        return new SQLException("Local data file error: " + e.getMessage(), e);
+    }
+}
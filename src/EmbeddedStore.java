@@ -0,0 +1,1208 @@
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Single-file local database for patients and visits, used by the embedded backend and by offline mode.
+//
+// The file is an append-only log of fixed-width binary records, memory-mapped in segments. Only an
+// id -> offset index is kept on the heap; rows are decoded straight from the mapping when read.
+// Every record carries a CRC and the last record of each write is flagged COMMIT, so on open the
+// log is replayed up to the last complete write and anything after it is discarded. Superseded
+// records are dropped by a periodic compaction that rewrites the live rows into a fresh file.
+//
+// Records written in offline mode are flagged PENDING. pendingOperations() returns them in log
+// order so OfflineSync can replay them to Oracle; markSynced() records how far that has got.
+class EmbeddedStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x484D5332; // "HMS2"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    static final int SEGMENT_SIZE = Integer.getInteger("hms.storage.segmentSize", 16 << 20);
+    private static final long COMPACT_INTERVAL_SECONDS = Long.getLong("hms.storage.compactIntervalSeconds", 600);
+    // Compact once superseded records take more space than this and more than the live rows
+    private static final long COMPACT_MIN_DEAD_BYTES = Long.getLong("hms.storage.compactMinDeadBytes", 4 << 20);
+
+    // Ids handed out to rows created offline, far above anything the Oracle identity columns reach
+    static final int LOCAL_ID_BASE = 2_000_000_000;
+
+    // Record types; 0 marks the end of the log
+    private static final byte PATIENT = 1;
+    private static final byte PATIENT_DELETE = 2;
+    private static final byte VISIT = 3;
+    private static final byte VISIT_DELETE = 4;
+    private static final byte SEQUENCE = 5;
+    private static final byte ID_MAP = 6;
+    private static final byte SYNC_MARK = 7;
+    // Rest of the segment is unused; the next record starts at the next segment
+    private static final byte PAD = 0x7F;
+
+    // Record flags
+    private static final byte COMMIT = 1;
+    static final byte PENDING = 2;
+
+    // Common header: type(1) flags(1) unused(2) crc(4) id(4) aux(4)
+    private static final int TYPE = 0;
+    private static final int FLAGS = 1;
+    private static final int CRC = 4;
+    private static final int ID = 8;
+    private static final int AUX = 12;
+
+    // Patient: age, then fixed-width strings (length + UTF-16 chars, length -1 for null)
+    private static final int P_AGE = 16;
+    private static final int P_GENDER = 20;
+    private static final int P_PHONE = P_GENDER + width(1);
+    private static final int P_BLOOD_GROUP = P_PHONE + width(15);
+    private static final int P_NAME = P_BLOOD_GROUP + width(5);
+    private static final int P_ADDRESS = P_NAME + width(100);
+    private static final int PATIENT_SIZE = align(P_ADDRESS + width(200));
+
+    // Visit: aux holds the patient id
+    private static final int V_DATE = 16;
+    private static final int V_DOCTOR = 24;
+    private static final int V_NOTES = V_DOCTOR + width(100);
+    private static final int VISIT_SIZE = align(V_NOTES + width(500));
+
+    private static final int DELETE_SIZE = 16;
+    private static final int ID_MAP_SIZE = 16;       // id = local patient id, aux = Oracle id
+    private static final int SEQUENCE_SIZE = 32;     // last ids: patient, visit, local patient, local visit
+    private static final int SYNC_MARK_SIZE = 24;    // offset up to which pending records are synced
+
+    private static int width(int maxChars) {
+        return 2 + 2 * maxChars;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static int sizeOf(byte type) {
+        switch (type) {
+            case PATIENT: return PATIENT_SIZE;
+            case VISIT: return VISIT_SIZE;
+            case PATIENT_DELETE:
+            case VISIT_DELETE: return DELETE_SIZE;
+            case ID_MAP: return ID_MAP_SIZE;
+            case SEQUENCE: return SEQUENCE_SIZE;
+            case SYNC_MARK: return SYNC_MARK_SIZE;
+            default: return -1;
+        }
+    }
+
+    // A write made offline that still has to reach Oracle, as it was at the time it was made
+    static class PendingOperation {
+        enum Kind { PATIENT_PUT, PATIENT_DELETE, VISIT_PUT }
+
+        final Kind kind;
+        final long end;        // Pass to markSynced() once this and everything before it is replayed
+        final Patient patient; // PATIENT_PUT
+        final Visit visit;     // VISIT_PUT
+        final int id;          // PATIENT_DELETE
+
+        PendingOperation(Kind kind, long end, Patient patient, Visit visit, int id) {
+            this.kind = kind;
+            this.end = end;
+            this.patient = patient;
+            this.visit = visit;
+            this.id = id;
+        }
+    }
+
+    private final Path file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService compactor;
+
+    private FileChannel channel;
+    private String storeId;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long end;
+
+    private final IdIndex patients = new IdIndex();
+    private final IdIndex visits = new IdIndex();
+    private final Map<Integer, VisitRefs> visitsByPatient = new HashMap<>();
+    private final Map<Integer, Integer> patientIdMap = new HashMap<>();
+    private int lastPatientId;
+    private int lastVisitId;
+    private int lastLocalPatientId = LOCAL_ID_BASE;
+    private int lastLocalVisitId = LOCAL_ID_BASE;
+    private long syncedThrough = HEADER_SIZE;
+    // End offsets of pending records after syncedThrough, oldest first
+    private final ArrayDeque<Long> pendingEnds = new ArrayDeque<>();
+    private long deadBytes;
+
+    private final CRC32 crc = new CRC32();
+
+    private EmbeddedStore(Path file, boolean scheduleCompaction) {
+        this.file = file;
+        if (scheduleCompaction && COMPACT_INTERVAL_SECONDS > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "embedded-store-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly, COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS,
+                    TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    public static EmbeddedStore open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        // A compaction that died before its final rename leaves the old file intact
+        Files.deleteIfExists(compactionFile(file));
+        EmbeddedStore store = new EmbeddedStore(file, true);
+        try {
+            store.load();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private static Path compactionFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".compact");
+    }
+
+    // Opening and recovery
+
+    private void load() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Two clients appending to one log would corrupt it; the lock goes with the channel
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            throw new IOException(file + " is already open in another copy of the application");
+        }
+        long size = channel.size();
+        int count = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        for (int i = 0; i < count; i++) {
+            mapSegment(i);
+        }
+        MappedByteBuffer header = segments.get(0);
+        if (size == 0) {
+            header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, SEGMENT_SIZE);
+            header.force();
+        } else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a patient data file");
+        } else if (header.getInt(8) != SEGMENT_SIZE) {
+            throw new IOException(file + " was written with segment size " + header.getInt(8)
+                    + "; start with -Dhms.storage.segmentSize=" + header.getInt(8));
+        }
+        // Names this log in Oracle's sync_log. A compacted file is a new log whose offsets start over,
+        // so it gets a new id; files from before the id existed get one now.
+        if (header.getLong(16) == 0 && header.getLong(24) == 0) {
+            UUID id = UUID.randomUUID();
+            header.putLong(16, id.getMostSignificantBits()).putLong(24, id.getLeastSignificantBits());
+            header.force();
+        }
+        storeId = String.format("%016x%016x", header.getLong(16), header.getLong(24));
+        recover();
+    }
+
+    // Little-endian, the native order on the platforms we run on, so strings are bulk copies
+    private void mapSegment(int index) throws IOException {
+        MappedByteBuffer seg = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * SEGMENT_SIZE, SEGMENT_SIZE);
+        seg.order(ByteOrder.LITTLE_ENDIAN);
+        segments.add(seg);
+    }
+
+    // Replays every committed write; records after the last COMMIT belong to a write that never finished
+    private void recover() throws IOException {
+        long limit = (long) segments.size() * SEGMENT_SIZE;
+        long off = HEADER_SIZE;
+        long committedEnd = HEADER_SIZE;
+        List<Long> uncommitted = new ArrayList<>();
+        while (off < limit) {
+            ByteBuffer seg = segment(off);
+            int pos = position(off);
+            byte type = seg.get(pos + TYPE);
+            if (type == PAD) {
+                off = nextSegment(off);
+                continue;
+            }
+            int size = sizeOf(type);
+            if (size < 0 || pos + size > SEGMENT_SIZE || checksum(seg, pos, size) != seg.getInt(pos + CRC)) {
+                if (type != 0) {
+                    // A torn record; it is no longer than the largest record type
+                    off = Math.min(off + VISIT_SIZE, nextSegment(off));
+                }
+                break;
+            }
+            uncommitted.add(off);
+            off += size;
+            if ((seg.get(pos + FLAGS) & COMMIT) != 0) {
+                for (long record : uncommitted) {
+                    apply(record);
+                }
+                uncommitted.clear();
+                committedEnd = off;
+            }
+        }
+        end = committedEnd;
+        if (off > committedEnd) {
+            System.err.println("Discarding " + (off - committedEnd) + " bytes of an incomplete write at the end of " + file);
+            zero(committedEnd, off);
+            force(committedEnd, off);
+        }
+    }
+
+    // Applies a committed record to the in-memory index
+    private void apply(long off) {
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        byte type = seg.get(pos + TYPE);
+        int id = seg.getInt(pos + ID);
+        if ((seg.get(pos + FLAGS) & PENDING) != 0) {
+            pendingEnds.addLast(off + sizeOf(type));
+        }
+        switch (type) {
+            case PATIENT: {
+                long previous = patients.put(id, off);
+                if (previous != 0) {
+                    deadBytes += PATIENT_SIZE;
+                }
+                if (id > LOCAL_ID_BASE) {
+                    lastLocalPatientId = Math.max(lastLocalPatientId, id);
+                } else {
+                    lastPatientId = Math.max(lastPatientId, id);
+                }
+                break;
+            }
+            case PATIENT_DELETE: {
+                if (patients.remove(id) != 0) {
+                    deadBytes += PATIENT_SIZE;
+                }
+                // Visits go with their patient, as ON DELETE CASCADE does in Oracle
+                VisitRefs refs = visitsByPatient.remove(id);
+                if (refs != null) {
+                    for (int i = 0; i < refs.size; i++) {
+                        visits.remove(refs.ids[i]);
+                        deadBytes += VISIT_SIZE;
+                    }
+                }
+                deadBytes += DELETE_SIZE;
+                break;
+            }
+            case VISIT: {
+                removeVisit(id);
+                visits.put(id, off);
+                visitsByPatient.computeIfAbsent(seg.getInt(pos + AUX), k -> new VisitRefs())
+                        .add(seg.getLong(pos + V_DATE), id);
+                if (id > LOCAL_ID_BASE) {
+                    lastLocalVisitId = Math.max(lastLocalVisitId, id);
+                } else {
+                    lastVisitId = Math.max(lastVisitId, id);
+                }
+                break;
+            }
+            case VISIT_DELETE:
+                removeVisit(id);
+                deadBytes += DELETE_SIZE;
+                break;
+            case SEQUENCE:
+                lastPatientId = Math.max(lastPatientId, seg.getInt(pos + 16));
+                lastVisitId = Math.max(lastVisitId, seg.getInt(pos + 20));
+                lastLocalPatientId = Math.max(lastLocalPatientId, seg.getInt(pos + 24));
+                lastLocalVisitId = Math.max(lastLocalVisitId, seg.getInt(pos + 28));
+                break;
+            case ID_MAP:
+                patientIdMap.put(id, seg.getInt(pos + AUX));
+                break;
+            case SYNC_MARK:
+                syncedThrough = Math.max(syncedThrough, seg.getLong(pos + 16));
+                while (!pendingEnds.isEmpty() && pendingEnds.peekFirst() <= syncedThrough) {
+                    pendingEnds.removeFirst();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void removeVisit(int id) {
+        long previous = visits.remove(id);
+        if (previous != 0) {
+            ByteBuffer seg = segment(previous);
+            int pos = position(previous);
+            VisitRefs refs = visitsByPatient.get(seg.getInt(pos + AUX));
+            if (refs != null) {
+                refs.remove(seg.getLong(pos + V_DATE), id);
+            }
+            deadBytes += VISIT_SIZE;
+        }
+    }
+
+    // Low-level log access
+
+    private ByteBuffer segment(long off) {
+        return segments.get((int) (off / SEGMENT_SIZE));
+    }
+
+    private static int position(long off) {
+        return (int) (off % SEGMENT_SIZE);
+    }
+
+    private static long nextSegment(long off) {
+        return (off / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+    }
+
+    // CRC over the whole record except the CRC field itself
+    private int checksum(ByteBuffer seg, int pos, int size) {
+        crc.reset();
+        ByteBuffer view = seg.duplicate();
+        view.limit(pos + CRC).position(pos);
+        crc.update(view);
+        view.limit(pos + size).position(pos + ID);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    // Reserves space for a record at the end of the log, moving to a new segment if it does not fit
+    private long reserve(int size) throws IOException {
+        if (position(end) + size > SEGMENT_SIZE) {
+            segment(end).put(position(end), PAD);
+            end = nextSegment(end);
+        }
+        int index = (int) (end / SEGMENT_SIZE);
+        while (segments.size() <= index) {
+            mapSegment(segments.size());
+        }
+        long off = end;
+        end += size;
+        return off;
+    }
+
+    private long startRecord(byte type, byte flags, int id, int aux) throws IOException {
+        long off = reserve(sizeOf(type));
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        seg.put(pos + TYPE, type).put(pos + FLAGS, flags).putInt(pos + ID, id).putInt(pos + AUX, aux);
+        return off;
+    }
+
+    private void seal(long off) {
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        seg.putInt(pos + CRC, checksum(seg, pos, sizeOf(seg.get(pos + TYPE))));
+    }
+
+    // Makes the records written since start durable as one unit, then applies them to the index
+    private void commit(long start, List<Long> records) {
+        long last = records.get(records.size() - 1);
+        ByteBuffer seg = segment(last);
+        int pos = position(last);
+        seg.put(pos + FLAGS, (byte) (seg.get(pos + FLAGS) | COMMIT));
+        seal(last);
+        force(start, end);
+        for (long record : records) {
+            apply(record);
+        }
+    }
+
+    // Forgets records written after start by a write that failed part way
+    private void rollback(long start) {
+        zero(start, end);
+        end = start;
+    }
+
+    private void zero(long from, long to) {
+        for (long off = from; off < to; ) {
+            ByteBuffer seg = segment(off);
+            int pos = position(off);
+            int n = (int) Math.min(to - off, SEGMENT_SIZE - pos);
+            for (int i = 0; i < n; i++) {
+                seg.put(pos + i, (byte) 0);
+            }
+            off += n;
+        }
+    }
+
+    private void force(long from, long to) {
+        for (long off = from; off < to; ) {
+            MappedByteBuffer seg = segments.get((int) (off / SEGMENT_SIZE));
+            int pos = position(off);
+            int n = (int) Math.min(to - off, SEGMENT_SIZE - pos);
+            seg.force(pos, n);
+            off += n;
+        }
+    }
+
+    private static void putString(ByteBuffer seg, int pos, String value, int maxChars, String field) {
+        if (value == null) {
+            seg.putShort(pos, (short) -1);
+            return;
+        }
+        if (value.length() > maxChars) {
+            throw new IllegalArgumentException(field + " is longer than " + maxChars + " characters");
+        }
+        seg.putShort(pos, (short) value.length());
+        seg.slice(pos + 2, 2 * value.length()).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer().put(value);
+    }
+
+    private static String getString(ByteBuffer seg, int pos) {
+        int length = seg.getShort(pos);
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        seg.slice(pos + 2, 2 * length).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer().get(chars);
+        return new String(chars);
+    }
+
+    private long writePatient(Patient p, int id, byte flags) throws IOException {
+        if (p.getName() == null) {
+            throw new IllegalArgumentException("Name is required");
+        }
+        long off = startRecord(PATIENT, flags, id, 0);
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        seg.putInt(pos + P_AGE, p.getAge());
+        putString(seg, pos + P_GENDER, p.getGender(), 1, "Gender");
+        putString(seg, pos + P_PHONE, p.getPhone(), 15, "Phone");
+        putString(seg, pos + P_BLOOD_GROUP, p.getBloodGroup(), 5, "Blood group");
+        putString(seg, pos + P_NAME, p.getName(), 100, "Name");
+        putString(seg, pos + P_ADDRESS, p.getAddress(), 200, "Address");
+        seal(off);
+        return off;
+    }
+
+    private Patient readPatient(long off) {
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        return new Patient(seg.getInt(pos + ID), getString(seg, pos + P_NAME), seg.getInt(pos + P_AGE),
+                getString(seg, pos + P_GENDER), getString(seg, pos + P_PHONE), getString(seg, pos + P_ADDRESS),
+                getString(seg, pos + P_BLOOD_GROUP));
+    }
+
+    private long writeVisit(Visit v, int id, byte flags) throws IOException {
+        if (v.getVisitDate() == null || v.getDoctor() == null) {
+            throw new IllegalArgumentException("Visit date and doctor are required");
+        }
+        long off = startRecord(VISIT, flags, id, v.getPatientId());
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        seg.putLong(pos + V_DATE, v.getVisitDate().getTime());
+        putString(seg, pos + V_DOCTOR, v.getDoctor(), 100, "Doctor");
+        putString(seg, pos + V_NOTES, v.getNotes(), 500, "Notes");
+        seal(off);
+        return off;
+    }
+
+    private Visit readVisit(long off) {
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        return new Visit(seg.getInt(pos + ID), seg.getInt(pos + AUX), new java.sql.Date(seg.getLong(pos + V_DATE)),
+                getString(seg, pos + V_DOCTOR), getString(seg, pos + V_NOTES));
+    }
+
+    private interface Write {
+        void run(List<Long> records) throws IOException;
+    }
+
+    // Runs one all-or-nothing write under the write lock
+    private void write(Write write) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel == null) {
+                throw new IOException(file + " is closed");
+            }
+            long start = end;
+            List<Long> records = new ArrayList<>();
+            try {
+                write.run(records);
+            } catch (IOException | RuntimeException e) {
+                rollback(start);
+                throw e;
+            }
+            if (!records.isEmpty()) {
+                commit(start, records);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private <T> T read(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Patients
+
+    // Stores a new patient under the next id; PENDING writes get an id from the local range
+    public Patient insertPatient(Patient p, byte flags) throws IOException {
+        Patient[] added = new Patient[1];
+        write(records -> {
+            int id = (flags & PENDING) != 0 ? lastLocalPatientId + 1 : lastPatientId + 1;
+            added[0] = withId(p, id);
+            records.add(writePatient(added[0], id, flags));
+        });
+        return added[0];
+    }
+
+    // Inserts in chunks of commitInterval; each chunk becomes durable and visible as a unit
+    public int insertPatients(Iterable<Patient> source, int commitInterval, byte flags) throws IOException {
+        int count = 0;
+        List<Patient> chunk = new ArrayList<>(Math.min(commitInterval, 10000));
+        for (Patient p : source) {
+            chunk.add(p);
+            if (chunk.size() == commitInterval) {
+                count += insertChunk(chunk, flags);
+                chunk.clear();
+            }
+        }
+        return count + insertChunk(chunk, flags);
+    }
+
+    private int insertChunk(List<Patient> chunk, byte flags) throws IOException {
+        write(records -> {
+            int id = (flags & PENDING) != 0 ? lastLocalPatientId : lastPatientId;
+            for (Patient p : chunk) {
+                records.add(writePatient(p, ++id, flags));
+            }
+        });
+        return chunk.size();
+    }
+
+    // Rewrites patients that exist; returns the ones that did. PENDING writes are recorded regardless,
+    // since the local copy need not hold every row Oracle has; the same goes for deletes and visits.
+    public List<Patient> updatePatients(Iterable<Patient> source, int commitInterval, byte flags) throws IOException {
+        List<Patient> updated = new ArrayList<>();
+        List<Patient> chunk = new ArrayList<>(Math.min(commitInterval, 10000));
+        for (Patient p : source) {
+            chunk.add(p);
+            if (chunk.size() == commitInterval) {
+                updateChunk(chunk, flags, updated);
+                chunk.clear();
+            }
+        }
+        updateChunk(chunk, flags, updated);
+        return updated;
+    }
+
+    private void updateChunk(List<Patient> chunk, byte flags, List<Patient> updated) throws IOException {
+        List<Patient> written = new ArrayList<>(chunk.size());
+        write(records -> {
+            for (Patient p : chunk) {
+                int id = resolve(p.getId());
+                if (patients.get(id) != 0 || (flags & PENDING) != 0) {
+                    records.add(writePatient(p, id, flags));
+                    written.add(p);
+                }
+            }
+        });
+        updated.addAll(written);
+    }
+
+    // Inserts or replaces patients under their own ids, skipping rows that are already identical.
+    // Used to keep a local copy of rows read from Oracle, so a patient with a pending write keeps
+    // the local row: it is newer than Oracle's until the write is replayed.
+    public void putPatients(Collection<Patient> rows) throws IOException {
+        write(records -> {
+            Set<Integer> pending = pendingPatientIds();
+            for (Patient p : rows) {
+                if (pending.contains(p.getId())) {
+                    continue;
+                }
+                long existing = patients.get(p.getId());
+                if (existing == 0 || !samePatient(readPatient(existing), p)) {
+                    records.add(writePatient(p, p.getId(), (byte) 0));
+                }
+            }
+        });
+    }
+
+    public boolean deletePatient(int patientId, byte flags) throws IOException {
+        boolean[] deleted = new boolean[1];
+        write(records -> {
+            int id = resolve(patientId);
+            if (patients.get(id) != 0 || (flags & PENDING) != 0) {
+                long off = startRecord(PATIENT_DELETE, flags, id, 0);
+                seal(off);
+                records.add(off);
+                deleted[0] = true;
+            }
+        });
+        return deleted[0];
+    }
+
+    public Patient getPatient(int id) {
+        return read(() -> {
+            long off = patients.get(id);
+            return off == 0 ? null : readPatient(off);
+        });
+    }
+
+    public int countPatients() {
+        return read(() -> patients.size);
+    }
+
+    // Up to limit patients with ids above afterId, in id order
+    public List<Patient> getPatientsAfter(int afterId, int limit) {
+        return read(() -> readPatients(patients.indexAfter(afterId), limit));
+    }
+
+    public List<Patient> getPatientsAt(int offset, int limit) {
+        return read(() -> readPatients(offset, limit));
+    }
+
+    private List<Patient> readPatients(int from, int limit) {
+        int to = (int) Math.min(patients.size, (long) from + limit);
+        List<Patient> page = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            page.add(readPatient(patients.values[i]));
+        }
+        return page;
+    }
+
+    public List<Patient> findPatients(SearchPlan plan) {
+        return read(() -> {
+            List<Patient> found = new ArrayList<>();
+            // Only name and phone decide a match, so only those are decoded for rows that don't match
+            for (int i = 0; i < patients.size; i++) {
+                long off = patients.values[i];
+                ByteBuffer seg = segment(off);
+                int pos = position(off);
+                Patient probe = new Patient(0, getString(seg, pos + P_NAME), 0, null, getString(seg, pos + P_PHONE), null, null);
+                if (plan.matches(probe)) {
+                    found.add(readPatient(off));
+                }
+            }
+            return found;
+        });
+    }
+
+    // Visits
+
+    // Stores a new visit under the next id; PENDING writes get an id from the local range
+    public Visit insertVisit(Visit v, byte flags) throws IOException {
+        Visit[] added = new Visit[1];
+        write(records -> {
+            int patientId = resolve(v.getPatientId());
+            if (patients.get(patientId) == 0 && (flags & PENDING) == 0) {
+                throw new IllegalArgumentException("No patient with id " + v.getPatientId());
+            }
+            int id = (flags & PENDING) != 0 ? lastLocalVisitId + 1 : lastVisitId + 1;
+            added[0] = new Visit(id, patientId, v.getVisitDate(), v.getDoctor(), v.getNotes());
+            records.add(writeVisit(added[0], id, flags));
+        });
+        return added[0];
+    }
+
+    // Inserts in chunks of commitInterval; see insertPatients()
+    public int insertVisits(Iterable<Visit> source, int commitInterval, byte flags) throws IOException {
+        int count = 0;
+        List<Visit> chunk = new ArrayList<>(Math.min(commitInterval, 10000));
+        for (Visit v : source) {
+            chunk.add(v);
+            if (chunk.size() == commitInterval) {
+                count += insertVisitChunk(chunk, flags);
+                chunk.clear();
+            }
+        }
+        return count + insertVisitChunk(chunk, flags);
+    }
+
+    private int insertVisitChunk(List<Visit> chunk, byte flags) throws IOException {
+        write(records -> {
+            int id = (flags & PENDING) != 0 ? lastLocalVisitId : lastVisitId;
+            for (Visit v : chunk) {
+                int patientId = resolve(v.getPatientId());
+                if (patients.get(patientId) == 0 && (flags & PENDING) == 0) {
+                    throw new IllegalArgumentException("No patient with id " + v.getPatientId());
+                }
+                records.add(writeVisit(new Visit(0, patientId, v.getVisitDate(), v.getDoctor(), v.getNotes()), ++id, flags));
+            }
+        });
+        return chunk.size();
+    }
+
+    // Inserts or replaces visits under their own ids; see putPatients()
+    public void putVisits(Collection<Visit> rows) throws IOException {
+        write(records -> {
+            for (Visit v : rows) {
+                long existing = visits.get(v.getId());
+                if (existing == 0 || !sameVisit(readVisit(existing), v)) {
+                    records.add(writeVisit(v, v.getId(), (byte) 0));
+                }
+            }
+        });
+    }
+
+    public void deleteVisits(Collection<Integer> ids) throws IOException {
+        write(records -> {
+            for (int id : ids) {
+                if (visits.get(id) != 0) {
+                    long off = startRecord(VISIT_DELETE, (byte) 0, id, 0);
+                    seal(off);
+                    records.add(off);
+                }
+            }
+        });
+    }
+
+    // Up to limit visits of the patient that sort after the given one (null for the newest)
+    public List<Visit> getVisitsAfter(int patientId, Visit after, int limit) {
+        return read(() -> {
+            VisitRefs refs = visitsByPatient.get(patientId);
+            if (refs == null) {
+                return new ArrayList<>();
+            }
+            int from = after == null ? 0 : refs.indexAfter(after.getVisitDate().getTime(), after.getId());
+            int to = (int) Math.min(refs.size, (long) from + limit);
+            List<Visit> page = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                page.add(readVisit(visits.get(refs.ids[i])));
+            }
+            return page;
+        });
+    }
+
+    public List<Visit> getVisits(int patientId) {
+        return getVisitsAfter(patientId, null, Integer.MAX_VALUE);
+    }
+
+    // Up to limit visits of any patient with ids above afterId, in id order
+    public List<Visit> getVisitsAfterId(int afterId, int limit) {
+        return read(() -> {
+            int from = visits.indexAfter(afterId);
+            int to = (int) Math.min(visits.size, (long) from + limit);
+            List<Visit> chunk = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                chunk.add(readVisit(visits.values[i]));
+            }
+            return chunk;
+        });
+    }
+
+    // Offline sync
+
+    public boolean hasPendingOperations() {
+        return countPendingOperations() > 0;
+    }
+
+    public int countPendingOperations() {
+        return read(pendingEnds::size);
+    }
+
+    // Patients with a pending change or deletion, including every patient created offline and not replayed yet
+    public Set<Integer> getPendingPatientIds() {
+        return read(this::pendingPatientIds);
+    }
+
+    private Set<Integer> pendingPatientIds() {
+        Set<Integer> ids = new HashSet<>();
+        if (pendingEnds.isEmpty()) {
+            return ids;
+        }
+        long off = syncedThrough;
+        while (off < end) {
+            ByteBuffer seg = segment(off);
+            int pos = position(off);
+            byte type = seg.get(pos + TYPE);
+            if (type == PAD) {
+                off = nextSegment(off);
+                continue;
+            }
+            if ((seg.get(pos + FLAGS) & PENDING) != 0 && (type == PATIENT || type == PATIENT_DELETE)) {
+                ids.add(seg.getInt(pos + ID));
+            }
+            off += sizeOf(type);
+        }
+        return ids;
+    }
+
+    // Offline writes not yet replayed to Oracle, oldest first
+    public List<PendingOperation> pendingOperations() {
+        return read(() -> {
+            List<PendingOperation> pending = new ArrayList<>();
+            long off = syncedThrough;
+            while (off < end) {
+                ByteBuffer seg = segment(off);
+                int pos = position(off);
+                byte type = seg.get(pos + TYPE);
+                if (type == PAD) {
+                    off = nextSegment(off);
+                    continue;
+                }
+                int size = sizeOf(type);
+                if ((seg.get(pos + FLAGS) & PENDING) != 0) {
+                    long recordEnd = off + size;
+                    if (type == PATIENT) {
+                        pending.add(new PendingOperation(PendingOperation.Kind.PATIENT_PUT, recordEnd, readPatient(off), null, 0));
+                    } else if (type == PATIENT_DELETE) {
+                        pending.add(new PendingOperation(PendingOperation.Kind.PATIENT_DELETE, recordEnd, null, null,
+                                seg.getInt(pos + ID)));
+                    } else if (type == VISIT) {
+                        pending.add(new PendingOperation(PendingOperation.Kind.VISIT_PUT, recordEnd, null, readVisit(off), 0));
+                    }
+                }
+                off += size;
+            }
+            return pending;
+        });
+    }
+
+    // Identifies this log for as long as PendingOperation.end offsets stay valid; see load()
+    public String getStoreId() {
+        return read(() -> storeId);
+    }
+
+    // Oracle ids already assigned to patients created offline, so a sync that resumes after a failure
+    // does not insert them twice
+    public Map<Integer, Integer> getPatientIdMap() {
+        return read(() -> new HashMap<>(patientIdMap));
+    }
+
+    // Records that pending operations up to syncedEnd reached Oracle, with the ids Oracle assigned
+    public void markSynced(long syncedEnd, Map<Integer, Integer> newIds) throws IOException {
+        write(records -> {
+            for (Map.Entry<Integer, Integer> e : newIds.entrySet()) {
+                long off = startRecord(ID_MAP, (byte) 0, e.getKey(), e.getValue());
+                seal(off);
+                records.add(off);
+            }
+            long off = startRecord(SYNC_MARK, (byte) 0, 0, 0);
+            segment(off).putLong(position(off) + 16, syncedEnd);
+            seal(off);
+            records.add(off);
+        });
+    }
+
+    // A patient created offline that has since been replaced by its Oracle copy is found under the Oracle id
+    private int resolve(int patientId) {
+        return patientId > LOCAL_ID_BASE ? patientIdMap.getOrDefault(patientId, patientId) : patientId;
+    }
+
+    // Replaces rows created offline by the copies Oracle now holds. Local visits up to
+    // replayedVisitId are dropped; they come back with their Oracle ids the next time the
+    // history is read.
+    public void replaceLocalRows(Map<Integer, Integer> newIds, int replayedVisitId) throws IOException {
+        write(records -> {
+            for (Map.Entry<Integer, Integer> e : newIds.entrySet()) {
+                long off = patients.get(e.getKey());
+                if (off == 0) {
+                    continue;
+                }
+                Patient local = readPatient(off);
+                records.add(writePatient(withId(local, e.getValue()), e.getValue(), (byte) 0));
+                VisitRefs refs = visitsByPatient.get(e.getKey());
+                if (refs != null) {
+                    for (int i = 0; i < refs.size; i++) {
+                        Visit v = readVisit(visits.get(refs.ids[i]));
+                        if (v.getId() <= LOCAL_ID_BASE || v.getId() > replayedVisitId) {
+                            records.add(writeVisit(new Visit(v.getId(), e.getValue(), v.getVisitDate(), v.getDoctor(),
+                                    v.getNotes()), v.getId(), (byte) 0));
+                        }
+                    }
+                }
+                long delete = startRecord(PATIENT_DELETE, (byte) 0, e.getKey(), 0);
+                seal(delete);
+                records.add(delete);
+            }
+            for (int i = 0; i < visits.size; i++) {
+                if (visits.keys[i] > LOCAL_ID_BASE && visits.keys[i] <= replayedVisitId) {
+                    long delete = startRecord(VISIT_DELETE, (byte) 0, visits.keys[i], 0);
+                    seal(delete);
+                    records.add(delete);
+                }
+            }
+        });
+    }
+
+    // Compaction
+
+    private void compactQuietly() {
+        try {
+            compactIfNeeded();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Compaction of " + file + " failed: " + e.getMessage());
+        }
+    }
+
+    public boolean compactIfNeeded() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long live = (long) patients.size * PATIENT_SIZE + (long) visits.size * VISIT_SIZE;
+            if (channel == null || deadBytes < COMPACT_MIN_DEAD_BYTES || deadBytes < live) {
+                return false;
+            }
+            compact();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Rewrites the live rows into a new file and swaps it in. Offline writes must be synced first,
+    // because replay depends on their order in the log.
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!pendingEnds.isEmpty()) {
+                return;
+            }
+            long before = end;
+            Path target = compactionFile(file);
+            Files.deleteIfExists(target);
+            EmbeddedStore copy = new EmbeddedStore(target, false);
+            try {
+                copy.load();
+                copy.write(records -> {
+                    long seq = copy.startRecord(SEQUENCE, (byte) 0, 0, 0);
+                    copy.segment(seq).putInt(position(seq) + 16, lastPatientId).putInt(position(seq) + 20, lastVisitId)
+                            .putInt(position(seq) + 24, lastLocalPatientId).putInt(position(seq) + 28, lastLocalVisitId);
+                    copy.seal(seq);
+                    records.add(seq);
+                    for (int i = 0; i < patients.size; i++) {
+                        records.add(copy.copyRecord(this, patients.values[i]));
+                    }
+                    for (int i = 0; i < visits.size; i++) {
+                        records.add(copy.copyRecord(this, visits.values[i]));
+                    }
+                });
+            } finally {
+                copy.unmapAndClose();
+            }
+            unmapAndClose();
+            Files.move(target, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            resetIndex();
+            load();
+            System.out.println("Compacted " + file + " from " + before + " to " + end + " bytes");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Appends a copy of another store's record with its flags cleared
+    private long copyRecord(EmbeddedStore source, long sourceOff) throws IOException {
+        ByteBuffer from = source.segment(sourceOff);
+        int fromPos = position(sourceOff);
+        byte type = from.get(fromPos + TYPE);
+        int size = sizeOf(type);
+        long off = reserve(size);
+        ByteBuffer seg = segment(off);
+        int pos = position(off);
+        for (int i = 0; i < size; i += 8) {
+            seg.putLong(pos + i, from.getLong(fromPos + i));
+        }
+        seg.put(pos + FLAGS, (byte) 0);
+        seal(off);
+        return off;
+    }
+
+    private void resetIndex() {
+        patients.clear();
+        visits.clear();
+        visitsByPatient.clear();
+        patientIdMap.clear();
+        syncedThrough = HEADER_SIZE;
+        pendingEnds.clear();
+        deadBytes = 0;
+        end = 0;
+    }
+
+    private void unmapAndClose() throws IOException {
+        for (MappedByteBuffer seg : segments) {
+            seg.force();
+            unmap(seg);
+        }
+        segments.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Releases a mapping now rather than at garbage collection, so the file can be replaced
+    // (required on Windows). Nothing may touch the buffer afterwards.
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Left to the garbage collector
+        }
+    }
+
+    private static Patient withId(Patient p, int id) {
+        return new Patient(id, p.getName(), p.getAge(), p.getGender(), p.getPhone(), p.getAddress(), p.getBloodGroup());
+    }
+
+    private static boolean samePatient(Patient a, Patient b) {
+        return a.getAge() == b.getAge() && a.getName().equals(b.getName()) && equal(a.getGender(), b.getGender())
+                && equal(a.getPhone(), b.getPhone()) && equal(a.getAddress(), b.getAddress())
+                && equal(a.getBloodGroup(), b.getBloodGroup());
+    }
+
+    private static boolean sameVisit(Visit a, Visit b) {
+        return a.getPatientId() == b.getPatientId() && a.getVisitDate().getTime() == b.getVisitDate().getTime()
+                && a.getDoctor().equals(b.getDoctor()) && equal(a.getNotes(), b.getNotes());
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            unmapAndClose();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Sorted id -> log offset map in two primitive arrays; 0 means absent
+    private static class IdIndex {
+        int[] keys = new int[1024];
+        long[] values = new long[1024];
+        int size;
+
+        long get(int id) {
+            int i = find(id);
+            return i >= 0 ? values[i] : 0;
+        }
+
+        long put(int id, long off) {
+            int i = find(id);
+            if (i >= 0) {
+                long previous = values[i];
+                values[i] = off;
+                return previous;
+            }
+            i = -i - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(values, i, values, i + 1, size - i);
+            keys[i] = id;
+            values[i] = off;
+            size++;
+            return 0;
+        }
+
+        long remove(int id) {
+            int i = find(id);
+            if (i < 0) {
+                return 0;
+            }
+            long previous = values[i];
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            size--;
+            return previous;
+        }
+
+        // Position of the first id greater than the given one
+        int indexAfter(int id) {
+            int i = find(id);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+
+        private int find(int id) {
+            // Ids mostly arrive in ascending order
+            if (size == 0 || id > keys[size - 1]) {
+                return -size - 1;
+            }
+            return Arrays.binarySearch(keys, 0, size, id);
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    // One patient's visits ordered newest first, ties broken by descending id so paging is stable
+    private static class VisitRefs {
+        long[] dates = new long[4];
+        int[] ids = new int[4];
+        int size;
+
+        void add(long date, int id) {
+            int i = indexAfter(date, id);
+            if (size == ids.length) {
+                dates = Arrays.copyOf(dates, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(dates, i, dates, i + 1, size - i);
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            dates[i] = date;
+            ids[i] = id;
+            size++;
+        }
+
+        void remove(long date, int id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    System.arraycopy(dates, i + 1, dates, i, size - i - 1);
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        // Position of the first visit that sorts after (date, id)
+        int indexAfter(long date, int id) {
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (dates[mid] > date || (dates[mid] == date && ids[mid] >= id)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
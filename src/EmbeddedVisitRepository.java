@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// VisitRepository over the single-file EmbeddedStore; see EmbeddedPatientRepository for flags
+class EmbeddedVisitRepository implements VisitRepository {
+
+    private final EmbeddedStore store;
+    private final byte flags;
+
+    public EmbeddedVisitRepository(EmbeddedStore store) {
+        this(store, (byte) 0);
+    }
+
+    public EmbeddedVisitRepository(EmbeddedStore store, byte flags) {
+        this.store = store;
+        this.flags = flags;
+    }
+
+    @Override
+    public int addVisit(Visit v) throws SQLException {
+        try {
+            return store.insertVisit(v, flags).getId();
+        } catch (IOException e) {
+            throw EmbeddedPatientRepository.storageError(e);
+        } catch (IllegalArgumentException e) {
+            // What the foreign key on visits.patient_id or a length check reports in Oracle
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    // batchSize has no meaning without a server round trip; commitInterval sets the sync points
+    @Override
+    public int addVisits(Iterable<Visit> visits, int batchSize, int commitInterval) throws SQLException {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Batch size and commit interval must be positive");
+        }
+        try {
+            return store.insertVisits(visits, commitInterval, flags);
+        } catch (IOException e) {
+            throw EmbeddedPatientRepository.storageError(e);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public VisitPage getVisitsPage(int patientId, Visit after, int pageSize) {
+        List<Visit> visits = store.getVisitsAfter(patientId, after, pageSize + 1);
+        boolean hasMore = visits.size() > pageSize;
+        return new VisitPage(hasMore ? visits.subList(0, pageSize) : visits, hasMore);
+    }
+
+    @Override
+    public Map<Integer, List<Visit>> getVisitsForPatients(Collection<Integer> patientIds) {
+        Map<Integer, List<Visit>> result = new LinkedHashMap<>();
+        for (Integer id : patientIds) {
+            result.put(id, store.getVisits(id));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Visit> getVisitsForPatient(int patientId) {
+        return store.getVisits(patientId);
+    }
+
+    @Override
+    public int forEachVisit(int fetchSize, VisitHandler handler) {
+        int chunkSize = fetchSize > 0 ? fetchSize : 1000;
+        int count = 0;
+        int lastId = 0;
+        List<Visit> chunk;
+        // Copied out under the store's read lock in chunks, as EmbeddedPatientRepository.forEachPatient() does
+        while (!(chunk = store.getVisitsAfterId(lastId, chunkSize)).isEmpty()) {
+            for (Visit v : chunk) {
+                count++;
+                if (!handler.handle(v)) {
+                    return count;
+                }
+            }
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+        return count;
+    }
+}
@@ -1,14 +1,30 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 // Model Classes
@@ -99,26 +115,149 @@ class Visit {
 
 class DatabaseConfig {
 
-    // These should ideally be loaded from a configuration file
-    private static final String URL = "jdbc:oracle:thin:@localhost:1521:XE";
-    private static final String USER = "system";
-    private static final String PASSWORD = "123";
+    // These should ideally be loaded from a configuration file; -Dhms.db.* overrides them
+    // (the benchmarks point them at an embedded database)
+    private static final String URL = System.getProperty("hms.db.url", "jdbc:oracle:thin:@localhost:1521:XE");
+    private static final String USER = System.getProperty("hms.db.user", "system");
+    private static final String PASSWORD = System.getProperty("hms.db.password", "123");
+
+    // Pool sizing, overridable with -Dhms.pool.* system properties
+    private static final int POOL_MIN_SIZE = Integer.getInteger("hms.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("hms.pool.maxSize", 10);
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = Long.getLong("hms.pool.borrowTimeoutMillis", 10000);
+    private static final long POOL_LEAK_THRESHOLD_MILLIS = Long.getLong("hms.pool.leakThresholdMillis", 60000);
+    // Prepared statements kept open per pooled connection; 0 disables statement caching
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("hms.pool.statementCacheSize", 50);
+
+    // Oracle Text index for substring name search; needs CTXSYS, so it is opt-in
+    private static final boolean TEXT_INDEX_ENABLED = Boolean.getBoolean("hms.search.textIndex");
+
+    // Newest patient_changes rows kept at startup; must stay above PatientDAO.MAX_CHANGES
+    private static final int CHANGE_LOG_RETAIN_ROWS = Math.max(Integer.getInteger("hms.changes.retainRows", 100000),
+            PatientDAO.MAX_CHANGES + 1);
+
+    private static volatile ConnectionPool pool;
+    private static volatile boolean textIndexAvailable;
+
+    // Connection of the transaction open on this thread, if any; see inTransaction()
+    private static final ThreadLocal<Connection> TRANSACTION = new ThreadLocal<>();
+    // Work beforeCommit() queued for that transaction
+    private static final ThreadLocal<List<DatabaseExecutor.SqlTask<?>>> BEFORE_COMMIT = new ThreadLocal<>();
+    // Pool borrows, including the wait for a free connection
+    private static final Metrics.Timer CONNECTION_TIMER = Metrics.timer("db.getConnection");
 
     public static Connection getConnection() throws SQLException {
+        Connection transaction = TRANSACTION.get();
+        if (transaction != null) {
+            return transaction;
+        }
+        long start = System.nanoTime();
         try {
-            return DriverManager.getConnection(URL, USER, PASSWORD);
+            Connection conn = getPool().getConnection();
+            CONNECTION_TIMER.record(start, 0);
+            return conn;
         } catch (SQLException e) {
+            CONNECTION_TIMER.recordError(start);
             throw new SQLException("Database connection failed: " + e.getMessage(), e);
         }
     }
 
+    // Runs work as one transaction: every DAO call it makes on this thread uses the same connection,
+    // and the commits, rollbacks and closes those calls issue are left to this method
+    public static <T> T inTransaction(DatabaseExecutor.SqlTask<T> work) throws SQLException {
+        if (TRANSACTION.get() != null) {
+            return work.call();
+        }
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            List<DatabaseExecutor.SqlTask<?>> beforeCommit = new ArrayList<>();
+            TRANSACTION.set(transactionView(conn));
+            BEFORE_COMMIT.set(beforeCommit);
+            try {
+                T result = work.call();
+                for (int i = 0; i < beforeCommit.size(); i++) {
+                    beforeCommit.get(i).call();
+                }
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                // The pool restores autocommit when the connection goes back
+                conn.rollback();
+                throw e;
+            } finally {
+                TRANSACTION.remove();
+                BEFORE_COMMIT.remove();
+            }
+        }
+    }
+
+    // Runs work at the end of the transaction open on this thread, just before it commits, or at once in
+    // a transaction of its own if none is open. For statements that lock a row every writer needs, so
+    // the lock is held only while the transaction commits.
+    public static void beforeCommit(DatabaseExecutor.SqlTask<?> work) throws SQLException {
+        List<DatabaseExecutor.SqlTask<?>> queued = BEFORE_COMMIT.get();
+        if (queued != null) {
+            queued.add(work);
+        } else {
+            inTransaction(work);
+        }
+    }
+
+    // Whether this thread is inside inTransaction(), so that what it writes may still be rolled back
+    public static boolean isInTransaction() {
+        return TRANSACTION.get() != null;
+    }
+
+    private static Connection transactionView(Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                        case "commit":
+                        case "rollback":
+                        case "setAutoCommit":
+                            return null;
+                        default:
+                            try {
+                                return method.invoke(conn, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                });
+    }
+
+    public static ConnectionPool getPool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DatabaseConfig.class) {
+                p = pool;
+                if (p == null) {
+                    p = new ConnectionPool(URL, USER, PASSWORD, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                            POOL_BORROW_TIMEOUT_MILLIS, POOL_LEAK_THRESHOLD_MILLIS, POOL_STATEMENT_CACHE_SIZE);
+                    pool = p;
+                    Runtime.getRuntime().addShutdownHook(new Thread(DatabaseConfig::shutdown, "connection-pool-shutdown"));
+                }
+            }
+        }
+        return p;
+    }
+
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            System.out.println("Closing connection pool (" + pool.getStats() + ")");
+            pool.close();
+            pool = null;
+        }
+    }
+
     // Initialize database tables if they don't exist
     public static void initializeDatabase() {
         try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
 
             // Check if patients table exists
             try {
-                ResultSet rs = conn.getMetaData().getTables(null, USER.toUpperCase(), "PATIENTS", null);
+                ResultSet rs = conn.getMetaData().getTables(null, conn.getSchema(), "PATIENTS", null);
                 if (!rs.next()) {
                     // Create patients table
                     stmt.execute("CREATE TABLE patients ("
@@ -137,7 +276,7 @@ class DatabaseConfig {
 
             // Check if visits table exists
             try {
-                ResultSet rs = conn.getMetaData().getTables(null, USER.toUpperCase(), "VISITS", null);
+                ResultSet rs = conn.getMetaData().getTables(null, conn.getSchema(), "VISITS", null);
                 if (!rs.next()) {
                     stmt.execute("CREATE TABLE visits ("
                         + "id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY, "
@@ -152,154 +291,654 @@ class DatabaseConfig {
                 System.err.println("Error checking/creating visits table: " + e.getMessage());
             }
 
+            // Change log behind PatientRepository.getPatientsChangedSince() and PatientChangeFeed; the DAOs
+            // write it in the same transaction as the patient or visit row. Its seq numbers are handed
+            // out from patient_change_seq as each transaction commits; see PatientDAO.logChanges().
+            try {
+                ResultSet rs = conn.getMetaData().getTables(null, conn.getSchema(), "PATIENT_CHANGES", null);
+                boolean changeLogExisted = rs.next();
+                if (!changeLogExisted) {
+                    stmt.execute("CREATE TABLE patient_changes ("
+                        + "seq NUMBER PRIMARY KEY, "
+                        + "patient_id NUMBER NOT NULL, "
+                        + "change_type VARCHAR2(1) NOT NULL, "
+                        + "changed_at DATE DEFAULT SYSDATE NOT NULL, "
+                        + "origin VARCHAR2(32))");
+                    System.out.println("Patient changes table created successfully");
+                } else {
+                    ResultSet columns = conn.getMetaData().getColumns(null, conn.getSchema(), "PATIENT_CHANGES", "CHANGED_AT");
+                    if (!columns.next()) {
+                        stmt.execute("ALTER TABLE patient_changes ADD (changed_at DATE DEFAULT SYSDATE NOT NULL)");
+                        System.out.println("Patient changes table upgraded successfully");
+                    }
+                    // The process that wrote the change; see PatientDAO.ORIGIN
+                    columns = conn.getMetaData().getColumns(null, conn.getSchema(), "PATIENT_CHANGES", "ORIGIN");
+                    if (!columns.next()) {
+                        stmt.execute("ALTER TABLE patient_changes ADD (origin VARCHAR2(32))");
+                        System.out.println("Patient changes table upgraded successfully");
+                    }
+                    // A client further behind than this is told to reload anyway
+                    stmt.execute("DELETE FROM patient_changes WHERE seq <= (SELECT MAX(seq) FROM patient_changes) - "
+                        + CHANGE_LOG_RETAIN_ROWS);
+                }
+                rs = conn.getMetaData().getTables(null, conn.getSchema(), "PATIENT_CHANGE_SEQ", null);
+                if (!rs.next()) {
+                    if (changeLogExisted) {
+                        // seq was an identity column; numbers are now given explicitly
+                        stmt.execute("ALTER TABLE patient_changes MODIFY (seq GENERATED BY DEFAULT AS IDENTITY)");
+                    }
+                    stmt.execute("CREATE TABLE patient_change_seq (last_seq NUMBER NOT NULL)");
+                    stmt.execute("INSERT INTO patient_change_seq (last_seq) SELECT COALESCE(MAX(seq), 0) FROM patient_changes");
+                    System.out.println("Patient change sequence table created successfully");
+                }
+            } catch (SQLException e) {
+                System.err.println("Error checking/creating patient changes table: " + e.getMessage());
+            }
+
+            // Scheduling tables behind AppointmentDAO. doctor_days holds the version each booking or
+            // cancellation for a doctor's day bumps, which keeps workstations from double booking.
+            try {
+                ResultSet rs = conn.getMetaData().getTables(null, conn.getSchema(), "DOCTORS", null);
+                if (!rs.next()) {
+                    stmt.execute("CREATE TABLE doctors ("
+                        + "id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY, "
+                        + "name VARCHAR2(100) NOT NULL, "
+                        + "name_key VARCHAR2(100), "
+                        + "specialty VARCHAR2(100))");
+                    System.out.println("Doctors table created successfully");
+                } else {
+                    // Filled in for existing doctors by DoctorDAO.keyDoctorNames()
+                    ResultSet columns = conn.getMetaData().getColumns(null, conn.getSchema(), "DOCTORS", "NAME_KEY");
+                    if (!columns.next()) {
+                        stmt.execute("ALTER TABLE doctors ADD (name_key VARCHAR2(100))");
+                        System.out.println("Doctors table upgraded successfully");
+                    }
+                }
+                rs = conn.getMetaData().getTables(null, conn.getSchema(), "DOCTOR_DAYS", null);
+                if (!rs.next()) {
+                    stmt.execute("CREATE TABLE doctor_days ("
+                        + "doctor_id NUMBER NOT NULL, "
+                        + "schedule_day DATE NOT NULL, "
+                        + "version NUMBER NOT NULL, "
+                        + "PRIMARY KEY (doctor_id, schedule_day), "
+                        + "FOREIGN KEY (doctor_id) REFERENCES doctors(id) ON DELETE CASCADE)");
+                    System.out.println("Doctor days table created successfully");
+                }
+                rs = conn.getMetaData().getTables(null, conn.getSchema(), "APPOINTMENTS", null);
+                if (!rs.next()) {
+                    stmt.execute("CREATE TABLE appointments ("
+                        + "id NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY, "
+                        + "doctor_id NUMBER NOT NULL, "
+                        + "patient_id NUMBER NOT NULL, "
+                        + "starts_at DATE NOT NULL, "
+                        + "minutes NUMBER NOT NULL, "
+                        + "reason VARCHAR2(200), "
+                        + "status VARCHAR2(1) NOT NULL, "
+                        + "FOREIGN KEY (doctor_id) REFERENCES doctors(id) ON DELETE CASCADE, "
+                        + "FOREIGN KEY (patient_id) REFERENCES patients(id) ON DELETE CASCADE)");
+                    System.out.println("Appointments table created successfully");
+                }
+            } catch (SQLException e) {
+                System.err.println("Error checking/creating scheduling tables: " + e.getMessage());
+            }
+
+            // Visits refer to their doctor by doctor_id (see DoctorDirectory). The typed name in
+            // visits.doctor is only kept until DoctorDAO.migrateVisitDoctors() has moved the row over.
+            try {
+                ResultSet columns = conn.getMetaData().getColumns(null, conn.getSchema(), "VISITS", "DOCTOR_ID");
+                if (!columns.next()) {
+                    stmt.execute("ALTER TABLE visits ADD (doctor_id NUMBER REFERENCES doctors(id))");
+                    stmt.execute("ALTER TABLE visits MODIFY (doctor NULL)");
+                    System.out.println("Visits table upgraded successfully");
+                }
+            } catch (SQLException e) {
+                System.err.println("Error upgrading visits table: " + e.getMessage());
+            }
+
+            // OfflineSync's replay progress per local store (SyncLogDAO), committed with the replayed rows
+            try {
+                ResultSet rs = conn.getMetaData().getTables(null, conn.getSchema(), "SYNC_LOG", null);
+                if (!rs.next()) {
+                    stmt.execute("CREATE TABLE sync_log ("
+                        + "store_id VARCHAR2(32) PRIMARY KEY, "
+                        + "end_offset NUMBER NOT NULL)");
+                    System.out.println("Sync log table created successfully");
+                }
+                rs = conn.getMetaData().getTables(null, conn.getSchema(), "SYNC_PATIENT_IDS", null);
+                if (!rs.next()) {
+                    stmt.execute("CREATE TABLE sync_patient_ids ("
+                        + "store_id VARCHAR2(32) NOT NULL, "
+                        + "local_id NUMBER NOT NULL, "
+                        + "patient_id NUMBER NOT NULL, "
+                        + "PRIMARY KEY (store_id, local_id))");
+                    System.out.println("Sync patient ids table created successfully");
+                }
+            } catch (SQLException e) {
+                System.err.println("Error checking/creating sync tables: " + e.getMessage());
+            }
+
+            // Search indexes used by PatientSearchPlanner
+            createIndexIfMissing(conn, stmt, "PATIENTS", "PATIENTS_LOWER_NAME_IDX",
+                    "CREATE INDEX patients_lower_name_idx ON patients (LOWER(name))");
+            createIndexIfMissing(conn, stmt, "PATIENTS", "PATIENTS_PHONE_IDX",
+                    "CREATE INDEX patients_phone_idx ON patients (phone)");
+            // Visit history access path; also indexes the foreign key so patient deletes don't scan visits
+            createIndexIfMissing(conn, stmt, "VISITS", "VISITS_PATIENT_DATE_IDX",
+                    "CREATE INDEX visits_patient_date_idx ON visits (patient_id, visit_date DESC, id DESC)");
+            // A doctor's day is one range scan; the patient index keeps patient deletes from scanning
+            createIndexIfMissing(conn, stmt, "APPOINTMENTS", "APPOINTMENTS_DOCTOR_START_IDX",
+                    "CREATE INDEX appointments_doctor_start_idx ON appointments (doctor_id, starts_at)");
+            createIndexIfMissing(conn, stmt, "APPOINTMENTS", "APPOINTMENTS_PATIENT_IDX",
+                    "CREATE INDEX appointments_patient_idx ON appointments (patient_id)");
+            // One row per spelling-insensitive doctor name; a doctor's visits are one range scan, which
+            // also keeps the per-doctor statistics off the table
+            createIndexIfMissing(conn, stmt, "DOCTORS", "DOCTORS_NAME_KEY_IDX",
+                    "CREATE UNIQUE INDEX doctors_name_key_idx ON doctors (name_key)");
+            createIndexIfMissing(conn, stmt, "VISITS", "VISITS_DOCTOR_DATE_IDX",
+                    "CREATE INDEX visits_doctor_date_idx ON visits (doctor_id, visit_date)");
+            if (TEXT_INDEX_ENABLED) {
+                textIndexAvailable = createTextIndexIfMissing(conn, stmt);
+            }
+
         } catch (SQLException e) {
             JOptionPane.showMessageDialog(null, "Database initialization failed: " + e.getMessage(),
                     "Database Error", JOptionPane.ERROR_MESSAGE);
         }
     }
+
+    public static boolean isTextIndexAvailable() {
+        return textIndexAvailable;
+    }
+
+    private static boolean indexExists(Connection conn, String table, String indexName) throws SQLException {
+        // approximate=true: Oracle would otherwise ANALYZE the table to answer
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(null, conn.getSchema(), table, false, true)) {
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean createIndexIfMissing(Connection conn, Statement stmt, String table, String indexName, String ddl) {
+        try {
+            if (!indexExists(conn, table, indexName)) {
+                stmt.execute(ddl);
+                System.out.println("Index " + indexName + " created successfully");
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error checking/creating index " + indexName + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean createTextIndexIfMissing(Connection conn, Statement stmt) {
+        try {
+            if (!indexExists(conn, "PATIENTS", "PATIENTS_NAME_TEXT_IDX")) {
+                // Substring-enabled wordlist so CONTAINS(name, '%term%') avoids a scan
+                stmt.execute("BEGIN "
+                        + "ctx_ddl.create_preference('hms_substring_wordlist', 'BASIC_WORDLIST'); "
+                        + "ctx_ddl.set_attribute('hms_substring_wordlist', 'SUBSTRING_INDEX', 'TRUE'); "
+                        + "END;");
+                stmt.execute("CREATE INDEX patients_name_text_idx ON patients (name) INDEXTYPE IS CTXSYS.CONTEXT "
+                        + "PARAMETERS ('WORDLIST hms_substring_wordlist SYNC (ON COMMIT)')");
+                System.out.println("Text index PATIENTS_NAME_TEXT_IDX created successfully");
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Oracle Text index unavailable, substring search will scan: " + e.getMessage());
+            return false;
+        }
+    }
 }
 
-class PatientDAO {
+// Oracle implementation of PatientRepository
+class PatientDAO implements PatientRepository {
+
+    private static final String COLUMNS = "id, name, age, gender, phone, address, blood_group";
+
+    // Most change-log rows one getPatientsChangedSince() call reads before asking for a reload instead
+    static final int MAX_CHANGES = Integer.getInteger("hms.changes.maxRows", 1000);
+    private static final String LOG_CHANGE_SQL = "INSERT INTO patient_changes (seq, patient_id, change_type, origin) "
+            + "VALUES (?, ?, ?, ?)";
+    // patient_changes.origin of the rows this process logs, so that it can tell its own writes from
+    // other workstations' when they come back through the change feed
+    static final String ORIGIN = UUID.randomUUID().toString().replace("-", "");
+
+    static final QueryTemplate.MapperFactory<Patient> PATIENT_MAPPER = rs -> {
+        int id = rs.findColumn("id");
+        int name = rs.findColumn("name");
+        int age = rs.findColumn("age");
+        int gender = rs.findColumn("gender");
+        int phone = rs.findColumn("phone");
+        int address = rs.findColumn("address");
+        int bloodGroup = rs.findColumn("blood_group");
+        return r -> new Patient(r.getInt(id), r.getString(name), r.getInt(age), r.getString(gender),
+                r.getString(phone), r.getString(address), r.getString(bloodGroup));
+    };
+
+    private static final QueryTemplate.BatchBinder<Patient> INSERT_BINDER = (ps, p) -> {
+        ps.setString(1, p.getName());
+        ps.setInt(2, p.getAge());
+        ps.setString(3, p.getGender());
+        ps.setString(4, p.getPhone());
+        ps.setString(5, p.getAddress());
+        ps.setString(6, p.getBloodGroup());
+    };
+
+    private static final QueryTemplate.BatchBinder<Patient> UPDATE_BINDER = (ps, p) -> {
+        INSERT_BINDER.bind(ps, p);
+        ps.setInt(7, p.getId());
+    };
+
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+    private PatientSearchPlanner searchPlanner;
+    private final List<PatientChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void addChangeListener(PatientChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(PatientChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    public void setSearchPlanner(PatientSearchPlanner searchPlanner) {
+        this.searchPlanner = searchPlanner;
+    }
+
+    @Override
+    public PatientSearchPlanner getSearchPlanner() {
+        if (searchPlanner == null) {
+            searchPlanner = new PatientSearchPlanner(DatabaseConfig.isTextIndexAvailable());
+        }
+        return searchPlanner;
+    }
 
-    public void addPatient(Patient p) throws SQLException {
+    // Returns the id generated for the new patient
+    @Override
+    public int addPatient(Patient p) throws SQLException {
         String sql = "INSERT INTO patients (name, age, gender, phone, address, blood_group) VALUES (?, ?, ?, ?, ?, ?)";
-        try (Connection conn = DatabaseConfig.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, p.getName());
-            ps.setInt(2, p.getAge());
-            ps.setString(3, p.getGender());
-            ps.setString(4, p.getPhone());
-            ps.setString(5, p.getAddress());
-            ps.setString(6, p.getBloodGroup());
-            ps.executeUpdate();
+        int id = DatabaseConfig.inTransaction(() -> {
+            int generated = template.insert(sql, "id", ps -> INSERT_BINDER.bind(ps, p));
+            logChange(generated, PatientChanges.INSERTED);
+            return generated;
+        });
+        Patient added = new Patient(id, p.getName(), p.getAge(), p.getGender(), p.getPhone(), p.getAddress(), p.getBloodGroup());
+        for (PatientChangeListener listener : changeListeners) {
+            listener.patientAdded(added);
         }
+        return id;
     }
 
+    @Override
     public void updatePatient(Patient p) throws SQLException {
         String sql = "UPDATE patients SET name=?, age=?, gender=?, phone=?, address=?, blood_group=? WHERE id=?";
-        try (Connection conn = DatabaseConfig.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, p.getName());
-            ps.setInt(2, p.getAge());
-            ps.setString(3, p.getGender());
-            ps.setString(4, p.getPhone());
-            ps.setString(5, p.getAddress());
-            ps.setString(6, p.getBloodGroup());
-            ps.setInt(7, p.getId());
-            ps.executeUpdate();
+        DatabaseConfig.inTransaction(() -> {
+            if (template.update(sql, ps -> UPDATE_BINDER.bind(ps, p)) == 0) {
+                // Deleted meanwhile: nothing to log or announce, as updatePatients() skips such rows
+                throw new SQLException("Patient " + p.getId() + " no longer exists");
+            }
+            logChange(p.getId(), PatientChanges.UPDATED);
+            return null;
+        });
+        for (PatientChangeListener listener : changeListeners) {
+            listener.patientUpdated(p);
         }
     }
 
-    public void deletePatient(int id) throws SQLException {
-        String sql = "DELETE FROM patients WHERE id=?";
-        try (Connection conn = DatabaseConfig.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            ps.executeUpdate();
+    // Inserts with JDBC batching on one connection, committing every commitInterval rows
+    @Override
+    public int addPatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException {
+        String sql = "INSERT INTO patients (name, age, gender, phone, address, blood_group) VALUES (?, ?, ?, ?, ?, ?)";
+        int count = template.batch(sql, patients, batchSize, commitInterval, INSERT_BINDER);
+        if (count > 0) {
+            // Batched inserts don't return their ids
+            logChange(0, PatientChanges.RELOAD);
+            for (PatientChangeListener listener : changeListeners) {
+                listener.patientsReloaded();
+            }
         }
+        return count;
     }
 
-    public List<Patient> getAllPatients() throws SQLException {
-        List<Patient> patients = new ArrayList<>();
-        String sql = "SELECT id, name, age, gender, phone, address, blood_group FROM patients ORDER BY id";
-        try (Connection conn = DatabaseConfig.getConnection(); Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                Patient p = new Patient(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getInt("age"),
-                        rs.getString("gender"),
-                        rs.getString("phone"),
-                        rs.getString("address"),
-                        rs.getString("blood_group")
-                );
-                patients.add(p);
+    @Override
+    public int updatePatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException {
+        String sql = "UPDATE patients SET name=?, age=?, gender=?, phone=?, address=?, blood_group=? WHERE id=?";
+        // Read once: the source need not be iterable twice
+        List<Patient> rows = new ArrayList<>();
+        patients.forEach(rows::add);
+        // A row whose id matched nothing was not updated, so it is neither logged nor announced
+        List<Patient> updated = new ArrayList<>(rows.size());
+        template.batch(sql, rows, batchSize, commitInterval, UPDATE_BINDER, (p, updateCount) -> {
+            if (updateCount != 0) {
+                updated.add(p);
             }
+        });
+        // Logged after the rows; only atomic with them when the caller runs inside DatabaseConfig.inTransaction()
+        List<Integer> updatedIds = new ArrayList<>(updated.size());
+        for (Patient p : updated) {
+            updatedIds.add(p.getId());
         }
-        return patients;
-    }
-
-    public List<Patient> searchPatients(String searchTerm) throws SQLException {
-        List<Patient> patients = new ArrayList<>();
-        String sql = "SELECT id, name, age, gender, phone, address, blood_group FROM patients "
-                + "WHERE LOWER(name) LIKE ? OR phone LIKE ? ORDER BY id";
-        try (Connection conn = DatabaseConfig.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            String term = "%" + searchTerm.toLowerCase() + "%";
-            ps.setString(1, term);
-            ps.setString(2, term);
-
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    Patient p = new Patient(
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getInt("age"),
-                            rs.getString("gender"),
-                            rs.getString("phone"),
-                            rs.getString("address"),
-                            rs.getString("blood_group")
-                    );
-                    patients.add(p);
-                }
+        logChanges(template, updatedIds, PatientChanges.UPDATED);
+        for (Patient p : updated) {
+            for (PatientChangeListener listener : changeListeners) {
+                listener.patientUpdated(p);
             }
         }
-        return patients;
+        return updated.size();
     }
 
-    public Patient getPatientById(int id) throws SQLException {
-        String sql = "SELECT id, name, age, gender, phone, address, blood_group FROM patients WHERE id = ?";
-        try (Connection conn = DatabaseConfig.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return new Patient(
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getInt("age"),
-                            rs.getString("gender"),
-                            rs.getString("phone"),
-                            rs.getString("address"),
-                            rs.getString("blood_group")
-                    );
-                }
+    @Override
+    public void deletePatient(int id) throws SQLException {
+        DatabaseConfig.inTransaction(() -> {
+            template.update("DELETE FROM patients WHERE id=?", ps -> ps.setInt(1, id));
+            logChange(id, PatientChanges.DELETED);
+            return null;
+        });
+        for (PatientChangeListener listener : changeListeners) {
+            listener.patientDeleted(id);
+        }
+    }
+
+    @Override
+    public List<Patient> getAllPatients() throws SQLException {
+        return template.query("SELECT " + COLUMNS + " FROM patients ORDER BY id", QueryTemplate.NO_PARAMS, PATIENT_MAPPER);
+    }
+
+    @Override
+    public int forEachPatient(int fetchSize, PatientHandler handler) throws SQLException {
+        return template.forEach("SELECT " + COLUMNS + " FROM patients ORDER BY id", QueryTemplate.NO_PARAMS,
+                fetchSize, PATIENT_MAPPER, handler::handle);
+    }
+
+    @Override
+    public List<Patient> searchPatients(SearchPlan plan) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM patients WHERE " + plan.getWhereClause() + " ORDER BY id";
+        return template.query(sql, ps -> {
+            String[] params = plan.getParams();
+            for (int i = 0; i < params.length; i++) {
+                ps.setString(i + 1, params[i]);
             }
+        }, PATIENT_MAPPER);
+    }
+
+    @Override
+    public int countPatients() throws SQLException {
+        return template.queryInt("SELECT COUNT(*) FROM patients", QueryTemplate.NO_PARAMS);
+    }
+
+    @Override
+    public PatientPage getPatientsPage(int afterId, int pageSize) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM patients WHERE id > ? ORDER BY id FETCH FIRST ? ROWS ONLY";
+        // Fetch one extra row to learn whether another page follows
+        return readPage(sql, ps -> {
+            ps.setInt(1, afterId);
+            ps.setInt(2, pageSize + 1);
+        }, pageSize);
+    }
+
+    @Override
+    public PatientPage getPatientsPageAt(int offset, int pageSize) throws SQLException {
+        String sql = "SELECT " + COLUMNS + " FROM patients ORDER BY id OFFSET ? ROWS FETCH NEXT ? ROWS ONLY";
+        return readPage(sql, ps -> {
+            ps.setInt(1, offset);
+            ps.setInt(2, pageSize + 1);
+        }, pageSize);
+    }
+
+    private PatientPage readPage(String sql, QueryTemplate.Binder binder, int pageSize) throws SQLException {
+        List<Patient> patients = new ArrayList<>(pageSize);
+        int read = template.forEach(sql, binder, pageSize + 1, PATIENT_MAPPER, p -> {
+            if (patients.size() == pageSize) {
+                return false;
+            }
+            patients.add(p);
+            return true;
+        });
+        return new PatientPage(patients, read > pageSize);
+    }
+
+    @Override
+    public Patient getPatientById(int id) throws SQLException {
+        return template.queryOne("SELECT " + COLUMNS + " FROM patients WHERE id = ?", ps -> ps.setInt(1, id), PATIENT_MAPPER);
+    }
+
+    private void logChange(int patientId, String changeType) throws SQLException {
+        logChanges(template, List.of(patientId), changeType);
+    }
+
+    // Appends change-log rows when the transaction commits. Taking their seq numbers locks the
+    // patient_change_seq row until then, so numbers are handed out in commit order: a reader that sees
+    // one has seen every smaller one, and a rollback hands its numbers back rather than leaving a gap.
+    static void logChanges(QueryTemplate template, Collection<Integer> patientIds, String changeType) throws SQLException {
+        if (patientIds.isEmpty()) {
+            return;
         }
-        return null;
+        DatabaseConfig.beforeCommit(() -> {
+            template.update("UPDATE patient_change_seq SET last_seq = last_seq + ?", ps -> ps.setInt(1, patientIds.size()));
+            long[] seq = {template.queryOne("SELECT last_seq FROM patient_change_seq", QueryTemplate.NO_PARAMS,
+                    rs -> r -> r.getLong(1)) - patientIds.size()};
+            return template.batch(LOG_CHANGE_SQL, patientIds, DEFAULT_BATCH_SIZE, Integer.MAX_VALUE, (ps, patientId) -> {
+                ps.setLong(1, ++seq[0]);
+                ps.setInt(2, patientId);
+                ps.setString(3, changeType);
+                ps.setString(4, ORIGIN);
+            });
+        });
+    }
+
+    @Override
+    public long getChangeToken() throws SQLException {
+        Long token = template.queryOne("SELECT MAX(seq) FROM patient_changes", QueryTemplate.NO_PARAMS, rs -> r -> r.getLong(1));
+        return token == null ? 0 : token;
+    }
+
+    // One statement, so both come from the same read-consistent view: a transaction adds or deletes the
+    // patient together with its change-log row, and the view has both or neither
+    @Override
+    public long[] getChangeTokenAndCount() throws SQLException {
+        return template.queryOne("SELECT (SELECT COALESCE(MAX(seq), 0) FROM patient_changes), COUNT(*) FROM patients",
+                QueryTemplate.NO_PARAMS, rs -> r -> new long[] {r.getLong(1), r.getLong(2)});
+    }
+
+    // One indexed range read of the log, joined to the current rows; deleted patients join to nulls.
+    // seq follows commit order (see logChanges()), so no write still in flight can later appear
+    // below a number this read returns, and the token can move past everything it read.
+    @Override
+    public PatientChanges getPatientsChangedSince(long token) throws SQLException {
+        String sql = "SELECT c.seq, c.patient_id, c.change_type, c.origin, "
+                + "p.id, p.name, p.age, p.gender, p.phone, p.address, p.blood_group "
+                + "FROM patient_changes c LEFT JOIN patients p ON p.id = c.patient_id "
+                + "WHERE c.seq > ? ORDER BY c.seq FETCH FIRST ? ROWS ONLY";
+        PatientChanges.Builder changes = new PatientChanges.Builder(token);
+        int read = template.forEach(sql, ps -> {
+            ps.setLong(1, token);
+            ps.setInt(2, MAX_CHANGES + 1);
+        }, MAX_CHANGES + 1, rs -> {
+            QueryTemplate.RowMapper<Patient> patient = PATIENT_MAPPER.forResultSet(rs);
+            // Rows are folded into the builder as they are mapped
+            return r -> {
+                changes.add(r.getLong(1), r.getInt(2), r.getString(3), r.getObject(5) == null ? null : patient.map(r),
+                        !ORIGIN.equals(r.getString(4)));
+                return true;
+            };
+        }, folded -> folded);
+        return read > MAX_CHANGES ? PatientChanges.reloadRequired(token) : changes.build();
     }
 }
 
-class VisitDAO {
-    public void addVisit(Visit v) throws SQLException {
-        String sql = "INSERT INTO visits (patient_id, visit_date, doctor, notes) VALUES (?, ?, ?, ?)";
-        try (Connection conn = DatabaseConfig.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, v.getPatientId());
-            ps.setDate(2, v.getVisitDate());
-            ps.setString(3, v.getDoctor());
-            ps.setString(4, v.getNotes());
-            ps.executeUpdate();
-        }
+// Oracle implementation of VisitRepository
+class VisitDAO implements VisitRepository {
+
+    // Oracle accepts at most 1000 expressions in an IN list
+    private static final int MAX_IN_LIST = 1000;
+
+    // The doctor's name comes from doctors; visits.doctor is only set on rows not migrated yet
+    private static final String COLUMNS = "v.id, v.patient_id, v.visit_date, v.doctor_id, "
+            + "COALESCE(d.name, v.doctor) AS doctor, v.notes";
+    private static final String FROM = " FROM visits v LEFT JOIN doctors d ON d.id = v.doctor_id";
+
+    private static final String INSERT_SQL = "INSERT INTO visits (patient_id, visit_date, doctor_id, notes) VALUES (?, ?, ?, ?)";
+
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+    private final DoctorDirectory doctors;
+    private final QueryTemplate.MapperFactory<Visit> visitMapper;
+
+    public VisitDAO(DoctorDirectory doctors) {
+        this.doctors = doctors;
+        this.visitMapper = visitMapper(doctors);
     }
-    public List<Visit> getVisitsForPatient(int patientId) throws SQLException {
-        List<Visit> visits = new ArrayList<>();
-        String sql = "SELECT id, patient_id, visit_date, doctor, notes FROM visits WHERE patient_id = ? ORDER BY visit_date DESC";
-        try (Connection conn = DatabaseConfig.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, patientId);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    visits.add(new Visit(
-                        rs.getInt("id"),
-                        rs.getInt("patient_id"),
-                        rs.getDate("visit_date"),
-                        rs.getString("doctor"),
-                        rs.getString("notes")
-                    ));
+
+    // Doctors are stored as doctor_id and decoded through the directory, so the rows of one doctor
+    // share its name
+    static QueryTemplate.MapperFactory<Visit> visitMapper(DoctorDirectory doctors) {
+        return rs -> {
+            int id = rs.findColumn("id");
+            int patientId = rs.findColumn("patient_id");
+            int visitDate = rs.findColumn("visit_date");
+            int doctorId = rs.findColumn("doctor_id");
+            int doctor = rs.findColumn("doctor");
+            int notes = rs.findColumn("notes");
+            return r -> {
+                int code = r.getInt(doctorId);
+                // Rows DoctorDAO.migrateVisitDoctors() has not reached yet still hold the name as typed
+                String name = r.wasNull() ? doctors.canonical(r.getString(doctor)) : doctors.intern(code, r.getString(doctor));
+                return new Visit(r.getInt(id), r.getInt(patientId), r.getDate(visitDate), name, r.getString(notes));
+            };
+        };
+    }
+
+    // Returns the id generated for the new visit
+    @Override
+    public int addVisit(Visit v) throws SQLException {
+        int doctorId = doctors.resolve(v.getDoctor()).getId();
+        return DatabaseConfig.inTransaction(() -> {
+            int id = template.insert(INSERT_SQL, "id", ps -> {
+                ps.setInt(1, v.getPatientId());
+                ps.setDate(2, v.getVisitDate());
+                ps.setInt(3, doctorId);
+                ps.setString(4, v.getNotes());
+            });
+            // Other workstations showing this patient's history pick the visit up from the change log
+            PatientDAO.logChanges(template, List.of(v.getPatientId()), PatientChanges.VISITS);
+            return id;
+        });
+    }
+
+    // Each commit interval is one transaction with its change-log rows, so a failure keeps only whole
+    // intervals. A commitInterval of at least the row count, as VisitBatch passes, writes all or nothing.
+    @Override
+    public int addVisits(Iterable<Visit> visits, int batchSize, int commitInterval) throws SQLException {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Batch size and commit interval must be positive");
+        }
+        // Read once: the source need not be iterable twice
+        List<Visit> rows = new ArrayList<>();
+        visits.forEach(rows::add);
+        // Each distinct doctor is resolved once, before the first row is written
+        Set<String> names = new LinkedHashSet<>();
+        for (Visit v : rows) {
+            names.add(v.getDoctor());
+        }
+        Map<String, Doctor> resolved = doctors.resolveAll(names);
+        int count = 0;
+        for (int from = 0; from < rows.size(); from += commitInterval) {
+            List<Visit> interval = rows.subList(from, (int) Math.min(rows.size(), (long) from + commitInterval));
+            count += DatabaseConfig.inTransaction(() -> {
+                Set<Integer> patientIds = new LinkedHashSet<>();
+                for (Visit v : interval) {
+                    patientIds.add(v.getPatientId());
                 }
+                int inserted = template.batch(INSERT_SQL, interval, batchSize, Integer.MAX_VALUE, (ps, v) -> {
+                    ps.setInt(1, v.getPatientId());
+                    ps.setDate(2, v.getVisitDate());
+                    ps.setInt(3, resolved.get(v.getDoctor()).getId());
+                    ps.setString(4, v.getNotes());
+                });
+                PatientDAO.logChanges(template, patientIds, PatientChanges.VISITS);
+                return inserted;
+            });
+        }
+        return count;
+    }
+
+    @Override
+    public VisitPage getVisitsPage(int patientId, Visit after, int pageSize) throws SQLException {
+        String sql = "SELECT " + COLUMNS + FROM + " WHERE v.patient_id = ? "
+                + (after == null ? "" : "AND (v.visit_date < ? OR (v.visit_date = ? AND v.id < ?)) ")
+                + "ORDER BY v.visit_date DESC, v.id DESC FETCH FIRST ? ROWS ONLY";
+        List<Visit> visits = new ArrayList<>(pageSize);
+        int read = template.forEach(sql, ps -> {
+            int i = 1;
+            ps.setInt(i++, patientId);
+            if (after != null) {
+                ps.setDate(i++, after.getVisitDate());
+                ps.setDate(i++, after.getVisitDate());
+                ps.setInt(i++, after.getId());
+            }
+            // One extra row tells whether another page follows
+            ps.setInt(i, pageSize + 1);
+        }, pageSize + 1, visitMapper, v -> {
+            if (visits.size() == pageSize) {
+                return false;
+            }
+            visits.add(v);
+            return true;
+        });
+        return new VisitPage(visits, read > pageSize);
+    }
+
+    // One round trip per 1000 ids
+    @Override
+    public Map<Integer, List<Visit>> getVisitsForPatients(Collection<Integer> patientIds) throws SQLException {
+        Map<Integer, List<Visit>> result = new LinkedHashMap<>();
+        for (Integer id : patientIds) {
+            result.put(id, new ArrayList<>());
+        }
+        List<Integer> ids = new ArrayList<>(result.keySet());
+        for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IN_LIST));
+            // Pad the IN list to a power of two by repeating the last id, so only a handful of
+            // distinct statements ever reach the statement cache
+            int slots = Math.min(MAX_IN_LIST, Math.max(8, Integer.highestOneBit(chunk.size() - 1) << 1));
+            StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + FROM + " WHERE v.patient_id IN (");
+            for (int i = 0; i < slots; i++) {
+                sql.append(i == 0 ? "?" : ",?");
             }
+            sql.append(") ORDER BY v.patient_id, v.visit_date DESC, v.id DESC");
+            template.forEach(sql.toString(), ps -> {
+                for (int i = 0; i < slots; i++) {
+                    ps.setInt(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+            }, 1000, visitMapper, v -> result.get(v.getPatientId()).add(v));
         }
-        return visits;
+        return result;
+    }
+
+    @Override
+    public List<Visit> getVisitsForPatient(int patientId) throws SQLException {
+        String sql = "SELECT " + COLUMNS + FROM + " WHERE v.patient_id = ? ORDER BY v.visit_date DESC";
+        return template.query(sql, ps -> ps.setInt(1, patientId), visitMapper);
+    }
+
+    @Override
+    public int forEachVisit(int fetchSize, VisitHandler handler) throws SQLException {
+        return template.forEach("SELECT " + COLUMNS + FROM + " ORDER BY v.id", QueryTemplate.NO_PARAMS,
+                fetchSize, visitMapper, handler::handle);
     }
 }
 
 // GUI Classes
 class PatientFormPanel extends JPanel {
 
+    private static final int VISIT_PAGE_SIZE = 50;
+
     private JTextField nameField;
     private JTextField ageField;
     private JComboBox<String> genderCombo;
@@ -310,14 +949,28 @@ class PatientFormPanel extends JPanel {
     private JButton clearButton;
     private JButton deleteButton;
     private JButton visitHistoryButton;
-    private VisitDAO visitDAO = new VisitDAO();
+    private VisitRepository visitDAO;
+    private AsyncVisitDAO asyncVisitDAO;
+    private DoctorDirectory doctors;
 
     private int currentPatientId = -1;
-    private PatientDAO patientDAO;
+    private PatientRepository patientDAO;
+    private AsyncPatientDAO asyncPatientDAO;
     private PatientTablePanel tablePanel;
-
-    public PatientFormPanel(PatientDAO patientDAO, PatientTablePanel tablePanel) {
+    private CompletableFuture<Patient> pendingLoad;
+    // Patient of the open Visit History dialog and how to refetch its rows; null while none is open
+    private int historyPatientId = -1;
+    private Runnable historyReload;
+    // Told the patient id of each visit added here
+    private IntConsumer visitAddedListener = patientId -> { };
+
+    public PatientFormPanel(PatientRepository patientDAO, VisitRepository visitDAO, DoctorDirectory doctors,
+                            PatientTablePanel tablePanel) {
         this.patientDAO = patientDAO;
+        this.asyncPatientDAO = new AsyncPatientDAO(patientDAO);
+        this.visitDAO = visitDAO;
+        this.asyncVisitDAO = new AsyncVisitDAO(visitDAO);
+        this.doctors = doctors;
         this.tablePanel = tablePanel;
 
         setLayout(new BorderLayout());
@@ -444,36 +1097,42 @@ class PatientFormPanel extends JPanel {
             return;
         }
 
-        try {
-            String name = nameField.getText().trim();
-            int age = Integer.parseInt(ageField.getText().trim());
-            String gender = genderCombo.getSelectedItem().toString();
-            String phone = phoneField.getText().trim();
-            String address = addressArea.getText().trim();
-            String bloodGroup = bloodGroupCombo.getSelectedItem().toString();
-
-            if (currentPatientId == -1) {
-                // Add new patient
-                Patient newPatient = new Patient(name, age, gender, phone, address, bloodGroup);
-                patientDAO.addPatient(newPatient);
-                JOptionPane.showMessageDialog(this, "Patient added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                // Update existing patient
-                Patient updatedPatient = new Patient(currentPatientId, name, age, gender, phone, address, bloodGroup);
-                patientDAO.updatePatient(updatedPatient);
-                JOptionPane.showMessageDialog(this, "Patient updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            }
-
-            clearForm();
-            tablePanel.refreshTable();
+        String name = nameField.getText().trim();
+        int age = Integer.parseInt(ageField.getText().trim());
+        String gender = genderCombo.getSelectedItem().toString();
+        String phone = phoneField.getText().trim();
+        String address = addressArea.getText().trim();
+        String bloodGroup = bloodGroupCombo.getSelectedItem().toString();
 
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Database error: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
+        CompletableFuture<?> save;
+        String successMessage;
+        if (currentPatientId == -1) {
+            // Add new patient
+            Patient newPatient = new Patient(name, age, gender, phone, address, bloodGroup);
+            save = asyncPatientDAO.addPatient(newPatient);
+            successMessage = "Patient added successfully!";
+        } else {
+            // Update existing patient
+            Patient updatedPatient = new Patient(currentPatientId, name, age, gender, phone, address, bloodGroup);
+            save = asyncPatientDAO.updatePatient(updatedPatient);
+            successMessage = "Patient updated successfully!";
         }
+
+        // Keep the form locked until the write lands so it cannot be submitted twice
+        actionButton.setEnabled(false);
+        save.whenCompleteAsync((result, error) -> {
+            actionButton.setEnabled(true);
+            if (error != null) {
+                Throwable cause = DatabaseExecutor.unwrap(error);
+                String prefix = cause instanceof SQLException ? "Database error: " : "Error: ";
+                JOptionPane.showMessageDialog(this, prefix + cause.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            JOptionPane.showMessageDialog(this, successMessage, "Success", JOptionPane.INFORMATION_MESSAGE);
+            clearForm();
+            tablePanel.refreshChanges();
+        }, DatabaseExecutor.EDT);
     }
 
     private void deletePatient() {
@@ -488,16 +1147,19 @@ class PatientFormPanel extends JPanel {
                 JOptionPane.WARNING_MESSAGE);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            try {
-                patientDAO.deletePatient(currentPatientId);
+            deleteButton.setEnabled(false);
+            asyncPatientDAO.deletePatient(currentPatientId).whenCompleteAsync((result, error) -> {
+                if (error != null) {
+                    deleteButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(this, "Error deleting patient: " + DatabaseExecutor.unwrap(error).getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
                 JOptionPane.showMessageDialog(this, "Patient deleted successfully!",
                         "Success", JOptionPane.INFORMATION_MESSAGE);
                 clearForm();
-                tablePanel.refreshTable();
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Error deleting patient: " + ex.getMessage(),
-                        "Database Error", JOptionPane.ERROR_MESSAGE);
-            }
+                tablePanel.refreshChanges();
+            }, DatabaseExecutor.EDT);
         }
     }
 
@@ -560,39 +1222,54 @@ class PatientFormPanel extends JPanel {
     }
 
     public void loadPatient(int patientId) {
-        try {
-            Patient patient = patientDAO.getPatientById(patientId);
-            if (patient != null) {
-                currentPatientId = patient.getId();
-                nameField.setText(patient.getName());
-                ageField.setText(String.valueOf(patient.getAge()));
-
-                // Set gender
-                for (int i = 0; i < genderCombo.getItemCount(); i++) {
-                    if (genderCombo.getItemAt(i).equals(patient.getGender())) {
-                        genderCombo.setSelectedIndex(i);
-                        break;
-                    }
-                }
+        // A later double-click wins over a load still in flight
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+        }
+        CompletableFuture<Patient> load = asyncPatientDAO.getPatientById(patientId);
+        pendingLoad = load;
+        load.whenCompleteAsync((patient, error) -> {
+            if (load != pendingLoad || DatabaseExecutor.isCancellation(error)) {
+                return;
+            }
+            pendingLoad = null;
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error loading patient: " + DatabaseExecutor.unwrap(error).getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            showPatient(patient);
+        }, DatabaseExecutor.EDT);
+    }
 
-                phoneField.setText(patient.getPhone());
-                addressArea.setText(patient.getAddress());
+    private void showPatient(Patient patient) {
+        if (patient != null) {
+            currentPatientId = patient.getId();
+            nameField.setText(patient.getName());
+            ageField.setText(String.valueOf(patient.getAge()));
 
-                // Set blood group
-                for (int i = 0; i < bloodGroupCombo.getItemCount(); i++) {
-                    if (bloodGroupCombo.getItemAt(i).equals(patient.getBloodGroup())) {
-                        bloodGroupCombo.setSelectedIndex(i);
-                        break;
-                    }
+            // Set gender
+            for (int i = 0; i < genderCombo.getItemCount(); i++) {
+                if (genderCombo.getItemAt(i).equals(patient.getGender())) {
+                    genderCombo.setSelectedIndex(i);
+                    break;
                 }
+            }
+
+            phoneField.setText(patient.getPhone());
+            addressArea.setText(patient.getAddress());
 
-                actionButton.setText("Update Patient");
-                deleteButton.setEnabled(true);
-                visitHistoryButton.setEnabled(true);
+            // Set blood group
+            for (int i = 0; i < bloodGroupCombo.getItemCount(); i++) {
+                if (bloodGroupCombo.getItemAt(i).equals(patient.getBloodGroup())) {
+                    bloodGroupCombo.setSelectedIndex(i);
+                    break;
+                }
             }
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error loading patient: " + ex.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
+
+            actionButton.setText("Update Patient");
+            deleteButton.setEnabled(true);
+            visitHistoryButton.setEnabled(true);
         }
     }
 
@@ -615,14 +1292,66 @@ class PatientFormPanel extends JPanel {
         JScrollPane scrollPane = new JScrollPane(table);
         dialog.add(scrollPane, BorderLayout.CENTER);
 
-        // Load visits
-        try {
-            for (Visit v : visitDAO.getVisitsForPatient(currentPatientId)) {
-                model.addRow(new Object[] { v.getVisitDate(), v.getDoctor(), v.getNotes() });
-            }
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Error loading visits: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        // Visits shown in the table, row for row; the last one is the cursor for the next page
+        List<Visit> shown = new ArrayList<>();
+        boolean[] hasMore = new boolean[1];
+        JButton loadMoreBtn = new JButton("Load More");
+        loadMoreBtn.setEnabled(false);
+        JPanel loadMorePanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        loadMorePanel.add(loadMoreBtn);
+        dialog.add(loadMorePanel, BorderLayout.NORTH);
+
+        // Load visits in the background one page at a time; the modal dialog keeps pumping events meanwhile
+        int patientId = currentPatientId;
+        // Bumped by a refetch, so pages requested before it are dropped
+        int[] generation = new int[1];
+        Runnable loadNextPage = () -> {
+            loadMoreBtn.setEnabled(false);
+            Visit after = shown.isEmpty() ? null : shown.get(shown.size() - 1);
+            int requested = generation[0];
+            asyncVisitDAO.getVisitsPage(patientId, after, VISIT_PAGE_SIZE).whenCompleteAsync((page, error) -> {
+                if (requested != generation[0]) {
+                    return;
+                }
+                if (error != null) {
+                    loadMoreBtn.setEnabled(hasMore[0]);
+                    JOptionPane.showMessageDialog(dialog, "Error loading visits: " + DatabaseExecutor.unwrap(error).getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                for (Visit visit : page.getVisits()) {
+                    shown.add(visit);
+                    model.addRow(toVisitRow(visit));
+                }
+                hasMore[0] = page.hasMore();
+                loadMoreBtn.setEnabled(page.hasMore());
+            }, DatabaseExecutor.EDT);
+        };
+        loadMoreBtn.addActionListener(ev -> loadNextPage.run());
+        loadNextPage.run();
+
+        // Visits added at any workstation; refetch as many rows as are shown so the list keeps its length
+        Runnable reloadShown = () -> {
+            int requested = ++generation[0];
+            asyncVisitDAO.getVisitsPage(patientId, null, Math.max(shown.size(), VISIT_PAGE_SIZE)).whenCompleteAsync((page, error) -> {
+                if (requested != generation[0]) {
+                    return;
+                }
+                if (error != null) {
+                    // Background refresh; the rows shown are still valid, just not the newest
+                    System.err.println("Could not refresh visits: " + DatabaseExecutor.unwrap(error).getMessage());
+                    loadMoreBtn.setEnabled(hasMore[0]);
+                    return;
+                }
+                shown.clear();
+                model.setRowCount(0);
+                for (Visit visit : page.getVisits()) {
+                    shown.add(visit);
+                    model.addRow(toVisitRow(visit));
+                }
+                hasMore[0] = page.hasMore();
+                loadMoreBtn.setEnabled(page.hasMore());
+            }, DatabaseExecutor.EDT);
+        };
 
         // Panel to add new visit
         JPanel addPanel = new JPanel(new GridBagLayout());
@@ -639,6 +1368,7 @@ class PatientFormPanel extends JPanel {
         addPanel.add(new JLabel("Doctor:"), gbc);
         gbc.gridx = 1;
         JTextField doctorField = new JTextField(15);
+        DoctorCompletion.install(doctorField, doctors);
         addPanel.add(doctorField, gbc);
         gbc.gridx = 0; gbc.gridy = 2;
         addPanel.add(new JLabel("Notes:"), gbc);
@@ -651,42 +1381,111 @@ class PatientFormPanel extends JPanel {
         dialog.add(addPanel, BorderLayout.SOUTH);
 
         addVisitBtn.addActionListener(ev -> {
+            java.sql.Date visitDate;
             try {
-                java.sql.Date visitDate = java.sql.Date.valueOf(dateField.getText().trim());
-                String doctor = doctorField.getText().trim();
-                String notes = notesField.getText().trim();
-                if (doctor.isEmpty()) {
-                    JOptionPane.showMessageDialog(dialog, "Doctor name required.", "Validation Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
-                Visit v = new Visit(currentPatientId, visitDate, doctor, notes);
-                visitDAO.addVisit(v);
-                model.setRowCount(0);
-                for (Visit visit : visitDAO.getVisitsForPatient(currentPatientId)) {
-                    model.addRow(new Object[] { visit.getVisitDate(), visit.getDoctor(), visit.getNotes() });
-                }
-                doctorField.setText("");
-                notesField.setText("");
-                JOptionPane.showMessageDialog(dialog, "Visit added!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            } catch (Exception ex) {
+                visitDate = java.sql.Date.valueOf(dateField.getText().trim());
+            } catch (IllegalArgumentException ex) {
                 JOptionPane.showMessageDialog(dialog, "Error adding visit: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
+            // Spelled as the doctor's earlier visits are, so they all file under one doctor
+            String doctor = doctors.canonical(doctorField.getText());
+            String notes = notesField.getText().trim();
+            if (doctor == null) {
+                JOptionPane.showMessageDialog(dialog, "Doctor name required.", "Validation Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            Visit v = new Visit(patientId, visitDate, doctor, notes);
+            addVisitBtn.setEnabled(false);
+            asyncVisitDAO.addVisit(v)
+                    .whenCompleteAsync((id, error) -> {
+                        addVisitBtn.setEnabled(true);
+                        if (error != null) {
+                            JOptionPane.showMessageDialog(dialog, "Error adding visit: " + DatabaseExecutor.unwrap(error).getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        // Insert the new visit in date order instead of reloading the history. It has the
+                        // highest id, so it goes before any visit on the same date. If it sorts past the
+                        // loaded rows it will arrive with a later page.
+                        Visit added = new Visit(id, patientId, visitDate, doctor, notes);
+                        int row = 0;
+                        while (row < shown.size() && shown.get(row).getVisitDate().after(visitDate)) {
+                            row++;
+                        }
+                        if (row < shown.size() || !hasMore[0]) {
+                            shown.add(row, added);
+                            model.insertRow(row, toVisitRow(added));
+                        }
+                        visitAddedListener.accept(patientId);
+                        doctorField.setText("");
+                        notesField.setText("");
+                        JOptionPane.showMessageDialog(dialog, "Visit added!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                    }, DatabaseExecutor.EDT);
         });
 
-        dialog.setVisible(true);
+        historyPatientId = patientId;
+        historyReload = reloadShown;
+        try {
+            dialog.setVisible(true);
+        } finally {
+            historyReload = null;
+            historyPatientId = -1;
+        }
+    }
+
+    public void setVisitAddedListener(IntConsumer listener) {
+        visitAddedListener = listener;
+    }
+
+    // Called on the EDT by the change feed; patientIds null means any patient's visits may have changed
+    public void visitsChanged(Set<Integer> patientIds) {
+        if (historyReload != null && (patientIds == null || patientIds.contains(historyPatientId))) {
+            historyReload.run();
+        }
+    }
+
+    private static Object[] toVisitRow(Visit visit) {
+        return new Object[] { visit.getVisitDate(), visit.getDoctor(), visit.getNotes() };
     }
 }
 
 class PatientTablePanel extends JPanel {
 
+    private static final int MAX_INDEX_RESULTS = 5000;
+    private static final int MAX_SUGGESTIONS = 50;
+    // Quiet period after the last keystroke before a search goes to the database
+    private static final int SEARCH_DEBOUNCE_MILLIS = 250;
+
     private JTable patientTable;
-    private DefaultTableModel tableModel;
-    private PatientDAO patientDAO;
+    private PatientPagedTableModel tableModel;
+    private PatientRepository patientDAO;
+    private AsyncPatientDAO asyncPatientDAO;
     private PatientFormPanel formPanel;
     private JTextField searchField;
-
-    public PatientTablePanel(PatientDAO patientDAO) {
+    // Says when the table shows close matches instead of search results
+    private JLabel searchNote;
+    private PatientSearchIndex searchIndex;
+    // The load (full refresh or search) whose result the table is waiting for
+    private CompletableFuture<List<Patient>> pendingLoad;
+    private Timer searchDebounce;
+    private String lastSearchTerm = "";
+    // Complete database result of the most recent search, reused while the term only narrows it
+    private SearchPlan cachedSearchPlan;
+    private List<Patient> cachedSearchResults;
+    // Column filters and header sorting; while either is set the table shows an in-memory snapshot
+    private JTextField minAgeField;
+    private JTextField maxAgeField;
+    private JComboBox<String> genderFilter;
+    private JComboBox<String> bloodGroupFilter;
+    private int sortColumn = -1;
+    private boolean sortDescending;
+    private String[] columnTitles;
+    // Set while clearFilters() resets the controls, whose listeners would each reload the table
+    private boolean clearingFilters;
+
+    public PatientTablePanel(PatientRepository patientDAO) {
         this.patientDAO = patientDAO;
+        this.asyncPatientDAO = new AsyncPatientDAO(patientDAO);
 
         setLayout(new BorderLayout());
         setBorder(BorderFactory.createTitledBorder("Patient List"));
@@ -695,6 +1494,7 @@ class PatientTablePanel extends JPanel {
         JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         searchPanel.add(new JLabel("Search:"));
         searchField = new JTextField(20);
+        searchField.setToolTipText("Part of a name, or a phone prefix; end with * to match only the start of the name");
         searchPanel.add(searchField);
 
         JButton searchButton = new JButton("Search");
@@ -704,20 +1504,42 @@ class PatientTablePanel extends JPanel {
         JButton resetButton = new JButton("Reset");
         resetButton.addActionListener(e -> {
             searchField.setText("");
+            searchDebounce.stop();
+            lastSearchTerm = "";
+            clearFilters();
             refreshTable();
         });
         searchPanel.add(resetButton);
 
-        add(searchPanel, BorderLayout.NORTH);
-
-        // Table
-        String[] columnNames = {"ID", "Name", "Age", "Gender", "Phone", "Blood Group", "Address"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Make table non-editable
-            }
-        };
+        searchNote = new JLabel();
+        searchPanel.add(searchNote);
+
+        // Filter panel; changes apply at once, age bounds on Enter
+        JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(new JLabel("Age:"));
+        minAgeField = new JTextField(3);
+        filterPanel.add(minAgeField);
+        filterPanel.add(new JLabel("to"));
+        maxAgeField = new JTextField(3);
+        filterPanel.add(maxAgeField);
+        filterPanel.add(new JLabel("Gender:"));
+        genderFilter = new JComboBox<>(new String[] {"Any", "M", "F", "O"});
+        filterPanel.add(genderFilter);
+        filterPanel.add(new JLabel("Blood Group:"));
+        bloodGroupFilter = new JComboBox<>(new String[] {"Any", "A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-"});
+        filterPanel.add(bloodGroupFilter);
+        minAgeField.addActionListener(e -> filterChanged());
+        maxAgeField.addActionListener(e -> filterChanged());
+        genderFilter.addActionListener(e -> filterChanged());
+        bloodGroupFilter.addActionListener(e -> filterChanged());
+
+        JPanel controlPanel = new JPanel(new GridLayout(2, 1));
+        controlPanel.add(searchPanel);
+        controlPanel.add(filterPanel);
+        add(controlPanel, BorderLayout.NORTH);
+
+        // Table; rows are paged in from the database as they scroll into view
+        tableModel = new PatientPagedTableModel(asyncPatientDAO);
 
         patientTable = new JTable(tableModel);
         patientTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -732,6 +1554,25 @@ class PatientTablePanel extends JPanel {
         patientTable.getColumnModel().getColumn(5).setPreferredWidth(100); // Blood Group
         patientTable.getColumnModel().getColumn(6).setPreferredWidth(200); // Address
 
+        // Clicking a header sorts by that column; clicking it again reverses the order
+        columnTitles = new String[tableModel.getColumnCount()];
+        for (int column = 0; column < columnTitles.length; column++) {
+            columnTitles[column] = tableModel.getColumnName(column);
+        }
+        patientTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = patientTable.columnAtPoint(e.getPoint());
+                if (column < 0) {
+                    return;
+                }
+                sortDescending = column == sortColumn && !sortDescending;
+                sortColumn = column;
+                showSortHeader();
+                filterChanged();
+            }
+        });
+
         JScrollPane scrollPane = new JScrollPane(patientTable);
         add(scrollPane, BorderLayout.CENTER);
 
@@ -740,12 +1581,9 @@ class PatientTablePanel extends JPanel {
             @Override
             public void mouseClicked(MouseEvent e) {
                 if (e.getClickCount() == 2) { // Double click
-                    int selectedRow = patientTable.getSelectedRow();
-                    if (selectedRow != -1) {
-                        int patientId = (int) tableModel.getValueAt(selectedRow, 0);
-                        if (formPanel != null) {
-                            formPanel.loadPatient(patientId);
-                        }
+                    Patient selected = getSelectedPatient();
+                    if (selected != null && formPanel != null) {
+                        formPanel.loadPatient(selected.getId());
                     }
                 }
             }
@@ -756,15 +1594,34 @@ class PatientTablePanel extends JPanel {
             @Override
             public void keyPressed(KeyEvent e) {
                 if (e.getKeyCode() == KeyEvent.VK_DELETE) {
-                    int selectedRow = patientTable.getSelectedRow();
-                    if (selectedRow != -1) {
-                        int patientId = (int) tableModel.getValueAt(selectedRow, 0);
-                        deletePatient(patientId);
+                    Patient selected = getSelectedPatient();
+                    if (selected != null) {
+                        deletePatient(selected.getId());
                     }
                 }
             }
         });
 
+        // Search as you type: refine cached results at once, otherwise query after a pause in typing
+        searchDebounce = new Timer(SEARCH_DEBOUNCE_MILLIS, e -> searchPatients());
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                onSearchTextChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                onSearchTextChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Attribute changes only
+            }
+        });
+
         // Add search field key listener
         searchField.addKeyListener(new KeyAdapter() {
             @Override
@@ -780,56 +1637,242 @@ class PatientTablePanel extends JPanel {
         this.formPanel = formPanel;
     }
 
+    // Searches are answered from the in-memory index once it has finished building
+    public void setSearchIndex(PatientSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    private Patient getSelectedPatient() {
+        int selectedRow = patientTable.getSelectedRow();
+        return selectedRow == -1 ? null : tableModel.getPatientAt(selectedRow);
+    }
+
     public void refreshTable() {
-        tableModel.setRowCount(0); // Clear table
+        // Patient data may have changed, so cached search results can no longer be refined
+        cachedSearchPlan = null;
+        cachedSearchResults = null;
+        if (isFiltered()) {
+            tableModel.discardSnapshot();
+            showFiltered();
+            return;
+        }
+        cancelPendingLoad();
+        tableModel.reload().whenCompleteAsync((count, error) -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error loading patients: " + DatabaseExecutor.unwrap(error).getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }, DatabaseExecutor.EDT);
+    }
+
+    // After a save: patches the rows that changed instead of reloading the table
+    public void refreshChanges() {
+        // Cached search results may hold the old rows
+        cachedSearchPlan = null;
+        cachedSearchResults = null;
+        tableModel.refreshChanges().whenCompleteAsync((result, error) -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error loading patients: " + DatabaseExecutor.unwrap(error).getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }, DatabaseExecutor.EDT);
+    }
+
+    // Also before the table shows rows that are not a search result
+    private void cancelPendingLoad() {
+        searchNote.setText(null);
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+            pendingLoad = null;
+            setCursor(Cursor.getDefaultCursor());
+        }
+    }
+
+    private void clearFilters() {
+        clearingFilters = true;
+        minAgeField.setText("");
+        maxAgeField.setText("");
+        genderFilter.setSelectedIndex(0);
+        bloodGroupFilter.setSelectedIndex(0);
+        clearingFilters = false;
+        sortColumn = -1;
+        sortDescending = false;
+        showSortHeader();
+    }
+
+    private void showSortHeader() {
+        for (int column = 0; column < columnTitles.length; column++) {
+            String arrow = column != sortColumn ? "" : sortDescending ? " \u25BC" : " \u25B2";
+            patientTable.getColumnModel().getColumn(column).setHeaderValue(columnTitles[column] + arrow);
+        }
+        patientTable.getTableHeader().repaint();
+    }
+
+    private boolean isFiltered() {
+        return sortColumn >= 0 || !minAgeField.getText().trim().isEmpty() || !maxAgeField.getText().trim().isEmpty()
+                || genderFilter.getSelectedIndex() > 0 || bloodGroupFilter.getSelectedIndex() > 0;
+    }
 
+    private void filterChanged() {
+        if (clearingFilters) {
+            return;
+        }
+        if (isFiltered()) {
+            showFiltered();
+        } else {
+            // Back to the paged listing, or to a plain search
+            lastSearchTerm = "";
+            searchPatients();
+        }
+    }
+
+    // Filters and sorts the snapshot of the whole table; the search term, if any, is one more filter
+    private void showFiltered() {
+        int minAge;
+        int maxAge;
         try {
-            List<Patient> patients = patientDAO.getAllPatients();
-            for (Patient p : patients) {
-                Object[] rowData = {
-                    p.getId(),
-                    p.getName(),
-                    p.getAge(),
-                    p.getGender(),
-                    p.getPhone(),
-                    p.getBloodGroup(),
-                    p.getAddress()
-                };
-                tableModel.addRow(rowData);
+            minAge = parseAge(minAgeField, 0);
+            maxAge = parseAge(maxAgeField, Integer.MAX_VALUE);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Age must be a whole number", "Validation Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String searchTerm = searchField.getText().trim();
+        lastSearchTerm = searchTerm;
+        SearchPlan plan = searchTerm.isEmpty() ? null : patientDAO.getSearchPlanner().plan(searchTerm);
+        PatientSnapshot.Filter filter = new PatientSnapshot.Filter(minAge, maxAge, selected(genderFilter),
+                selected(bloodGroupFilter), plan);
+        cancelPendingLoad();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        tableModel.showSnapshot(filter, sortColumn, sortDescending).whenCompleteAsync((count, error) -> {
+            setCursor(Cursor.getDefaultCursor());
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error filtering patients: " + DatabaseExecutor.unwrap(error).getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
             }
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error loading patients: " + ex.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
+        }, DatabaseExecutor.EDT);
+    }
+
+    private static int parseAge(JTextField field, int blank) {
+        String text = field.getText().trim();
+        return text.isEmpty() ? blank : Integer.parseInt(text);
+    }
+
+    private static String[] selected(JComboBox<String> filter) {
+        return filter.getSelectedIndex() > 0 ? new String[] {(String) filter.getSelectedItem()} : null;
+    }
+
+    private void onSearchTextChanged() {
+        String searchTerm = searchField.getText().trim();
+        if (searchTerm.equals(lastSearchTerm)) {
+            return;
+        }
+        // A filtered table is searched in memory
+        if (isFiltered()) {
+            searchDebounce.stop();
+            showFiltered();
+            return;
         }
+        // Cached results answer without a round trip or a scan, so there is nothing to debounce. The
+        // index is debounced like the database: a short term scans every patient.
+        if (!searchTerm.isEmpty() && !isSearchIndexReady() && refineCachedSearch(searchTerm)) {
+            searchDebounce.stop();
+            return;
+        }
+        searchDebounce.restart();
     }
 
     private void searchPatients() {
+        searchDebounce.stop();
         String searchTerm = searchField.getText().trim();
+        lastSearchTerm = searchTerm;
+        if (isFiltered()) {
+            showFiltered();
+            return;
+        }
         if (searchTerm.isEmpty()) {
             refreshTable();
             return;
         }
 
-        tableModel.setRowCount(0); // Clear table
+        if (isSearchIndexReady()) {
+            SearchPlan plan = patientDAO.getSearchPlanner().plan(searchTerm);
+            // Off the EDT; load() drops the result if a newer search replaces it meanwhile. With no
+            // exact match the index offers close matches by address or misspelt name instead.
+            AtomicBoolean suggested = new AtomicBoolean();
+            load(CompletableFuture.supplyAsync(() -> {
+                List<Patient> found = searchIndex.search(plan, MAX_INDEX_RESULTS);
+                if (!found.isEmpty()) {
+                    return found;
+                }
+                suggested.set(true);
+                return searchIndex.suggest(searchTerm, MAX_SUGGESTIONS);
+            }), "Error searching patients: ", () -> suggested.get() ? "No exact matches; showing close matches" : null);
+            return;
+        }
+        if (refineCachedSearch(searchTerm)) {
+            return;
+        }
+        SearchPlan plan = patientDAO.getSearchPlanner().plan(searchTerm);
+        CompletableFuture<List<Patient>> search = asyncPatientDAO.searchPatients(plan);
+        search.thenAcceptAsync(results -> {
+            cachedSearchPlan = plan;
+            cachedSearchResults = results;
+        }, DatabaseExecutor.EDT);
+        load(search, "Error searching patients: ");
+    }
 
-        try {
-            List<Patient> patients = patientDAO.searchPatients(searchTerm);
-            for (Patient p : patients) {
-                Object[] rowData = {
-                    p.getId(),
-                    p.getName(),
-                    p.getAge(),
-                    p.getGender(),
-                    p.getPhone(),
-                    p.getBloodGroup(),
-                    p.getAddress()
-                };
-                tableModel.addRow(rowData);
+    private boolean isSearchIndexReady() {
+        return searchIndex != null && searchIndex.isReady();
+    }
+
+    // Shows the results for a term that narrows the cached search by filtering them in memory
+    private boolean refineCachedSearch(String searchTerm) {
+        if (cachedSearchPlan == null) {
+            return false;
+        }
+        SearchPlan plan = patientDAO.getSearchPlanner().plan(searchTerm);
+        if (!cachedSearchPlan.canRefine(plan)) {
+            return false;
+        }
+        List<Patient> refined = new ArrayList<>();
+        for (Patient p : cachedSearchResults) {
+            if (plan.matches(p)) {
+                refined.add(p);
             }
-        } catch (SQLException ex) {
-            JOptionPane.showMessageDialog(this, "Error searching patients: " + ex.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
         }
+        lastSearchTerm = searchTerm;
+        load(CompletableFuture.completedFuture(refined), "Error searching patients: ");
+        return true;
+    }
+
+    // Shows the result of the given search unless a newer refresh or search replaces it first
+    private void load(CompletableFuture<List<Patient>> load, String errorPrefix) {
+        load(load, errorPrefix, () -> null);
+    }
+
+    // note is read once the rows are shown, for the text beside the search field
+    private void load(CompletableFuture<List<Patient>> load, String errorPrefix, Supplier<String> note) {
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+        }
+        pendingLoad = load;
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        load.whenCompleteAsync((patients, error) -> {
+            if (load != pendingLoad || DatabaseExecutor.isCancellation(error)) {
+                return;
+            }
+            pendingLoad = null;
+            setCursor(Cursor.getDefaultCursor());
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, errorPrefix + DatabaseExecutor.unwrap(error).getMessage(),
+                        "Database Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            tableModel.showPatients(patients);
+            searchNote.setText(note.get());
+        }, DatabaseExecutor.EDT);
     }
 
     private void deletePatient(int patientId) {
@@ -840,18 +1883,19 @@ class PatientTablePanel extends JPanel {
                 JOptionPane.WARNING_MESSAGE);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            try {
-                patientDAO.deletePatient(patientId);
+            asyncPatientDAO.deletePatient(patientId).whenCompleteAsync((result, error) -> {
+                if (error != null) {
+                    JOptionPane.showMessageDialog(this, "Error deleting patient: " + DatabaseExecutor.unwrap(error).getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
                 JOptionPane.showMessageDialog(this, "Patient deleted successfully!",
                         "Success", JOptionPane.INFORMATION_MESSAGE);
-                refreshTable();
+                refreshChanges();
                 if (formPanel != null) {
                     formPanel.clearForm();
                 }
-            } catch (SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Error deleting patient: " + ex.getMessage(),
-                        "Database Error", JOptionPane.ERROR_MESSAGE);
-            }
+            }, DatabaseExecutor.EDT);
         }
     }
 }
@@ -859,6 +1903,7 @@ class PatientTablePanel extends JPanel {
 class StatusBar extends JPanel {
 
     private JLabel statusLabel;
+    private JLabel pendingLabel;
     private JLabel timeLabel;
 
     public StatusBar() {
@@ -869,6 +1914,9 @@ class StatusBar extends JPanel {
         statusLabel = new JLabel(" Ready");
         add(statusLabel, BorderLayout.WEST);
 
+        pendingLabel = new JLabel("", SwingConstants.RIGHT);
+        add(pendingLabel, BorderLayout.CENTER);
+
         timeLabel = new JLabel();
         add(timeLabel, BorderLayout.EAST);
 
@@ -882,6 +1930,11 @@ class StatusBar extends JPanel {
         statusLabel.setText(" " + status);
     }
 
+    // Writes queued locally and not yet in the database; hidden when there are none
+    public void setPendingWrites(int count) {
+        pendingLabel.setText(count == 0 ? "" : count + " pending write" + (count == 1 ? "" : "s") + "   ");
+    }
+
     private void updateTime() {
         timeLabel.setText(new java.util.Date().toString() + " ");
     }
@@ -890,10 +1943,13 @@ class StatusBar extends JPanel {
 // Main Application
 public class HospitalManagementSystem extends JFrame {
 
-    private PatientDAO patientDAO;
+    private Storage storage;
+    private PatientRepository patientDAO;
     private PatientFormPanel formPanel;
     private PatientTablePanel tablePanel;
     private StatusBar statusBar;
+    private DiagnosticsPanel diagnosticsPanel;
+    private PatientAnalytics analytics;
 
     public HospitalManagementSystem() {
         try {
@@ -914,15 +1970,18 @@ public class HospitalManagementSystem extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
 
-        // Initialize database
+        // Initialize storage (Oracle unless -Dhms.storage=embedded)
         try {
-            Class.forName("oracle.jdbc.driver.OracleDriver");
-            DatabaseConfig.initializeDatabase();
-            patientDAO = new PatientDAO();
+            storage = Storage.open();
+            patientDAO = storage.getPatients();
         } catch (ClassNotFoundException e) {
             JOptionPane.showMessageDialog(this, "Oracle JDBC Driver not found. Include it in your library path.",
                     "Driver Error", JOptionPane.ERROR_MESSAGE);
             System.exit(1);
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Could not open local data file: " + e.getMessage(),
+                    "Storage Error", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
         }
 
         // Create menu bar
@@ -934,17 +1993,102 @@ public class HospitalManagementSystem extends JFrame {
 
         // Create form panel (left side)
         tablePanel = new PatientTablePanel(patientDAO);
-        formPanel = new PatientFormPanel(patientDAO, tablePanel);
+        formPanel = new PatientFormPanel(patientDAO, storage.getVisits(), storage.getDoctors(), tablePanel);
         tablePanel.setFormPanel(formPanel);
 
         splitPane.setLeftComponent(formPanel);
         splitPane.setRightComponent(tablePanel);
 
-        add(splitPane, BorderLayout.CENTER);
+        // Statistics on a second tab, computed the first time it is opened
+        analytics = storage.openAnalytics();
+        formPanel.setVisitAddedListener(analytics::visitsAdded);
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Patients", splitPane);
+        tabs.addTab("Dashboard", new AnalyticsPanel(analytics));
+        AppointmentScheduler scheduler = storage.openScheduler();
+        if (scheduler != null) {
+            tabs.addTab("Appointments", new AppointmentPanel(scheduler));
+        }
+
+        add(tabs, BorderLayout.CENTER);
 
-        // Create status bar
+        // Create status bar, with the diagnostics panel above it when shown
         statusBar = new StatusBar();
-        add(statusBar, BorderLayout.SOUTH);
+        diagnosticsPanel = new DiagnosticsPanel();
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(diagnosticsPanel, BorderLayout.CENTER);
+        southPanel.add(statusBar, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
+        Metrics.start();
+
+        OfflineSync offlineSync = storage.getOfflineSync();
+        if (offlineSync != null) {
+            boolean[] wasOffline = {offlineSync.isOffline()};
+            int[] lastPending = {offlineSync.getPendingWriteCount()};
+            offlineSync.addStatusListener((offline, pendingWrites) -> DatabaseExecutor.EDT.execute(() -> {
+                statusBar.setPendingWrites(pendingWrites);
+                if (offline && !wasOffline[0]) {
+                    statusBar.setStatus("Working offline - changes are kept locally until the database is back");
+                } else if (!offline && wasOffline[0]) {
+                    statusBar.setStatus("Connected to the database");
+                }
+                // Queued writes are now visible in the database, new patients under their final ids.
+                // Rows shown while offline came from the local copy, which has no change log to follow.
+                if (!offline && wasOffline[0]) {
+                    tablePanel.refreshTable();
+                } else if (!offline && pendingWrites < lastPending[0]) {
+                    tablePanel.refreshChanges();
+                }
+                wasOffline[0] = offline;
+                lastPending[0] = pendingWrites;
+            }));
+            statusBar.setPendingWrites(lastPending[0]);
+            if (offlineSync.isOffline()) {
+                statusBar.setStatus("Working offline - database unreachable");
+            }
+        }
+
+        // Optional in-memory search index, built in the background and kept current by DAO writes
+        if (Boolean.getBoolean("hms.search.memoryIndex")) {
+            PatientSearchIndex searchIndex = new PatientSearchIndex();
+            patientDAO.addChangeListener(searchIndex);
+            if (storage.getChangeFeed() != null) {
+                storage.getChangeFeed().addListener(changes -> changes.notify(searchIndex));
+            }
+            tablePanel.setSearchIndex(searchIndex);
+            statusBar.setStatus("Building search index...");
+            DatabaseExecutor.run(() -> searchIndex.rebuild(patientDAO)).whenCompleteAsync((result, error) -> {
+                if (error != null) {
+                    statusBar.setStatus("Search index unavailable: " + DatabaseExecutor.unwrap(error).getMessage());
+                } else {
+                    statusBar.setStatus("Search index ready (" + searchIndex.size() + " patients)");
+                }
+            }, DatabaseExecutor.EDT);
+        }
+
+        // Writes from every workstation, this one's included, arrive through the change feed. Visits
+        // added here are already in the history the visit dialog showed them in.
+        PatientChangeFeed changeFeed = storage.getChangeFeed();
+        if (changeFeed != null) {
+            changeFeed.addListener(changes -> DatabaseExecutor.EDT.execute(() -> {
+                Set<Integer> remoteVisits = changes.getRemoteVisitPatientIds();
+                if (changes.isReloadRequired() || !remoteVisits.isEmpty()) {
+                    formPanel.visitsChanged(changes.isReloadRequired() ? null : remoteVisits);
+                }
+                if (changes.hasPatientChanges()) {
+                    tablePanel.refreshChanges();
+                }
+            }));
+            changeFeed.start();
+        }
+
+        // Doctor names for the visit dialog's autocomplete; the first start on an older database also
+        // moves typed visit doctors over to doctor ids
+        DatabaseExecutor.run(storage::loadDoctors).whenComplete((result, error) -> {
+            if (error != null) {
+                System.err.println("Could not load doctors: " + DatabaseExecutor.unwrap(error).getMessage());
+            }
+        });
 
         // Load initial data
         tablePanel.refreshTable();
@@ -964,6 +2108,8 @@ public class HospitalManagementSystem extends JFrame {
         JMenuItem refreshItem = new JMenuItem("Refresh Data");
         refreshItem.setMnemonic(KeyEvent.VK_R);
         refreshItem.addActionListener(e -> {
+            // Other workstations may have edited patients this client has cached
+            storage.invalidateCaches();
             tablePanel.refreshTable();
             statusBar.setStatus("Data refreshed");
         });
@@ -973,6 +2119,11 @@ public class HospitalManagementSystem extends JFrame {
         exportItem.addActionListener(e -> exportPatientsToCSV());
         fileMenu.add(exportItem);
 
+        JMenuItem importItem = new JMenuItem("Import from CSV");
+        importItem.setMnemonic(KeyEvent.VK_I);
+        importItem.addActionListener(e -> importPatientsFromCSV());
+        fileMenu.add(importItem);
+
         JMenuItem exitItem = new JMenuItem("Exit");
         exitItem.setMnemonic(KeyEvent.VK_X);
         exitItem.addActionListener(e -> System.exit(0));
@@ -992,7 +2143,16 @@ public class HospitalManagementSystem extends JFrame {
             statusBar.setStatus("Ready to add new patient");
         });
 
+        // Many visits at once, for a clinic session
+        JMenuItem recordVisitsItem = new JMenuItem("Record Visits...");
+        recordVisitsItem.setMnemonic(KeyEvent.VK_V);
+        recordVisitsItem.addActionListener(e -> {
+            VisitBatch batch = new VisitBatch(patientDAO, storage.getVisits(), storage.getDoctors());
+            new VisitBatchDialog(this, batch, storage.getDoctors(), analytics::visitsAdded).setVisible(true);
+        });
+
         patientMenu.add(addItem);
+        patientMenu.add(recordVisitsItem);
 
         // Help menu
         JMenu helpMenu = new JMenu("Help");
@@ -1007,6 +2167,14 @@ public class HospitalManagementSystem extends JFrame {
                     "About", JOptionPane.INFORMATION_MESSAGE);
         });
 
+        JCheckBoxMenuItem diagnosticsItem = new JCheckBoxMenuItem("Diagnostics");
+        diagnosticsItem.setMnemonic(KeyEvent.VK_D);
+        diagnosticsItem.addActionListener(e -> {
+            diagnosticsPanel.setVisible(diagnosticsItem.isSelected());
+            revalidate();
+        });
+
+        helpMenu.add(diagnosticsItem);
         helpMenu.add(aboutItem);
 
         menuBar.add(fileMenu);
@@ -1026,47 +2194,98 @@ public class HospitalManagementSystem extends JFrame {
             if (!filePath.toLowerCase().endsWith(".csv")) {
                 filePath += ".csv";
             }
-            try (FileWriter writer = new FileWriter(filePath)) {
-                writer.write("ID,Name,Age,Gender,Phone,Blood Group,Address\n");
-                for (Patient p : patientDAO.getAllPatients()) {
-                    writer.write(String.format("%d,%s,%d,%s,%s,%s,%s\n",
-                        p.getId(),
-                        escapeCsv(p.getName()),
-                        p.getAge(),
-                        escapeCsv(p.getGender()),
-                        escapeCsv(p.getPhone()),
-                        escapeCsv(p.getBloodGroup()),
-                        escapeCsv(p.getAddress())
-                    ));
+            Path target = Paths.get(filePath);
+            PatientCsvExporter exporter = new PatientCsvExporter(patientDAO);
+            ProgressDialog progress = new ProgressDialog(this, "Exporting to " + target.getFileName(), exporter::cancel);
+            progress.setNote("Exporting patients...");
+            progress.setVisible(true);
+            statusBar.setStatus("Exporting patients...");
+
+            // Stream the export on a background thread; the window stays usable meanwhile
+            Thread worker = new Thread(() -> {
+                long rows = 0;
+                Exception failure = null;
+                try {
+                    rows = exporter.export(target, (written, total) -> SwingUtilities.invokeLater(() -> {
+                        progress.setPercent((int) (written * 100 / Math.max(1, total)));
+                        progress.setNote("Exported " + written + " of " + total + " patients");
+                    }));
+                } catch (IOException | SQLException ex) {
+                    failure = ex;
                 }
-                JOptionPane.showMessageDialog(this, "Patients exported successfully!", "Export Complete", JOptionPane.INFORMATION_MESSAGE);
-                statusBar.setStatus("Patients exported to CSV");
-            } catch (IOException | SQLException ex) {
-                JOptionPane.showMessageDialog(this, "Error exporting patients: " + ex.getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
-            }
+                long finalRows = rows;
+                Exception finalFailure = failure;
+                SwingUtilities.invokeLater(() -> {
+                    progress.dispose();
+                    if (finalFailure != null) {
+                        statusBar.setStatus("Export failed");
+                        JOptionPane.showMessageDialog(this, "Error exporting patients: " + finalFailure.getMessage(), "Export Error", JOptionPane.ERROR_MESSAGE);
+                    } else if (exporter.isCancelled()) {
+                        statusBar.setStatus("Export cancelled");
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Patients exported successfully!", "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+                        statusBar.setStatus(finalRows + " patients exported to CSV");
+                    }
+                });
+            }, "csv-export");
+            worker.setDaemon(true);
+            worker.start();
         }
     }
 
-    private String escapeCsv(String value) {
-        if (value == null) return "";
-        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
-            value = value.replace("\"", "\"\"");
-            return '"' + value + '"';
+    private void importPatientsFromCSV() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import Patients from CSV");
+        fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files", "csv"));
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
-        return value;
+        Path source = fileChooser.getSelectedFile().toPath();
+        String baseName = source.getFileName().toString().replaceFirst("(?i)\\.csv$", "");
+        Path rejected = source.resolveSibling(baseName + ".rejected.csv");
+
+        PatientCsvImporter importer = new PatientCsvImporter(patientDAO);
+        ProgressDialog progress = new ProgressDialog(this, "Importing " + source.getFileName(), importer::cancel);
+        progress.setNote("Reading " + source.getFileName() + "...");
+        progress.setVisible(true);
+        statusBar.setStatus("Importing patients...");
+
+        Thread worker = new Thread(() -> {
+            PatientCsvImporter.Result result = null;
+            Exception failure = null;
+            try {
+                result = importer.importFile(source, rejected, (read, imported, rejectedRows) ->
+                        SwingUtilities.invokeLater(() -> progress.setNote(
+                                "Read " + read + ", imported " + imported + ", rejected " + rejectedRows)));
+            } catch (Exception ex) {
+                failure = ex;
+            }
+            PatientCsvImporter.Result finalResult = result;
+            Exception finalFailure = failure;
+            SwingUtilities.invokeLater(() -> {
+                progress.dispose();
+                tablePanel.refreshTable();
+                if (finalFailure != null) {
+                    statusBar.setStatus("Import failed");
+                    JOptionPane.showMessageDialog(this, "Error importing patients: " + finalFailure.getMessage(),
+                            "Import Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                String summary = finalResult.rowsImported + " patients imported, " + finalResult.rowsRejected + " rejected";
+                statusBar.setStatus((finalResult.cancelled ? "Import cancelled: " : "Import complete: ") + summary);
+                JOptionPane.showMessageDialog(this, summary
+                        + (finalResult.rowsRejected > 0 ? "\nRejected rows were written to " + rejected : ""),
+                        finalResult.cancelled ? "Import Cancelled" : "Import Complete", JOptionPane.INFORMATION_MESSAGE);
+            });
+        }, "csv-import");
+        worker.setDaemon(true);
+        worker.start();
     }
 
     public static void main(String[] args) {
+        // Reports events that hold the EDT too long; see EdtWatchdog
+        EdtWatchdog.install();
         // Use invokeLater to ensure thread safety with Swing
-        SwingUtilities.invokeLater(() -> {
-            try {
-                Class.forName("oracle.jdbc.driver.OracleDriver");
-                new HospitalManagementSystem();
-            } catch (ClassNotFoundException e) {
-                JOptionPane.showMessageDialog(null,
-                        "Oracle JDBC Driver not found. Include it in your library path.",
-                        "Driver Error", JOptionPane.ERROR_MESSAGE);
-            }
-        });
+        SwingUtilities.invokeLater(HospitalManagementSystem::new);
     }
 }
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+// Open-addressing map from long keys to long counts, for aggregating millions of rows without a boxed
+// Long per entry. Keys whose count drops back to 0 stay in the table and are skipped by forEach().
+class LongCountMap {
+
+    interface EntryHandler {
+        void handle(long key, long count);
+    }
+
+    // Marks a free slot; no caller packs a key that uses it
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] counts;
+    private int size;
+
+    public LongCountMap() {
+        this(64);
+    }
+
+    public LongCountMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2) - 1) << 1;
+        keys = new long[capacity];
+        counts = new long[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    public void add(long key, long delta) {
+        int slot = slotOf(keys, key);
+        if (keys[slot] == FREE) {
+            if ((size + 1) * 4L > keys.length * 3L) {
+                grow();
+                slot = slotOf(keys, key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        counts[slot] += delta;
+    }
+
+    public long get(long key) {
+        int slot = slotOf(keys, key);
+        return keys[slot] == FREE ? 0 : counts[slot];
+    }
+
+    public void addAll(LongCountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != FREE && other.counts[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    public void forEach(EntryHandler handler) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE && counts[i] != 0) {
+                handler.handle(keys[i], counts[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(counts, 0);
+        size = 0;
+    }
+
+    private static int slotOf(long[] keys, long key) {
+        int mask = keys.length - 1;
+        // Spread the high half too: packed keys often differ only there
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new long[oldKeys.length * 2];
+        Arrays.fill(keys, FREE);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slotOf(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+}
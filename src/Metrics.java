@@ -0,0 +1,351 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+// Latency, row and error counts for repository calls, connection borrows, CSV export and table
+// loading. Each named Timer keeps a LatencyHistogram in nanoseconds. start() publishes them as the
+// JMX bean hms:type=Metrics (attributes "<timer>.p99Millis" and so on) and rewrites a plain-text
+// report to -Dhms.metrics.file every -Dhms.metrics.intervalSeconds; DiagnosticsPanel shows the same
+// numbers in the window. Gauges are values read when reported, such as the patient cache's hit count;
+// they appear as attributes of their own name. -Dhms.metrics=false turns recording off.
+class Metrics {
+
+    static final boolean ENABLED = !"false".equals(System.getProperty("hms.metrics"));
+    // Empty disables the file
+    static final String FILE = System.getProperty("hms.metrics.file", "hms-metrics.txt");
+    static final long INTERVAL_SECONDS = Long.getLong("hms.metrics.intervalSeconds", 60);
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+    private static ScheduledExecutorService writer;
+
+    static class Timer {
+        private final String name;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // startNanos is a System.nanoTime() taken when the operation began
+        public void record(long startNanos, long rowCount) {
+            if (ENABLED) {
+                latency.record(System.nanoTime() - startNanos);
+                if (rowCount > 0) {
+                    rows.add(rowCount);
+                }
+            }
+        }
+
+        // Failed calls count towards latency too; a timeout is as slow as it looks
+        public void recordError(long startNanos) {
+            if (ENABLED) {
+                latency.record(System.nanoTime() - startNanos);
+                errors.increment();
+            }
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency.snapshot();
+        }
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        void reset() {
+            latency.reset();
+            errors.reset();
+            rows.reset();
+        }
+    }
+
+    static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    // In name order
+    static List<Timer> timers() {
+        return new ArrayList<>(TIMERS.values());
+    }
+
+    // Replaces any gauge of the same name. Gauges keep counting through resetAll(); they belong to their source.
+    static void gauge(String name, LongSupplier value) {
+        if (ENABLED) {
+            GAUGES.put(name, value);
+        }
+    }
+
+    // Current value of each gauge, in name order
+    static Map<String, Long> gauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    static void resetAll() {
+        for (Timer timer : TIMERS.values()) {
+            timer.reset();
+        }
+    }
+
+    // Wraps a repository so every method that can throw SQLException records into the timer
+    // "<prefix>.<method>", counting the rows it returned, and runs in a Tracing span of that name.
+    // Returns target itself when metrics are off.
+    static <T> T instrument(Class<T> type, T target, String prefix) {
+        if (!ENABLED) {
+            return target;
+        }
+        Map<Method, Timer> timers = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            for (Class<?> thrown : method.getExceptionTypes()) {
+                if (thrown.isAssignableFrom(SQLException.class)) {
+                    timers.put(method, timer(prefix + "." + method.getName()));
+                    break;
+                }
+            }
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            Timer timer = timers.get(method);
+            if (timer == null) {
+                try {
+                    return method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            long start = System.nanoTime();
+            try (Tracing.Span span = Tracing.start(timer.getName())) {
+                try {
+                    Object result = method.invoke(target, args);
+                    timer.record(start, rowsOf(method, result));
+                    return result;
+                } catch (InvocationTargetException e) {
+                    timer.recordError(start);
+                    span.failed(e.getCause());
+                    throw e.getCause();
+                }
+            }
+        }));
+    }
+
+    // Rows read or written by a repository call: the size of a returned list or page, or the count
+    // returned by a batch write or a streaming scan
+    private static long rowsOf(Method method, Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof PatientPage) {
+            return ((PatientPage) result).getPatients().size();
+        }
+        if (result instanceof VisitPage) {
+            return ((VisitPage) result).getVisits().size();
+        }
+        if (result instanceof Integer && method.getParameterCount() > 0) {
+            Class<?> first = method.getParameterTypes()[0];
+            if (Iterable.class.isAssignableFrom(first) || method.getName().startsWith("forEach")) {
+                return (Integer) result;
+            }
+        }
+        return 0;
+    }
+
+    // Registers the JMX bean and starts the metrics file; safe to call more than once
+    static synchronized void start() {
+        if (!ENABLED || writer != null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName("hms:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), name);
+            }
+        } catch (JMException e) {
+            System.err.println("Metrics not published over JMX: " + e.getMessage());
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        if (!FILE.isEmpty() && INTERVAL_SECONDS > 0) {
+            Path file = Paths.get(FILE);
+            writer.scheduleWithFixedDelay(() -> writeReport(file), INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    // Replaces the file in one move, so a reader never sees half a report
+    static void writeReport(Path file) {
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, report().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    // One line per timer that has recorded anything, then one per gauge; latencies in milliseconds
+    static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append("# ").append(new java.util.Date()).append('\n');
+        out.append(String.format("%-36s %10s %8s %10s %10s %10s %10s %10s%n",
+                "timer", "count", "errors", "rows", "p50", "p90", "p99", "max"));
+        for (Timer timer : TIMERS.values()) {
+            LatencyHistogram.Snapshot latency = timer.getLatency();
+            if (latency.getCount() == 0) {
+                continue;
+            }
+            out.append(String.format("%-36s %10d %8d %10d %10.3f %10.3f %10.3f %10.3f%n",
+                    timer.getName(), latency.getCount(), timer.getErrors(), timer.getRows(),
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+                    millis(latency.getValueAtPercentile(99)), millis(latency.getMax())));
+        }
+        Map<String, Long> gauges = gauges();
+        if (!gauges.isEmpty()) {
+            out.append(String.format("%n%-36s %10s%n", "gauge", "value"));
+            for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+                out.append(String.format("%-36s %10d%n", gauge.getKey(), gauge.getValue()));
+            }
+        }
+        return out.toString();
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // Attributes are generated from the timers registered when a JMX client asks, so timers created
+    // later still show up
+    private static class MetricsBean implements DynamicMBean {
+
+        private static final String[] FIELDS = {"count", "errors", "rows", "p50Millis", "p90Millis", "p99Millis", "maxMillis"};
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier gauge = GAUGES.get(attribute);
+            if (gauge != null) {
+                return gauge.getAsLong();
+            }
+            int dot = attribute.lastIndexOf('.');
+            Timer timer = dot < 0 ? null : TIMERS.get(attribute.substring(0, dot));
+            if (timer == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return timer.getCount();
+                case "errors":
+                    return timer.getErrors();
+                case "rows":
+                    return timer.getRows();
+                case "p50Millis":
+                    return millis(timer.getLatency().getValueAtPercentile(50));
+                case "p90Millis":
+                    return millis(timer.getLatency().getValueAtPercentile(90));
+                case "p99Millis":
+                    return millis(timer.getLatency().getValueAtPercentile(99));
+                case "maxMillis":
+                    return millis(timer.getLatency().getMax());
+                default:
+                    throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the interface expects
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if ("reset".equals(actionName)) {
+                resetAll();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String timer : TIMERS.keySet()) {
+                for (String field : FIELDS) {
+                    String type = field.endsWith("Millis") ? "double" : "long";
+                    attributes.add(new MBeanAttributeInfo(timer + "." + field, type, field + " of " + timer, true, false, false));
+                }
+            }
+            for (String gauge : GAUGES.keySet()) {
+                attributes.add(new MBeanAttributeInfo(gauge, "long", gauge, true, false, false));
+            }
+            MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clears every timer", null, "void",
+                    MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Metrics.class.getName(), "Hospital Management System metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] {reset}, null);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// PatientRepository for offline mode and write-behind: Oracle while it answers, the local copy kept
+// by OfflineSync while it does not. Rows read from or written to Oracle are copied locally as they
+// go by, so a patient the clerk has looked at is still there when the link drops. In write-behind
+// mode writes always go to the local copy and reach Oracle through OfflineSync. Until a queued write
+// has been replayed, the local row of its patient is newer than Oracle's, so reads answered by Oracle
+// take that patient from the local copy, and the mirroring leaves it alone (EmbeddedStore.putPatients()).
+class OfflinePatientRepository implements PatientRepository {
+
+    private interface Call<T> {
+        T call(PatientRepository repository) throws SQLException;
+    }
+
+    private final PatientDAO online;
+    private final EmbeddedPatientRepository local;
+    private final OfflineSync sync;
+    private final List<PatientChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    public OfflinePatientRepository(PatientDAO online, OfflineSync sync) {
+        this.online = online;
+        this.local = new EmbeddedPatientRepository(sync.getStore(), EmbeddedStore.PENDING);
+        this.sync = sync;
+        online.addChangeListener(new PatientChangeListener() {
+            @Override
+            public void patientAdded(Patient patient) {
+                sync.mirror(store -> store.putPatients(List.of(patient)));
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientAdded(patient);
+                }
+            }
+
+            @Override
+            public void patientUpdated(Patient patient) {
+                sync.mirror(store -> store.putPatients(List.of(patient)));
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientUpdated(patient);
+                }
+            }
+
+            @Override
+            public void patientDeleted(int patientId) {
+                sync.mirror(store -> store.deletePatient(patientId, (byte) 0));
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientDeleted(patientId);
+                }
+            }
+
+            @Override
+            public void patientsReloaded() {
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientsReloaded();
+                }
+            }
+        });
+        local.addChangeListener(new PatientChangeListener() {
+            @Override
+            public void patientAdded(Patient patient) {
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientAdded(patient);
+                }
+            }
+
+            @Override
+            public void patientUpdated(Patient patient) {
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientUpdated(patient);
+                }
+            }
+
+            @Override
+            public void patientDeleted(int patientId) {
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientDeleted(patientId);
+                }
+            }
+
+            @Override
+            public void patientsReloaded() {
+                for (PatientChangeListener listener : changeListeners) {
+                    listener.patientsReloaded();
+                }
+            }
+        });
+        // Replayed writes were announced with local ids when they were queued; patients created
+        // locally now appear under their Oracle ids
+        sync.addReplayListener((operations, idMap) -> {
+            for (EmbeddedStore.PendingOperation op : operations) {
+                if (op.kind == EmbeddedStore.PendingOperation.Kind.PATIENT_PUT) {
+                    Patient p = op.patient;
+                    int id = idMap.getOrDefault(p.getId(), p.getId());
+                    invalidateCached(id);
+                    for (PatientChangeListener listener : changeListeners) {
+                        if (id != p.getId()) {
+                            listener.patientDeleted(p.getId());
+                        }
+                        listener.patientUpdated(new Patient(id, p.getName(), p.getAge(), p.getGender(), p.getPhone(),
+                                p.getAddress(), p.getBloodGroup()));
+                    }
+                } else if (op.kind == EmbeddedStore.PendingOperation.Kind.PATIENT_DELETE) {
+                    invalidateCached(idMap.getOrDefault(op.id, op.id));
+                }
+            }
+        });
+    }
+
+    private void invalidateCached(int id) {
+        if (online instanceof CachingPatientDAO) {
+            ((CachingPatientDAO) online).invalidate(id);
+        }
+    }
+
+    private <T> T read(Call<T> call, Function<T, List<Patient>> mirrored) throws SQLException {
+        if (!sync.isOffline()) {
+            try {
+                T result = call.call(online);
+                if (mirrored != null && result != null) {
+                    sync.mirror(store -> store.putPatients(mirrored.apply(result)));
+                }
+                return result;
+            } catch (SQLException e) {
+                if (!OfflineSync.isConnectionFailure(e)) {
+                    throw e;
+                }
+                sync.connectionLost(e);
+            }
+        }
+        return call.call(local);
+    }
+
+    // Patients with queued writes; empty once the queue has drained
+    private Set<Integer> pendingPatientIds() {
+        EmbeddedStore store = sync.getStore();
+        return store.hasPendingOperations() ? store.getPendingPatientIds() : Set.of();
+    }
+
+    // The rows with queued writes applied: a patient with a pending change is its local row, one with a
+    // pending deletion is left out. Patients created locally that pass newRows follow in id order, which
+    // is where they will sort once replay gives them Oracle ids; null adds none.
+    private List<Patient> withPending(List<Patient> rows, Set<Integer> pending, Predicate<Patient> newRows) {
+        if (pending.isEmpty()) {
+            return rows;
+        }
+        List<Patient> merged = new ArrayList<>(rows.size());
+        Set<Integer> seen = new HashSet<>();
+        for (Patient p : rows) {
+            Patient row = pending.contains(p.getId()) ? local.getPatientById(p.getId()) : p;
+            if (row != null) {
+                merged.add(row);
+            }
+            seen.add(p.getId());
+        }
+        if (newRows != null) {
+            List<Integer> created = new ArrayList<>();
+            for (int id : pending) {
+                if (id > EmbeddedStore.LOCAL_ID_BASE && !seen.contains(id)) {
+                    created.add(id);
+                }
+            }
+            Collections.sort(created);
+            for (int id : created) {
+                Patient p = local.getPatientById(id);
+                if (p != null && newRows.test(p)) {
+                    merged.add(p);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private <T> T write(Call<T> call) throws SQLException {
+        if (!sync.isWritingLocally()) {
+            try {
+                return call.call(online);
+            } catch (SQLException e) {
+                if (!OfflineSync.isConnectionFailure(e)) {
+                    throw e;
+                }
+                sync.connectionLost(e);
+            }
+        }
+        return sync.localWrite(() -> call.call(local));
+    }
+
+    @Override
+    public void addChangeListener(PatientChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(PatientChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    // Plans made for Oracle also run against the local copy, which evaluates them with SearchPlan.matches()
+    @Override
+    public PatientSearchPlanner getSearchPlanner() {
+        return online.getSearchPlanner();
+    }
+
+    @Override
+    public int addPatient(Patient p) throws SQLException {
+        return write(r -> r.addPatient(p));
+    }
+
+    @Override
+    public void updatePatient(Patient p) throws SQLException {
+        write(r -> {
+            r.updatePatient(p);
+            return null;
+        });
+    }
+
+    @Override
+    public void deletePatient(int id) throws SQLException {
+        write(r -> {
+            r.deletePatient(id);
+            return null;
+        });
+    }
+
+    @Override
+    public int addPatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException {
+        return write(r -> r.addPatients(patients, batchSize, commitInterval));
+    }
+
+    @Override
+    public int updatePatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException {
+        return write(r -> r.updatePatients(patients, batchSize, commitInterval));
+    }
+
+    @Override
+    public List<Patient> getAllPatients() throws SQLException {
+        Set<Integer> pending = pendingPatientIds();
+        return withPending(read(PatientRepository::getAllPatients, null), pending, p -> true);
+    }
+
+    @Override
+    public int forEachPatient(int fetchSize, PatientHandler handler) throws SQLException {
+        Set<Integer> pending = pendingPatientIds();
+        if (pending.isEmpty()) {
+            return read(r -> r.forEachPatient(fetchSize, handler), null);
+        }
+        return read(r -> r.forEachPatient(fetchSize, p -> {
+            Patient row = pending.contains(p.getId()) ? local.getPatientById(p.getId()) : p;
+            return row == null || handler.handle(row);
+        }), null);
+    }
+
+    @Override
+    public List<Patient> searchPatients(SearchPlan plan) throws SQLException {
+        Set<Integer> pending = pendingPatientIds();
+        return withPending(read(r -> r.searchPatients(plan), rows -> rows), pending, plan::matches);
+    }
+
+    @Override
+    public int countPatients() throws SQLException {
+        return read(PatientRepository::countPatients, null);
+    }
+
+    @Override
+    public PatientPage getPatientsPage(int afterId, int pageSize) throws SQLException {
+        Set<Integer> pending = pendingPatientIds();
+        PatientPage page = read(r -> r.getPatientsPage(afterId, pageSize), PatientPage::getPatients);
+        // Patients created locally come last, after Oracle's final page
+        return new PatientPage(withPending(page.getPatients(), pending, page.hasMore() ? null : p -> p.getId() > afterId),
+                page.hasMore());
+    }
+
+    @Override
+    public PatientPage getPatientsPageAt(int offset, int pageSize) throws SQLException {
+        Set<Integer> pending = pendingPatientIds();
+        PatientPage page = read(r -> r.getPatientsPageAt(offset, pageSize), PatientPage::getPatients);
+        return new PatientPage(withPending(page.getPatients(), pending, null), page.hasMore());
+    }
+
+    // A patient with queued writes, or created locally and not replayed yet, is answered by the local copy
+    @Override
+    public Patient getPatientById(int id) throws SQLException {
+        if (pendingPatientIds().contains(id)) {
+            return local.getPatientById(id);
+        }
+        return read(r -> r.getPatientById(id), List::of);
+    }
+
+    // Changes are tracked in Oracle's log only; the local copy has nothing that lines up with its tokens,
+    // so while offline there is no token and every change check asks for a reload
+    @Override
+    public long getChangeToken() throws SQLException {
+        return read(r -> r == online ? r.getChangeToken() : -1L, null);
+    }
+
+    @Override
+    public long[] getChangeTokenAndCount() throws SQLException {
+        return read(r -> r == online ? r.getChangeTokenAndCount() : new long[] {-1, r.countPatients()}, null);
+    }
+
+    @Override
+    public PatientChanges getPatientsChangedSince(long token) throws SQLException {
+        return read(r -> r == online && token >= 0 ? r.getPatientsChangedSince(token)
+                : PatientChanges.reloadRequired(token), null);
+    }
+}
@@ -0,0 +1,430 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Offline mode and write-behind for the Oracle backend.
+//
+// Offline mode (-Dhms.offline=true): OfflinePatientRepository and OfflineVisitRepository keep a
+// local copy of the rows the clerk works with in an EmbeddedStore. When Oracle cannot be reached
+// they switch to that copy and record writes there as pending.
+//
+// Write-behind (-Dhms.writeBehind=true): writes always go to the local store as pending and return
+// at once; reads still go to Oracle while it answers.
+//
+// Either way a background thread replays pending writes to Oracle, GROUP_SIZE at a time, each
+// group in one transaction. Within a group, operations on different patients are batched by kind
+// while every patient's own operations keep their original order. Failed attempts are retried
+// with exponential backoff between RETRY_MIN_MILLIS and RETRY_MAX_MILLIS. Each group's transaction
+// also records in Oracle how far the store's log has been replayed (SyncLogDAO), so a group that
+// committed just before a crash is not applied a second time.
+class OfflineSync implements AutoCloseable {
+
+    static final long RETRY_MIN_MILLIS = Long.getLong("hms.sync.retryMinMillis", 1000);
+    static final long RETRY_MAX_MILLIS = Long.getLong("hms.sync.retryMaxMillis", 60000);
+    // How long write-behind waits after a write for more writes to join the group
+    static final long FLUSH_DELAY_MILLIS = Long.getLong("hms.writeBehind.flushDelayMillis", 200);
+    static final int GROUP_SIZE = Integer.getInteger("hms.writeBehind.groupSize", 500);
+
+    interface StatusListener {
+        // offline: whether reads currently go to the local copy
+        // pendingWrites: writes not yet replayed to Oracle
+        void offlineStatusChanged(boolean offline, int pendingWrites);
+    }
+
+    interface ReplayListener {
+        // A group of operations reached Oracle; idMap translates local patient ids to Oracle ids
+        void replayed(List<EmbeddedStore.PendingOperation> operations, Map<Integer, Integer> idMap);
+    }
+
+    private final EmbeddedStore store;
+    // Used only for replay, so their change listeners never see a write that is later rolled back
+    private final PatientDAO oraclePatients;
+    private final VisitDAO oracleVisits;
+    private final SyncLogDAO syncLog = new SyncLogDAO();
+    private final boolean writeBehind;
+    private final List<StatusListener> statusListeners = new CopyOnWriteArrayList<>();
+    private final List<ReplayListener> replayListeners = new CopyOnWriteArrayList<>();
+    private final Thread worker;
+
+    private volatile boolean offline;
+    private volatile boolean initialized;
+    private volatile boolean closed;
+    private boolean nudged;
+    private int failures;
+    private boolean firedOffline;
+    private int firedPending = -1;
+
+    public OfflineSync(EmbeddedStore store, PatientDAO oraclePatients, VisitDAO oracleVisits, boolean initialized,
+                       boolean writeBehind) {
+        this.store = store;
+        this.oraclePatients = oraclePatients;
+        this.oracleVisits = oracleVisits;
+        this.initialized = initialized;
+        this.writeBehind = writeBehind;
+        // Writes left over from a session that ended offline are replayed first
+        this.offline = !initialized || (!writeBehind && store.hasPendingOperations());
+        worker = new Thread(this::run, "offline-sync");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void addStatusListener(StatusListener listener) {
+        statusListeners.add(listener);
+    }
+
+    public void removeStatusListener(StatusListener listener) {
+        statusListeners.remove(listener);
+    }
+
+    public void addReplayListener(ReplayListener listener) {
+        replayListeners.add(listener);
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    // Whether writes should go to the local store rather than to Oracle
+    boolean isWritingLocally() {
+        return offline || writeBehind;
+    }
+
+    public int getPendingWriteCount() {
+        return store.countPendingOperations();
+    }
+
+    EmbeddedStore getStore() {
+        return store;
+    }
+
+    interface StoreAction {
+        void run(EmbeddedStore store) throws IOException;
+    }
+
+    // Copies rows Oracle returned or accepted into the local store; a failure only narrows what
+    // is available offline, so it is logged rather than reported to the caller
+    void mirror(StoreAction action) {
+        try {
+            action.run(store);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not update the offline copy: " + e.getMessage());
+        }
+    }
+
+    // True if the exception means Oracle could not be reached, as opposed to a rejected statement
+    static boolean isConnectionFailure(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLRecoverableException || t instanceof SQLTransientConnectionException
+                    || t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String state = ((SQLException) t).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Called by the repositories when an Oracle call failed for lack of a connection
+    void connectionLost(SQLException cause) {
+        if (!offline) {
+            offline = true;
+            System.err.println("Oracle unreachable, working offline: " + cause.getMessage());
+            fireStatusChanged();
+            nudge();
+        }
+    }
+
+    // Runs a write against the local store and schedules its replay
+    <T> T localWrite(DatabaseExecutor.SqlTask<T> write) throws SQLException {
+        try {
+            return write.call();
+        } finally {
+            fireStatusChanged();
+            if (writeBehind && !offline) {
+                nudge();
+            }
+        }
+    }
+
+    private synchronized void nudge() {
+        nudged = true;
+        notifyAll();
+    }
+
+    private synchronized void await(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        long left = millis;
+        while (!nudged && !closed && left > 0) {
+            wait(left);
+            left = deadline - System.currentTimeMillis();
+        }
+        nudged = false;
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                if (offline || store.hasPendingOperations()) {
+                    try {
+                        syncNow();
+                        failures = 0;
+                    } catch (SQLException e) {
+                        failures++;
+                        if (!isConnectionFailure(e)) {
+                            System.err.println("Offline sync failed: " + e.getMessage());
+                        }
+                    } catch (RuntimeException e) {
+                        failures++;
+                        System.err.println("Offline sync failed: " + e);
+                    }
+                }
+                if (failures > 0) {
+                    await(Math.min(RETRY_MAX_MILLIS, RETRY_MIN_MILLIS << Math.min(failures - 1, 20)));
+                } else {
+                    await(RETRY_MAX_MILLIS);
+                    if (writeBehind && !closed) {
+                        Thread.sleep(FLUSH_DELAY_MILLIS); // Let more writes join the group
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    // Replays pending writes if Oracle answers, then leaves offline mode
+    public void syncNow() throws SQLException {
+        if (!offline && !store.hasPendingOperations()) {
+            return;
+        }
+        if (offline) {
+            oraclePatients.countPatients(); // Probe
+        }
+        if (!initialized) {
+            DatabaseConfig.initializeDatabase();
+            initialized = true;
+        }
+        int replayed = replay();
+        if (offline) {
+            offline = false;
+            System.out.println("Back online" + (replayed > 0 ? ", replayed " + replayed + " offline writes" : ""));
+        }
+        fireStatusChanged();
+    }
+
+    private int replay() throws SQLException {
+        List<EmbeddedStore.PendingOperation> pending = store.pendingOperations();
+        Map<Integer, Integer> idMap = store.getPatientIdMap();
+        int replayedVisitId = 0;
+        for (int from = 0; from < pending.size(); from += GROUP_SIZE) {
+            List<EmbeddedStore.PendingOperation> group = pending.subList(from, Math.min(pending.size(), from + GROUP_SIZE));
+            try {
+                commitGroup(group, idMap);
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) {
+                    throw e;
+                }
+                // One at a time, so a single rejected operation doesn't hold back the rest
+                for (EmbeddedStore.PendingOperation op : group) {
+                    try {
+                        commitGroup(List.of(op), idMap);
+                    } catch (SQLException opError) {
+                        if (isConnectionFailure(opError)) {
+                            throw opError;
+                        }
+                        System.err.println("Dropping " + describe(op) + " rejected by the database: " + opError.getMessage());
+                        mark(op.end, Map.of());
+                    }
+                }
+            }
+            for (EmbeddedStore.PendingOperation op : group) {
+                if (op.kind == EmbeddedStore.PendingOperation.Kind.VISIT_PUT) {
+                    replayedVisitId = Math.max(replayedVisitId, op.visit.getId());
+                }
+            }
+        }
+        try {
+            store.replaceLocalRows(idMap, replayedVisitId);
+        } catch (IOException e) {
+            throw EmbeddedPatientRepository.storageError(e);
+        }
+        return pending.size();
+    }
+
+    // Applies a group in one Oracle transaction, then records it as synced locally. Operations that
+    // sync_log shows committed by an attempt that died before its local mark are skipped, and the
+    // patients that attempt created are taken from sync_patient_ids.
+    private void commitGroup(List<EmbeddedStore.PendingOperation> group, Map<Integer, Integer> idMap) throws SQLException {
+        Map<Integer, Integer> ids = new HashMap<>(idMap);
+        String storeId = store.getStoreId();
+        long groupEnd = group.get(group.size() - 1).end;
+        Map<Integer, Integer> newIds = DatabaseConfig.inTransaction(() -> {
+            Map<Integer, Integer> created = new HashMap<>();
+            for (Map.Entry<Integer, Integer> e : syncLog.getPatientIds(storeId).entrySet()) {
+                if (!ids.containsKey(e.getKey())) {
+                    ids.put(e.getKey(), e.getValue());
+                    created.put(e.getKey(), e.getValue());
+                }
+            }
+            long replayedThrough = syncLog.getReplayedThrough(storeId);
+            List<EmbeddedStore.PendingOperation> unreplayed = new ArrayList<>(group.size());
+            for (EmbeddedStore.PendingOperation op : group) {
+                if (op.end > replayedThrough) {
+                    unreplayed.add(op);
+                }
+            }
+            for (List<EmbeddedStore.PendingOperation> batch : plan(unreplayed, ids)) {
+                apply(batch, ids, created);
+            }
+            syncLog.record(storeId, Math.max(groupEnd, replayedThrough), created);
+            return created;
+        });
+        idMap.putAll(newIds);
+        mark(groupEnd, newIds);
+        for (ReplayListener listener : replayListeners) {
+            listener.replayed(group, idMap);
+        }
+    }
+
+    private static int patientIdOf(EmbeddedStore.PendingOperation op) {
+        switch (op.kind) {
+            case PATIENT_PUT:
+                return op.patient.getId();
+            case VISIT_PUT:
+                return op.visit.getPatientId();
+            default:
+                return op.id;
+        }
+    }
+
+    // Splits a group into statement batches. An operation joins the open batch of its kind unless
+    // that batch runs before something already planned for the same patient, so each patient's
+    // operations execute in log order. New patients go alone: later operations need their Oracle id.
+    private static List<List<EmbeddedStore.PendingOperation>> plan(List<EmbeddedStore.PendingOperation> group,
+                                                                   Map<Integer, Integer> idMap) {
+        List<List<EmbeddedStore.PendingOperation>> batches = new ArrayList<>();
+        Map<EmbeddedStore.PendingOperation.Kind, Integer> openBatch = new HashMap<>();
+        Map<Integer, Integer> lastBatchOfPatient = new HashMap<>();
+        Set<Integer> inserted = new HashSet<>();
+        for (EmbeddedStore.PendingOperation op : group) {
+            int patientId = patientIdOf(op);
+            int earliest = lastBatchOfPatient.getOrDefault(patientId, 0);
+            boolean insert = op.kind == EmbeddedStore.PendingOperation.Kind.PATIENT_PUT
+                    && patientId > EmbeddedStore.LOCAL_ID_BASE && !idMap.containsKey(patientId) && inserted.add(patientId);
+            Integer open = insert ? null : openBatch.get(op.kind);
+            int target;
+            if (open != null && open >= earliest) {
+                target = open;
+            } else {
+                batches.add(new ArrayList<>());
+                target = batches.size() - 1;
+                if (!insert) {
+                    openBatch.put(op.kind, target);
+                }
+            }
+            batches.get(target).add(op);
+            lastBatchOfPatient.put(patientId, target);
+        }
+        return batches;
+    }
+
+    private void apply(List<EmbeddedStore.PendingOperation> batch, Map<Integer, Integer> ids,
+                       Map<Integer, Integer> created) throws SQLException {
+        EmbeddedStore.PendingOperation first = batch.get(0);
+        switch (first.kind) {
+            case PATIENT_PUT: {
+                Patient p = first.patient;
+                if (p.getId() > EmbeddedStore.LOCAL_ID_BASE && !ids.containsKey(p.getId())) {
+                    int id = oraclePatients.addPatient(p);
+                    ids.put(p.getId(), id);
+                    created.put(p.getId(), id);
+                    break;
+                }
+                List<Patient> rows = new ArrayList<>(batch.size());
+                for (EmbeddedStore.PendingOperation op : batch) {
+                    p = op.patient;
+                    rows.add(new Patient(ids.getOrDefault(p.getId(), p.getId()), p.getName(), p.getAge(), p.getGender(),
+                            p.getPhone(), p.getAddress(), p.getBloodGroup()));
+                }
+                // Rows deleted in Oracle meanwhile are simply not updated
+                oraclePatients.updatePatients(rows, PatientRepository.DEFAULT_BATCH_SIZE, Integer.MAX_VALUE);
+                break;
+            }
+            case PATIENT_DELETE:
+                for (EmbeddedStore.PendingOperation op : batch) {
+                    oraclePatients.deletePatient(ids.getOrDefault(op.id, op.id));
+                }
+                break;
+            case VISIT_PUT: {
+                List<Visit> rows = new ArrayList<>(batch.size());
+                for (EmbeddedStore.PendingOperation op : batch) {
+                    Visit v = op.visit;
+                    rows.add(new Visit(0, ids.getOrDefault(v.getPatientId(), v.getPatientId()), v.getVisitDate(),
+                            v.getDoctor(), v.getNotes()));
+                }
+                oracleVisits.addVisits(rows, PatientRepository.DEFAULT_BATCH_SIZE, Integer.MAX_VALUE);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private static String describe(EmbeddedStore.PendingOperation op) {
+        switch (op.kind) {
+            case PATIENT_PUT:
+                return "change to patient " + op.patient.getId();
+            case VISIT_PUT:
+                return "visit for patient " + op.visit.getPatientId();
+            default:
+                return "deletion of patient " + op.id;
+        }
+    }
+
+    private void mark(long syncedEnd, Map<Integer, Integer> newIds) throws SQLException {
+        try {
+            store.markSynced(syncedEnd, newIds);
+        } catch (IOException e) {
+            throw EmbeddedPatientRepository.storageError(e);
+        }
+    }
+
+    // Listeners hear about changes only, not about every write that leaves the state as it was
+    private void fireStatusChanged() {
+        boolean nowOffline = offline;
+        int pending = getPendingWriteCount();
+        synchronized (statusListeners) {
+            if (nowOffline == firedOffline && pending == firedPending) {
+                return;
+            }
+            firedOffline = nowOffline;
+            firedPending = pending;
+        }
+        for (StatusListener listener : statusListeners) {
+            listener.offlineStatusChanged(nowOffline, pending);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+}
@@ -0,0 +1,101 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// VisitRepository for offline mode and write-behind; see OfflinePatientRepository
+class OfflineVisitRepository implements VisitRepository {
+
+    private interface Call<T> {
+        T call(VisitRepository repository) throws SQLException;
+    }
+
+    private final VisitDAO online;
+    private final EmbeddedVisitRepository local;
+    private final OfflineSync sync;
+
+    public OfflineVisitRepository(VisitDAO online, OfflineSync sync) {
+        this.online = online;
+        this.local = new EmbeddedVisitRepository(sync.getStore(), EmbeddedStore.PENDING);
+        this.sync = sync;
+    }
+
+    private <T> T read(Call<T> call, Function<T, List<Visit>> mirrored) throws SQLException {
+        if (!sync.isOffline()) {
+            try {
+                T result = call.call(online);
+                if (mirrored != null) {
+                    sync.mirror(store -> store.putVisits(mirrored.apply(result)));
+                }
+                return result;
+            } catch (SQLException e) {
+                if (!OfflineSync.isConnectionFailure(e)) {
+                    throw e;
+                }
+                sync.connectionLost(e);
+            }
+        }
+        return call.call(local);
+    }
+
+    private <T> T write(Call<T> call) throws SQLException {
+        if (!sync.isWritingLocally()) {
+            try {
+                return call.call(online);
+            } catch (SQLException e) {
+                if (!OfflineSync.isConnectionFailure(e)) {
+                    throw e;
+                }
+                sync.connectionLost(e);
+            }
+        }
+        return sync.localWrite(() -> call.call(local));
+    }
+
+    @Override
+    public int addVisit(Visit v) throws SQLException {
+        return write(r -> {
+            int id = r.addVisit(v);
+            if (r == online) {
+                sync.mirror(store -> store.putVisits(List.of(
+                        new Visit(id, v.getPatientId(), v.getVisitDate(), v.getDoctor(), v.getNotes()))));
+            }
+            return id;
+        });
+    }
+
+    // Bulk inserts don't return ids, so their rows reach the local copy when the history is next read
+    @Override
+    public int addVisits(Iterable<Visit> visits, int batchSize, int commitInterval) throws SQLException {
+        return write(r -> r.addVisits(visits, batchSize, commitInterval));
+    }
+
+    @Override
+    public VisitPage getVisitsPage(int patientId, Visit after, int pageSize) throws SQLException {
+        return read(r -> r.getVisitsPage(patientId, after, pageSize), VisitPage::getVisits);
+    }
+
+    @Override
+    public Map<Integer, List<Visit>> getVisitsForPatients(Collection<Integer> patientIds) throws SQLException {
+        return read(r -> r.getVisitsForPatients(patientIds), result -> {
+            List<Visit> all = new ArrayList<>();
+            for (List<Visit> visits : result.values()) {
+                all.addAll(visits);
+            }
+            return all;
+        });
+    }
+
+    @Override
+    public List<Visit> getVisitsForPatient(int patientId) throws SQLException {
+        return read(r -> r.getVisitsForPatient(patientId), visits -> visits);
+    }
+
+    // A full scan is not copied into the local file; offline it covers the visits already there
+    @Override
+    public int forEachVisit(int fetchSize, VisitHandler handler) throws SQLException {
+        return read(r -> r.forEachVisit(fetchSize, handler), null);
+    }
+}
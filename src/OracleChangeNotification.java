@@ -0,0 +1,62 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import oracle.jdbc.OracleConnection;
+import oracle.jdbc.OracleStatement;
+import oracle.jdbc.dcn.DatabaseChangeRegistration;
+
+// Oracle Database Change Notification on the patient_changes table, used by PatientChangeFeed to
+// wake up when another workstation commits a write. The schema user needs the CHANGE NOTIFICATION
+// privilege, and the database must be able to connect back to this client: open
+// -Dhms.changes.notifyPort (0 lets the driver pick a port) in the workstation firewall.
+class OracleChangeNotification implements AutoCloseable {
+
+    static final int NOTIFY_PORT = Integer.getInteger("hms.changes.notifyPort", 0);
+
+    private final DatabaseChangeRegistration registration;
+
+    private OracleChangeNotification(DatabaseChangeRegistration registration) {
+        this.registration = registration;
+    }
+
+    // Null if the database is not Oracle or refused the registration; callers then keep polling
+    static OracleChangeNotification register(Runnable onChange) {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            if (!conn.isWrapperFor(OracleConnection.class)) {
+                return null;
+            }
+            OracleConnection oracle = conn.unwrap(OracleConnection.class);
+            Properties props = new Properties();
+            // Only the fact that the log changed matters; the feed reads what changed itself
+            props.setProperty(OracleConnection.DCN_NOTIFY_ROWIDS, "false");
+            if (NOTIFY_PORT > 0) {
+                props.setProperty(OracleConnection.NTF_LOCAL_TCP_PORT, String.valueOf(NOTIFY_PORT));
+            }
+            DatabaseChangeRegistration registration = oracle.registerDatabaseChangeNotification(props);
+            try (Statement stmt = oracle.createStatement()) {
+                stmt.unwrap(OracleStatement.class).setDatabaseChangeRegistration(registration);
+                // Running a query under the registration subscribes to the tables it reads
+                stmt.executeQuery("SELECT seq FROM patient_changes WHERE seq = 0").close();
+                registration.addListener(event -> onChange.run());
+            } catch (SQLException e) {
+                oracle.unregisterDatabaseChangeNotification(registration);
+                throw e;
+            }
+            System.out.println("Change notification registered (id " + registration.getRegId() + ")");
+            return new OracleChangeNotification(registration);
+        } catch (SQLException e) {
+            System.err.println("Change notification unavailable, polling instead: " + e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            conn.unwrap(OracleConnection.class).unregisterDatabaseChangeNotification(registration);
+        } catch (SQLException e) {
+            // The database drops the registration itself once it cannot reach this client
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Computes the dashboard's PatientStatistics. Against Oracle the jobs run as GROUP BY queries
+// (StatisticsDAO); with the embedded backend, while working offline, or with
+// -Dhms.analytics.pushdown=false both tables are streamed into an AnalyticsSnapshot and counted
+// with fork-join. Writes reported since the last run (through the change feed, the repository's
+// change listener or visitsAdded()) are queued, and refresh() applies only them: the SQL path reruns
+// just the queries whose table changed, the scan path swaps the changed rows in and out of its
+// counts. Applying a write twice gives the same result, so writes that overlap a full run are safe.
+class PatientAnalytics implements PatientChangeListener {
+
+    static final boolean PUSHDOWN = !"false".equals(System.getProperty("hms.analytics.pushdown"));
+    static final int FETCH_SIZE = Integer.getInteger("hms.analytics.fetchSize", 1000);
+
+    private static final Metrics.Timer FULL_TIMER = Metrics.timer("analytics.full");
+    private static final Metrics.Timer INCREMENTAL_TIMER = Metrics.timer("analytics.incremental");
+
+    private final PatientRepository patients;
+    private final VisitRepository visits;
+    // Null when the backend has no SQL to push down to
+    private final StatisticsDAO statisticsDAO;
+    private final OfflineSync offlineSync;
+    private final StringDictionary doctors = new StringDictionary();
+
+    // Guarded by this; snapshot is null while the counts come from SQL
+    private StatisticsCounts counts;
+    private AnalyticsSnapshot snapshot;
+    private PatientStatistics latest;
+
+    private final Object pendingLock = new Object();
+    private PatientChanges.Builder pending = new PatientChanges.Builder(0);
+    private boolean hasPending;
+    private volatile Runnable pendingListener;
+
+    public PatientAnalytics(PatientRepository patients, VisitRepository visits, StatisticsDAO statisticsDAO,
+                            OfflineSync offlineSync) {
+        this.patients = patients;
+        this.visits = visits;
+        this.statisticsDAO = statisticsDAO;
+        this.offlineSync = offlineSync;
+    }
+
+    // Called, on the writing thread, when writes start queueing up after a refresh
+    public void setPendingListener(Runnable listener) {
+        pendingListener = listener;
+    }
+
+    // The last result, or null before the first run
+    public synchronized PatientStatistics getLatest() {
+        return latest;
+    }
+
+    public boolean hasPendingChanges() {
+        synchronized (pendingLock) {
+            return hasPending;
+        }
+    }
+
+    // From a PatientChangeFeed
+    public void changesArrived(PatientChanges changes) {
+        queue(builder -> {
+            if (changes.isReloadRequired()) {
+                builder.add(0, 0, PatientChanges.RELOAD, null);
+                return;
+            }
+            changes.notify(new PatientChangeListener() {
+                @Override
+                public void patientAdded(Patient patient) {
+                    builder.add(0, patient.getId(), PatientChanges.INSERTED, patient);
+                }
+
+                @Override
+                public void patientUpdated(Patient patient) {
+                    builder.add(0, patient.getId(), PatientChanges.UPDATED, patient);
+                }
+
+                @Override
+                public void patientDeleted(int patientId) {
+                    builder.add(0, patientId, PatientChanges.DELETED, null);
+                }
+            });
+            for (int patientId : changes.getVisitPatientIds()) {
+                builder.add(0, patientId, PatientChanges.VISITS, null);
+            }
+        });
+    }
+
+    // For visits written by this client where no change feed reports them
+    public void visitsAdded(int patientId) {
+        queue(builder -> builder.add(0, patientId, PatientChanges.VISITS, null));
+    }
+
+    @Override
+    public void patientAdded(Patient patient) {
+        queue(builder -> builder.add(0, patient.getId(), PatientChanges.INSERTED, patient));
+    }
+
+    @Override
+    public void patientUpdated(Patient patient) {
+        queue(builder -> builder.add(0, patient.getId(), PatientChanges.UPDATED, patient));
+    }
+
+    @Override
+    public void patientDeleted(int patientId) {
+        queue(builder -> builder.add(0, patientId, PatientChanges.DELETED, null));
+    }
+
+    @Override
+    public void patientsReloaded() {
+        queue(builder -> builder.add(0, 0, PatientChanges.RELOAD, null));
+    }
+
+    private interface PendingWrite {
+        void addTo(PatientChanges.Builder builder);
+    }
+
+    private void queue(PendingWrite write) {
+        boolean first;
+        synchronized (pendingLock) {
+            write.addTo(pending);
+            first = !hasPending;
+            hasPending = true;
+        }
+        Runnable listener = pendingListener;
+        if (first && listener != null) {
+            listener.run();
+        }
+    }
+
+    private PatientChanges takePending() {
+        synchronized (pendingLock) {
+            PatientChanges changes = pending.build();
+            pending = new PatientChanges.Builder(0);
+            hasPending = false;
+            return changes;
+        }
+    }
+
+    private boolean usesSql() {
+        return PUSHDOWN && statisticsDAO != null && (offlineSync == null || !offlineSync.isOffline());
+    }
+
+    // Brings the result up to date with the writes queued since the last run. Runs everything again
+    // the first time, after a reload or failure, and when the backend moves between SQL and scanning.
+    public synchronized PatientStatistics refresh() throws SQLException {
+        if (latest == null || usesSql() != (snapshot == null)) {
+            return recompute();
+        }
+        PatientChanges changes = takePending();
+        if (changes.isReloadRequired()) {
+            return recompute();
+        }
+        if (changes.isEmpty()) {
+            return latest;
+        }
+        long start = System.nanoTime();
+        boolean visitsChanged = !changes.getVisitPatientIds().isEmpty() || !changes.getDeletedIds().isEmpty();
+        try {
+            if (snapshot == null) {
+                if (changes.hasPatientChanges()) {
+                    counts.clearPatients();
+                    statisticsDAO.countPatients(counts);
+                }
+                if (visitsChanged) {
+                    counts.clearVisits();
+                    statisticsDAO.countVisits(counts);
+                }
+            } else {
+                List<Patient> upserts = new ArrayList<>(changes.getAdded());
+                upserts.addAll(changes.getUpdated());
+                Map<Integer, List<Visit>> histories = changes.getVisitPatientIds().isEmpty()
+                        ? Collections.emptyMap() : visits.getVisitsForPatients(changes.getVisitPatientIds());
+                snapshot = snapshot.withChanges(upserts, changes.getDeletedIds(), histories, doctors, counts);
+            }
+        } catch (SQLException | RuntimeException e) {
+            INCREMENTAL_TIMER.recordError(start);
+            // The counts may be half updated; the next refresh starts over
+            latest = null;
+            throw e;
+        }
+        INCREMENTAL_TIMER.record(start, changes.getAdded().size() + changes.getUpdated().size()
+                + changes.getDeletedIds().size() + changes.getVisitPatientIds().size());
+        latest = counts.toStatistics((snapshot == null ? "SQL" : "parallel scan") + ", incremental",
+                (System.nanoTime() - start) / 1_000_000);
+        return latest;
+    }
+
+    // Runs every job from scratch
+    public synchronized PatientStatistics recompute() throws SQLException {
+        // Writes queued so far are in what is about to be read; later ones are applied on top
+        takePending();
+        long start = System.nanoTime();
+        latest = null;
+        StatisticsCounts fresh = null;
+        String method;
+        long rows;
+        try {
+            if (usesSql()) {
+                try {
+                    fresh = new StatisticsCounts(doctors);
+                    statisticsDAO.countPatients(fresh);
+                    statisticsDAO.countVisits(fresh);
+                } catch (SQLException e) {
+                    if (offlineSync == null || !OfflineSync.isConnectionFailure(e)) {
+                        throw e;
+                    }
+                    offlineSync.connectionLost(e);
+                    fresh = null;
+                }
+            }
+            if (fresh != null) {
+                snapshot = null;
+                method = "SQL";
+                rows = 0;
+            } else {
+                snapshot = AnalyticsSnapshot.load(patients, visits, doctors, FETCH_SIZE);
+                fresh = snapshot.count(doctors);
+                method = "parallel scan";
+                rows = snapshot.getPatientCount() + snapshot.getVisitCount();
+            }
+        } catch (SQLException | RuntimeException e) {
+            FULL_TIMER.recordError(start);
+            throw e;
+        }
+        FULL_TIMER.record(start, rows);
+        counts = fresh;
+        latest = counts.toStatistics(method, (System.nanoTime() - start) / 1_000_000);
+        return latest;
+    }
+}
@@ -0,0 +1,139 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Delivers patient and visit changes made by every workstation, read from the patient_changes log.
+// A background thread asks the repository for what changed after its token every POLL_MILLIS;
+// with -Dhms.changes.notify=true an Oracle change notification on the log wakes it at once, and
+// polling slows to NOTIFIED_POLL_MILLIS as a safety net for missed notifications. Listeners are
+// called on the feed thread, including for this client's own writes.
+class PatientChangeFeed implements AutoCloseable {
+
+    // 0 disables polling; the feed then only runs when notified or nudged
+    static final long POLL_MILLIS = Long.getLong("hms.changes.pollMillis", 2000);
+    static final boolean NOTIFY = Boolean.getBoolean("hms.changes.notify");
+    static final long NOTIFIED_POLL_MILLIS = Long.getLong("hms.changes.notifyPollMillis", 30000);
+
+    interface Listener {
+        // changes is never empty; isReloadRequired() means the log could not say what changed
+        void changesArrived(PatientChanges changes);
+    }
+
+    private final PatientRepository source;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread worker;
+
+    private volatile boolean closed;
+    private boolean nudged;
+    private long token = -1;
+    private boolean tokenLost;
+    private boolean failing;
+    private volatile OracleChangeNotification notification;
+
+    public PatientChangeFeed(PatientRepository source) {
+        this.source = source;
+        worker = new Thread(this::run, "change-feed");
+        worker.setDaemon(true);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Call once listeners are registered; changes from before the first poll are not reported
+    public void start() {
+        worker.start();
+    }
+
+    // Checks for changes now instead of at the next poll
+    public synchronized void nudge() {
+        nudged = true;
+        notifyAll();
+    }
+
+    private synchronized void await(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        long left = millis;
+        while (!nudged && !closed && (millis == 0 || left > 0)) {
+            wait(millis == 0 ? 0 : left);
+            left = deadline - System.currentTimeMillis();
+        }
+        nudged = false;
+    }
+
+    private void run() {
+        if (NOTIFY) {
+            notification = OracleChangeNotification.register(this::nudge);
+        }
+        long pollMillis = notification != null ? NOTIFIED_POLL_MILLIS : POLL_MILLIS;
+        try {
+            while (!closed) {
+                try {
+                    poll();
+                    if (failing) {
+                        failing = false;
+                        System.out.println("Change feed resumed");
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    // Logged once per outage; the next poll retries
+                    if (!failing) {
+                        failing = true;
+                        System.err.println("Change feed failed: " + e.getMessage());
+                    }
+                }
+                await(pollMillis);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    // Runs on the feed thread only
+    private void poll() throws SQLException {
+        if (token < 0) {
+            // First poll, or the log lost track (offline, or a bulk write); start again from now
+            token = source.getChangeToken();
+            if (token >= 0 && tokenLost) {
+                tokenLost = false;
+                fire(PatientChanges.reloadRequired(token));
+            }
+            return;
+        }
+        PatientChanges changes = source.getPatientsChangedSince(token);
+        if (changes.isReloadRequired()) {
+            // Read the new token before listeners reload, so nothing after their reload is missed
+            token = source.getChangeToken();
+            if (token < 0) {
+                tokenLost = true;
+                return;
+            }
+            fire(PatientChanges.reloadRequired(token));
+        } else if (!changes.isEmpty()) {
+            token = changes.getToken();
+            fire(changes);
+        }
+    }
+
+    private void fire(PatientChanges changes) {
+        for (Listener listener : listeners) {
+            try {
+                listener.changesArrived(changes);
+            } catch (RuntimeException e) {
+                System.err.println("Change feed listener failed: " + e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        if (notification != null) {
+            notification.close();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+// Notified by a PatientRepository after a patient write has been executed successfully.
+// Called on the thread that performed the write.
+interface PatientChangeListener {
+
+    void patientAdded(Patient patient);
+
+    void patientUpdated(Patient patient);
+
+    void patientDeleted(int patientId);
+
+    // Many rows changed at once (e.g. a bulk import); anything derived from the table should be reloaded
+    default void patientsReloaded() {
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// What happened to the patients table after a change token, folded to one entry per patient:
+// rows added or updated since (as they are now), ids deleted since, and patients who had visits
+// added, by any client or by other clients only. Pass getToken() to the next PatientRepository.getPatientsChangedSince() call. When the
+// log cannot say what changed
+// (a bulk write, or more changes than fit in one answer) isReloadRequired() is set instead.
+class PatientChanges {
+
+    // patient_changes.change_type values
+    static final String INSERTED = "I";
+    static final String UPDATED = "U";
+    static final String DELETED = "D";
+    // A visit was added for the patient
+    static final String VISITS = "V";
+    // Many rows at once (bulk import); logged with patient id 0
+    static final String RELOAD = "R";
+
+    private final long token;
+    private final List<Patient> added;
+    private final List<Patient> updated;
+    private final List<Integer> deletedIds;
+    private final Set<Integer> visitPatientIds;
+    private final Set<Integer> remoteVisitPatientIds;
+    private final boolean reloadRequired;
+
+    private PatientChanges(long token, List<Patient> added, List<Patient> updated, List<Integer> deletedIds,
+                           Set<Integer> visitPatientIds, Set<Integer> remoteVisitPatientIds, boolean reloadRequired) {
+        this.token = token;
+        this.added = added;
+        this.updated = updated;
+        this.deletedIds = deletedIds;
+        this.visitPatientIds = visitPatientIds;
+        this.remoteVisitPatientIds = remoteVisitPatientIds;
+        this.reloadRequired = reloadRequired;
+    }
+
+    static PatientChanges reloadRequired(long token) {
+        return new PatientChanges(token, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptySet(), Collections.emptySet(), true);
+    }
+
+    public long getToken() {
+        return token;
+    }
+
+    public List<Patient> getAdded() {
+        return added;
+    }
+
+    public List<Patient> getUpdated() {
+        return updated;
+    }
+
+    public List<Integer> getDeletedIds() {
+        return deletedIds;
+    }
+
+    // Patients whose visit history grew; a reload may have added visits for anyone
+    public Set<Integer> getVisitPatientIds() {
+        return visitPatientIds;
+    }
+
+    // The part of getVisitPatientIds() that other workstations wrote
+    public Set<Integer> getRemoteVisitPatientIds() {
+        return remoteVisitPatientIds;
+    }
+
+    public boolean isReloadRequired() {
+        return reloadRequired;
+    }
+
+    // Whether any patient row may have changed, as opposed to only visits
+    public boolean hasPatientChanges() {
+        return reloadRequired || !added.isEmpty() || !updated.isEmpty() || !deletedIds.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && deletedIds.isEmpty() && visitPatientIds.isEmpty() && !reloadRequired;
+    }
+
+    // Replays the patient changes as listener calls, e.g. for a PatientSearchIndex
+    public void notify(PatientChangeListener listener) {
+        if (reloadRequired) {
+            listener.patientsReloaded();
+            return;
+        }
+        for (Patient p : added) {
+            listener.patientAdded(p);
+        }
+        for (Patient p : updated) {
+            listener.patientUpdated(p);
+        }
+        for (int id : deletedIds) {
+            listener.patientDeleted(id);
+        }
+    }
+
+    // Folds change-log entries, oldest first, into a PatientChanges
+    static class Builder {
+
+        private final Map<Integer, Boolean> insertedSince = new LinkedHashMap<>();
+        private final Map<Integer, Patient> current = new LinkedHashMap<>();
+        private final Set<Integer> visitPatientIds = new LinkedHashSet<>();
+        private final Set<Integer> remoteVisitPatientIds = new LinkedHashSet<>();
+        private long token;
+        private boolean reloadRequired;
+
+        Builder(long token) {
+            this.token = token;
+        }
+
+        // A change this client made itself
+        void add(long seq, int patientId, String changeType, Patient patient) {
+            add(seq, patientId, changeType, patient, false);
+        }
+
+        // patient is the row as it is now, or null if it no longer exists; remote if another client wrote it
+        void add(long seq, int patientId, String changeType, Patient patient, boolean remote) {
+            token = Math.max(token, seq);
+            if (RELOAD.equals(changeType)) {
+                reloadRequired = true;
+                return;
+            }
+            if (VISITS.equals(changeType)) {
+                visitPatientIds.add(patientId);
+                if (remote) {
+                    remoteVisitPatientIds.add(patientId);
+                }
+                return;
+            }
+            insertedSince.merge(patientId, INSERTED.equals(changeType), Boolean::logicalOr);
+            current.put(patientId, patient);
+        }
+
+        PatientChanges build() {
+            if (reloadRequired) {
+                return reloadRequired(token);
+            }
+            List<Patient> added = new ArrayList<>();
+            List<Patient> updated = new ArrayList<>();
+            List<Integer> deletedIds = new ArrayList<>();
+            for (Map.Entry<Integer, Patient> e : current.entrySet()) {
+                boolean inserted = insertedSince.get(e.getKey());
+                if (e.getValue() != null) {
+                    (inserted ? added : updated).add(e.getValue());
+                } else if (!inserted) {
+                    // A patient added and deleted again since the token was never seen, so it is left out
+                    deletedIds.add(e.getKey());
+                }
+            }
+            return new PatientChanges(token, added, updated, deletedIds, visitPatientIds, remoteVisitPatientIds, false);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+// Column-oriented storage for a block of patient rows.
+// Ids and ages live in int arrays and gender/blood group as dictionary codes, so a row costs
+// a few bytes plus its three strings instead of a Patient object or a boxed Object[] row.
+class PatientColumns {
+
+    static final CodeDictionary GENDERS = new CodeDictionary("M", "F", "O");
+    static final CodeDictionary BLOOD_GROUPS = new CodeDictionary("A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-");
+
+    // Identity ids start at 1, so 0 marks a slot whose row has not been loaded
+    private static final int EMPTY = 0;
+
+    private final int capacity;
+    private final int[] ids;
+    private final int[] ages;
+    private final byte[] genders;
+    private final byte[] bloodGroups;
+    private final String[] names;
+    private final String[] phones;
+    private final String[] addresses;
+
+    public PatientColumns(int capacity) {
+        this.capacity = capacity;
+        ids = new int[capacity];
+        ages = new int[capacity];
+        genders = new byte[capacity];
+        bloodGroups = new byte[capacity];
+        names = new String[capacity];
+        phones = new String[capacity];
+        addresses = new String[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void set(int slot, Patient p) {
+        ids[slot] = p.getId();
+        ages[slot] = p.getAge();
+        genders[slot] = GENDERS.encode(p.getGender());
+        bloodGroups[slot] = BLOOD_GROUPS.encode(p.getBloodGroup());
+        names[slot] = p.getName();
+        phones[slot] = p.getPhone();
+        addresses[slot] = p.getAddress();
+    }
+
+    public boolean isLoaded(int slot) {
+        return ids[slot] != EMPTY;
+    }
+
+    public int getId(int slot) {
+        return ids[slot];
+    }
+
+    public int getAge(int slot) {
+        return ages[slot];
+    }
+
+    public String getGender(int slot) {
+        return GENDERS.decode(genders[slot]);
+    }
+
+    public String getBloodGroup(int slot) {
+        return BLOOD_GROUPS.decode(bloodGroups[slot]);
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public String getPhone(int slot) {
+        return phones[slot];
+    }
+
+    public String getAddress(int slot) {
+        return addresses[slot];
+    }
+
+    public Patient toPatient(int slot) {
+        if (!isLoaded(slot)) {
+            return null;
+        }
+        return new Patient(ids[slot], names[slot], ages[slot], getGender(slot), phones[slot],
+                addresses[slot], getBloodGroup(slot));
+    }
+
+    public void clear() {
+        clear(0, capacity);
+    }
+
+    public void clear(int from, int to) {
+        Arrays.fill(ids, from, to, EMPTY);
+        Arrays.fill(names, from, to, null);
+        Arrays.fill(phones, from, to, null);
+        Arrays.fill(addresses, from, to, null);
+    }
+
+    // Moves every row down by distance slots (up if negative); slots uncovered by the move are emptied
+    public void shift(int distance) {
+        if (distance == 0) {
+            return;
+        }
+        if (Math.abs(distance) >= capacity) {
+            clear();
+            return;
+        }
+        int length = capacity - Math.abs(distance);
+        copy(Math.max(distance, 0), Math.max(-distance, 0), length);
+        if (distance > 0) {
+            clear(length, capacity);
+        } else {
+            clear(0, -distance);
+        }
+    }
+
+    // Opens an empty slot, moving the rows from slot on one place back; the last row drops off
+    public void insertSlot(int slot) {
+        copy(slot, slot + 1, capacity - slot - 1);
+        clear(slot, slot + 1);
+    }
+
+    // Closes up the given slot, moving the rows after it one place forward; the last slot is emptied
+    public void removeSlot(int slot) {
+        copy(slot + 1, slot, capacity - slot - 1);
+        clear(capacity - 1, capacity);
+    }
+
+    // Slot of the row with the given id, or -1 if it is not loaded
+    public int indexOf(int id) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (ids[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void copy(int src, int dst, int length) {
+        System.arraycopy(ids, src, ids, dst, length);
+        System.arraycopy(ages, src, ages, dst, length);
+        System.arraycopy(genders, src, genders, dst, length);
+        System.arraycopy(bloodGroups, src, bloodGroups, dst, length);
+        System.arraycopy(names, src, names, dst, length);
+        System.arraycopy(phones, src, phones, dst, length);
+        System.arraycopy(addresses, src, addresses, dst, length);
+    }
+}
@@ -0,0 +1,106 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+// Streams the patients table to CSV straight from the ResultSet, so heap use stays flat
+// whatever the table size. Writes to a temporary file that replaces the target only on success.
+class PatientCsvExporter {
+
+    interface ProgressListener {
+        void progress(long rowsWritten, long totalRows);
+    }
+
+    static final int FETCH_SIZE = Integer.getInteger("hms.export.fetchSize", 5000);
+    private static final int BUFFER_CHARS = 1 << 16;
+    private static final int PROGRESS_INTERVAL = 10000;
+    private static final Metrics.Timer EXPORT_TIMER = Metrics.timer("csv.export");
+
+    private final PatientRepository patientDAO;
+    private volatile boolean cancelled;
+
+    public PatientCsvExporter(PatientRepository patientDAO) {
+        this.patientDAO = patientDAO;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Returns the number of rows written; nothing is left behind if cancelled or failed
+    public long export(Path target, ProgressListener listener) throws IOException, SQLException {
+        long start = System.nanoTime();
+        try {
+            long rows = exportRows(target, listener);
+            EXPORT_TIMER.record(start, rows);
+            return rows;
+        } catch (IOException | SQLException | RuntimeException e) {
+            EXPORT_TIMER.recordError(start);
+            throw e;
+        }
+    }
+
+    private long exportRows(Path target, ProgressListener listener) throws IOException, SQLException {
+        long total = patientDAO.countPatients();
+        Path temp = target.resolveSibling(target.getFileName() + ".part");
+        IOException[] writeError = new IOException[1];
+        long[] written = new long[1];
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 Csv.RecordWriter csv = new Csv.RecordWriter(
+                         new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_CHARS)) {
+                csv.writeLine(Csv.PATIENT_HEADER);
+                patientDAO.forEachPatient(FETCH_SIZE, p -> {
+                    if (cancelled) {
+                        return false;
+                    }
+                    try {
+                        csv.writeField(p.getId())
+                                .writeField(p.getName())
+                                .writeField(p.getAge())
+                                .writeField(p.getGender())
+                                .writeField(p.getPhone())
+                                .writeField(p.getBloodGroup())
+                                .writeField(p.getAddress())
+                                .endRecord();
+                    } catch (IOException e) {
+                        writeError[0] = e;
+                        return false;
+                    }
+                    long n = ++written[0];
+                    if (listener != null && n % PROGRESS_INTERVAL == 0) {
+                        listener.progress(n, Math.max(total, n));
+                    }
+                    return true;
+                });
+                if (writeError[0] != null) {
+                    throw writeError[0];
+                }
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        if (cancelled) {
+            Files.deleteIfExists(temp);
+            return written[0];
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        if (listener != null) {
+            listener.progress(written[0], Math.max(total, written[0]));
+        }
+        return written[0];
+    }
+}
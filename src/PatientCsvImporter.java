@@ -0,0 +1,319 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// Streams patients from a CSV file in the format written by Export to CSV into the database.
+// Parsing, validation and batched writing run on separate threads connected by bounded queues,
+// so memory use does not depend on the file size. Rows that fail validation or cannot be
+// written are copied to a rejected-rows CSV together with the reason.
+class PatientCsvImporter {
+
+    interface ProgressListener {
+        void progress(long rowsRead, long rowsImported, long rowsRejected);
+    }
+
+    static class Result {
+        final long rowsRead;
+        final long rowsImported;
+        final long rowsRejected;
+        final boolean cancelled;
+
+        Result(long rowsRead, long rowsImported, long rowsRejected, boolean cancelled) {
+            this.rowsRead = rowsRead;
+            this.rowsImported = rowsImported;
+            this.rowsRejected = rowsRejected;
+            this.cancelled = cancelled;
+        }
+    }
+
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final Pattern PHONE_PATTERN = Pattern.compile("\\d{10,15}");
+    private static final Set<String> GENDERS = new HashSet<>(Arrays.asList("M", "F", "O"));
+    private static final Set<String> BLOOD_GROUPS = new HashSet<>(
+            Arrays.asList("A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-"));
+
+    // Queue entry for one CSV record; END marks the end of the stream
+    private static class Row {
+        final int line;
+        final String raw;
+        final List<String> fields;
+        Patient patient;
+
+        Row(int line, String raw, List<String> fields) {
+            this.line = line;
+            this.raw = raw;
+            this.fields = fields;
+        }
+    }
+
+    private static final Row END = new Row(-1, null, null);
+
+    private final PatientRepository patientDAO;
+    private final int batchSize;
+    private final int commitInterval;
+    private volatile boolean cancelled;
+
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsImported = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+
+    public PatientCsvImporter(PatientRepository patientDAO) {
+        this(patientDAO, PatientRepository.DEFAULT_BATCH_SIZE, PatientRepository.DEFAULT_COMMIT_INTERVAL);
+    }
+
+    public PatientCsvImporter(PatientRepository patientDAO, int batchSize, int commitInterval) {
+        this.patientDAO = patientDAO;
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Runs the import on the calling thread plus two helper threads; returns when all rows are handled
+    public Result importFile(Path csvFile, Path rejectedFile, ProgressListener listener) throws IOException {
+        BlockingQueue<Row> parsed = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Row> valid = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Throwable[] failure = new Throwable[1];
+
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8);
+             RejectedRows rejects = new RejectedRows(rejectedFile)) {
+
+            Thread parser = new Thread(() -> {
+                try {
+                    parse(reader, parsed);
+                } catch (Throwable t) {
+                    failure[0] = t;
+                    cancelled = true;
+                } finally {
+                    putQuietly(parsed, END);
+                }
+            }, "csv-import-parser");
+
+            Thread validator = new Thread(() -> {
+                try {
+                    validate(parsed, valid, rejects);
+                } catch (Throwable t) {
+                    failure[0] = t;
+                    cancelled = true;
+                } finally {
+                    putQuietly(valid, END);
+                }
+            }, "csv-import-validator");
+
+            parser.setDaemon(true);
+            validator.setDaemon(true);
+            parser.start();
+            validator.start();
+            boolean finished = false;
+            try {
+                write(valid, rejects, listener);
+                finished = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            } finally {
+                if (!finished) {
+                    cancelled = true;
+                }
+                // Unblock the helpers if the writer stopped early
+                parsed.clear();
+                valid.clear();
+                joinQuietly(parser);
+                joinQuietly(validator);
+            }
+        }
+
+        if (failure[0] instanceof IOException) {
+            throw (IOException) failure[0];
+        } else if (failure[0] != null) {
+            throw new IOException("Import failed: " + failure[0].getMessage(), failure[0]);
+        }
+        return new Result(rowsRead.get(), rowsImported.get(), rowsRejected.get(), cancelled);
+    }
+
+    private void parse(BufferedReader reader, BlockingQueue<Row> out) throws IOException, InterruptedException {
+        Csv.RecordReader records = new Csv.RecordReader(reader);
+        List<String> fields;
+        boolean first = true;
+        while (!cancelled && (fields = records.next()) != null) {
+            if (first) {
+                first = false;
+                // Skip the header written by the exporter
+                if (!fields.isEmpty() && "ID".equalsIgnoreCase(fields.get(0).trim())) {
+                    continue;
+                }
+            }
+            if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                continue; // Blank line
+            }
+            rowsRead.incrementAndGet();
+            out.put(new Row(records.getRecordLine(), records.getRawRecord(), fields));
+        }
+    }
+
+    private void validate(BlockingQueue<Row> in, BlockingQueue<Row> out, RejectedRows rejects)
+            throws IOException, InterruptedException {
+        Row row;
+        while ((row = in.take()) != END) {
+            if (cancelled) {
+                continue; // Drain so the parser never blocks
+            }
+            String error = toPatient(row);
+            if (error != null) {
+                rejects.add(row, error);
+                rowsRejected.incrementAndGet();
+            } else {
+                out.put(row);
+            }
+        }
+    }
+
+    // Column order: ID, Name, Age, Gender, Phone, Blood Group, Address. The ID is ignored.
+    private String toPatient(Row row) {
+        List<String> f = row.fields;
+        if (f.size() != 7) {
+            return "Expected 7 columns but found " + f.size();
+        }
+        String name = f.get(1).trim();
+        if (name.isEmpty()) {
+            return "Name is required";
+        }
+        if (name.length() > 100) {
+            return "Name is longer than 100 characters";
+        }
+        int age;
+        try {
+            age = Integer.parseInt(f.get(2).trim());
+        } catch (NumberFormatException e) {
+            return "Invalid age: " + f.get(2);
+        }
+        if (age <= 0 || age > 150) {
+            return "Age must be between 1 and 150";
+        }
+        String gender = f.get(3).trim().toUpperCase();
+        if (!GENDERS.contains(gender)) {
+            return "Invalid gender: " + f.get(3);
+        }
+        String phone = f.get(4).trim();
+        if (!PHONE_PATTERN.matcher(phone).matches()) {
+            return "Invalid phone number (10-15 digits): " + phone;
+        }
+        String bloodGroup = f.get(5).trim().toUpperCase();
+        if (!bloodGroup.isEmpty() && !BLOOD_GROUPS.contains(bloodGroup)) {
+            return "Invalid blood group: " + f.get(5);
+        }
+        String address = f.get(6).trim();
+        if (address.length() > 200) {
+            return "Address is longer than 200 characters";
+        }
+        row.patient = new Patient(name, age, gender, phone, address, bloodGroup.isEmpty() ? null : bloodGroup);
+        return null;
+    }
+
+    private void write(BlockingQueue<Row> in, RejectedRows rejects, ProgressListener listener)
+            throws IOException, InterruptedException {
+        List<Row> chunk = new ArrayList<>(commitInterval);
+        Row row;
+        while ((row = in.take()) != END) {
+            if (cancelled) {
+                break;
+            }
+            chunk.add(row);
+            if (chunk.size() >= commitInterval) {
+                writeChunk(chunk, rejects);
+                report(listener);
+            }
+        }
+        if (!cancelled && !chunk.isEmpty()) {
+            writeChunk(chunk, rejects);
+        }
+        report(listener);
+    }
+
+    // One transaction per chunk. If the batch fails, the chunk is retried row by row so a
+    // single bad row is rejected instead of the whole chunk.
+    private void writeChunk(List<Row> chunk, RejectedRows rejects) throws IOException {
+        List<Patient> patients = new ArrayList<>(chunk.size());
+        for (Row r : chunk) {
+            patients.add(r.patient);
+        }
+        try {
+            rowsImported.addAndGet(patientDAO.addPatients(patients, batchSize, commitInterval));
+        } catch (SQLException batchError) {
+            for (Row r : chunk) {
+                try {
+                    patientDAO.addPatient(r.patient);
+                    rowsImported.incrementAndGet();
+                } catch (SQLException e) {
+                    rejects.add(r, "Database error: " + e.getMessage());
+                    rowsRejected.incrementAndGet();
+                }
+            }
+        }
+        chunk.clear();
+    }
+
+    private void report(ProgressListener listener) {
+        if (listener != null) {
+            listener.progress(rowsRead.get(), rowsImported.get(), rowsRejected.get());
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<Row> queue, Row row) {
+        try {
+            queue.put(row);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Rejected rows as CSV: the original record followed by the reason. Created on first rejection.
+    private static class RejectedRows implements AutoCloseable {
+        private final Path file;
+        private BufferedWriter writer;
+
+        RejectedRows(Path file) {
+            this.file = file;
+        }
+
+        synchronized void add(Row row, String reason) throws IOException {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                writer.write(Csv.PATIENT_HEADER + ",Line,Rejection Reason\n");
+            }
+            writer.write(row.raw);
+            writer.write("," + row.line + "," + Csv.escape(reason) + "\n");
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
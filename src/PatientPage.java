@@ -0,0 +1,26 @@
+import java.util.List;
+
+// One keyset-scrolled slice of the patients table, ordered by id.
+// Pass getLastId() as the cursor to PatientRepository.getPatientsPage() to fetch the following page.
+class PatientPage {
+
+    private final List<Patient> patients;
+    private final boolean hasMore;
+
+    public PatientPage(List<Patient> patients, boolean hasMore) {
+        this.patients = patients;
+        this.hasMore = hasMore;
+    }
+
+    public List<Patient> getPatients() {
+        return patients;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public int getLastId() {
+        return patients.isEmpty() ? -1 : patients.get(patients.size() - 1).getId();
+    }
+}
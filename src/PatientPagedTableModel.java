@@ -0,0 +1,541 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import javax.swing.table.AbstractTableModel;
+
+// Table model for the patient list that loads rows lazily, one page at a time, as JTable asks for them.
+// Loaded rows live in a column-oriented PatientColumns window of fixed size that slides to follow
+// the viewport, so memory stays flat however large the table is. Sequential scrolling follows
+// keyset cursors; jumping to a page whose cursor is not known yet falls back to an OFFSET query once.
+// After a write, refreshChanges() patches the rows from the repository's change log instead of reloading.
+// Filtering and sorting by column go to showSnapshot(), which loads the whole table once into a
+// PatientSnapshot and answers every later query from memory, off the EDT.
+class PatientPagedTableModel extends AbstractTableModel {
+
+    static final int PAGE_SIZE = 200;
+    static final int SNAPSHOT_FETCH_SIZE = Integer.getInteger("hms.table.snapshotFetchSize", 1000);
+    private static final int WINDOW_PAGES = 20;
+    private static final int WINDOW_SIZE = PAGE_SIZE * WINDOW_PAGES;
+    // Start fetching the next page when a row this close to the end of the current one is shown
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 4;
+
+    private static final String[] COLUMN_NAMES = {"ID", "Name", "Age", "Gender", "Phone", "Blood Group", "Address"};
+
+    // Reloads and pages from the request to the rows being in the model, EDT queueing included;
+    // changes time patching the loaded rows from a change-log delta; snapshot a filter or sort from the
+    // request to the rows being shown, the first load of the snapshot included
+    private static final Metrics.Timer RELOAD_TIMER = Metrics.timer("table.reload");
+    private static final Metrics.Timer PAGE_TIMER = Metrics.timer("table.page");
+    private static final Metrics.Timer CHANGES_TIMER = Metrics.timer("table.changes");
+    private static final Metrics.Timer SNAPSHOT_TIMER = Metrics.timer("table.snapshot");
+
+    private final AsyncPatientDAO patientDAO;
+
+    // Rows [windowStart, windowStart + WINDOW_SIZE) of the full listing
+    private final PatientColumns window = new PatientColumns(WINDOW_SIZE);
+    private int windowStart;
+    // Last id of the page before each page index (-1 = unknown), learned as pages arrive
+    private int[] pageCursors = new int[1];
+    private final Set<Integer> pagesInFlight = new HashSet<>();
+    // Pages that came back with fewer rows than the listing has there; not asked for again until rows
+    // move or the listing reloads, or every repaint would fetch them once more
+    private final Set<Integer> shortPages = new HashSet<>();
+
+    // Non-null while the model shows a fixed result list (e.g. a search) instead of the whole table
+    private PatientColumns fixedRows;
+    // Non-null while the model shows a filtered or sorted view of the whole table. The snapshot
+    // outlives views of it and is kept current from the change log; filter and sort are the latest
+    // query asked for, filter null once something else has been asked for instead.
+    private PatientSnapshot.View view;
+    private PatientSnapshot snapshot;
+    private PatientSnapshot.Filter filter;
+    private int sortColumn = -1;
+    private boolean sortDescending;
+    private int rowCount;
+    // Bumped on every reload so late page results from an older listing are dropped
+    private int generation;
+    // Bumped when rows are inserted or deleted in place, so pages fetched for the old positions are dropped
+    private int rowMoves;
+    // Change-log position the rows are current as of, or -1 if the repository does not track changes
+    private long changeToken = -1;
+    private CompletableFuture<Void> changesInFlight;
+    private CompletableFuture<Void> nextChanges;
+
+    public PatientPagedTableModel(AsyncPatientDAO patientDAO) {
+        this.patientDAO = patientDAO;
+    }
+
+    // Switches to paged browsing of the whole table; completes with the new row count
+    public CompletableFuture<Integer> reload() {
+        int gen = ++generation;
+        filter = null;
+        long start = System.nanoTime();
+        return patientDAO.getChangeTokenAndCount().whenComplete((result, error) -> {
+            if (error != null) {
+                RELOAD_TIMER.recordError(start);
+            }
+        }).thenApplyAsync(tokenAndCount -> {
+            int count = (int) tokenAndCount[1];
+            if (gen == generation) {
+                changeToken = tokenAndCount[0];
+                fixedRows = null;
+                view = null;
+                snapshot = null;
+                window.clear();
+                windowStart = 0;
+                pagesInFlight.clear();
+                shortPages.clear();
+                pageCursors = new int[count / PAGE_SIZE + 2];
+                Arrays.fill(pageCursors, -1);
+                pageCursors[0] = 0;
+                rowCount = count;
+                fireTableDataChanged();
+                RELOAD_TIMER.record(start, 0);
+            }
+            return count;
+        }, DatabaseExecutor.EDT);
+    }
+
+    // Switches to the rows of the whole table passing filter, ordered by column (-1 for id order).
+    // The first call loads the snapshot with one scan; completes with the new row count.
+    public CompletableFuture<Integer> showSnapshot(PatientSnapshot.Filter filter, int column, boolean descending) {
+        int gen = ++generation;
+        long start = System.nanoTime();
+        this.filter = filter;
+        sortColumn = column;
+        sortDescending = descending;
+        CompletableFuture<PatientSnapshot> source = snapshot != null
+                ? CompletableFuture.completedFuture(snapshot) : patientDAO.loadSnapshot(SNAPSHOT_FETCH_SIZE);
+        return source.thenApplyAsync(loaded -> loaded.query(filter, column, descending), ForkJoinPool.commonPool())
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        SNAPSHOT_TIMER.recordError(start);
+                    }
+                }).thenApplyAsync(result -> {
+                    if (gen == generation) {
+                        show(result);
+                        SNAPSHOT_TIMER.record(start, result.size());
+                    }
+                    return result.size();
+                }, DatabaseExecutor.EDT);
+    }
+
+    // The next showSnapshot() scans the table again
+    public void discardSnapshot() {
+        snapshot = null;
+    }
+
+    private void show(PatientSnapshot.View result) {
+        snapshot = result.getSnapshot();
+        changeToken = snapshot.getChangeToken();
+        view = result;
+        fixedRows = null;
+        pagesInFlight.clear();
+        rowCount = result.size();
+        fireTableDataChanged();
+    }
+
+    // Brings the rows up to date with the writes made since they were loaded: one change-log query,
+    // applied as row inserts, updates and deletes. Falls back to reload() when the repository cannot
+    // say what changed. A call made while a check is running is answered by one more check after it.
+    public CompletableFuture<Void> refreshChanges() {
+        if (changesInFlight != null) {
+            if (nextChanges == null) {
+                nextChanges = new CompletableFuture<>();
+            }
+            return nextChanges;
+        }
+        CompletableFuture<Void> check = checkChanges();
+        changesInFlight = check;
+        check.whenCompleteAsync((result, error) -> {
+            changesInFlight = null;
+            CompletableFuture<Void> next = nextChanges;
+            if (next != null) {
+                nextChanges = null;
+                refreshChanges().whenComplete((nextResult, nextError) -> {
+                    if (nextError != null) {
+                        next.completeExceptionally(nextError);
+                    } else {
+                        next.complete(null);
+                    }
+                });
+            }
+        }, DatabaseExecutor.EDT);
+        return check;
+    }
+
+    private CompletableFuture<Void> checkChanges() {
+        long token = changeToken;
+        if (token < 0 && view != null) {
+            // Without a change log the snapshot can only be read again; a pending reload reads it anyway
+            if (filter == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            snapshot = null;
+            return showSnapshot(filter, sortColumn, sortDescending).thenApply(count -> null);
+        }
+        if (token < 0) {
+            // A search result stays as it is; the listing is reloaded when it is shown again
+            return fixedRows != null ? CompletableFuture.completedFuture(null) : reload().thenApply(count -> null);
+        }
+        return patientDAO.getPatientsChangedSince(token).thenComposeAsync(changes -> {
+            if (token != changeToken) {
+                // A reload landed meanwhile and already shows these changes
+                return CompletableFuture.completedFuture(null);
+            }
+            if (changes.isReloadRequired()) {
+                changeToken = -1;
+                return checkChanges();
+            }
+            if (view != null) {
+                return filter != null ? applySnapshotChanges(changes) : CompletableFuture.completedFuture(null);
+            }
+            long start = System.nanoTime();
+            changeToken = changes.getToken();
+            applyChanges(changes);
+            CHANGES_TIMER.record(start, changes.getAdded().size() + changes.getUpdated().size() + changes.getDeletedIds().size());
+            return CompletableFuture.completedFuture(null);
+        }, DatabaseExecutor.EDT);
+    }
+
+    // The next snapshot and the current query over it are built off the EDT. If a newer query started
+    // meanwhile it was running on the old snapshot, so it is asked again.
+    private CompletableFuture<Void> applySnapshotChanges(PatientChanges changes) {
+        int gen = generation;
+        long start = System.nanoTime();
+        PatientSnapshot current = snapshot;
+        PatientSnapshot.Filter currentFilter = filter;
+        int column = sortColumn;
+        boolean descending = sortDescending;
+        return CompletableFuture.supplyAsync(() -> current.withChanges(changes).query(currentFilter, column, descending),
+                ForkJoinPool.commonPool()).thenComposeAsync(result -> {
+                    if (snapshot != current || filter == null) {
+                        // Reloaded, discarded or left meanwhile
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    if (gen != generation) {
+                        snapshot = result.getSnapshot();
+                        changeToken = snapshot.getChangeToken();
+                        return showSnapshot(filter, sortColumn, sortDescending).thenApply(count -> null);
+                    }
+                    show(result);
+                    CHANGES_TIMER.record(start, changes.getAdded().size() + changes.getUpdated().size()
+                            + changes.getDeletedIds().size());
+                    return CompletableFuture.completedFuture(null);
+                }, DatabaseExecutor.EDT);
+    }
+
+    private void applyChanges(PatientChanges changes) {
+        if (fixedRows != null) {
+            // Rows of a search result may be updated or dropped; new patients are not known to match it
+            for (Patient p : changes.getUpdated()) {
+                int slot = fixedRows.indexOf(p.getId());
+                if (slot >= 0) {
+                    fixedRows.set(slot, p);
+                    fireTableRowsUpdated(slot, slot);
+                }
+            }
+            for (int id : changes.getDeletedIds()) {
+                int slot = fixedRows.indexOf(id);
+                if (slot >= 0) {
+                    fixedRows.removeSlot(slot);
+                    rowCount--;
+                    fireTableRowsDeleted(slot, slot);
+                }
+            }
+            return;
+        }
+        for (Patient p : changes.getUpdated()) {
+            int slot = window.indexOf(p.getId());
+            if (slot >= 0) {
+                window.set(slot, p);
+                fireTableRowsUpdated(windowStart + slot, windowStart + slot);
+            }
+        }
+        boolean moved = false;
+        for (int id : changes.getDeletedIds()) {
+            moved |= deleteRow(id);
+        }
+        for (Patient p : changes.getAdded()) {
+            moved |= insertRow(p);
+        }
+        if (moved) {
+            rowMoves++;
+            pagesInFlight.clear();
+            shortPages.clear();
+            rebuildPageCursors();
+        }
+    }
+
+    // Rows that are not loaded are only known by position, so a patient whose place falls among them is
+    // added or removed as an unloaded row there; that row is fetched again, by offset, when it is shown.
+    // Loaded rows on either side of the gap still end up where they belong. Returns whether rows moved.
+    private boolean insertRow(Patient p) {
+        int slot = window.indexOf(p.getId());
+        if (slot >= 0) {
+            // Already loaded by a reload that raced with the write
+            window.set(slot, p);
+            fireTableRowsUpdated(windowStart + slot, windowStart + slot);
+            return false;
+        }
+        int below = loadedBelow(p.getId());
+        int gapStart = below + 1;
+        int row = Math.min(windowStart + gapStart, rowCount);
+        slot = row - windowStart;
+        if (slot >= 0 && slot < WINDOW_SIZE) {
+            window.insertSlot(slot);
+            if (isLeftKnown(below) && isRightKnown(gapStart)) {
+                window.set(slot, p);
+            }
+        }
+        rowCount++;
+        fireTableRowsInserted(row, row);
+        return true;
+    }
+
+    private boolean deleteRow(int id) {
+        int slot = window.indexOf(id);
+        int row;
+        if (slot >= 0) {
+            window.removeSlot(slot);
+            row = windowStart + slot;
+        } else {
+            int below = loadedBelow(id);
+            int gapStart = below + 1;
+            boolean rightKnown = isRightKnown(gapStart);
+            if (isLeftKnown(below) && rightKnown) {
+                // The loaded rows on both sides are adjacent, so the patient was not listed
+                return false;
+            }
+            if (rightKnown) {
+                // Nothing unloaded inside the window precedes the loaded rows: the row was before the window
+                windowStart--;
+                row = windowStart;
+            } else if (gapStart < WINDOW_SIZE) {
+                window.removeSlot(gapStart);
+                row = windowStart + gapStart;
+            } else {
+                row = windowStart + WINDOW_SIZE;
+            }
+        }
+        rowCount--;
+        fireTableRowsDeleted(row, row);
+        return true;
+    }
+
+    // Last loaded slot holding a smaller id than the given one, or -1
+    private int loadedBelow(int id) {
+        int below = -1;
+        for (int slot = 0; slot < WINDOW_SIZE; slot++) {
+            if (window.isLoaded(slot)) {
+                if (window.getId(slot) >= id) {
+                    break;
+                }
+                below = slot;
+            }
+        }
+        return below;
+    }
+
+    // Whether the row before gapStart is known: a loaded slot, or the start of the listing
+    private boolean isLeftKnown(int below) {
+        return below >= 0 || windowStart == 0;
+    }
+
+    // Whether the row at gapStart is known: a loaded slot, or the end of the listing
+    private boolean isRightKnown(int gapStart) {
+        return (gapStart < WINDOW_SIZE && window.isLoaded(gapStart)) || windowStart + gapStart >= rowCount;
+    }
+
+    // Keeps the keyset cursors the loaded rows still vouch for; other pages fall back to OFFSET once
+    private void rebuildPageCursors() {
+        pageCursors = new int[rowCount / PAGE_SIZE + 2];
+        Arrays.fill(pageCursors, -1);
+        pageCursors[0] = 0;
+        for (int page = 1; page < pageCursors.length; page++) {
+            int slot = page * PAGE_SIZE - 1 - windowStart;
+            if (slot >= 0 && slot < WINDOW_SIZE && window.isLoaded(slot)) {
+                pageCursors[page] = window.getId(slot);
+            }
+        }
+    }
+
+    public void showPatients(List<Patient> patients) {
+        generation++;
+        filter = null;
+        pagesInFlight.clear();
+        PatientColumns rows = new PatientColumns(patients.size());
+        for (int i = 0; i < patients.size(); i++) {
+            rows.set(i, patients.get(i));
+        }
+        fixedRows = rows;
+        view = null;
+        snapshot = null;
+        rowCount = patients.size();
+        fireTableDataChanged();
+    }
+
+    // Returns the patient shown at the given row, or null if its page has not arrived yet
+    public Patient getPatientAt(int row) {
+        if (view != null) {
+            return view.getSnapshot().toPatient(view.rowAt(row));
+        }
+        if (fixedRows != null) {
+            return fixedRows.toPatient(row);
+        }
+        int slot = slotFor(row);
+        return slot < 0 ? null : window.toPatient(slot);
+    }
+
+    // Maps a row to its window slot, sliding the window and requesting pages as needed.
+    // Returns -1 while the row is still loading.
+    private int slotFor(int row) {
+        if (row < windowStart || row >= windowStart + WINDOW_SIZE) {
+            slideWindowTo(row);
+        }
+        int slot = row - windowStart;
+        int pageIndex = row / PAGE_SIZE;
+        if (!window.isLoaded(slot)) {
+            requestPage(pageIndex);
+            return -1;
+        }
+        if (row % PAGE_SIZE >= PAGE_SIZE - PREFETCH_DISTANCE && (pageIndex + 1) * PAGE_SIZE < rowCount) {
+            int nextSlot = (pageIndex + 1) * PAGE_SIZE - windowStart;
+            if (nextSlot < WINDOW_SIZE && !window.isLoaded(nextSlot)) {
+                requestPage(pageIndex + 1);
+            }
+        }
+        return slot;
+    }
+
+    private void slideWindowTo(int row) {
+        // Centre the window on the requested page, keeping any rows that still fall inside it
+        int newStart = Math.max(0, (row / PAGE_SIZE - WINDOW_PAGES / 2) * PAGE_SIZE);
+        window.shift(newStart - windowStart);
+        windowStart = newStart;
+    }
+
+    private void requestPage(int pageIndex) {
+        if (shortPages.contains(pageIndex) || !pagesInFlight.add(pageIndex)) {
+            return;
+        }
+        int gen = generation;
+        int moves = rowMoves;
+        long start = System.nanoTime();
+        int cursor = pageIndex < pageCursors.length ? pageCursors[pageIndex] : -1;
+        CompletableFuture<PatientPage> fetch = cursor >= 0
+                ? patientDAO.getPatientsPage(cursor, PAGE_SIZE)
+                : patientDAO.getPatientsPageAt(pageIndex * PAGE_SIZE, PAGE_SIZE);
+        fetch.whenCompleteAsync((page, error) -> {
+            if (gen != generation || moves != rowMoves) {
+                return;
+            }
+            pagesInFlight.remove(pageIndex);
+            if (error != null) {
+                PAGE_TIMER.recordError(start);
+                System.err.println("Error loading patient page " + pageIndex + ": "
+                        + DatabaseExecutor.unwrap(error).getMessage());
+                return;
+            }
+            List<Patient> patients = page.getPatients();
+            if (!patients.isEmpty() && pageIndex + 1 < pageCursors.length) {
+                pageCursors[pageIndex + 1] = page.getLastId();
+            }
+            // The window may have slid away while the page was in flight
+            int first = pageIndex * PAGE_SIZE;
+            int stored = 0;
+            for (int i = 0; i < patients.size(); i++) {
+                int slot = first + i - windowStart;
+                if (slot >= 0 && slot < WINDOW_SIZE) {
+                    window.set(slot, patients.get(i));
+                    stored++;
+                }
+            }
+            int last = Math.min(first + PAGE_SIZE, rowCount) - 1;
+            if (stored > 0 && first <= last) {
+                fireTableRowsUpdated(first, last);
+            }
+            if (patients.size() < last - first + 1) {
+                // Rows were deleted after the change token. The page is newer than the token, so a delta
+                // would find the loaded rows already closed up and not count the deletion: reload instead.
+                // Without a change log a reload could come back just as short, so the page is only marked.
+                shortPages.add(pageIndex);
+                if (changeToken >= 0) {
+                    reload().exceptionally(reloadError -> {
+                        System.err.println("Error reloading patients: " + DatabaseExecutor.unwrap(reloadError).getMessage());
+                        return null;
+                    });
+                }
+            }
+            PAGE_TIMER.record(start, stored);
+        }, DatabaseExecutor.EDT);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 || column == 2 ? Integer.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false; // Make table non-editable
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (view != null) {
+            PatientSnapshot rows = view.getSnapshot();
+            int at = view.rowAt(row);
+            switch (column) {
+                case PatientSnapshot.ID: return rows.getId(at);
+                case PatientSnapshot.NAME: return rows.getName(at);
+                case PatientSnapshot.AGE: return rows.getAge(at);
+                case PatientSnapshot.GENDER: return rows.getGender(at);
+                case PatientSnapshot.PHONE: return rows.getPhone(at);
+                case PatientSnapshot.BLOOD_GROUP: return rows.getBloodGroup(at);
+                case PatientSnapshot.ADDRESS: return rows.getAddress(at);
+                default: return null;
+            }
+        }
+        PatientColumns columns;
+        int slot;
+        if (fixedRows != null) {
+            columns = fixedRows;
+            slot = row;
+        } else {
+            columns = window;
+            slot = slotFor(row);
+            if (slot < 0) {
+                return column == 1 ? "Loading..." : null;
+            }
+        }
+        switch (column) {
+            case 0: return columns.getId(slot);
+            case 1: return columns.getName(slot);
+            case 2: return columns.getAge(slot);
+            case 3: return columns.getGender(slot);
+            case 4: return columns.getPhone(slot);
+            case 5: return columns.getBloodGroup(slot);
+            case 6: return columns.getAddress(slot);
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.sql.SQLException;
+import java.util.List;
+
+// Storage-independent access to patients. PatientDAO is the Oracle implementation and
+// EmbeddedPatientRepository the single-file one; Storage picks one from configuration.
+// Failures are reported as SQLException whichever backend is in use.
+interface PatientRepository {
+
+    int DEFAULT_BATCH_SIZE = Integer.getInteger("hms.batch.size", 500);
+    int DEFAULT_COMMIT_INTERVAL = Integer.getInteger("hms.batch.commitInterval", 5000);
+
+    interface PatientHandler {
+        // Return false to stop the scan
+        boolean handle(Patient p);
+    }
+
+    void addChangeListener(PatientChangeListener listener);
+
+    void removeChangeListener(PatientChangeListener listener);
+
+    PatientSearchPlanner getSearchPlanner();
+
+    // Returns the id generated for the new patient
+    int addPatient(Patient p) throws SQLException;
+
+    // Throws if no patient has p's id; nothing is then logged or announced
+    void updatePatient(Patient p) throws SQLException;
+
+    void deletePatient(int id) throws SQLException;
+
+    default int addPatients(Iterable<Patient> patients) throws SQLException {
+        return addPatients(patients, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    // Bulk insert, durable every commitInterval rows. On failure the rows since the last
+    // commit point are discarded; rows committed earlier stay. Returns the number of rows inserted.
+    int addPatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException;
+
+    default int updatePatients(Iterable<Patient> patients) throws SQLException {
+        return updatePatients(patients, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    int updatePatients(Iterable<Patient> patients, int batchSize, int commitInterval) throws SQLException;
+
+    List<Patient> getAllPatients() throws SQLException;
+
+    // Streams every patient in id order without materializing the table; returns the number handled
+    int forEachPatient(int fetchSize, PatientHandler handler) throws SQLException;
+
+    default List<Patient> searchPatients(String searchTerm) throws SQLException {
+        return searchPatients(getSearchPlanner().plan(searchTerm));
+    }
+
+    // Patients matching the plan, in id order
+    List<Patient> searchPatients(SearchPlan plan) throws SQLException;
+
+    int countPatients() throws SQLException;
+
+    // Keyset pagination: the page of patients whose id follows afterId (use 0 for the first page)
+    PatientPage getPatientsPage(int afterId, int pageSize) throws SQLException;
+
+    // Offset fallback for jumping to a page whose keyset cursor is not known yet
+    PatientPage getPatientsPageAt(int offset, int pageSize) throws SQLException;
+
+    // Null if there is no such patient
+    Patient getPatientById(int id) throws SQLException;
+
+    // Current position in the change log, or -1 if this repository cannot track changes.
+    // Read it before loading rows, then ask getPatientsChangedSince() what happened after.
+    long getChangeToken() throws SQLException;
+
+    // {getChangeToken(), countPatients()} as of one moment, so that the rows counted are exactly the
+    // ones the token covers: a write after it is neither counted nor missing from the next delta
+    long[] getChangeTokenAndCount() throws SQLException;
+
+    // Rows added, updated and deleted after the token, or a request to reload when the log cannot tell
+    PatientChanges getPatientsChangedSince(long token) throws SQLException;
+}
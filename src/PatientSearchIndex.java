@@ -0,0 +1,456 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+// In-process trigram index over patient name, phone and address.
+// Register it as a PatientChangeListener to keep it current; rebuild() loads it from a full scan.
+// search() takes the SearchPlan the database search would run and returns the same rows, so the
+// table shows the same results whether or not the index is ready. suggest() is for a search that
+// found nothing: addresses containing the term, then names that are likely typos of it.
+class PatientSearchIndex implements PatientChangeListener {
+
+    private static final int NAME = 0;
+    private static final int PHONE = 1;
+    private static final int ADDRESS = 2;
+    // Name trigrams padded with a space at each end, for fuzzy matching
+    private static final int PADDED_NAME = 3;
+    // search() looks at name and phone only, as the database search does
+    private static final int[] SEARCH_FIELDS = {NAME, PHONE};
+
+    // Fraction of the term's name trigrams a name must contain to count as a fuzzy match; 0.4 still
+    // accepts two letters swapped at the end of a five-letter name
+    private static final double FUZZY_THRESHOLD = 0.4;
+    private static final int REBUILD_CHUNK_SIZE = 10000;
+    static final int REBUILD_FETCH_SIZE = Integer.getInteger("hms.searchIndex.fetchSize", 5000);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, PostingList> postings = new HashMap<>();
+    private Map<Integer, Patient> patients = new HashMap<>();
+    private volatile boolean ready;
+    // Changes that arrive while a rebuild is scanning; replayed onto the rebuilt index
+    private List<Runnable> changesDuringRebuild;
+    // Source of the last rebuild, reused when a bulk change asks for another one
+    private volatile PatientRepository source;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return patients.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Replaces the index contents with a full scan of the patients table, indexing chunks in parallel
+    public synchronized void rebuild(PatientRepository patientDAO) throws java.sql.SQLException {
+        source = patientDAO;
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Rows arrive ordered by id, so chunk-local posting lists concatenate into sorted lists.
+        // Each full chunk is indexed on the common pool while the scan reads the next.
+        Map<Integer, Patient> byId = new HashMap<>();
+        List<CompletableFuture<Map<Long, PostingList>>> partials = new ArrayList<>();
+        List<Patient> chunk = new ArrayList<>(REBUILD_CHUNK_SIZE);
+        try {
+            patientDAO.forEachPatient(REBUILD_FETCH_SIZE, p -> {
+                byId.put(p.getId(), p);
+                chunk.add(p);
+                if (chunk.size() == REBUILD_CHUNK_SIZE) {
+                    partials.add(indexChunk(new ArrayList<>(chunk)));
+                    chunk.clear();
+                }
+                return true;
+            });
+        } catch (java.sql.SQLException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        if (!chunk.isEmpty()) {
+            partials.add(indexChunk(chunk));
+        }
+
+        Map<Long, PostingList> merged = new HashMap<>();
+        for (CompletableFuture<Map<Long, PostingList>> partial : partials) {
+            for (Map.Entry<Long, PostingList> e : partial.join().entrySet()) {
+                PostingList target = merged.get(e.getKey());
+                if (target == null) {
+                    merged.put(e.getKey(), e.getValue());
+                } else {
+                    target.appendAll(e.getValue());
+                }
+            }
+        }
+        merged.values().parallelStream().forEach(PostingList::trim);
+
+        lock.writeLock().lock();
+        try {
+            postings = merged;
+            patients = byId;
+            List<Runnable> pending = changesDuringRebuild;
+            changesDuringRebuild = null;
+            for (Runnable change : pending) {
+                change.run();
+            }
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static CompletableFuture<Map<Long, PostingList>> indexChunk(List<Patient> chunk) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<Long, PostingList> local = new HashMap<>();
+            for (Patient p : chunk) {
+                for (long key : keysOf(p)) {
+                    local.computeIfAbsent(key, k -> new PostingList()).append(p.getId());
+                }
+            }
+            return local;
+        });
+    }
+
+    @Override
+    public void patientAdded(Patient patient) {
+        apply(() -> put(patient));
+    }
+
+    @Override
+    public void patientUpdated(Patient patient) {
+        apply(() -> put(patient));
+    }
+
+    @Override
+    public void patientDeleted(int patientId) {
+        apply(() -> remove(patientId));
+    }
+
+    @Override
+    public void patientsReloaded() {
+        PatientRepository dao = source;
+        // Coalesce bursts of bulk changes into one background rebuild
+        if (dao != null && rebuildScheduled.compareAndSet(false, true)) {
+            DatabaseExecutor.run(() -> {
+                rebuildScheduled.set(false);
+                rebuild(dao);
+            }).exceptionally(error -> {
+                System.err.println("Search index rebuild failed: " + DatabaseExecutor.unwrap(error).getMessage());
+                return null;
+            });
+        }
+    }
+
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock
+    private void put(Patient patient) {
+        remove(patient.getId());
+        patients.put(patient.getId(), patient);
+        for (long key : keysOf(patient)) {
+            postings.computeIfAbsent(key, k -> new PostingList()).insert(patient.getId());
+        }
+    }
+
+    // Caller holds the write lock
+    private void remove(int patientId) {
+        Patient old = patients.remove(patientId);
+        if (old == null) {
+            return;
+        }
+        for (long key : keysOf(old)) {
+            PostingList list = postings.get(key);
+            if (list != null && list.remove(patientId) && list.size == 0) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    // The rows the plan matches, in id order, as searchPatients(plan) returns them from the database:
+    // the term's trigrams narrow the candidates and plan.matches() decides
+    public List<Patient> search(SearchPlan plan, int limit) {
+        String term = plan.getTerm();
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            List<Patient> found = new ArrayList<>();
+            if (term.length() < 3) {
+                // Too short for trigrams: a scan of the in-memory copy is still far cheaper than a query
+                for (Patient p : patients.values()) {
+                    if (plan.matches(p)) {
+                        found.add(p);
+                    }
+                }
+            } else {
+                int[] trigrams = trigramsOf(term);
+                Set<Integer> seen = new HashSet<>();
+                for (int field : SEARCH_FIELDS) {
+                    collect(field, trigrams, plan::matches, found, seen);
+                }
+            }
+            found.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Patients whose address contains the term, in id order, then names sharing enough trigrams with
+    // the term to be likely typos of it, best score first. Not what the database search returns, so
+    // the table only offers these when search() found nothing.
+    public List<Patient> suggest(String searchTerm, int limit) {
+        String term = PatientSearchPlanner.normalize(searchTerm);
+        if (term.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            List<Patient> result = new ArrayList<>();
+            Set<Integer> seen = new HashSet<>();
+            Predicate<Patient> inAddress = p -> lowerCase(p.getAddress()).contains(term);
+            if (term.length() < 3) {
+                for (Patient p : patients.values()) {
+                    if (inAddress.test(p) && seen.add(p.getId())) {
+                        result.add(p);
+                    }
+                }
+            } else {
+                collect(ADDRESS, trigramsOf(term), inAddress, result, seen);
+            }
+            result.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+            if (result.size() >= limit) {
+                return new ArrayList<>(result.subList(0, limit));
+            }
+
+            List<Scored> fuzzy = fuzzyNameMatches(term, seen);
+            fuzzy.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score)
+                    : Integer.compare(a.patient.getId(), b.patient.getId()));
+            for (int i = 0; i < fuzzy.size() && result.size() < limit; i++) {
+                result.add(fuzzy.get(i).patient);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Walks the rarest posting list in id order, probing the others by binary search
+    private void collect(int field, int[] trigrams, Predicate<Patient> matches, List<Patient> out, Set<Integer> seen) {
+        PostingList[] lists = new PostingList[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            lists[i] = postings.get(key(field, trigrams[i]));
+            if (lists[i] == null) {
+                return;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        outer:
+        for (int i = 0; i < lists[0].size; i++) {
+            int id = lists[0].ids[i];
+            for (int j = 1; j < lists.length; j++) {
+                if (!lists[j].contains(id)) {
+                    continue outer;
+                }
+            }
+            Patient p = patients.get(id);
+            // Trigrams can match out of order; the predicate confirms the actual match
+            if (p != null && !seen.contains(id) && matches.test(p)) {
+                seen.add(id);
+                out.add(p);
+            }
+        }
+    }
+
+    // A name sharing at least minHits of the term's k trigrams must appear in one of the
+    // k - minHits + 1 rarest posting lists, so only those are scanned for candidates
+    private List<Scored> fuzzyNameMatches(String term, Set<Integer> exclude) {
+        int[] trigrams = trigramsOf(padded(term));
+        List<PostingList> lists = new ArrayList<>();
+        for (int trigram : trigrams) {
+            PostingList list = postings.get(key(PADDED_NAME, trigram));
+            if (list != null) {
+                lists.add(list);
+            }
+        }
+        int minHits = Math.max(1, (int) Math.ceil(trigrams.length * FUZZY_THRESHOLD));
+        if (lists.size() < minHits) {
+            return new ArrayList<>();
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        Set<Integer> candidates = new HashSet<>();
+        for (int i = 0; i <= lists.size() - minHits; i++) {
+            PostingList list = lists.get(i);
+            for (int j = 0; j < list.size; j++) {
+                candidates.add(list.ids[j]);
+            }
+        }
+
+        List<Scored> matches = new ArrayList<>();
+        for (int id : candidates) {
+            if (exclude.contains(id)) {
+                continue;
+            }
+            int hits = 0;
+            for (PostingList list : lists) {
+                if (list.contains(id)) {
+                    hits++;
+                }
+            }
+            Patient p = patients.get(id);
+            if (hits >= minHits && p != null) {
+                matches.add(new Scored(p, (double) hits / trigrams.length));
+            }
+        }
+        return matches;
+    }
+
+    private static long[] keysOf(Patient p) {
+        String name = lowerCase(p.getName());
+        return Stream.of(keys(NAME, trigramsOf(name)), keys(PADDED_NAME, trigramsOf(padded(name))),
+                keys(PHONE, trigramsOf(lowerCase(p.getPhone()))), keys(ADDRESS, trigramsOf(lowerCase(p.getAddress()))))
+                .flatMapToLong(LongStream::of).toArray();
+    }
+
+    private static long[] keys(int field, int[] trigrams) {
+        long[] keys = new long[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            keys[i] = key(field, trigrams[i]);
+        }
+        return keys;
+    }
+
+    private static long key(int field, int trigram) {
+        return ((long) field << 32) | (trigram & 0xffffffffL);
+    }
+
+    // Distinct trigrams of the text, each packed as three 10-bit folded chars
+    private static int[] trigramsOf(String s) {
+        if (s.length() < 3) {
+            return new int[0];
+        }
+        int[] grams = new int[s.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (fold(s.charAt(i)) << 20) | (fold(s.charAt(i + 1)) << 10) | fold(s.charAt(i + 2));
+        }
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    // Padding adds word-boundary trigrams, which makes fuzzy scoring favour matching word starts
+    private static String padded(String s) {
+        return " " + s + " ";
+    }
+
+    private static int fold(char c) {
+        return c & 0x3ff;
+    }
+
+    // As SearchPlan.matches() compares fields; the term itself comes from PatientSearchPlanner.normalize()
+    private static String lowerCase(String s) {
+        return s == null ? "" : s.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Scored {
+        final Patient patient;
+        final double score;
+
+        Scored(Patient patient, double score) {
+            this.patient = patient;
+            this.score = score;
+        }
+    }
+
+    // Sorted, growable int array of patient ids
+    private static class PostingList {
+        int[] ids = new int[4];
+        int size;
+
+        void append(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+            }
+            ids[size++] = id;
+        }
+
+        void appendAll(PostingList other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + other.size, size * 2));
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+        }
+
+        void insert(int id) {
+            // New patients get the highest id, so this is almost always an append
+            if (size == 0 || ids[size - 1] < id) {
+                append(id);
+                return;
+            }
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            append(0);
+            System.arraycopy(ids, pos, ids, pos + 1, size - 1 - pos);
+            ids[pos] = id;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        void trim() {
+            if (ids.length != size) {
+                ids = Arrays.copyOf(ids, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.util.Locale;
+
+// Chooses the query shape for a patient search so that typical input can use an index:
+//   10-15 digits      -> exact phone match
+//   fewer digits      -> phone prefix
+//   text              -> substring of the name, through Oracle Text when that index exists, else
+//                        substring of name or phone
+//   text*             -> name prefix (case-insensitive), for the LOWER(name) index
+//   leading/inner '*' -> substring on name or phone
+// Install a subclass with PatientDAO.setSearchPlanner() to change the rules.
+class PatientSearchPlanner {
+
+    private final boolean textIndexAvailable;
+
+    public PatientSearchPlanner(boolean textIndexAvailable) {
+        this.textIndexAvailable = textIndexAvailable;
+    }
+
+    public SearchPlan plan(String searchTerm) {
+        String raw = searchTerm.trim();
+        boolean wildcard = raw.indexOf('*') >= 0;
+        boolean prefix = raw.length() > 1 && raw.indexOf('*') == raw.length() - 1;
+        String term = normalize(raw);
+
+        if ((!wildcard || prefix) && isDigits(term)) {
+            if (term.length() >= 10 && term.length() <= 15) {
+                return new SearchPlan(SearchPlan.Kind.EXACT_PHONE, term, "phone = ?", term);
+            }
+            return new SearchPlan(SearchPlan.Kind.PHONE_PREFIX, term,
+                    "phone LIKE ? ESCAPE '\\'", escapeLike(term) + "%");
+        }
+        if (prefix) {
+            return new SearchPlan(SearchPlan.Kind.NAME_PREFIX, term,
+                    "LOWER(name) LIKE ? ESCAPE '\\'", escapeLike(term) + "%");
+        }
+        // Oracle Text covers the name only; a term it can take has letters, which no phone does
+        if (textIndexAvailable && !isDigits(term) && isTextQuerySafe(term)) {
+            return new SearchPlan(SearchPlan.Kind.TEXT, term,
+                    "CONTAINS(name, ?) > 0", "%" + term + "%");
+        }
+        String like = "%" + escapeLike(term) + "%";
+        return new SearchPlan(SearchPlan.Kind.SUBSTRING, term,
+                "LOWER(name) LIKE ? ESCAPE '\\' OR phone LIKE ? ESCAPE '\\'", like, like);
+    }
+
+    // The term a search looks for: trimmed, lower case, without '*'. Shared with PatientSearchIndex
+    // so that the index and the database find the same rows for the same input.
+    static String normalize(String searchTerm) {
+        return searchTerm == null ? "" : searchTerm.trim().replace("*", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isDigits(String s) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Oracle Text treats most punctuation as operators; only hand it plain words
+    private static boolean isTextQuerySafe(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isLetterOrDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return s.length() >= 2;
+    }
+
+    static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
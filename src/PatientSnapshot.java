@@ -0,0 +1,564 @@
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+// The whole patient table as immutable primitive columns, for filtering and sorting without a round
+// trip: ids (ascending) and ages as int arrays, gender and blood group as PatientColumns codes, and
+// name, phone and address as UTF-8 packed end to end in one byte array per column. A row costs
+// 22 bytes plus its text, against a couple of hundred for a Patient and its three Strings.
+// filter() and sort() return row numbers; the kernels are flat loops over the arrays with no
+// per-row branches or objects, which the JIT unrolls and keeps in registers. withChanges() builds
+// the next snapshot from a change-log delta.
+class PatientSnapshot {
+
+    // Column numbers, as in PatientPagedTableModel
+    static final int ID = 0;
+    static final int NAME = 1;
+    static final int AGE = 2;
+    static final int GENDER = 3;
+    static final int PHONE = 4;
+    static final int BLOOD_GROUP = 5;
+    static final int ADDRESS = 6;
+
+    private final int[] ids;
+    private final int[] ages;
+    private final byte[] genders;
+    private final byte[] bloodGroups;
+    private final PackedStrings names;
+    private final PackedStrings phones;
+    private final PackedStrings addresses;
+    private final int size;
+    // Change-log position the rows are current as of, or -1 if the repository does not track changes
+    private final long changeToken;
+    // Per string column, each row's place in that column's order; built on the first sort by it
+    private final int[][] ranks = new int[ADDRESS + 1][];
+
+    private PatientSnapshot(Builder b, long changeToken) {
+        this.changeToken = changeToken;
+        ids = b.ids;
+        ages = b.ages;
+        genders = b.genders;
+        bloodGroups = b.bloodGroups;
+        names = b.names;
+        phones = b.phones;
+        addresses = b.addresses;
+        size = b.size;
+    }
+
+    // One streaming scan; rows go straight into the columns. The token is read first, so a write
+    // landing during the scan is applied again later rather than missed.
+    static PatientSnapshot load(PatientRepository patients, int fetchSize) throws SQLException {
+        long token = patients.getChangeToken();
+        Builder builder = new Builder(1024);
+        patients.forEachPatient(fetchSize, patient -> {
+            builder.add(patient);
+            return true;
+        });
+        return builder.build(token);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getChangeToken() {
+        return changeToken;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public int getAge(int row) {
+        return ages[row];
+    }
+
+    public String getGender(int row) {
+        return PatientColumns.GENDERS.decode(genders[row]);
+    }
+
+    public String getBloodGroup(int row) {
+        return PatientColumns.BLOOD_GROUPS.decode(bloodGroups[row]);
+    }
+
+    public String getName(int row) {
+        return names.get(row);
+    }
+
+    public String getPhone(int row) {
+        return phones.get(row);
+    }
+
+    public String getAddress(int row) {
+        return addresses.get(row);
+    }
+
+    public Patient toPatient(int row) {
+        return new Patient(ids[row], getName(row), ages[row], getGender(row), getPhone(row), getAddress(row),
+                getBloodGroup(row));
+    }
+
+    // Row of the patient with the given id, or -1
+    public int indexOf(int id) {
+        int row = Arrays.binarySearch(ids, 0, size, id);
+        return row < 0 ? -1 : row;
+    }
+
+    // Rows matching every condition of the filter, in id order. Each condition is one pass: the first
+    // scans the column and writes matching row numbers, the next ones compact that selection.
+    // A row is kept by adding 0 or 1 to the write position rather than by a branch, so the passes
+    // run at the same speed however selective the filter is.
+    public int[] filter(Filter filter) {
+        int[] selection = new int[size];
+        int count;
+        if (filter.minAge > 0 || filter.maxAge < Integer.MAX_VALUE) {
+            int minAge = filter.minAge;
+            long width = (long) filter.maxAge - minAge + 1;
+            count = 0;
+            for (int row = 0; row < size; row++) {
+                selection[count] = row;
+                // 1 when age - minAge, taken unsigned, is below width
+                count += (int) ((((ages[row] - minAge) & 0xFFFFFFFFL) - width) >>> 63);
+            }
+        } else {
+            for (int row = 0; row < size; row++) {
+                selection[row] = row;
+            }
+            count = size;
+        }
+        if (filter.genders != null) {
+            count = select(selection, count, genders, filter.genders);
+        }
+        if (filter.bloodGroups != null) {
+            count = select(selection, count, bloodGroups, filter.bloodGroups);
+        }
+        if (filter.searchPlan != null) {
+            // Decodes strings, so it runs last, over what the primitive columns let through
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int row = selection[i];
+                if (filter.searchPlan.matches(new Patient(0, getName(row), 0, null, getPhone(row), null, null))) {
+                    selection[kept++] = row;
+                }
+            }
+            count = kept;
+        }
+        return count == selection.length ? selection : Arrays.copyOf(selection, count);
+    }
+
+    // Keeps the selected rows whose code is accepted; accepted is indexed by code + 1 and holds 0 or 1
+    private static int select(int[] selection, int count, byte[] codes, byte[] accepted) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int row = selection[i];
+            selection[kept] = row;
+            kept += accepted[codes[row] + 1];
+        }
+        return kept;
+    }
+
+    // The given rows ordered by a column, ties in id order. Every column comes down to an int key per
+    // row, packed with the row number into a long so one primitive parallel sort does the work.
+    public int[] sort(int[] rows, int column, boolean descending) {
+        int[] keys = keysFor(column);
+        long[] packed = new long[rows.length];
+        int flip = descending ? -1 : 0;
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            // ~key reverses the order of a signed int
+            packed[i] = ((long) (keys[row] ^ flip) << 32) | row;
+        }
+        Arrays.parallelSort(packed);
+        int[] sorted = new int[rows.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = (int) packed[i];
+        }
+        return sorted;
+    }
+
+    private int[] keysFor(int column) {
+        switch (column) {
+            case ID: return ids;
+            case AGE: return ages;
+            case GENDER: return codeKeys(genders, PatientColumns.GENDERS);
+            case BLOOD_GROUP: return codeKeys(bloodGroups, PatientColumns.BLOOD_GROUPS);
+            case NAME: return rankOf(NAME, names);
+            case PHONE: return rankOf(PHONE, phones);
+            case ADDRESS: return rankOf(ADDRESS, addresses);
+            default: throw new IllegalArgumentException("No such column: " + column);
+        }
+    }
+
+    // Codes replaced by the alphabetical place of their value, nulls first
+    private int[] codeKeys(byte[] codes, CodeDictionary dictionary) {
+        String[] values = new String[dictionary.size()];
+        for (int code = 0; code < values.length; code++) {
+            values[code] = dictionary.decode((byte) code);
+        }
+        String[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int[] placeOf = new int[values.length + 1];
+        for (int code = 0; code < values.length; code++) {
+            placeOf[code + 1] = Arrays.binarySearch(sorted, values[code]) + 1;
+        }
+        int[] keys = new int[size];
+        for (int row = 0; row < size; row++) {
+            keys[row] = placeOf[codes[row] + 1];
+        }
+        return keys;
+    }
+
+    // Sorting a string column once turns it into int ranks (equal values share one) that later sorts reuse
+    private int[] rankOf(int column, PackedStrings strings) {
+        synchronized (ranks) {
+            if (ranks[column] == null) {
+                ranks[column] = strings.ranks(size);
+            }
+            return ranks[column];
+        }
+    }
+
+    // The snapshot with a change-log delta applied; this one is left as it is
+    PatientSnapshot withChanges(PatientChanges changes) {
+        TreeMap<Integer, Patient> changed = new TreeMap<>();
+        for (Patient p : changes.getAdded()) {
+            changed.put(p.getId(), p);
+        }
+        for (Patient p : changes.getUpdated()) {
+            changed.put(p.getId(), p);
+        }
+        for (int id : changes.getDeletedIds()) {
+            changed.put(id, null);
+        }
+        Builder builder = new Builder(size + changed.size());
+        int pos = 0;
+        for (Map.Entry<Integer, Patient> e : changed.entrySet()) {
+            int at = Arrays.binarySearch(ids, pos, size, e.getKey());
+            int end = at < 0 ? -at - 1 : at;
+            builder.copy(this, pos, end);
+            pos = at < 0 ? end : end + 1;
+            if (e.getValue() != null) {
+                builder.add(e.getValue());
+            }
+        }
+        builder.copy(this, pos, size);
+        return builder.build(changes.getToken());
+    }
+
+    // Filters, then sorts unless column is -1 (id order)
+    View query(Filter filter, int column, boolean descending) {
+        int[] rows = filter(filter);
+        return new View(this, column < 0 ? rows : sort(rows, column, descending));
+    }
+
+    // Rows of a snapshot in the order a query left them
+    static class View {
+        private final PatientSnapshot snapshot;
+        private final int[] rows;
+
+        View(PatientSnapshot snapshot, int[] rows) {
+            this.snapshot = snapshot;
+            this.rows = rows;
+        }
+
+        public PatientSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        public int size() {
+            return rows.length;
+        }
+
+        // Snapshot row shown at the given position
+        public int rowAt(int position) {
+            return rows[position];
+        }
+    }
+
+    // Which rows filter() keeps. Ages are inclusive; a null gender or blood group set means any value.
+    static class Filter {
+        final int minAge;
+        final int maxAge;
+        final byte[] genders;
+        final byte[] bloodGroups;
+        final SearchPlan searchPlan;
+
+        Filter(int minAge, int maxAge, String[] genders, String[] bloodGroups, SearchPlan searchPlan) {
+            this.minAge = minAge;
+            this.maxAge = maxAge;
+            this.genders = accepted(genders, PatientColumns.GENDERS);
+            this.bloodGroups = accepted(bloodGroups, PatientColumns.BLOOD_GROUPS);
+            this.searchPlan = searchPlan;
+        }
+
+        private static byte[] accepted(String[] values, CodeDictionary dictionary) {
+            if (values == null) {
+                return null;
+            }
+            byte[] accepted = new byte[Byte.MAX_VALUE + 1];
+            for (String value : values) {
+                accepted[dictionary.encode(value) + 1] = 1;
+            }
+            return accepted;
+        }
+
+        public boolean isEmpty() {
+            return minAge <= 0 && maxAge == Integer.MAX_VALUE && genders == null && bloodGroups == null
+                    && searchPlan == null;
+        }
+    }
+
+    // Growable columns; rows must be added in id order
+    static class Builder {
+        private int[] ids;
+        private int[] ages;
+        private byte[] genders;
+        private byte[] bloodGroups;
+        private final PackedStrings names;
+        private final PackedStrings phones;
+        private final PackedStrings addresses;
+        private int size;
+
+        Builder(int capacity) {
+            capacity = Math.max(16, capacity);
+            ids = new int[capacity];
+            ages = new int[capacity];
+            genders = new byte[capacity];
+            bloodGroups = new byte[capacity];
+            names = new PackedStrings(capacity, 16);
+            phones = new PackedStrings(capacity, 12);
+            addresses = new PackedStrings(capacity, 24);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > ids.length) {
+                int capacity = Math.max(size + extra, ids.length * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                genders = Arrays.copyOf(genders, capacity);
+                bloodGroups = Arrays.copyOf(bloodGroups, capacity);
+            }
+        }
+
+        void add(Patient p) {
+            ensure(1);
+            ids[size] = p.getId();
+            ages[size] = p.getAge();
+            genders[size] = PatientColumns.GENDERS.encode(p.getGender());
+            bloodGroups[size] = PatientColumns.BLOOD_GROUPS.encode(p.getBloodGroup());
+            names.add(p.getName());
+            phones.add(p.getPhone());
+            addresses.add(p.getAddress());
+            size++;
+        }
+
+        void copy(PatientSnapshot source, int from, int to) {
+            int length = to - from;
+            if (length <= 0) {
+                return;
+            }
+            ensure(length);
+            System.arraycopy(source.ids, from, ids, size, length);
+            System.arraycopy(source.ages, from, ages, size, length);
+            System.arraycopy(source.genders, from, genders, size, length);
+            System.arraycopy(source.bloodGroups, from, bloodGroups, size, length);
+            names.copy(source.names, from, to);
+            phones.copy(source.phones, from, to);
+            addresses.copy(source.addresses, from, to);
+            size += length;
+        }
+
+        PatientSnapshot build(long changeToken) {
+            return new PatientSnapshot(this, changeToken);
+        }
+    }
+
+    // Strings stored back to back as UTF-8. ends[i] is where string i stops; a null is stored as an
+    // empty string with its end negated (-end - 1).
+    private static class PackedStrings {
+        // How far ranks() sorts by packed keys before comparing tied strings in full
+        private static final int PREFIX_BYTES = 16;
+
+        private byte[] bytes;
+        private int[] ends;
+        private int count;
+        private int length;
+
+        PackedStrings(int capacity, int averageLength) {
+            bytes = new byte[capacity * averageLength];
+            ends = new int[capacity];
+        }
+
+        private int start(int i) {
+            return i == 0 ? 0 : end(i - 1);
+        }
+
+        private int end(int i) {
+            int end = ends[i];
+            return end < 0 ? -end - 1 : end;
+        }
+
+        String get(int i) {
+            if (ends[i] < 0) {
+                return null;
+            }
+            int start = start(i);
+            return new String(bytes, start, ends[i] - start, StandardCharsets.UTF_8);
+        }
+
+        private void ensure(int strings, int extraBytes) {
+            if (count + strings > ends.length) {
+                ends = Arrays.copyOf(ends, Math.max(count + strings, ends.length * 2));
+            }
+            if (length + extraBytes > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extraBytes, bytes.length * 2));
+            }
+        }
+
+        void add(String value) {
+            if (value == null) {
+                ensure(1, 0);
+                ends[count++] = -length - 1;
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            ensure(1, utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+            ends[count++] = length;
+        }
+
+        // Appends strings from to to of source; their ends move by the difference in start offsets
+        void copy(PackedStrings source, int from, int to) {
+            int start = source.start(from);
+            int byteLength = source.end(to - 1) - start;
+            ensure(to - from, byteLength);
+            System.arraycopy(source.bytes, start, bytes, length, byteLength);
+            int shift = length - start;
+            for (int i = from; i < to; i++) {
+                int end = source.ends[i];
+                ends[count++] = end < 0 ? end - shift : end + shift;
+            }
+            length += byteLength;
+        }
+
+        // Each string's rank in case-insensitive order, nulls first. Rows are sorted four bytes at a
+        // time as packed primitive keys, most significant first; only rows still tied after
+        // PREFIX_BYTES are compared in full.
+        int[] ranks(int size) {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            sortByPrefix(order, new int[size], 0, size, 0);
+            int[] ranks = new int[size];
+            int rank = 0;
+            for (int i = 0; i < size; i++) {
+                if (i > 0 && compare(order[i - 1], order[i]) != 0) {
+                    rank++;
+                }
+                ranks[order[i]] = rank;
+            }
+            return ranks;
+        }
+
+        private void sortByPrefix(int[] order, int[] buffer, int from, int to, int offset) {
+            long[] packed = new long[to - from];
+            for (int i = 0; i < packed.length; i++) {
+                int row = order[from + i];
+                // The sign flip makes the signed sort order the unsigned byte order; nulls go first
+                int prefix = ends[row] < 0 ? Integer.MIN_VALUE : prefix(row, offset) ^ Integer.MIN_VALUE;
+                packed[i] = ((long) prefix << 32) | row;
+            }
+            Arrays.parallelSort(packed);
+            for (int i = 0; i < packed.length; i++) {
+                order[from + i] = (int) packed[i];
+            }
+            for (int i = 0; i < packed.length; ) {
+                int j = i + 1;
+                while (j < packed.length && (packed[j] >>> 32) == (packed[i] >>> 32)) {
+                    j++;
+                }
+                if (j - i > 1) {
+                    // A zero last byte means the strings ended within these four bytes: they are equal
+                    // but for nulls against empty strings, which the merge sort puts right
+                    boolean longer = (packed[i] & 0xFF00000000L) != 0;
+                    if (longer && offset + 4 < PREFIX_BYTES) {
+                        sortByPrefix(order, buffer, from + i, from + j, offset + 4);
+                    } else {
+                        mergeSort(order, buffer, from + i, from + j);
+                    }
+                }
+                i = j;
+            }
+        }
+
+        // Four bytes from offset on, ASCII letters lower-cased, big-endian; past the end zero padded
+        private int prefix(int i, int offset) {
+            int start = start(i) + offset;
+            int end = ends[i];
+            int key = 0;
+            for (int k = 0; k < 4; k++) {
+                key = (key << 8) | (start + k < end ? fold(bytes[start + k]) : 0);
+            }
+            return key;
+        }
+
+        private static int fold(byte b) {
+            return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xFF;
+        }
+
+        private int compare(int a, int b) {
+            boolean aNull = ends[a] < 0;
+            boolean bNull = ends[b] < 0;
+            if (aNull || bNull) {
+                return Boolean.compare(!aNull, !bNull);
+            }
+            int aPos = start(a);
+            int aEnd = ends[a];
+            int bPos = start(b);
+            int bEnd = ends[b];
+            while (aPos < aEnd && bPos < bEnd) {
+                int diff = fold(bytes[aPos++]) - fold(bytes[bPos++]);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return (aEnd - aPos) - (bEnd - bPos);
+        }
+
+        // Stable, so rows comparing equal stay in id order
+        private void mergeSort(int[] rows, int[] buffer, int from, int to) {
+            if (to - from <= 8) {
+                for (int i = from + 1; i < to; i++) {
+                    int row = rows[i];
+                    int j = i - 1;
+                    while (j >= from && compare(rows[j], row) > 0) {
+                        rows[j + 1] = rows[j];
+                        j--;
+                    }
+                    rows[j + 1] = row;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            mergeSort(rows, buffer, from, mid);
+            mergeSort(rows, buffer, mid, to);
+            if (compare(rows[mid - 1], rows[mid]) <= 0) {
+                return;
+            }
+            System.arraycopy(rows, from, buffer, from, to - from);
+            int left = from;
+            int right = mid;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < mid && compare(buffer[left], buffer[right]) <= 0)) {
+                    rows[i] = buffer[left++];
+                } else {
+                    rows[i] = buffer[right++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// What the dashboard shows, as of one PatientAnalytics run. Ages are counted in AGE_BUCKET_YEARS
+// wide buckets with everyone from the last bucket's start upwards in it; null genders and blood
+// groups are counted under "" so the totals add up.
+class PatientStatistics {
+
+    static final int AGE_BUCKET_YEARS = 10;
+    static final int AGE_BUCKETS = 10;
+
+    // Visits one doctor saw on one day, or in one week (given by its Monday)
+    static class DoctorCount {
+        private final String doctor;
+        private final LocalDate period;
+        private final long visits;
+
+        DoctorCount(String doctor, LocalDate period, long visits) {
+            this.doctor = doctor;
+            this.period = period;
+            this.visits = visits;
+        }
+
+        public String getDoctor() {
+            return doctor;
+        }
+
+        public LocalDate getPeriod() {
+            return period;
+        }
+
+        public long getVisits() {
+            return visits;
+        }
+    }
+
+    private final long[] ageBuckets;
+    private final Map<String, Long> genders;
+    private final Map<String, Long> bloodGroups;
+    private final List<DoctorCount> visitsPerDoctorPerDay;
+    private final List<DoctorCount> visitsPerDoctorPerWeek;
+    private final long patients;
+    private final long visits;
+    private final long patientsWithVisits;
+    private final long returningPatients;
+    private final String method;
+    private final long elapsedMillis;
+
+    PatientStatistics(long[] ageBuckets, Map<String, Long> genders, Map<String, Long> bloodGroups,
+                      List<DoctorCount> visitsPerDoctorPerDay, List<DoctorCount> visitsPerDoctorPerWeek,
+                      long patients, long visits, long patientsWithVisits, long returningPatients,
+                      String method, long elapsedMillis) {
+        this.ageBuckets = ageBuckets;
+        this.genders = Collections.unmodifiableMap(genders);
+        this.bloodGroups = Collections.unmodifiableMap(bloodGroups);
+        this.visitsPerDoctorPerDay = Collections.unmodifiableList(visitsPerDoctorPerDay);
+        this.visitsPerDoctorPerWeek = Collections.unmodifiableList(visitsPerDoctorPerWeek);
+        this.patients = patients;
+        this.visits = visits;
+        this.patientsWithVisits = patientsWithVisits;
+        this.returningPatients = returningPatients;
+        this.method = method;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public static int ageBucketOf(int age) {
+        return Math.max(0, Math.min(AGE_BUCKETS - 1, age / AGE_BUCKET_YEARS));
+    }
+
+    // e.g. "20-29", or "90+" for the last bucket
+    public static String ageBucketLabel(int bucket) {
+        int from = bucket * AGE_BUCKET_YEARS;
+        return bucket == AGE_BUCKETS - 1 ? from + "+" : from + "-" + (from + AGE_BUCKET_YEARS - 1);
+    }
+
+    public long getAgeBucket(int bucket) {
+        return ageBuckets[bucket];
+    }
+
+    // By gender code, in code order
+    public Map<String, Long> getGenders() {
+        return genders;
+    }
+
+    public Map<String, Long> getBloodGroups() {
+        return bloodGroups;
+    }
+
+    // By doctor, then date
+    public List<DoctorCount> getVisitsPerDoctorPerDay() {
+        return visitsPerDoctorPerDay;
+    }
+
+    public List<DoctorCount> getVisitsPerDoctorPerWeek() {
+        return visitsPerDoctorPerWeek;
+    }
+
+    public long getPatients() {
+        return patients;
+    }
+
+    public long getVisits() {
+        return visits;
+    }
+
+    public long getPatientsWithVisits() {
+        return patientsWithVisits;
+    }
+
+    // Patients with more than one visit
+    public long getReturningPatients() {
+        return returningPatients;
+    }
+
+    // Share of patients seen at all who came back at least once, 0 if nobody has visited
+    public double getReturnVisitRate() {
+        return patientsWithVisits == 0 ? 0 : (double) returningPatients / patientsWithVisits;
+    }
+
+    // How the numbers were produced, e.g. "SQL" or "parallel scan, incremental"
+    public String getMethod() {
+        return method;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+}
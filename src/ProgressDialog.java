@@ -0,0 +1,58 @@
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Window;
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.WindowConstants;
+
+// Non-modal progress window for long background jobs (import, export) with a Cancel button.
+// All methods must be called on the EDT.
+class ProgressDialog extends JDialog {
+
+    private final JLabel noteLabel = new JLabel(" ");
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JButton cancelButton = new JButton("Cancel");
+
+    public ProgressDialog(Window owner, String title, Runnable onCancel) {
+        super(owner, title, ModalityType.MODELESS);
+        setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel center = new JPanel(new BorderLayout(5, 5));
+        center.setBorder(BorderFactory.createEmptyBorder(10, 10, 0, 10));
+        center.add(noteLabel, BorderLayout.NORTH);
+        progressBar.setIndeterminate(true);
+        progressBar.setStringPainted(false);
+        center.add(progressBar, BorderLayout.CENTER);
+        add(center, BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        cancelButton.addActionListener(e -> {
+            cancelButton.setEnabled(false);
+            noteLabel.setText("Cancelling...");
+            onCancel.run();
+        });
+        buttons.add(cancelButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        setSize(400, 140);
+        setLocationRelativeTo(owner);
+    }
+
+    public void setNote(String note) {
+        if (cancelButton.isEnabled()) {
+            noteLabel.setText(note);
+        }
+    }
+
+    // Switches to a determinate bar; percent in 0..100
+    public void setPercent(int percent) {
+        progressBar.setIndeterminate(false);
+        progressBar.setStringPainted(true);
+        progressBar.setValue(percent);
+    }
+}
@@ -0,0 +1,209 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Small JDBC core the DAOs are built on: borrow a connection, prepare (through the pool's
+// statement cache), bind, execute and map rows. Row mappers are created once per ResultSet
+// from a MapperFactory, so column labels are resolved to indexes once instead of on every row.
+// Every statement runs in a Tracing span, which is how EdtWatchdog knows what SQL is in flight.
+class QueryTemplate {
+
+    interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    interface BatchBinder<T> {
+        void bind(PreparedStatement ps, T item) throws SQLException;
+    }
+
+    // Told each item's update count once its batch has executed; the driver may report
+    // Statement.SUCCESS_NO_INFO instead of a count
+    interface BatchCounter<T> {
+        void counted(T item, int updateCount);
+    }
+
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    // Looks up column positions in the given ResultSet and returns a mapper that reads by position
+    interface MapperFactory<T> {
+        RowMapper<T> forResultSet(ResultSet rs) throws SQLException;
+    }
+
+    interface RowHandler<T> {
+        // Return false to stop the scan
+        boolean handle(T row);
+    }
+
+    static final Binder NO_PARAMS = ps -> { };
+
+    private final ConnectionSource connections;
+
+    public QueryTemplate(ConnectionSource connections) {
+        this.connections = connections;
+    }
+
+    public <T> List<T> query(String sql, Binder binder, MapperFactory<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        forEach(sql, binder, 0, mapper, row -> rows.add(row));
+        return rows;
+    }
+
+    // First row or null
+    public <T> T queryOne(String sql, Binder binder, MapperFactory<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>(1);
+        forEach(sql, binder, 1, mapper, row -> {
+            rows.add(row);
+            return false;
+        });
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    public int queryInt(String sql, Binder binder) throws SQLException {
+        Integer value = queryOne(sql, binder, rs -> r -> r.getInt(1));
+        return value == null ? 0 : value;
+    }
+
+    // Streams rows to the handler; returns the number of rows handled. A fetch size of 0 keeps the driver default.
+    public <T> int forEach(String sql, Binder binder, int fetchSize, MapperFactory<T> mapper,
+                           RowHandler<? super T> handler) throws SQLException {
+        int count = 0;
+        try (Tracing.Span span = Tracing.sql(sql)) {
+            try (Connection conn = connections.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+                binder.bind(ps);
+                if (fetchSize > 0) {
+                    ps.setFetchSize(fetchSize);
+                }
+                DatabaseExecutor.statementStarted(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    RowMapper<T> rowMapper = null;
+                    while (rs.next()) {
+                        if (rowMapper == null) {
+                            rowMapper = mapper.forResultSet(rs);
+                        }
+                        count++;
+                        if (!handler.handle(rowMapper.map(rs))) {
+                            break;
+                        }
+                    }
+                } finally {
+                    DatabaseExecutor.statementFinished();
+                }
+            } catch (SQLException | RuntimeException e) {
+                span.failed(e);
+                throw e;
+            }
+        }
+        return count;
+    }
+
+    public int update(String sql, Binder binder) throws SQLException {
+        try (Tracing.Span span = Tracing.sql(sql)) {
+            try (Connection conn = connections.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+                binder.bind(ps);
+                return ps.executeUpdate();
+            } catch (SQLException | RuntimeException e) {
+                span.failed(e);
+                throw e;
+            }
+        }
+    }
+
+    // Runs an INSERT and returns the value generated for keyColumn
+    public int insert(String sql, String keyColumn, Binder binder) throws SQLException {
+        try (Tracing.Span span = Tracing.sql(sql)) {
+            try (Connection conn = connections.getConnection();
+                 PreparedStatement ps = conn.prepareStatement(sql, new String[] {keyColumn})) {
+                binder.bind(ps);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("No " + keyColumn + " generated by: " + sql);
+                    }
+                    return keys.getInt(1);
+                }
+            } catch (SQLException | RuntimeException e) {
+                span.failed(e);
+                throw e;
+            }
+        }
+    }
+
+    // JDBC batching on one connection, committing every commitInterval rows.
+    // On failure the uncommitted rows are rolled back; rows committed earlier stay.
+    // Returns the number of rows sent.
+    public <T> int batch(String sql, Iterable<T> items, int batchSize, int commitInterval,
+                         BatchBinder<? super T> binder) throws SQLException {
+        return batch(sql, items, batchSize, commitInterval, binder, null);
+    }
+
+    // As batch(), also handing each item's update count to the counter
+    public <T> int batch(String sql, Iterable<T> items, int batchSize, int commitInterval,
+                         BatchBinder<? super T> binder, BatchCounter<? super T> counter) throws SQLException {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("Batch size and commit interval must be positive");
+        }
+        int count = 0;
+        try (Tracing.Span span = Tracing.sql(sql)) {
+            try (Connection conn = connections.getConnection(); PreparedStatement ps = conn.prepareStatement(sql)) {
+                conn.setAutoCommit(false);
+                try {
+                    List<T> sent = counter == null ? null : new ArrayList<>(Math.min(batchSize, 10000));
+                    int batched = 0;
+                    int uncommitted = 0;
+                    for (T item : items) {
+                        binder.bind(ps, item);
+                        ps.addBatch();
+                        if (sent != null) {
+                            sent.add(item);
+                        }
+                        batched++;
+                        uncommitted++;
+                        if (batched == batchSize) {
+                            count(ps.executeBatch(), sent, counter);
+                            count += batched;
+                            batched = 0;
+                        }
+                        if (uncommitted >= commitInterval && batched == 0) {
+                            conn.commit();
+                            uncommitted = 0;
+                        }
+                    }
+                    if (batched > 0) {
+                        count(ps.executeBatch(), sent, counter);
+                        count += batched;
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            } catch (SQLException | RuntimeException e) {
+                span.failed(e);
+                throw e;
+            }
+        }
+        return count;
+    }
+
+    private static <T> void count(int[] updateCounts, List<T> sent, BatchCounter<? super T> counter) {
+        if (sent == null) {
+            return;
+        }
+        for (int i = 0; i < sent.size(); i++) {
+            counter.counted(sent.get(i), i < updateCounts.length ? updateCounts[i] : Statement.SUCCESS_NO_INFO);
+        }
+        sent.clear();
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.Locale;
+
+// How a search term is turned into SQL: the WHERE clause, its bind values,
+// and an in-memory predicate that matches exactly the same rows.
+class SearchPlan {
+
+    enum Kind {
+        EXACT_PHONE,   // phone = ?               (index unique/range scan on phone)
+        PHONE_PREFIX,  // phone LIKE 'term%'      (index range scan on phone)
+        NAME_PREFIX,   // LOWER(name) LIKE 'term%' (function-based index on LOWER(name))
+        TEXT,          // CONTAINS(name, ...)     (Oracle Text index; name only)
+        SUBSTRING      // LIKE '%term%' on name and phone (full scan)
+    }
+
+    private final Kind kind;
+    private final String term;
+    private final String whereClause;
+    private final String[] params;
+
+    SearchPlan(Kind kind, String term, String whereClause, String... params) {
+        this.kind = kind;
+        this.term = term;
+        this.whereClause = whereClause;
+        this.params = params;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    // The normalized term the plan searches for (lower case, wildcards stripped)
+    public String getTerm() {
+        return term;
+    }
+
+    public String getWhereClause() {
+        return whereClause;
+    }
+
+    public String[] getParams() {
+        return params;
+    }
+
+    // True if every row matching the narrower plan also matches this one, so the narrower
+    // plan's results can be computed by filtering this plan's results in memory
+    public boolean canRefine(SearchPlan narrower) {
+        switch (kind) {
+            case EXACT_PHONE:
+                return narrower.kind == Kind.EXACT_PHONE && narrower.term.equals(term);
+            case PHONE_PREFIX:
+                return (narrower.kind == Kind.PHONE_PREFIX || narrower.kind == Kind.EXACT_PHONE)
+                        && narrower.term.startsWith(term);
+            case NAME_PREFIX:
+                return narrower.kind == Kind.NAME_PREFIX && narrower.term.startsWith(term);
+            case TEXT:
+                // Names only, so it cannot stand in for a search that also covers phones
+                return narrower.kind == Kind.TEXT && narrower.term.contains(term);
+            default:
+                return (narrower.kind == Kind.SUBSTRING || narrower.kind == Kind.TEXT)
+                        && narrower.term.contains(term);
+        }
+    }
+
+    public boolean matches(Patient p) {
+        String phone = p.getPhone() == null ? "" : p.getPhone();
+        String name = p.getName() == null ? "" : p.getName().toLowerCase(Locale.ROOT);
+        switch (kind) {
+            case EXACT_PHONE:
+                return phone.equals(term);
+            case PHONE_PREFIX:
+                return phone.startsWith(term);
+            case NAME_PREFIX:
+                return name.startsWith(term);
+            case TEXT:
+                return name.contains(term);
+            default:
+                return name.contains(term) || phone.contains(term);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return kind + " '" + term + "'";
+    }
+}
@@ -0,0 +1,10 @@
+import java.sql.SQLException;
+
+// Thrown by AppointmentScheduler.book() when the doctor already has an appointment overlapping the
+// requested time, or the time is outside opening hours. Nothing was written.
+class SlotUnavailableException extends SQLException {
+
+    public SlotUnavailableException(String message) {
+        super(message);
+    }
+}
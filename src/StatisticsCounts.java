@@ -0,0 +1,147 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The running totals behind a PatientStatistics. Rows are added with sign +1 and taken back out
+// with -1, so a changed patient is applied as its old row out and its new row in. Genders and blood
+// groups are counted by PatientColumns code, doctors by their code in the StringDictionary given.
+// Not thread-safe; PatientAnalytics gives each fork-join task its own and merges them.
+class StatisticsCounts {
+
+    private final StringDictionary doctors;
+    private final long[] ages = new long[PatientStatistics.AGE_BUCKETS];
+    // Indexed by code + 1, so the null code -1 has a slot
+    private final long[] genders = new long[Byte.MAX_VALUE + 1];
+    private final long[] bloodGroups = new long[Byte.MAX_VALUE + 1];
+    // (doctor code, epoch day) -> visits
+    private final LongCountMap doctorDays = new LongCountMap();
+    private long patients;
+    private long visits;
+    private long patientsWithVisits;
+    private long returningPatients;
+
+    StatisticsCounts(StringDictionary doctors) {
+        this.doctors = doctors;
+    }
+
+    static long doctorDayKey(int doctor, int epochDay) {
+        return ((long) doctor << 32) | (epochDay & 0xFFFFFFFFL);
+    }
+
+    void addPatient(int age, byte gender, byte bloodGroup, int sign) {
+        ages[PatientStatistics.ageBucketOf(age)] += sign;
+        genders[gender + 1] += sign;
+        bloodGroups[bloodGroup + 1] += sign;
+        patients += sign;
+    }
+
+    // One patient's visits, rows from to to of the two columns
+    void addVisits(int[] doctorCodes, int[] epochDays, int from, int to, int sign) {
+        int count = to - from;
+        if (count == 0) {
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            doctorDays.add(doctorDayKey(doctorCodes[i], epochDays[i]), sign);
+        }
+        visits += (long) sign * count;
+        patientsWithVisits += sign;
+        if (count > 1) {
+            returningPatients += sign;
+        }
+    }
+
+    // Counts from SQL, for the pushed-down jobs
+
+    void addAgeBucket(int bucket, long count) {
+        ages[bucket] += count;
+        patients += count;
+    }
+
+    void addGender(String gender, long count) {
+        genders[PatientColumns.GENDERS.encode(gender) + 1] += count;
+    }
+
+    void addBloodGroup(String bloodGroup, long count) {
+        bloodGroups[PatientColumns.BLOOD_GROUPS.encode(bloodGroup) + 1] += count;
+    }
+
+    void addDoctorDay(String doctor, LocalDate day, long count) {
+        doctorDays.add(doctorDayKey(doctors.encode(doctor), (int) day.toEpochDay()), count);
+    }
+
+    void addVisitTotals(long visits, long patientsWithVisits, long returningPatients) {
+        this.visits += visits;
+        this.patientsWithVisits += patientsWithVisits;
+        this.returningPatients += returningPatients;
+    }
+
+    void merge(StatisticsCounts other) {
+        for (int i = 0; i < ages.length; i++) {
+            ages[i] += other.ages[i];
+        }
+        for (int i = 0; i < genders.length; i++) {
+            genders[i] += other.genders[i];
+            bloodGroups[i] += other.bloodGroups[i];
+        }
+        doctorDays.addAll(other.doctorDays);
+        patients += other.patients;
+        visits += other.visits;
+        patientsWithVisits += other.patientsWithVisits;
+        returningPatients += other.returningPatients;
+    }
+
+    void clearPatients() {
+        Arrays.fill(ages, 0);
+        Arrays.fill(genders, 0);
+        Arrays.fill(bloodGroups, 0);
+        patients = 0;
+    }
+
+    void clearVisits() {
+        doctorDays.clear();
+        visits = 0;
+        patientsWithVisits = 0;
+        returningPatients = 0;
+    }
+
+    PatientStatistics toStatistics(String method, long elapsedMillis) {
+        List<PatientStatistics.DoctorCount> days = new ArrayList<>();
+        // Weeks start on Monday; epoch day 0 was a Thursday
+        LongCountMap doctorWeeks = new LongCountMap();
+        doctorDays.forEach((key, count) -> {
+            int doctor = (int) (key >>> 32);
+            int day = (int) key;
+            days.add(new PatientStatistics.DoctorCount(doctors.decode(doctor), LocalDate.ofEpochDay(day), count));
+            doctorWeeks.add(doctorDayKey(doctor, day - Math.floorMod(day + 3, 7)), count);
+        });
+        List<PatientStatistics.DoctorCount> weeks = new ArrayList<>();
+        doctorWeeks.forEach((key, count) -> weeks.add(
+                new PatientStatistics.DoctorCount(doctors.decode((int) (key >>> 32)), LocalDate.ofEpochDay((int) key), count)));
+        Comparator<PatientStatistics.DoctorCount> order = Comparator
+                .comparing(PatientStatistics.DoctorCount::getDoctor)
+                .thenComparing(PatientStatistics.DoctorCount::getPeriod);
+        days.sort(order);
+        weeks.sort(order);
+        return new PatientStatistics(ages.clone(), byCode(genders, PatientColumns.GENDERS),
+                byCode(bloodGroups, PatientColumns.BLOOD_GROUPS), days, weeks,
+                patients, visits, patientsWithVisits, returningPatients, method, elapsedMillis);
+    }
+
+    private static Map<String, Long> byCode(long[] counts, CodeDictionary dictionary) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int code = 0; code < dictionary.size(); code++) {
+            if (counts[code + 1] != 0) {
+                result.put(dictionary.decode((byte) code), counts[code + 1]);
+            }
+        }
+        if (counts[0] != 0) {
+            result.put("", counts[0]);
+        }
+        return result;
+    }
+}
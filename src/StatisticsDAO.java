@@ -0,0 +1,55 @@
+import java.sql.SQLException;
+
+// The analytics jobs pushed down to Oracle as GROUP BY queries, so only the aggregates cross the
+// network. Patients are grouped by gender, blood group and age bucket in one scan; visits per
+// doctor and day in another, and the return-visit counts come from visits grouped by patient.
+// Weekly counts are summed from the daily ones by StatisticsCounts.
+class StatisticsDAO {
+
+    private static final String PATIENT_SQL = "SELECT gender, blood_group, FLOOR(age / "
+            + PatientStatistics.AGE_BUCKET_YEARS + ") AS bucket, COUNT(*) AS patients FROM patients "
+            + "GROUP BY gender, blood_group, FLOOR(age / " + PatientStatistics.AGE_BUCKET_YEARS + ")";
+
+    // Grouped by doctor_id, which VISITS_DOCTOR_DATE_IDX covers together with the date, and only then
+    // joined to the doctor's name. visits.doctor is only set on rows not migrated yet.
+    private static final String DOCTOR_DAY_SQL = "SELECT g.doctor_id, COALESCE(d.name, g.doctor) AS doctor, "
+            + "g.visit_day, g.visits FROM (SELECT doctor_id, doctor, TRUNC(visit_date) AS visit_day, COUNT(*) AS visits "
+            + "FROM visits GROUP BY doctor_id, doctor, TRUNC(visit_date)) g LEFT JOIN doctors d ON d.id = g.doctor_id";
+
+    private static final String RETURN_VISIT_SQL = "SELECT COUNT(*) AS patients, COALESCE(SUM(visits), 0) AS visits, "
+            + "COALESCE(SUM(CASE WHEN visits > 1 THEN 1 ELSE 0 END), 0) AS returning_patients "
+            + "FROM (SELECT COUNT(*) AS visits FROM visits GROUP BY patient_id) per_patient";
+
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+    private final DoctorDirectory doctors;
+
+    public StatisticsDAO(DoctorDirectory doctors) {
+        this.doctors = doctors;
+    }
+
+    // Adds the age, gender and blood group counts
+    public void countPatients(StatisticsCounts counts) throws SQLException {
+        template.forEach(PATIENT_SQL, QueryTemplate.NO_PARAMS, 1000, rs -> r -> {
+            long patients = r.getLong(4);
+            counts.addGender(r.getString(1), patients);
+            counts.addBloodGroup(r.getString(2), patients);
+            counts.addAgeBucket(PatientStatistics.ageBucketOf(r.getInt(3) * PatientStatistics.AGE_BUCKET_YEARS), patients);
+            return patients;
+        }, row -> true);
+    }
+
+    // Adds the per-doctor and return-visit counts
+    public void countVisits(StatisticsCounts counts) throws SQLException {
+        template.forEach(DOCTOR_DAY_SQL, QueryTemplate.NO_PARAMS, 1000, rs -> r -> {
+            int doctorId = r.getInt(1);
+            String doctor = r.wasNull() ? doctors.canonical(r.getString(2)) : doctors.intern(doctorId, r.getString(2));
+            long visits = r.getLong(4);
+            counts.addDoctorDay(doctor, r.getDate(3).toLocalDate(), visits);
+            return visits;
+        }, row -> true);
+        template.forEach(RETURN_VISIT_SQL, QueryTemplate.NO_PARAMS, 1, rs -> r -> {
+            counts.addVisitTotals(r.getLong(2), r.getLong(1), r.getLong(3));
+            return null;
+        }, row -> true);
+    }
+}
@@ -0,0 +1,243 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// The patient and visit repositories the application runs on, chosen with -Dhms.storage:
+//   oracle    the shared Oracle database configured in DatabaseConfig (default)
+//   embedded  a single local file (-Dhms.storage.file, default hms-data.db) that needs no server
+// With -Dhms.offline=true the oracle backend keeps working from a local file (-Dhms.offline.file,
+// default hms-offline.db) while Oracle is unreachable. -Dhms.writeBehind=true queues every write in
+// that file and sends it to Oracle in the background. See OfflineSync.
+// The oracle backend also has a PatientChangeFeed that reports writes from other workstations;
+// the embedded backend is single-user and has none. Both repositories record into Metrics, and the
+// oracle backend's patient cache publishes its counters there as the gauges "cache.patients.*".
+// openAnalytics() gives the dashboard statistics, pushed down to SQL on the oracle backend.
+// Appointments are booked against the shared database only, so openScheduler() is null when embedded.
+// getDoctors() is the doctor dictionary visits are written and read through; loadDoctors() fills it.
+class Storage implements AutoCloseable {
+
+    static final String ORACLE = "oracle";
+    static final String EMBEDDED = "embedded";
+
+    static final String KIND = System.getProperty("hms.storage", ORACLE);
+    static final String EMBEDDED_FILE = System.getProperty("hms.storage.file", "hms-data.db");
+    static final boolean OFFLINE_ENABLED = Boolean.getBoolean("hms.offline");
+    static final boolean WRITE_BEHIND = Boolean.getBoolean("hms.writeBehind");
+    static final String OFFLINE_FILE = System.getProperty("hms.offline.file", "hms-offline.db");
+    // How long the startup check for Oracle waits for an answer once connected
+    static final int PROBE_TIMEOUT_SECONDS = Integer.getInteger("hms.offline.probeTimeoutSeconds", 5);
+    // Visits moved to doctor_id per transaction by loadDoctors()
+    static final int DOCTOR_MIGRATION_BATCH_SIZE = Integer.getInteger("hms.doctors.migrationBatchSize", 1000);
+    // Metrics gauge prefix of the oracle backend's patient cache
+    static final String PATIENT_CACHE_METRICS = "cache.patients";
+
+    private final String kind;
+    private final PatientRepository patients;
+    private final VisitRepository visits;
+    private final OfflineSync offlineSync;
+    private final PatientChangeFeed changeFeed;
+    private final CachingPatientDAO patientCache;
+    private final DoctorDirectory doctors;
+    private final DoctorDAO doctorDAO;
+    private final Closeable resource;
+
+    private Storage(String kind, PatientRepository patients, VisitRepository visits, DoctorDirectory doctors,
+                    DoctorDAO doctorDAO, OfflineSync offlineSync, PatientChangeFeed changeFeed,
+                    CachingPatientDAO patientCache, Closeable resource) {
+        this.kind = kind;
+        this.patients = patients;
+        this.visits = visits;
+        this.doctors = doctors;
+        this.doctorDAO = doctorDAO;
+        this.offlineSync = offlineSync;
+        this.changeFeed = changeFeed;
+        this.patientCache = patientCache;
+        this.resource = resource;
+    }
+
+    public static Storage open() throws ClassNotFoundException, IOException {
+        return open(KIND);
+    }
+
+    public static Storage open(String kind) throws ClassNotFoundException, IOException {
+        switch (kind) {
+            case ORACLE:
+                Class.forName("oracle.jdbc.driver.OracleDriver");
+                if (OFFLINE_ENABLED || WRITE_BEHIND) {
+                    return openWithOfflineCopy();
+                }
+                DatabaseConfig.initializeDatabase();
+                CachingPatientDAO patientDAO = new CachingPatientDAO();
+                patientDAO.publishStats(PATIENT_CACHE_METRICS);
+                PatientRepository patients = instrument(patientDAO);
+                DoctorDAO doctorDAO = new DoctorDAO();
+                DoctorDirectory doctors = new DoctorDirectory(doctorDAO);
+                return new Storage(kind, patients, instrument(new VisitDAO(doctors)), doctors, doctorDAO, null,
+                        openChangeFeed(patients, patientDAO, null), patientDAO, DatabaseConfig::shutdown);
+            case EMBEDDED:
+                EmbeddedStore store = EmbeddedStore.open(Paths.get(EMBEDDED_FILE));
+                return new Storage(kind, instrument(new EmbeddedPatientRepository(store)),
+                        instrument(new EmbeddedVisitRepository(store)), new DoctorDirectory(null), null, null, null, null,
+                        store::close);
+            default:
+                throw new IllegalArgumentException("Unknown storage '" + kind + "', expected " + ORACLE + " or " + EMBEDDED);
+        }
+    }
+
+    // Starts offline if Oracle can't be reached now; tables are then created on reconnect
+    private static Storage openWithOfflineCopy() throws IOException {
+        boolean reachable = isReachable();
+        if (reachable) {
+            DatabaseConfig.initializeDatabase();
+        }
+        EmbeddedStore store = EmbeddedStore.open(Paths.get(OFFLINE_FILE));
+        CachingPatientDAO patientDAO = new CachingPatientDAO();
+        patientDAO.publishStats(PATIENT_CACHE_METRICS);
+        DoctorDAO doctorDAO = new DoctorDAO();
+        DoctorDirectory doctors = new DoctorDirectory(doctorDAO);
+        VisitDAO visitDAO = new VisitDAO(doctors);
+        OfflineSync sync = new OfflineSync(store, new PatientDAO(), new VisitDAO(doctors), reachable, WRITE_BEHIND);
+        PatientRepository patients = instrument(new OfflinePatientRepository(patientDAO, sync));
+        return new Storage(ORACLE, patients, instrument(new OfflineVisitRepository(visitDAO, sync)), doctors, doctorDAO,
+                sync, openChangeFeed(patients, patientDAO, sync), patientDAO, () -> {
+                    sync.close();
+                    store.close();
+                    DatabaseConfig.shutdown();
+                });
+    }
+
+    private static PatientRepository instrument(PatientRepository patients) {
+        return Metrics.instrument(PatientRepository.class, patients, "patients");
+    }
+
+    private static VisitRepository instrument(VisitRepository visits) {
+        return Metrics.instrument(VisitRepository.class, visits, "visits");
+    }
+
+    // Drops cached rows other workstations changed and refreshes the offline copy of them. The copy
+    // is left alone while it holds queued writes, which are newer than anything Oracle has.
+    private static PatientChangeFeed openChangeFeed(PatientRepository patients, CachingPatientDAO cache, OfflineSync sync) {
+        PatientChangeFeed feed = new PatientChangeFeed(patients);
+        feed.addListener(changes -> {
+            if (changes.isReloadRequired()) {
+                cache.invalidateAll();
+                return;
+            }
+            for (Patient p : changes.getUpdated()) {
+                cache.invalidate(p.getId());
+            }
+            for (int id : changes.getDeletedIds()) {
+                cache.invalidate(id);
+            }
+            if (sync != null) {
+                sync.mirror(store -> {
+                    if (store.hasPendingOperations()) {
+                        return;
+                    }
+                    List<Patient> copied = new ArrayList<>();
+                    for (Patient p : changes.getUpdated()) {
+                        if (store.getPatient(p.getId()) != null) {
+                            copied.add(p);
+                        }
+                    }
+                    store.putPatients(copied);
+                    for (int id : changes.getDeletedIds()) {
+                        store.deletePatient(id, (byte) 0);
+                    }
+                });
+            }
+        });
+        return feed;
+    }
+
+    private static boolean isReachable() {
+        try (Connection conn = DatabaseConfig.getConnection()) {
+            return conn.isValid(PROBE_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            // Anything else is for initializeDatabase() to report
+            return !OfflineSync.isConnectionFailure(e);
+        }
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public PatientRepository getPatients() {
+        return patients;
+    }
+
+    public VisitRepository getVisits() {
+        return visits;
+    }
+
+    public DoctorDirectory getDoctors() {
+        return doctors;
+    }
+
+    // Fills getDoctors() and, on the oracle backend, moves visits that still hold a typed doctor name
+    // to doctor_id, a batch per transaction. The first run over a large visits table takes a while,
+    // so call it off the EDT; reads meanwhile decode either form. Skipped while working offline.
+    public void loadDoctors() throws SQLException {
+        if (doctorDAO == null) {
+            doctors.load(visits);
+            return;
+        }
+        if (offlineSync != null && offlineSync.isOffline()) {
+            return;
+        }
+        doctorDAO.keyDoctorNames(DOCTOR_MIGRATION_BATCH_SIZE);
+        doctors.load(visits);
+        int migrated = doctorDAO.migrateVisitDoctors(doctors, DOCTOR_MIGRATION_BATCH_SIZE);
+        if (migrated > 0) {
+            System.out.println("Moved " + migrated + " visits to doctor ids (" + doctors.size() + " doctors)");
+        }
+    }
+
+    // Null unless offline mode or write-behind is enabled
+    public OfflineSync getOfflineSync() {
+        return offlineSync;
+    }
+
+    // For writes that reached the database without going through this client, e.g. File > Refresh Data
+    public void invalidateCaches() {
+        if (patientCache != null) {
+            patientCache.invalidateAll();
+        }
+    }
+
+    // Kept current by the change feed where there is one, and by this client's own patient writes;
+    // visits written here are reported with PatientAnalytics.visitsAdded(). Call before starting the feed.
+    public PatientAnalytics openAnalytics() {
+        PatientAnalytics analytics = new PatientAnalytics(patients, visits,
+                ORACLE.equals(kind) ? new StatisticsDAO(doctors) : null, offlineSync);
+        patients.addChangeListener(analytics);
+        if (changeFeed != null) {
+            changeFeed.addListener(analytics::changesArrived);
+        }
+        return analytics;
+    }
+
+    // Null for the embedded backend, which has a single user and no doctors. Offline, bookings fail
+    // like any other read of Oracle; they are never queued, since a conflict could not be reported.
+    public AppointmentScheduler openScheduler() {
+        return ORACLE.equals(kind) ? new AppointmentScheduler(new AppointmentDAO(), doctors) : null;
+    }
+
+    // Null for the embedded backend. Not started until the caller has added its listeners.
+    public PatientChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+        resource.close();
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Interns strings with many distinct values (doctor names, ...) as int codes, for column arrays that
+// outgrow CodeDictionary's byte codes. Code -1 stands for null. Codes are never reused, so a code
+// read from an older column array still decodes to the same string.
+class StringDictionary {
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private volatile String[] values = new String[16];
+    private int size;
+
+    public synchronized int encode(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        // The array is written before the code is handed out, and readers go through the volatile field
+        String[] current = values;
+        current[size] = value;
+        values = current;
+        codes.put(value, size);
+        return size++;
+    }
+
+    // Code of a value already interned, or -1
+    public synchronized int find(String value) {
+        Integer code = value == null ? null : codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String decode(int code) {
+        return code < 0 ? null : values[code];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
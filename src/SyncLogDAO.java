@@ -0,0 +1,48 @@
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Oracle's record of OfflineSync replays: sync_log holds how far each local store's pending log has
+// been applied, sync_patient_ids the Oracle ids of patients the latest replayed group created. Both
+// are written inside the replay transaction, so they commit or roll back with the replayed rows.
+class SyncLogDAO {
+
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+
+    // End offset of the last operation replayed from the store, or 0 if none was
+    public long getReplayedThrough(String storeId) throws SQLException {
+        Long end = template.queryOne("SELECT end_offset FROM sync_log WHERE store_id = ?",
+                ps -> ps.setString(1, storeId), rs -> r -> r.getLong(1));
+        return end == null ? 0 : end;
+    }
+
+    // Local patient id -> Oracle id for the patients the latest recorded group created
+    public Map<Integer, Integer> getPatientIds(String storeId) throws SQLException {
+        Map<Integer, Integer> ids = new HashMap<>();
+        template.forEach("SELECT local_id, patient_id FROM sync_patient_ids WHERE store_id = ?",
+                ps -> ps.setString(1, storeId), 0, rs -> r -> {
+                    ids.put(r.getInt(1), r.getInt(2));
+                    return null;
+                }, row -> true);
+        return ids;
+    }
+
+    // Run in the transaction that replayed the group. Earlier groups' ids are dropped: the store
+    // recorded them itself before it replayed anything further.
+    public void record(String storeId, long endOffset, Map<Integer, Integer> newIds) throws SQLException {
+        QueryTemplate.Binder binder = ps -> {
+            ps.setLong(1, endOffset);
+            ps.setString(2, storeId);
+        };
+        if (template.update("UPDATE sync_log SET end_offset = ? WHERE store_id = ?", binder) == 0) {
+            template.update("INSERT INTO sync_log (end_offset, store_id) VALUES (?, ?)", binder);
+        }
+        template.update("DELETE FROM sync_patient_ids WHERE store_id = ?", ps -> ps.setString(1, storeId));
+        template.batch("INSERT INTO sync_patient_ids (store_id, local_id, patient_id) VALUES (?, ?, ?)",
+                newIds.entrySet(), PatientRepository.DEFAULT_BATCH_SIZE, Integer.MAX_VALUE, (ps, e) -> {
+                    ps.setString(1, storeId);
+                    ps.setInt(2, e.getKey());
+                    ps.setInt(3, e.getValue());
+                });
+    }
+}
@@ -0,0 +1,369 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Spans that tie one user action together across threads: the EDT event that started it, the
+// repository calls it made on DatabaseExecutor threads, every SQL statement they ran, and the
+// completion handlers back on the EDT. Spans started with none open on the thread begin a new
+// trace; DatabaseExecutor hands the open span to the threads it runs work on. When the last span
+// of a trace ends, a trace slower than -Dhms.trace.slowMillis is appended as one JSON line to the
+// rolling file -Dhms.trace.file (also used by EdtWatchdog). -Dhms.trace=false turns spans off.
+// Open spans with try-with-resources on the thread that uses them.
+class Tracing {
+
+    static final boolean ENABLED = !"false".equals(System.getProperty("hms.trace"));
+    static final long SLOW_MILLIS = Long.getLong("hms.trace.slowMillis", 500);
+    static final String FILE = System.getProperty("hms.trace.file", "hms-trace.log");
+    // The file is rolled to FILE.1 ... FILE.<files - 1> when it passes this size
+    static final long MAX_FILE_BYTES = Long.getLong("hms.trace.maxFileKb", 1024) * 1024;
+    static final int FILES = Integer.getInteger("hms.trace.files", 3);
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final AtomicLong TRACE_IDS = new AtomicLong();
+    // SQL statements executing right now, for EdtWatchdog
+    private static final Set<Span> SQL_IN_FLIGHT = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "trace-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // EDT only: the trace root opened lazily for the event being dispatched, closed by endDispatch()
+    private static Span dispatchRoot;
+
+    private static class Trace {
+        final long id = TRACE_IDS.incrementAndGet();
+        final long startNanos;
+        final long startMillis = System.currentTimeMillis();
+        final List<Span> spans = new ArrayList<>();
+        // Spans still open plus hand-offs to other threads still pending
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger spanIds = new AtomicInteger();
+
+        Trace(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        void hold() {
+            open.incrementAndGet();
+        }
+
+        void release() {
+            if (open.decrementAndGet() == 0) {
+                finished(this);
+            }
+        }
+    }
+
+    static class Span implements AutoCloseable {
+        // Returned while tracing is off; closing it does nothing
+        private static final Span NONE = new Span();
+
+        private final Trace trace;
+        private final int id;
+        private final Span parent;
+        private final String name;
+        private final String sql;
+        private final String thread = Thread.currentThread().getName();
+        private final long startNanos;
+        private volatile long endNanos;
+        private volatile String error;
+        // What CURRENT held on this thread before the span opened
+        private final Span previous;
+
+        private Span(Trace trace, Span parent, String name, String sql, long startNanos) {
+            this.trace = trace;
+            this.id = trace.spanIds.incrementAndGet();
+            this.parent = parent;
+            this.name = name;
+            this.sql = sql;
+            this.startNanos = startNanos;
+            this.previous = CURRENT.get();
+            trace.hold();
+            synchronized (trace.spans) {
+                trace.spans.add(this);
+            }
+            CURRENT.set(this);
+        }
+
+        private Span() {
+            trace = null;
+            id = 0;
+            parent = null;
+            name = "";
+            sql = null;
+            startNanos = 0;
+            previous = null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public long getTraceId() {
+            return trace.id;
+        }
+
+        // Name of the span that started the trace, e.g. the button click
+        public String getRootName() {
+            Span root = this;
+            while (root.parent != null) {
+                root = root.parent;
+            }
+            return root.name;
+        }
+
+        public long getRunningMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        public void failed(Throwable t) {
+            error = String.valueOf(t);
+        }
+
+        @Override
+        public void close() {
+            if (trace == null || endNanos != 0) {
+                return;
+            }
+            endNanos = System.nanoTime();
+            if (sql != null) {
+                SQL_IN_FLIGHT.remove(this);
+            }
+            CURRENT.set(previous);
+            trace.release();
+        }
+    }
+
+    // Opens a span under the one open on this thread, or starts a trace. Close it in a finally block.
+    static Span start(String name) {
+        return start(name, null);
+    }
+
+    static Span sql(String sql) {
+        Span span = start("sql", sql);
+        if (span != Span.NONE) {
+            SQL_IN_FLIGHT.add(span);
+        }
+        return span;
+    }
+
+    private static Span start(String name, String sql) {
+        if (!ENABLED) {
+            return Span.NONE;
+        }
+        Span parent = CURRENT.get();
+        if (parent == null) {
+            parent = openDispatchRoot();
+        }
+        long now = System.nanoTime();
+        return new Span(parent != null ? parent.trace : new Trace(now), parent, name, sql, now);
+    }
+
+    // The first span opened while the EDT dispatches an event gets the event itself as its parent,
+    // timed from when the dispatch began, so handler time before the first DAO call is counted
+    private static Span openDispatchRoot() {
+        if (!java.awt.EventQueue.isDispatchThread()) {
+            return null;
+        }
+        long dispatchStart = EdtWatchdog.getDispatchStartNanos();
+        if (dispatchStart == 0) {
+            return null;
+        }
+        dispatchRoot = new Span(new Trace(dispatchStart), null, EdtWatchdog.describeCurrentEvent(), null, dispatchStart);
+        return dispatchRoot;
+    }
+
+    // What the EDT had open when a nested event started; see beginDispatch()
+    static class Dispatch {
+        private final Span root;
+        private final Span current;
+
+        private Dispatch(Span root, Span current) {
+            this.root = root;
+            this.current = current;
+        }
+    }
+
+    // Called by EdtWatchdog on the EDT around each event. A modal dialog dispatches events from inside
+    // another event's handler, so the outer event's spans are set aside until the inner event is done.
+    static Dispatch beginDispatch() {
+        Span current = CURRENT.get();
+        if (dispatchRoot == null && current == null) {
+            return null;
+        }
+        Dispatch outer = new Dispatch(dispatchRoot, current);
+        dispatchRoot = null;
+        CURRENT.remove();
+        return outer;
+    }
+
+    static void endDispatch(Dispatch outer) {
+        Span root = dispatchRoot;
+        if (root != null) {
+            root.close();
+        }
+        dispatchRoot = outer == null ? null : outer.root;
+        if (outer == null || outer.current == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer.current);
+        }
+    }
+
+    // Runs task on another thread as part of the trace open here; the trace stays open until it has run
+    static Runnable handOff(Runnable task) {
+        if (!ENABLED) {
+            return task;
+        }
+        Span current = CURRENT.get();
+        Span parent = current != null ? current : openDispatchRoot();
+        if (parent == null) {
+            return task;
+        }
+        parent.trace.hold();
+        return () -> {
+            Span previous = CURRENT.get();
+            CURRENT.set(parent);
+            try {
+                task.run();
+            } finally {
+                CURRENT.set(previous);
+                parent.trace.release();
+            }
+        };
+    }
+
+    static List<Span> sqlInFlight() {
+        return new ArrayList<>(SQL_IN_FLIGHT);
+    }
+
+    private static void finished(Trace trace) {
+        List<Span> spans;
+        synchronized (trace.spans) {
+            spans = new ArrayList<>(trace.spans);
+        }
+        long end = trace.startNanos;
+        for (Span span : spans) {
+            end = Math.max(end, span.endNanos);
+        }
+        long durationMillis = (end - trace.startNanos) / 1_000_000;
+        if (durationMillis < SLOW_MILLIS || spans.isEmpty()) {
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"slow\",\"time\":").append(quote(Instant.ofEpochMilli(trace.startMillis).toString()))
+                .append(",\"trace\":").append(trace.id)
+                .append(",\"name\":").append(quote(spans.get(0).getRootName()))
+                .append(",\"durationMillis\":").append(durationMillis)
+                .append(",\"spans\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            Span span = spans.get(i);
+            json.append(i == 0 ? "{" : ",{")
+                    .append("\"id\":").append(span.id)
+                    .append(",\"parent\":").append(span.parent == null ? 0 : span.parent.id)
+                    .append(",\"name\":").append(quote(span.name))
+                    .append(",\"thread\":").append(quote(span.thread))
+                    .append(",\"startMillis\":").append(millis(span.startNanos - trace.startNanos))
+                    .append(",\"durationMillis\":").append(millis(span.endNanos - span.startNanos));
+            if (span.sql != null) {
+                json.append(",\"sql\":").append(quote(span.sql));
+            }
+            if (span.error != null) {
+                json.append(",\"error\":").append(quote(span.error));
+            }
+            json.append('}');
+        }
+        json.append("]}");
+        write(json.toString());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+
+    static String quote(String s) {
+        if (s == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    // Appends one line to the trace file on the writer thread, so callers never wait on the disk
+    static void write(String line) {
+        if (FILE.isEmpty()) {
+            return;
+        }
+        WRITER.execute(() -> {
+            Path file = Paths.get(FILE);
+            try {
+                if (Files.exists(file) && Files.size(file) > MAX_FILE_BYTES) {
+                    roll(file);
+                }
+                Files.write(file, (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Could not write trace to " + file + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private static void roll(Path file) throws IOException {
+        for (int i = FILES - 1; i >= 1; i--) {
+            Path older = file.resolveSibling(file.getFileName() + "." + i);
+            Path newer = i == 1 ? file : file.resolveSibling(file.getFileName() + "." + (i - 1));
+            if (Files.exists(newer)) {
+                Files.move(newer, older, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,182 @@
+import java.sql.BatchUpdateException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Records many visits at once for the batch entry grid (VisitBatchDialog). Each row is checked the
+// way the Visit History dialog checks one visit, plus that its patient exists, and the valid rows
+// go to the database in one addVisits() call: one JDBC batch in one transaction. Should the database
+// refuse some rows anyway (a patient deleted meanwhile), nothing is kept, those rows are marked
+// failed and the others written again, so the rows reported saved always committed together.
+class VisitBatch {
+
+    static final int MAX_DOCTOR_LENGTH = 100;
+    static final int MAX_NOTES_LENGTH = 500;
+
+    // One grid row as typed. visit is set once the row passes validation, error when it is rejected
+    // or could not be written; a row left entirely blank gets neither and is skipped.
+    static class Row {
+        final String patientId;
+        final String date;
+        final String doctor;
+        final String notes;
+        Visit visit;
+        String patientName;
+        String error;
+        boolean saved;
+
+        Row(String patientId, String date, String doctor, String notes) {
+            this.patientId = patientId == null ? "" : patientId.trim();
+            this.date = date == null ? "" : date.trim();
+            this.doctor = doctor == null ? "" : doctor;
+            this.notes = notes == null ? "" : notes.trim();
+        }
+
+        boolean isBlank() {
+            return patientId.isEmpty() && date.isEmpty() && doctor.trim().isEmpty() && notes.isEmpty();
+        }
+    }
+
+    private final PatientRepository patients;
+    private final VisitRepository visits;
+    private final DoctorDirectory doctors;
+
+    public VisitBatch(PatientRepository patients, VisitRepository visits, DoctorDirectory doctors) {
+        this.patients = patients;
+        this.visits = visits;
+        this.doctors = doctors;
+    }
+
+    // Checks every row not saved yet; returns how many are ready to save. Each patient is looked up once.
+    public int validate(List<Row> rows) throws SQLException {
+        Map<Integer, Patient> found = new HashMap<>();
+        int valid = 0;
+        for (Row row : rows) {
+            if (row.saved) {
+                continue;
+            }
+            row.visit = null;
+            row.patientName = null;
+            row.error = row.isBlank() ? null : check(row, found);
+            if (row.visit != null) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    private String check(Row row, Map<Integer, Patient> found) throws SQLException {
+        int patientId;
+        try {
+            patientId = Integer.parseInt(row.patientId);
+        } catch (NumberFormatException e) {
+            return row.patientId.isEmpty() ? "Patient ID is required" : "Patient ID is not a number";
+        }
+        if (patientId <= 0) {
+            return "Patient ID must be positive";
+        }
+        if (!found.containsKey(patientId)) {
+            found.put(patientId, patients.getPatientById(patientId));
+        }
+        Patient patient = found.get(patientId);
+        if (patient == null) {
+            return "No patient with ID " + patientId;
+        }
+        row.patientName = patient.getName();
+        Date visitDate;
+        try {
+            visitDate = Date.valueOf(row.date);
+        } catch (IllegalArgumentException e) {
+            return "Date must be yyyy-mm-dd";
+        }
+        // Spelled as the doctor's earlier visits are, so they all file under one doctor
+        String doctor = doctors.canonical(row.doctor);
+        if (doctor == null) {
+            return "Doctor name required";
+        }
+        if (doctor.length() > MAX_DOCTOR_LENGTH) {
+            return "Doctor is longer than " + MAX_DOCTOR_LENGTH + " characters";
+        }
+        if (row.notes.length() > MAX_NOTES_LENGTH) {
+            return "Notes are longer than " + MAX_NOTES_LENGTH + " characters";
+        }
+        row.visit = new Visit(patientId, visitDate, doctor, row.notes);
+        return null;
+    }
+
+    // Validates, then writes the valid rows; returns how many were saved. Rows keep their outcome.
+    public int save(List<Row> rows) throws SQLException {
+        validate(rows);
+        List<Row> pending = new ArrayList<>();
+        for (Row row : rows) {
+            if (!row.saved && row.visit != null) {
+                pending.add(row);
+            }
+        }
+        while (!pending.isEmpty()) {
+            List<Visit> batch = new ArrayList<>(pending.size());
+            for (Row row : pending) {
+                batch.add(row.visit);
+            }
+            try {
+                // One executeBatch for all rows, so a BatchUpdateException's update counts index pending
+                visits.addVisits(batch, batch.size(), Integer.MAX_VALUE);
+            } catch (SQLException e) {
+                List<Row> refused = refused(pending, e);
+                if (refused.isEmpty()) {
+                    for (Row row : pending) {
+                        row.error = "Not saved: " + e.getMessage();
+                    }
+                    return 0;
+                }
+                pending.removeAll(refused);
+                continue;
+            }
+            for (Row row : pending) {
+                row.saved = true;
+            }
+            return pending.size();
+        }
+        return 0;
+    }
+
+    // The rows the database refused, with their error set; empty if it can't tell which they were
+    private List<Row> refused(List<Row> pending, SQLException e) throws SQLException {
+        List<Row> refused = new ArrayList<>();
+        if (e instanceof BatchUpdateException) {
+            // Drivers either mark each failed row or stop at the first one
+            int[] counts = ((BatchUpdateException) e).getUpdateCounts();
+            for (int i = 0; i < counts.length && i < pending.size(); i++) {
+                if (counts[i] == Statement.EXECUTE_FAILED) {
+                    refused.add(pending.get(i));
+                }
+            }
+            if (refused.size() == pending.size()) {
+                refused.clear();
+            } else if (refused.isEmpty() && counts.length < pending.size()) {
+                refused.add(pending.get(counts.length));
+            }
+        }
+        if (refused.isEmpty()) {
+            // Otherwise the likely cause: patients deleted since validation
+            Map<Integer, Boolean> exists = new HashMap<>();
+            for (Row row : pending) {
+                int patientId = row.visit.getPatientId();
+                if (!exists.containsKey(patientId)) {
+                    exists.put(patientId, patients.getPatientById(patientId) != null);
+                }
+                if (!exists.get(patientId)) {
+                    refused.add(row);
+                }
+            }
+        }
+        for (Row row : refused) {
+            row.error = "Database error: " + e.getMessage();
+        }
+        return refused;
+    }
+}
@@ -0,0 +1,314 @@
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.datatransfer.DataFlavor;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultCellEditor;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+// Batch entry of visits for a clinic session: one grid row per visit, typed or pasted from a
+// spreadsheet (tab-separated Patient ID, Date, Doctor, Notes). Validate checks the rows without
+// writing; Save writes every valid row in one transaction through VisitBatch. Each row's Status
+// column shows why it was rejected, or that it was saved; saved rows can no longer be edited.
+class VisitBatchDialog extends JDialog {
+
+    private static final int NEW_ROWS = 10;
+
+    private final VisitBatch batch;
+    private final IntConsumer visitAddedListener;
+    private final GridModel model = new GridModel();
+    private final JTable table = new JTable(model);
+    private final JLabel statusLabel = new JLabel(" ");
+    private final List<JButton> buttons = new ArrayList<>();
+
+    public VisitBatchDialog(Window owner, VisitBatch batch, DoctorDirectory doctors, IntConsumer visitAddedListener) {
+        super(owner, "Record Visits", ModalityType.APPLICATION_MODAL);
+        this.batch = batch;
+        this.visitAddedListener = visitAddedListener;
+        setSize(900, 500);
+        setLocationRelativeTo(owner);
+        setLayout(new BorderLayout(5, 5));
+
+        JTextField doctorField = new JTextField();
+        DoctorCompletion.install(doctorField, doctors);
+        table.getColumnModel().getColumn(GridModel.DOCTOR).setCellEditor(new DefaultCellEditor(doctorField));
+        table.getColumnModel().getColumn(GridModel.NOTES).setPreferredWidth(250);
+        table.getColumnModel().getColumn(GridModel.STATUS).setPreferredWidth(250);
+        table.getColumnModel().getColumn(GridModel.STATUS).setCellRenderer(new StatusRenderer());
+        table.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE);
+        table.setSurrendersFocusOnKeystroke(true);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        addButton(buttonPanel, "Add Rows", () -> model.addRows(NEW_ROWS));
+        addButton(buttonPanel, "Paste Rows", this::pasteRows);
+        addButton(buttonPanel, "Remove Saved", model::removeSaved);
+        addButton(buttonPanel, "Validate", () -> run(false));
+        addButton(buttonPanel, "Save", () -> run(true));
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+        buttonPanel.add(closeButton);
+        JPanel bottom = new JPanel(new BorderLayout());
+        bottom.add(buttonPanel, BorderLayout.NORTH);
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 5, 5));
+        bottom.add(statusLabel, BorderLayout.SOUTH);
+        add(bottom, BorderLayout.SOUTH);
+
+        model.addRows(NEW_ROWS);
+    }
+
+    private void addButton(JPanel panel, String label, Runnable action) {
+        JButton button = new JButton(label);
+        button.addActionListener(e -> action.run());
+        panel.add(button);
+        buttons.add(button);
+    }
+
+    private void pasteRows() {
+        String text;
+        try {
+            text = (String) Toolkit.getDefaultToolkit().getSystemClipboard().getData(DataFlavor.stringFlavor);
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, "The clipboard holds no text to paste.", "Paste Rows",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        int added = model.paste(text);
+        statusLabel.setText(added + " row" + (added == 1 ? "" : "s") + " pasted");
+    }
+
+    // Validates, and with save also writes, on a database thread; the grid is locked meanwhile
+    private void run(boolean save) {
+        if (table.isEditing()) {
+            table.getCellEditor().stopCellEditing();
+        }
+        List<Integer> gridRows = new ArrayList<>();
+        List<VisitBatch.Row> rows = new ArrayList<>();
+        for (int i = 0; i < model.getRowCount(); i++) {
+            if (!model.isSaved(i)) {
+                gridRows.add(i);
+                rows.add(model.toBatchRow(i));
+            }
+        }
+        setBusy(true);
+        statusLabel.setText(save ? "Saving..." : "Validating...");
+        DatabaseExecutor.supply(() -> save ? batch.save(rows) : batch.validate(rows)).whenCompleteAsync((count, error) -> {
+            setBusy(false);
+            if (error != null) {
+                statusLabel.setText(" ");
+                JOptionPane.showMessageDialog(this, (save ? "Error saving visits: " : "Error validating visits: ")
+                        + DatabaseExecutor.unwrap(error).getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            int failed = 0;
+            Set<Integer> patientIds = new LinkedHashSet<>();
+            for (int i = 0; i < rows.size(); i++) {
+                VisitBatch.Row row = rows.get(i);
+                model.setOutcome(gridRows.get(i), row);
+                if (row.error != null) {
+                    failed++;
+                }
+                if (row.saved) {
+                    patientIds.add(row.visit.getPatientId());
+                }
+            }
+            for (int patientId : patientIds) {
+                visitAddedListener.accept(patientId);
+            }
+            String problems = failed == 0 ? "" : ", " + failed + " with errors";
+            statusLabel.setText(save ? count + " visit" + (count == 1 ? "" : "s") + " saved" + problems
+                    : count + " row" + (count == 1 ? "" : "s") + " ready to save" + problems);
+        }, DatabaseExecutor.EDT);
+    }
+
+    private void setBusy(boolean busy) {
+        table.setEnabled(!busy);
+        for (JButton button : buttons) {
+            button.setEnabled(!busy);
+        }
+    }
+
+    private static class StatusRenderer extends DefaultTableCellRenderer {
+        private static final Color SAVED = new Color(0, 120, 0);
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+            if (!isSelected) {
+                GridModel model = (GridModel) table.getModel();
+                int modelRow = table.convertRowIndexToModel(row);
+                setForeground(model.isSaved(modelRow) ? SAVED : model.hasError(modelRow) ? Color.RED : table.getForeground());
+            }
+            return this;
+        }
+    }
+
+    // The typed cells plus each row's last outcome; editing a row clears its outcome
+    private static class GridModel extends AbstractTableModel {
+        static final int PATIENT_ID = 0;
+        static final int PATIENT = 1;
+        static final int DATE = 2;
+        static final int DOCTOR = 3;
+        static final int NOTES = 4;
+        static final int STATUS = 5;
+
+        private static final String[] COLUMNS = {"Patient ID", "Patient", "Date", "Doctor", "Notes", "Status"};
+
+        private static class GridRow {
+            final String[] cells = new String[COLUMNS.length];
+            boolean saved;
+            boolean error;
+        }
+
+        private final List<GridRow> rows = new ArrayList<>();
+
+        void addRows(int count) {
+            int first = rows.size();
+            for (int i = 0; i < count; i++) {
+                rows.add(newRow());
+            }
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+
+        // A new row takes the date of the row above it, or today
+        private GridRow newRow() {
+            GridRow row = new GridRow();
+            String date = rows.isEmpty() ? "" : rows.get(rows.size() - 1).cells[DATE];
+            row.cells[DATE] = date == null || date.trim().isEmpty() ? LocalDate.now().toString() : date;
+            return row;
+        }
+
+        // Tab-separated lines of Patient ID, Date, Doctor, Notes fill the blank rows at the end, then
+        // new ones; returns the number of lines pasted
+        int paste(String text) {
+            int next = rows.size();
+            while (next > 0 && isBlankRow(next - 1)) {
+                next--;
+            }
+            int pasted = 0;
+            for (String line : text.split("\r?\n")) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\t", -1);
+                if (next == rows.size()) {
+                    rows.add(newRow());
+                }
+                GridRow row = rows.get(next++);
+                row.cells[PATIENT_ID] = fields[0].trim();
+                if (fields.length > 1 && !fields[1].trim().isEmpty()) {
+                    row.cells[DATE] = fields[1].trim();
+                }
+                row.cells[DOCTOR] = fields.length > 2 ? fields[2].trim() : null;
+                row.cells[NOTES] = fields.length > 3 ? fields[3].trim() : null;
+                pasted++;
+            }
+            fireTableDataChanged();
+            return pasted;
+        }
+
+        void removeSaved() {
+            rows.removeIf(row -> row.saved);
+            fireTableDataChanged();
+        }
+
+        boolean isSaved(int row) {
+            return rows.get(row).saved;
+        }
+
+        boolean hasError(int row) {
+            return rows.get(row).error;
+        }
+
+        // The date alone does not count: new rows are given one
+        private boolean isBlankRow(int row) {
+            String[] cells = rows.get(row).cells;
+            return isEmpty(cells[PATIENT_ID]) && isEmpty(cells[DOCTOR]) && isEmpty(cells[NOTES]);
+        }
+
+        private static boolean isEmpty(String cell) {
+            return cell == null || cell.trim().isEmpty();
+        }
+
+        VisitBatch.Row toBatchRow(int row) {
+            String[] cells = rows.get(row).cells;
+            // A row with nothing but its default date is skipped like an empty one
+            return new VisitBatch.Row(cells[PATIENT_ID], isBlankRow(row) ? null : cells[DATE], cells[DOCTOR], cells[NOTES]);
+        }
+
+        void setOutcome(int row, VisitBatch.Row outcome) {
+            GridRow gridRow = rows.get(row);
+            gridRow.saved = outcome.saved;
+            gridRow.error = outcome.error != null;
+            gridRow.cells[PATIENT] = outcome.patientName;
+            if (outcome.saved) {
+                // Saved as it will be shown in the history
+                gridRow.cells[DOCTOR] = outcome.visit.getDoctor();
+                gridRow.cells[STATUS] = "Saved";
+            } else if (outcome.error != null) {
+                gridRow.cells[STATUS] = outcome.error;
+            } else {
+                gridRow.cells[STATUS] = outcome.visit != null ? "OK" : null;
+            }
+            fireTableRowsUpdated(row, row);
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row).cells[column];
+        }
+
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return column != PATIENT && column != STATUS && !rows.get(row).saved;
+        }
+
+        @Override
+        public void setValueAt(Object value, int row, int column) {
+            GridRow gridRow = rows.get(row);
+            gridRow.cells[column] = (String) value;
+            if (column == PATIENT_ID) {
+                gridRow.cells[PATIENT] = null;
+            }
+            gridRow.cells[STATUS] = null;
+            gridRow.error = false;
+            fireTableRowsUpdated(row, row);
+        }
+    }
+}
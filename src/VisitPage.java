@@ -0,0 +1,26 @@
+import java.util.List;
+
+// One page of a patient's visit history, newest first.
+// Pass getLastVisit() to VisitRepository.getVisitsPage() to fetch the following page.
+class VisitPage {
+
+    private final List<Visit> visits;
+    private final boolean hasMore;
+
+    public VisitPage(List<Visit> visits, boolean hasMore) {
+        this.visits = visits;
+        this.hasMore = hasMore;
+    }
+
+    public List<Visit> getVisits() {
+        return visits;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    public Visit getLastVisit() {
+        return visits.isEmpty() ? null : visits.get(visits.size() - 1);
+    }
+}
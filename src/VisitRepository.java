@@ -0,0 +1,33 @@
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+// Storage-independent access to visits; VisitDAO is the Oracle implementation and
+// EmbeddedVisitRepository the single-file one. See PatientRepository.
+interface VisitRepository {
+
+    interface VisitHandler {
+        // Return false to stop the scan
+        boolean handle(Visit v);
+    }
+
+    // Returns the id generated for the new visit
+    int addVisit(Visit v) throws SQLException;
+
+    // Bulk insert with the same commit semantics as PatientRepository.addPatients(); returns the number inserted.
+    // A commitInterval of at least the row count writes them all in one transaction.
+    int addVisits(Iterable<Visit> visits, int batchSize, int commitInterval) throws SQLException;
+
+    // Newest-first page of a patient's visits, continuing after the given visit (null for the first page)
+    VisitPage getVisitsPage(int patientId, Visit after, int pageSize) throws SQLException;
+
+    // Full histories, newest first per patient. Every requested id is present in the result,
+    // with an empty list if it has no visits.
+    Map<Integer, List<Visit>> getVisitsForPatients(Collection<Integer> patientIds) throws SQLException;
+
+    List<Visit> getVisitsForPatient(int patientId) throws SQLException;
+
+    // Streams every visit in id order without materializing the table; returns the number handled
+    int forEachVisit(int fetchSize, VisitHandler handler) throws SQLException;
+}
@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// AppointmentScheduler on the H2 database the build configures as hms.db.url
+class AppointmentSchedulerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2030, 3, 4);
+
+    private final DoctorDirectory doctors = new DoctorDirectory(new DoctorDAO());
+    private final AppointmentScheduler scheduler = new AppointmentScheduler(new AppointmentDAO(), doctors);
+    private int doctor;
+    private int patient;
+
+    @BeforeAll
+    static void createTables() {
+        DatabaseConfig.initializeDatabase();
+    }
+
+    @BeforeEach
+    void emptyTables() throws Exception {
+        DaoRepositoryTest.emptyTables();
+        doctor = doctors.addDoctor("A Mehta", null).getId();
+        patient = new PatientDAO().addPatient(new Patient("Ann Smith", 40, "F", "5550001", null, "A+"));
+    }
+
+    private Appointment request(String start, int minutes) {
+        return new Appointment(doctor, patient, LocalDateTime.of(DAY, LocalTime.parse(start)), minutes, null);
+    }
+
+    @Test
+    void backToBackSlotsAcrossAWordBoundaryBookButOverlapsDoNot() throws SQLException {
+        // 10:40 is unit 128, the first of the bitmap's third word
+        Appointment before = scheduler.book(request("10:30", 10));
+        scheduler.book(request("10:40", 10));
+        assertThrows(SlotUnavailableException.class, () -> scheduler.book(request("10:35", 10)));
+        assertThrows(SlotUnavailableException.class, () -> scheduler.book(request("10:45", 5)));
+        assertThrows(SlotUnavailableException.class, () -> scheduler.book(request("10:00", 60)));
+        scheduler.book(request("10:50", 5));
+
+        scheduler.cancel(before);
+        scheduler.book(request("10:25", 15));
+        assertEquals(List.of(LocalTime.of(10, 25), LocalTime.of(10, 40), LocalTime.of(10, 50)),
+                booked(scheduler.getAppointments(doctor, DAY)));
+        // Read again from the table by a scheduler with nothing cached, as another workstation would
+        AppointmentScheduler other = new AppointmentScheduler(new AppointmentDAO(), doctors);
+        List<LocalTime> free = other.getFreeSlots(doctor, DAY, 5);
+        assertTrue(free.contains(LocalTime.of(10, 20)) && free.contains(LocalTime.of(10, 55)), free.toString());
+        assertTrue(!free.contains(LocalTime.of(10, 25)) && !free.contains(LocalTime.of(10, 50)), free.toString());
+    }
+
+    private static List<LocalTime> booked(List<Appointment> appointments) {
+        List<LocalTime> starts = new ArrayList<>();
+        for (Appointment a : appointments) {
+            if (!a.isCancelled()) {
+                starts.add(a.getStart().toLocalTime());
+            }
+        }
+        return starts;
+    }
+
+    @Test
+    void bookingsMustFallWithinOpeningHours() throws SQLException {
+        LocalTime opens = AppointmentScheduler.OPENS;
+        LocalTime closes = AppointmentScheduler.CLOSES;
+        assertThrows(SlotUnavailableException.class, () -> scheduler.book(request(opens.minusMinutes(5).toString(), 10)));
+        assertThrows(SlotUnavailableException.class, () -> scheduler.book(request(closes.minusMinutes(10).toString(), 15)));
+        scheduler.book(request(opens.toString(), 15));
+        scheduler.book(request(closes.minusMinutes(15).toString(), 15));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.book(request("11:02", 10)));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.book(request("11:00", 12)));
+
+        List<LocalTime> free = scheduler.getFreeSlots(doctor, DAY, 15);
+        assertEquals(opens.plusMinutes(15), free.get(0));
+        assertEquals(closes.minusMinutes(30), free.get(free.size() - 1));
+    }
+
+    @Test
+    void onlyOneOfManyConcurrentBookingsOfASlotSucceeds() throws Exception {
+        // Clerks on several workstations, each with its own scheduler and cache, several per workstation
+        List<AppointmentScheduler> workstations = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            workstations.add(new AppointmentScheduler(new AppointmentDAO(), doctors));
+        }
+        int clerks = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(clerks);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<Appointment>> attempts = new ArrayList<>();
+        try {
+            for (int i = 0; i < clerks; i++) {
+                AppointmentScheduler clerk = workstations.get(i % workstations.size());
+                // Overlapping requests, not all of the same length
+                Appointment wanted = request(i % 2 == 0 ? "10:35" : "10:30", i % 3 == 0 ? 10 : 15);
+                attempts.add(pool.submit(() -> {
+                    go.await();
+                    return clerk.book(wanted);
+                }));
+            }
+            go.countDown();
+            int booked = 0;
+            for (Future<Appointment> attempt : attempts) {
+                try {
+                    attempt.get(30, TimeUnit.SECONDS);
+                    booked++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof SlotUnavailableException, e.getCause().toString());
+                }
+            }
+            assertEquals(1, booked);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, booked(scheduler.getAppointments(doctor, DAY)).size());
+    }
+}
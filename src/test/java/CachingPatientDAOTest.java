@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// CachingPatientDAO's counters as Metrics reports them, on the H2 database the build configures as hms.db.url
+class CachingPatientDAOTest {
+
+    private final CachingPatientDAO patients = new CachingPatientDAO(1, 0);
+
+    @BeforeAll
+    static void createTables() {
+        DatabaseConfig.initializeDatabase();
+    }
+
+    @BeforeEach
+    void emptyTables() throws Exception {
+        DaoRepositoryTest.emptyTables();
+    }
+
+    @Test
+    void cacheCountersArePublishedAsGauges() throws SQLException {
+        int ann = new PatientDAO().addPatient(new Patient("Ann Smith", 40, "F", "5550001", null, "A+"));
+        int bob = new PatientDAO().addPatient(new Patient("Bob Stone", 50, "M", "5550002", null, "O-"));
+        patients.publishStats("test.cache");
+
+        patients.getPatientById(ann);
+        patients.getPatientById(ann);
+        // Holds one entry, so caching Bob evicts Ann
+        patients.getPatientById(bob);
+
+        Map<String, Long> gauges = Metrics.gauges();
+        assertEquals(1, gauges.get("test.cache.size"));
+        assertEquals(1, gauges.get("test.cache.hits"));
+        assertEquals(2, gauges.get("test.cache.misses"));
+        assertEquals(1, gauges.get("test.cache.evictions"));
+        assertEquals(0, gauges.get("test.cache.expirations"));
+        assertTrue(Metrics.report().contains("test.cache.misses"), Metrics.report());
+    }
+}
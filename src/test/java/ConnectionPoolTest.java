@@ -0,0 +1,139 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+// ConnectionPool against in-memory H2, each test on its own database
+class ConnectionPoolTest {
+
+    private static int databases;
+
+    private ConnectionPool pool;
+
+    private ConnectionPool open(int maxSize, long borrowTimeoutMillis, long leakThresholdMillis) {
+        pool = new ConnectionPool("jdbc:h2:mem:pool-" + ++databases + ";DB_CLOSE_DELAY=-1", "sa", "",
+                0, maxSize, borrowTimeoutMillis, leakThresholdMillis, 10);
+        return pool;
+    }
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    @Test
+    void borrowTimesOutWhenExhaustedAndSucceedsOnceAConnectionIsReturned() throws SQLException {
+        open(2, 100, 0);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        long start = System.nanoTime();
+        SQLException timeout = assertThrows(SQLException.class, pool::getConnection);
+        assertTrue(timeout.getMessage().startsWith("Timed out"), timeout.getMessage());
+        assertTrue(System.nanoTime() - start >= 90_000_000L);
+        assertEquals(1, pool.getStats().timeouts);
+
+        first.close();
+        try (Connection third = pool.getConnection()) {
+            assertEquals(2, pool.getActiveCount());
+            assertTrue(third.isValid(1));
+        }
+        second.close();
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    @Test
+    void closedHandleCannotBeUsedOrClosedTwice() throws SQLException {
+        open(1, 100, 0);
+        Connection conn = pool.getConnection();
+        conn.close();
+        conn.close();
+        assertTrue(conn.isClosed());
+        assertThrows(SQLException.class, conn::createStatement);
+        assertEquals(1, pool.getIdleCount());
+        // The only permit came back once, not twice
+        try (Connection again = pool.getConnection()) {
+            assertNotSame(conn, again);
+            assertThrows(SQLException.class, pool::getConnection);
+        }
+    }
+
+    @Test
+    void heldConnectionIsReportedAsLeakOnce() throws Exception {
+        open(2, 100, 20);
+        try (Connection held = pool.getConnection()) {
+            Thread.sleep(50);
+            pool.housekeep();
+            pool.housekeep();
+            assertEquals(1, pool.getStats().leaks);
+        }
+        try (Connection quick = pool.getConnection()) {
+            pool.housekeep();
+            assertEquals(1, pool.getStats().leaks);
+        }
+    }
+
+    @Test
+    void returnedConnectionIsRolledBackAndBackInAutoCommit() throws SQLException {
+        open(1, 100, 0);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE t (id INT)");
+        }
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            stmt.execute("INSERT INTO t VALUES (1)");
+        }
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM t")) {
+            assertTrue(conn.getAutoCommit());
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+        assertEquals(1, pool.getStats().created);
+    }
+
+    @Test
+    void brokenConnectionIsDiscardedAndReplaced() throws SQLException {
+        open(1, 100, 0);
+        Connection conn = pool.getConnection();
+        // Kill the physical connection under the pooled handle, as a dropped network link would
+        conn.unwrap(Connection.class).close();
+        conn.close();
+        assertEquals(0, pool.getIdleCount());
+        try (Connection replacement = pool.getConnection()) {
+            assertFalse(replacement.isClosed());
+            assertTrue(replacement.isValid(1));
+        }
+        assertEquals(2, pool.getStats().created);
+    }
+
+    @Test
+    void cachedStatementIsResetForTheNextBorrower() throws SQLException {
+        open(1, 100, 0);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE t (id INT)");
+        }
+        for (int i = 0; i < 2; i++) {
+            try (Connection conn = pool.getConnection();
+                 java.sql.PreparedStatement ps = conn.prepareStatement("INSERT INTO t VALUES (?)")) {
+                ps.setInt(1, i);
+                ps.addBatch();
+                // The first borrower leaves its row batched; the second must see only its own
+                if (i == 1) {
+                    assertEquals(1, ps.executeBatch().length);
+                }
+            }
+        }
+        ConnectionPool.Stats stats = pool.getStats();
+        assertEquals(1, stats.statementHits);
+        assertEquals(1, stats.statementMisses);
+    }
+}
@@ -0,0 +1,152 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Csv.RecordWriter and Csv.RecordReader, and the patient export and import built on them
+class CsvTest {
+
+    @TempDir
+    Path dir;
+
+    private static String write(int bufferSize, List<List<Object>> records) throws IOException {
+        StringWriter out = new StringWriter();
+        try (Csv.RecordWriter csv = new Csv.RecordWriter(out, bufferSize)) {
+            for (List<Object> record : records) {
+                for (Object field : record) {
+                    if (field instanceof Integer) {
+                        csv.writeField((Integer) field);
+                    } else {
+                        csv.writeField((String) field);
+                    }
+                }
+                csv.endRecord();
+            }
+        }
+        return out.toString();
+    }
+
+    private static List<List<String>> read(String text) throws IOException {
+        Csv.RecordReader records = new Csv.RecordReader(new StringReader(text));
+        List<List<String>> read = new ArrayList<>();
+        List<String> fields;
+        while ((fields = records.next()) != null) {
+            read.add(fields);
+        }
+        return read;
+    }
+
+    @Test
+    void fieldsAreQuotedOnlyWhenTheyMustBe() throws IOException {
+        List<List<Object>> records = List.of(
+                Arrays.asList("plain", "a,b", "say \"hi\"", "two\nlines", "cr\rhere", "", null),
+                Arrays.asList(0, -1, 42, Integer.MAX_VALUE, Integer.MIN_VALUE));
+        assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",\"cr\rhere\",,\n"
+                + "0,-1,42,2147483647,-2147483648\n", write(64, records));
+        assertEquals("\"say \"\"hi\"\"\"", Csv.escape("say \"hi\""));
+        assertEquals("", Csv.escape(null));
+    }
+
+    @Test
+    void recordsAreReadBackAsWritten() throws IOException {
+        String text = "plain,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",\"cr\rhere\",,\n"
+                + "-7,\"\",\"\"\"\"\r\n"
+                + "\n"
+                + "last,\"unterminated line\"";
+        Csv.RecordReader records = new Csv.RecordReader(new StringReader(text));
+
+        assertEquals(List.of("plain", "a,b", "say \"hi\"", "two\nlines", "cr\rhere", "", ""), records.next());
+        assertEquals(1, records.getRecordLine());
+        // CRLF ends a record like LF
+        assertEquals(List.of("-7", "", "\""), records.next());
+        assertEquals(3, records.getRecordLine());
+        assertEquals("-7,\"\",\"\"\"\"", records.getRawRecord());
+        assertEquals(List.of(""), records.next());
+        assertEquals(List.of("last", "unterminated line"), records.next());
+        assertEquals(5, records.getRecordLine());
+        assertNull(records.next());
+    }
+
+    @Test
+    void anyFieldSurvivesWritingAndReading() throws IOException {
+        Random random = new Random(7);
+        String alphabet = "ab ,\"\n\r-9é漢";
+        List<List<Object>> records = new ArrayList<>();
+        List<List<String>> expected = new ArrayList<>();
+        for (int r = 0; r < 500; r++) {
+            List<Object> record = new ArrayList<>();
+            List<String> fields = new ArrayList<>();
+            for (int f = 0; f < 1 + random.nextInt(5); f++) {
+                if (random.nextInt(3) == 0) {
+                    int value = random.nextInt(5) == 0 ? -random.nextInt(1000) : random.nextInt();
+                    record.add(value);
+                    fields.add(Integer.toString(value));
+                } else {
+                    StringBuilder value = new StringBuilder();
+                    for (int i = random.nextInt(12); i > 0; i--) {
+                        value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                    record.add(value.toString());
+                    fields.add(value.toString());
+                }
+            }
+            records.add(record);
+            expected.add(fields);
+        }
+        // A buffer smaller than a field, so fields and ints straddle its flushes
+        assertEquals(expected, read(write(4, records)));
+        assertEquals(expected, read(write(1 << 16, records)));
+    }
+
+    @Test
+    void exportedPatientsImportUnchanged() throws IOException, SQLException {
+        List<Patient> originals = List.of(
+                new Patient("Ann Smith", 40, "F", "5550000001", "12 Elm Street, Flat 3", "A+"),
+                new Patient("Bob \"Bobby\" Stone", 50, "M", "5550000002", "Line one\nLine two", "O-"),
+                new Patient("Zoë Ñúñez", 31, "F", "5550000003", "Carriage\r\nReturn", null),
+                new Patient("李 Wei", 1, "O", "555000000004", "\"Quoted\", with comma", "AB-"));
+        List<Patient> imported;
+        try (EmbeddedStore source = EmbeddedStore.open(dir.resolve("source.db"));
+             EmbeddedStore target = EmbeddedStore.open(dir.resolve("target.db"))) {
+            EmbeddedPatientRepository from = new EmbeddedPatientRepository(source);
+            for (Patient p : originals) {
+                from.addPatient(p);
+            }
+            Path csv = dir.resolve("patients.csv");
+            assertEquals(originals.size(), new PatientCsvExporter(from).export(csv, null));
+
+            EmbeddedPatientRepository to = new EmbeddedPatientRepository(target);
+            Path rejected = dir.resolve("rejected.csv");
+            PatientCsvImporter.Result result = new PatientCsvImporter(to).importFile(csv, rejected, null);
+            assertEquals(0, result.rowsRejected);
+            assertFalse(Files.exists(rejected));
+            assertEquals(originals.size(), result.rowsImported);
+            assertFalse(result.cancelled);
+            imported = to.getAllPatients();
+        }
+
+        assertEquals(originals.size(), imported.size());
+        for (int i = 0; i < originals.size(); i++) {
+            Patient expected = originals.get(i);
+            Patient actual = imported.get(i);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getAge(), actual.getAge());
+            assertEquals(expected.getGender(), actual.getGender());
+            assertEquals(expected.getPhone(), actual.getPhone());
+            assertEquals(expected.getAddress(), actual.getAddress());
+            assertEquals(expected.getBloodGroup(), actual.getBloodGroup());
+        }
+    }
+}
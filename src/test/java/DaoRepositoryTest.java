@@ -0,0 +1,57 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// PatientDAO and VisitDAO on the H2 database (Oracle mode) the build configures as hms.db.url
+class DaoRepositoryTest extends RepositoryContractTest {
+
+    @BeforeAll
+    static void createTables() {
+        DatabaseConfig.initializeDatabase();
+    }
+
+    // Children first, for the foreign keys
+    static void emptyTables() throws Exception {
+        try (Connection conn = DatabaseConfig.getConnection(); Statement stmt = conn.createStatement()) {
+            for (String table : new String[] {"appointments", "doctor_days", "visits", "patient_changes", "patients", "doctors"}) {
+                stmt.executeUpdate("DELETE FROM " + table);
+            }
+        }
+    }
+
+    @Override
+    protected void openEmpty() throws Exception {
+        emptyTables();
+        patients = new PatientDAO();
+        visits = new VisitDAO(new DoctorDirectory(new DoctorDAO()));
+    }
+
+    // As the batch visit grid sends its rows: a refused row leaves none of the others stored
+    @Test
+    void visitGridIsOneTransactionAndIntervalsCommitWithTheirLog() throws SQLException {
+        int ann = patients.addPatient(new Patient("Ann Smith", 40, "F", "5550001", null, "A+"));
+        List<Visit> grid = new ArrayList<>();
+        for (int day = 1; day <= 4; day++) {
+            grid.add(new Visit(ann, Date.valueOf("2024-02-0" + day), "Grey", null));
+        }
+        grid.add(new Visit(12345, Date.valueOf("2024-02-05"), "Grey", null));
+        long token = patients.getChangeToken();
+
+        assertThrows(SQLException.class, () -> visits.addVisits(grid, 2, Integer.MAX_VALUE));
+        assertEquals(0, visits.getVisitsForPatient(ann).size());
+        assertEquals(token, patients.getChangeToken());
+
+        // Intervals of two: the first two commit, each with its change-log row
+        assertThrows(SQLException.class, () -> visits.addVisits(grid, 2, 2));
+        assertEquals(4, visits.getVisitsForPatient(ann).size());
+        assertEquals(token + 2, patients.getChangeToken());
+    }
+}
@@ -0,0 +1,118 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+// DaySchedule's bitmap against a boolean per unit
+class DayScheduleTest {
+
+    private static final DaySchedule EMPTY = DaySchedule.of(List.of(), 0);
+
+    private static Appointment appointment(String start, int minutes) {
+        return new Appointment(1, 1, LocalDateTime.parse("2030-03-04T" + start), minutes, null);
+    }
+
+    // What isFree() should answer, unit by unit
+    private static boolean free(boolean[] busy, int from, int to) {
+        for (int unit = from; unit < to; unit++) {
+            if (busy[unit]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    void rangesAcrossAWordBoundaryAreMarkedInBothWords() {
+        // Units 63 and 64 are the last bit of the first word and the first of the second
+        DaySchedule schedule = EMPTY.withBooked(63, 65, 1);
+        assertFalse(schedule.isFree(63, 64));
+        assertFalse(schedule.isFree(64, 65));
+        assertFalse(schedule.isFree(0, DaySchedule.UNITS));
+        assertTrue(schedule.isFree(0, 63));
+        assertTrue(schedule.isFree(65, DaySchedule.UNITS));
+
+        DaySchedule released = schedule.withReleased(64, 65, 2);
+        assertFalse(released.isFree(63, 64));
+        assertTrue(released.isFree(64, 128));
+        assertEquals(2, released.getVersion());
+        // Each step is a new schedule; the ones before are left as they were
+        assertFalse(schedule.isFree(64, 65));
+        assertTrue(EMPTY.isFree(0, DaySchedule.UNITS));
+
+        DaySchedule wholeWord = EMPTY.withBooked(64, 128, 1);
+        assertTrue(wholeWord.isFree(0, 64));
+        assertFalse(wholeWord.isFree(127, 128));
+        assertTrue(wholeWord.isFree(128, DaySchedule.UNITS));
+        assertFalse(EMPTY.withBooked(DaySchedule.UNITS - 1, DaySchedule.UNITS, 1).isFree(0, DaySchedule.UNITS));
+    }
+
+    @Test
+    void backToBackSlotsDoNotOverlapButOverlappingOnesDo() {
+        DaySchedule schedule = DaySchedule.of(List.of(appointment("05:05", 10), appointment("05:15", 10)), 3);
+        assertEquals(3, schedule.getVersion());
+        // 05:05 to 05:25 is units 61 to 65
+        assertTrue(schedule.isFree(0, 61));
+        assertFalse(schedule.isFree(61, 62));
+        assertFalse(schedule.isFree(64, 65));
+        assertTrue(schedule.isFree(65, 66));
+        assertFalse(schedule.isFree(DaySchedule.unitOf(LocalTime.of(5, 20)), DaySchedule.unitOf(LocalTime.of(5, 30))));
+    }
+
+    @Test
+    void cancelledAppointmentsTakeNoTime() {
+        Appointment cancelled = new Appointment(7, 1, 1, LocalDateTime.parse("2030-03-04T09:00"), 30, null,
+                Appointment.CANCELLED, null);
+        assertTrue(DaySchedule.of(List.of(cancelled), 1).isFree(0, DaySchedule.UNITS));
+    }
+
+    @Test
+    void freeSlotsStayWithinOpeningHours() {
+        int opens = DaySchedule.unitOf(LocalTime.of(8, 0));
+        int closes = DaySchedule.unitOf(LocalTime.of(9, 0));
+        DaySchedule schedule = DaySchedule.of(List.of(appointment("08:15", 15), appointment("07:30", 60)), 1);
+        assertEquals(List.of(LocalTime.of(8, 30), LocalTime.of(8, 45)), schedule.freeSlots(3, opens, closes));
+        // Slots are a slot length apart from opening; the last may end right at closing
+        assertEquals(List.of(LocalTime.of(8, 40)), schedule.freeSlots(4, opens, closes));
+        // 08:50 would run past closing
+        assertEquals(List.of(), schedule.freeSlots(5, opens, closes));
+    }
+
+    @Test
+    void randomBookingsAgreeWithAUnitByUnitModel() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            boolean[] busy = new boolean[DaySchedule.UNITS];
+            DaySchedule schedule = EMPTY;
+            List<int[]> booked = new ArrayList<>();
+            for (int step = 0; step < 20; step++) {
+                int from = random.nextInt(DaySchedule.UNITS);
+                int to = from + 1 + random.nextInt(Math.min(150, DaySchedule.UNITS - from));
+                boolean release = !booked.isEmpty() && random.nextInt(3) == 0;
+                if (release) {
+                    int[] range = booked.remove(random.nextInt(booked.size()));
+                    from = range[0];
+                    to = range[1];
+                    schedule = schedule.withReleased(from, to, step);
+                } else {
+                    booked.add(new int[] {from, to});
+                    schedule = schedule.withBooked(from, to, step);
+                }
+                for (int unit = from; unit < to; unit++) {
+                    busy[unit] = !release;
+                }
+                for (int check = 0; check < 20; check++) {
+                    int a = random.nextInt(DaySchedule.UNITS);
+                    int b = a + 1 + random.nextInt(DaySchedule.UNITS - a);
+                    assertEquals(free(busy, a, b), schedule.isFree(a, b), a + ".." + b);
+                }
+            }
+        }
+    }
+}
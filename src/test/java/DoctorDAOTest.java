@@ -0,0 +1,88 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// DoctorDAO's upgrade of doctors added before name_key, on the H2 database the build configures as hms.db.url
+class DoctorDAOTest {
+
+    private final QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+    private final DoctorDAO doctors = new DoctorDAO();
+
+    @BeforeAll
+    static void createTables() {
+        DatabaseConfig.initializeDatabase();
+    }
+
+    @BeforeEach
+    void emptyTables() throws Exception {
+        DaoRepositoryTest.emptyTables();
+    }
+
+    // As added before name_key existed
+    private int unkeyed(String name) throws SQLException {
+        return template.insert("INSERT INTO doctors (name) VALUES (?)", "id", ps -> ps.setString(1, name));
+    }
+
+    private void visit(int patientId, int doctorId) throws SQLException {
+        template.update("INSERT INTO visits (patient_id, visit_date, doctor_id) VALUES (?, ?, ?)", ps -> {
+            ps.setInt(1, patientId);
+            ps.setDate(2, Date.valueOf("2024-01-10"));
+            ps.setInt(3, doctorId);
+        });
+    }
+
+    private void day(int doctorId, String day, long version) throws SQLException {
+        template.update("INSERT INTO doctor_days (doctor_id, schedule_day, version) VALUES (?, ?, ?)", ps -> {
+            ps.setInt(1, doctorId);
+            ps.setDate(2, Date.valueOf(day));
+            ps.setLong(3, version);
+        });
+    }
+
+    private List<String> column(String sql) throws SQLException {
+        return template.query(sql, QueryTemplate.NO_PARAMS, rs -> r -> r.getString(1));
+    }
+
+    @Test
+    void duplicateSpellingsAreMergedBeforeTheyAreKeyed() throws SQLException {
+        int patient = new PatientDAO().addPatient(new Patient("Ann Smith", 40, "F", "5550001", null, "A+"));
+        int mehta = unkeyed("dr.  a mehta");
+        int mehtaAgain = unkeyed("A Mehta");
+        int grey = unkeyed("Grey");
+        int shah = doctors.addDoctor("B Shah", "b shah", null);
+        int shahUnkeyed = unkeyed("b shah");
+        visit(patient, mehtaAgain);
+        visit(patient, shahUnkeyed);
+        template.insert("INSERT INTO appointments (doctor_id, patient_id, starts_at, minutes, reason, status) "
+                + "VALUES (?, ?, ?, 15, NULL, 'B')", "id", ps -> {
+                    ps.setInt(1, mehtaAgain);
+                    ps.setInt(2, patient);
+                    ps.setTimestamp(3, Timestamp.valueOf("2024-02-01 09:00:00"));
+                });
+        day(mehta, "2024-02-01", 3);
+        day(mehtaAgain, "2024-02-01", 1);
+        day(mehtaAgain, "2024-02-02", 5);
+
+        assertEquals(4, doctors.keyDoctorNames(10));
+
+        List<String> names = new ArrayList<>();
+        for (Doctor d : doctors.getDoctors()) {
+            names.add(d.getId() + " " + d.getName());
+        }
+        assertEquals(List.of(mehta + " A Mehta", shah + " B Shah", grey + " Grey"), names);
+        assertEquals(List.of(String.valueOf(mehta), String.valueOf(shah)),
+                column("SELECT doctor_id FROM visits ORDER BY doctor_id"));
+        assertEquals(List.of(String.valueOf(mehta)), column("SELECT doctor_id FROM appointments"));
+        // The day both had keeps the kept doctor's row, moved on past the version it was read at
+        assertEquals(List.of(mehta + " 4", mehta + " 5"), column(
+                "SELECT doctor_id || ' ' || version FROM doctor_days ORDER BY schedule_day"));
+        assertEquals(0, doctors.keyDoctorNames(10));
+    }
+}
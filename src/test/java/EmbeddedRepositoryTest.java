@@ -0,0 +1,24 @@
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+
+// EmbeddedPatientRepository and EmbeddedVisitRepository on a new file per test
+class EmbeddedRepositoryTest extends RepositoryContractTest {
+
+    @TempDir
+    Path dir;
+
+    private EmbeddedStore store;
+
+    @Override
+    protected void openEmpty() throws Exception {
+        store = EmbeddedStore.open(dir.resolve("hms-test.db"));
+        patients = new EmbeddedPatientRepository(store);
+        visits = new EmbeddedVisitRepository(store);
+    }
+
+    @AfterEach
+    void closeStore() throws Exception {
+        store.close();
+    }
+}
@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// OfflineSync replaying an offline store to the H2 database the build configures as hms.db.url
+class OfflineSyncTest {
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void createTables() {
+        DatabaseConfig.initializeDatabase();
+    }
+
+    @BeforeEach
+    void emptyTables() throws Exception {
+        DaoRepositoryTest.emptyTables();
+    }
+
+    private static void awaitDrained(OfflineSync sync) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while ((sync.isOffline() || sync.getPendingWriteCount() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, sync.getPendingWriteCount());
+    }
+
+    private static void syncAndClose(Path file) throws Exception {
+        EmbeddedStore store = EmbeddedStore.open(file);
+        try (OfflineSync sync = new OfflineSync(store, new PatientDAO(),
+                new VisitDAO(new DoctorDirectory(new DoctorDAO())), true, false)) {
+            awaitDrained(sync);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void groupCommittedBeforeACrashIsNotReplayedTwice() throws Exception {
+        Path file = dir.resolve("offline.db");
+        try (EmbeddedStore store = EmbeddedStore.open(file)) {
+            EmbeddedPatientRepository patients = new EmbeddedPatientRepository(store, EmbeddedStore.PENDING);
+            int local = patients.addPatient(new Patient("Ann Smith", 40, "F", "5550001", null, "A+"));
+            assertTrue(local > EmbeddedStore.LOCAL_ID_BASE);
+            patients.updatePatient(new Patient(local, "Ann Jones", 41, "F", "5550001", null, "A+"));
+            new EmbeddedVisitRepository(store, EmbeddedStore.PENDING)
+                    .addVisit(new Visit(local, Date.valueOf("2024-01-10"), "Grey", "checkup"));
+        }
+        // The file as it is when the process dies after Oracle's commit but before markSynced()
+        Path crashed = dir.resolve("crashed.db");
+        Files.copy(file, crashed);
+
+        syncAndClose(file);
+        syncAndClose(crashed);
+
+        PatientDAO oracle = new PatientDAO();
+        List<Patient> rows = oracle.getAllPatients();
+        assertEquals(1, rows.size());
+        assertEquals("Ann Jones", rows.get(0).getName());
+        assertEquals(1, new VisitDAO(new DoctorDirectory(new DoctorDAO())).getVisitsForPatient(rows.get(0).getId()).size());
+    }
+
+    @Test
+    void writeBehindReadsSeeQueuedWritesBeforeTheyReachOracle() throws Exception {
+        PatientDAO oracle = new PatientDAO();
+        int ann = oracle.addPatient(new Patient("Ann Smith", 40, "F", "5550001", null, "A+"));
+        EmbeddedStore store = EmbeddedStore.open(dir.resolve("write-behind.db"));
+        try (OfflineSync sync = new OfflineSync(store, new PatientDAO(),
+                new VisitDAO(new DoctorDirectory(new DoctorDAO())), true, true)) {
+            OfflinePatientRepository patients = new OfflinePatientRepository(oracle, sync);
+            int added;
+            // Holding Ann's row keeps the replay waiting, so the writes stay queued
+            try (Connection blocker = DatabaseConfig.getConnection()) {
+                blocker.setAutoCommit(false);
+                try (PreparedStatement ps = blocker.prepareStatement("UPDATE patients SET age = age WHERE id = ?")) {
+                    ps.setInt(1, ann);
+                    ps.executeUpdate();
+                }
+                patients.updatePatient(new Patient(ann, "Ann Jones", 41, "F", "5550001", null, "A+"));
+                added = patients.addPatient(new Patient("Bob Stone", 30, "M", "5550002", null, "O+"));
+                Thread.sleep(OfflineSync.FLUSH_DELAY_MILLIS + 100);
+                assertTrue(sync.getPendingWriteCount() > 0);
+
+                assertEquals("Ann Jones", patients.getPatientById(ann).getName());
+                assertEquals("Bob Stone", patients.getPatientById(added).getName());
+                List<Patient> found = patients.searchPatients("555");
+                assertEquals(2, found.size());
+                assertEquals("Ann Jones", found.get(0).getName());
+                assertEquals(added, found.get(1).getId());
+                // Oracle's older row was read, but not copied over the queued one
+                assertEquals("Ann Jones", store.getPatient(ann).getName());
+                assertEquals("Ann Smith", oracle.getPatientById(ann).getName());
+                blocker.rollback();
+            }
+            awaitDrained(sync);
+            assertEquals("Ann Jones", patients.getPatientById(ann).getName());
+            assertEquals(2, oracle.countPatients());
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Two workstations' DAOs on the H2 database the build configures as hms.db.url: one writes, the
+// other reads what changed from the patient_changes log, as PatientChangeFeed does
+class PatientChangeLogTest {
+
+    private PatientDAO remote;
+    private VisitDAO remoteVisits;
+    private PatientDAO local;
+
+    @BeforeAll
+    static void createTables() {
+        DatabaseConfig.initializeDatabase();
+    }
+
+    @BeforeEach
+    void open() throws Exception {
+        DaoRepositoryTest.emptyTables();
+        remote = new PatientDAO();
+        remoteVisits = new VisitDAO(new DoctorDirectory(new DoctorDAO()));
+        local = new PatientDAO();
+    }
+
+    private static Patient patient(String name) {
+        return new Patient(name, 40, "F", "5550001", null, "A+");
+    }
+
+    private static List<String> names(List<Patient> rows) {
+        List<String> names = new ArrayList<>();
+        for (Patient p : rows) {
+            names.add(p.getName());
+        }
+        return names;
+    }
+
+    @Test
+    void remoteInsertUpdateDeleteAndVisitArrive() throws SQLException {
+        int ann = remote.addPatient(patient("Ann Smith"));
+        int bob = remote.addPatient(patient("Bob Stone"));
+        long token = local.getChangeToken();
+
+        int cy = remote.addPatient(patient("Cy Young"));
+        remote.updatePatient(new Patient(ann, "Ann Jones", 41, "F", "5550001", null, "A+"));
+        remote.deletePatient(bob);
+        remoteVisits.addVisit(new Visit(cy, Date.valueOf("2024-01-10"), "Grey", "checkup"));
+
+        PatientChanges changes = local.getPatientsChangedSince(token);
+        assertFalse(changes.isReloadRequired());
+        assertEquals(List.of("Cy Young"), names(changes.getAdded()));
+        assertEquals(List.of("Ann Jones"), names(changes.getUpdated()));
+        assertEquals(List.of(bob), changes.getDeletedIds());
+        assertEquals(Set.of(cy), changes.getVisitPatientIds());
+        assertEquals(local.getChangeToken(), changes.getToken());
+        assertTrue(local.getPatientsChangedSince(changes.getToken()).isEmpty());
+    }
+
+    @Test
+    void onlyOtherWorkstationsVisitsAreRemote() throws SQLException {
+        int ann = remote.addPatient(patient("Ann Smith"));
+        int bob = remote.addPatient(patient("Bob Stone"));
+        long token = local.getChangeToken();
+
+        // Both DAOs run in this process, so this visit is this workstation's own
+        remoteVisits.addVisit(new Visit(ann, Date.valueOf("2024-01-10"), "Grey", "checkup"));
+        // As another workstation's PatientDAO.logChanges() writes it
+        QueryTemplate template = new QueryTemplate(DatabaseConfig::getConnection);
+        template.update("INSERT INTO patient_changes "
+                + "(seq, patient_id, change_type, origin) SELECT last_seq + 1, ?, ?, ? FROM patient_change_seq", ps -> {
+                    ps.setInt(1, bob);
+                    ps.setString(2, PatientChanges.VISITS);
+                    ps.setString(3, "another-workstation");
+                });
+        template.update("UPDATE patient_change_seq SET last_seq = last_seq + 1", QueryTemplate.NO_PARAMS);
+
+        PatientChanges changes = local.getPatientsChangedSince(token);
+        assertEquals(Set.of(ann, bob), changes.getVisitPatientIds());
+        assertEquals(Set.of(bob), changes.getRemoteVisitPatientIds());
+    }
+
+    @Test
+    void changeHeldBackByAnOpenTransactionArrivesOnceCommitted() throws Exception {
+        int ann = remote.addPatient(patient("Ann Smith"));
+        int bob = remote.addPatient(patient("Bob Stone"));
+        long token = local.getChangeToken();
+
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Throwable> failures = new ArrayList<>();
+        Thread slow = new Thread(() -> {
+            try {
+                DatabaseConfig.inTransaction(() -> {
+                    remote.updatePatient(new Patient(ann, "Ann Jones", 41, "F", "5550001", null, "A+"));
+                    written.countDown();
+                    try {
+                        assertTrue(release.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new SQLException(e);
+                    }
+                    return null;
+                });
+            } catch (Throwable e) {
+                failures.add(e);
+                written.countDown();
+            }
+        });
+        slow.start();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        // Written after Ann's change but committed before it
+        remote.updatePatient(new Patient(bob, "Bob Hill", 30, "M", "5550002", null, "O+"));
+
+        PatientChanges first = local.getPatientsChangedSince(token);
+        assertEquals(List.of("Bob Hill"), names(first.getUpdated()));
+
+        release.countDown();
+        slow.join();
+        assertTrue(failures.isEmpty(), failures.toString());
+        PatientChanges second = local.getPatientsChangedSince(first.getToken());
+        assertEquals(List.of("Ann Jones"), names(second.getUpdated()));
+    }
+
+    @Test
+    void rolledBackChangeIsNeverReportedAndHoldsNothingBack() throws SQLException {
+        int ann = remote.addPatient(patient("Ann Smith"));
+        long token = local.getChangeToken();
+
+        assertThrows(SQLException.class, () -> DatabaseConfig.inTransaction(() -> {
+            remote.updatePatient(new Patient(ann, "Ann Jones", 41, "F", "5550001", null, "A+"));
+            throw new SQLException("Abandoned");
+        }));
+        int bob = remote.addPatient(patient("Bob Stone"));
+
+        PatientChanges changes = local.getPatientsChangedSince(token);
+        assertEquals(List.of("Bob Stone"), names(changes.getAdded()));
+        assertEquals(bob, changes.getAdded().get(0).getId());
+        assertTrue(changes.getUpdated().isEmpty());
+    }
+
+    @Test
+    void bulkImportAsksForAReload() throws SQLException {
+        remote.addPatient(patient("Ann Smith"));
+        long token = local.getChangeToken();
+
+        List<Patient> imported = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            imported.add(patient("Imported " + i));
+        }
+        assertEquals(20, remote.addPatients(imported, 5, 10));
+
+        PatientChanges changes = local.getPatientsChangedSince(token);
+        assertTrue(changes.isReloadRequired());
+        long reloaded = local.getChangeToken();
+        assertTrue(reloaded > token);
+        assertTrue(local.getPatientsChangedSince(reloaded).isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// PatientPagedTableModel paging over an EmbeddedPatientRepository, driven on the EDT as JTable drives it
+class PatientPagedTableModelTest {
+
+    @TempDir
+    Path dir;
+
+    private EmbeddedStore store;
+    private EmbeddedPatientRepository patients;
+    private final List<Integer> ids = new ArrayList<>();
+    private final AtomicInteger pageFetches = new AtomicInteger();
+
+    @BeforeEach
+    void open() throws Exception {
+        store = EmbeddedStore.open(dir.resolve("hms-test.db"));
+        patients = new EmbeddedPatientRepository(store);
+        for (int i = 0; i < 5; i++) {
+            ids.add(patients.addPatient(new Patient("Patient " + i, 40, "F", "555" + i, null, "A+")));
+        }
+    }
+
+    @AfterEach
+    void closeStore() throws Exception {
+        store.close();
+    }
+
+    // Counts page fetches; without a change log if untracked, as OfflinePatientRepository is while offline
+    private PatientRepository counting(boolean untracked) {
+        return (PatientRepository) Proxy.newProxyInstance(PatientRepository.class.getClassLoader(),
+                new Class<?>[] {PatientRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPatientsPage":
+                        case "getPatientsPageAt":
+                            pageFetches.incrementAndGet();
+                            break;
+                        case "getChangeToken":
+                            if (untracked) {
+                                return -1L;
+                            }
+                            break;
+                        case "getChangeTokenAndCount":
+                            if (untracked) {
+                                return new long[] {-1, patients.countPatients()};
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(patients, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static <T> T onEdt(Callable<T> call) throws Exception {
+        List<T> result = new ArrayList<>();
+        List<Exception> failure = new ArrayList<>();
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result.add(call.call());
+            } catch (Exception e) {
+                failure.add(e);
+            }
+        });
+        if (!failure.isEmpty()) {
+            throw failure.get(0);
+        }
+        return result.get(0);
+    }
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!onEdt(condition) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(onEdt(condition));
+    }
+
+    private static List<Integer> shownIds(PatientPagedTableModel model) throws Exception {
+        return onEdt(() -> {
+            List<Integer> shown = new ArrayList<>();
+            for (int row = 0; row < model.getRowCount(); row++) {
+                Patient p = model.getPatientAt(row);
+                shown.add(p == null ? null : p.getId());
+            }
+            return shown;
+        });
+    }
+
+    @Test
+    void shortPageReloadsTheListing() throws Exception {
+        PatientPagedTableModel model = new PatientPagedTableModel(new AsyncPatientDAO(counting(false)));
+        assertEquals(5, (int) model.reload().get());
+        // Deleted after the count, before the first page is read
+        patients.deletePatient(ids.get(1));
+        patients.deletePatient(ids.get(3));
+
+        shownIds(model);
+        await(() -> model.getRowCount() == 3 && model.getPatientAt(2) != null);
+        assertEquals(List.of(ids.get(0), ids.get(2), ids.get(4)), shownIds(model));
+    }
+
+    @Test
+    void shortPageWithoutAChangeLogIsNotFetchedOnEveryRepaint() throws Exception {
+        PatientPagedTableModel model = new PatientPagedTableModel(new AsyncPatientDAO(counting(true)));
+        assertEquals(5, (int) model.reload().get());
+        patients.deletePatient(ids.get(4));
+
+        shownIds(model);
+        await(() -> model.getPatientAt(0) != null);
+        for (int repaint = 0; repaint < 5; repaint++) {
+            List<Integer> shown = shownIds(model);
+            assertEquals(null, shown.get(4));
+            Thread.sleep(20);
+        }
+        assertEquals(1, pageFetches.get());
+    }
+}
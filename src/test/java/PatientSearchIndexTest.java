@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// PatientSearchIndex built from PatientDAO on the H2 database the build configures as hms.db.url
+class PatientSearchIndexTest {
+
+    private final PatientDAO patients = new PatientDAO();
+    private final PatientSearchIndex index = new PatientSearchIndex();
+    private int ann;
+    private int joanna;
+    private int bob;
+
+    @BeforeAll
+    static void createTables() {
+        DatabaseConfig.initializeDatabase();
+    }
+
+    @BeforeEach
+    void build() throws Exception {
+        DaoRepositoryTest.emptyTables();
+        ann = patients.addPatient(new Patient("Ann Smith", 40, "F", "5550001", "12 Elm Street", "A+"));
+        joanna = patients.addPatient(new Patient("Joanna Hill", 35, "F", "5551234", "4 Mill Lane", "B+"));
+        bob = patients.addPatient(new Patient("Bob Stone", 50, "M", "7770000", null, "O-"));
+        index.rebuild(patients);
+    }
+
+    private static List<Integer> ids(List<Patient> rows) {
+        List<Integer> ids = new ArrayList<>();
+        for (Patient p : rows) {
+            ids.add(p.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void searchReturnsWhatTheDatabaseSearchReturns() throws SQLException {
+        assertTrue(index.isReady());
+        for (String term : new String[] {"ann", "ANN*", "555", "5551234", "stone", "st", "elm", "nobody"}) {
+            SearchPlan plan = patients.getSearchPlanner().plan(term);
+            assertEquals(ids(patients.searchPatients(plan)), ids(index.search(plan, 100)), term);
+        }
+    }
+
+    @Test
+    void suggestionsAreAddressesThenLikelyTyposBestFirst() throws SQLException {
+        assertEquals(List.of(ann), ids(index.suggest("elm st", 10)));
+        assertEquals(List.of(joanna), ids(index.suggest("mi", 10)));
+        assertEquals(ann, index.suggest("Smiht", 10).get(0).getId());
+        assertEquals(List.of(bob), ids(index.suggest("bob stnoe", 10)));
+        assertTrue(index.suggest("xyz", 10).isEmpty());
+
+        // Kept current by the change listener calls
+        Patient moved = new Patient(bob, "Bob Stone", 50, "M", "7770000", "9 Elm Street", "O-");
+        patients.updatePatient(moved);
+        index.patientUpdated(moved);
+        assertEquals(List.of(ann, bob), ids(index.suggest("elm", 10)));
+    }
+}
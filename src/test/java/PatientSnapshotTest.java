@@ -0,0 +1,277 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+
+// PatientSnapshot's filter and sort kernels against the same filter and sort done on a List<Patient>
+class PatientSnapshotTest {
+
+    private static final String[] NAME_STEMS = {"Alexandria Montgomery-Smith", "ALEXANDRIA MONTGOMERY-SMITH",
+            "alexandria montgomery", "Ann", "ann", "Anna", "Zoë", "zoe", "Émile", "漢字", "😀 Smile", "b", ""};
+    private static final String[] SUFFIXES = {"", "", "a", "B", "ab", "é", " 2", "Z"};
+    private static final String[] GENDERS = {"M", "F", "O", null};
+    private static final String[] BLOOD_GROUPS = {"A+", "A-", "B+", "B-", "AB+", "AB-", "O+", "O-", null};
+    private static final int[] COLUMNS = {PatientSnapshot.ID, PatientSnapshot.NAME, PatientSnapshot.AGE,
+            PatientSnapshot.GENDER, PatientSnapshot.PHONE, PatientSnapshot.BLOOD_GROUP, PatientSnapshot.ADDRESS};
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String text(Random random, String[] stems) {
+        if (random.nextInt(12) == 0) {
+            return null;
+        }
+        return pick(random, stems) + pick(random, SUFFIXES);
+    }
+
+    private static Patient patient(Random random, int id) {
+        String phone = random.nextInt(10) == 0 ? null : "555" + (random.nextInt(3) == 0 ? "" : random.nextInt(1000));
+        return new Patient(id, text(random, NAME_STEMS), random.nextInt(100), pick(random, GENDERS), phone,
+                text(random, new String[] {"12 Elm Street, Flat ", "12 elm street", "Mill Lane", "ß Straße"}),
+                pick(random, BLOOD_GROUPS));
+    }
+
+    // Ids ascending with gaps, as the table has after deletions
+    private static List<Patient> patients(Random random, int count) {
+        List<Patient> rows = new ArrayList<>();
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            id += 1 + random.nextInt(3);
+            rows.add(patient(random, id));
+        }
+        return rows;
+    }
+
+    private static PatientSnapshot snapshot(List<Patient> rows, long token) {
+        PatientSnapshot.Builder builder = new PatientSnapshot.Builder(rows.size());
+        rows.forEach(builder::add);
+        return builder.build(token);
+    }
+
+    private static List<Integer> ids(PatientSnapshot snapshot, int[] rows) {
+        List<Integer> ids = new ArrayList<>();
+        for (int row : rows) {
+            ids.add(snapshot.getId(row));
+        }
+        return ids;
+    }
+
+    private static List<Integer> ids(List<Patient> rows) {
+        List<Integer> ids = new ArrayList<>();
+        for (Patient p : rows) {
+            ids.add(p.getId());
+        }
+        return ids;
+    }
+
+    private static List<Patient> filtered(List<Patient> rows, Predicate<Patient> keep) {
+        List<Patient> kept = new ArrayList<>();
+        for (Patient p : rows) {
+            if (keep.test(p)) {
+                kept.add(p);
+            }
+        }
+        return kept;
+    }
+
+    // UTF-8 bytes compared unsigned with ASCII letters folded to lower case, nulls first
+    private static final Comparator<String> FOLDED =
+            Comparator.nullsFirst((a, b) -> Arrays.compareUnsigned(foldAscii(a), foldAscii(b)));
+
+    private static byte[] foldAscii(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] >= 'A' && bytes[i] <= 'Z') {
+                bytes[i] += 'a' - 'A';
+            }
+        }
+        return bytes;
+    }
+
+    private static <T> Comparator<Patient> by(Function<Patient, T> key, Comparator<T> order, boolean descending) {
+        Comparator<Patient> byKey = Comparator.comparing(key, descending ? order.reversed() : order);
+        // Ties stay in id order whichever way the column is sorted
+        return byKey.thenComparingInt(Patient::getId);
+    }
+
+    private static Comparator<Patient> reference(int column, boolean descending) {
+        switch (column) {
+            case PatientSnapshot.ID: return by(Patient::getId, Comparator.<Integer>naturalOrder(), descending);
+            case PatientSnapshot.NAME: return by(Patient::getName, FOLDED, descending);
+            case PatientSnapshot.AGE: return by(Patient::getAge, Comparator.<Integer>naturalOrder(), descending);
+            case PatientSnapshot.GENDER:
+                return by(Patient::getGender, Comparator.nullsFirst(Comparator.<String>naturalOrder()), descending);
+            case PatientSnapshot.PHONE: return by(Patient::getPhone, FOLDED, descending);
+            case PatientSnapshot.BLOOD_GROUP:
+                return by(Patient::getBloodGroup, Comparator.nullsFirst(Comparator.<String>naturalOrder()), descending);
+            default: return by(Patient::getAddress, FOLDED, descending);
+        }
+    }
+
+    private static void assertSorted(List<Patient> rows, PatientSnapshot snapshot, int[] selection) {
+        for (int column : COLUMNS) {
+            for (boolean descending : new boolean[] {false, true}) {
+                List<Patient> expected = new ArrayList<>(rows);
+                expected.sort(reference(column, descending));
+                assertEquals(ids(expected), ids(snapshot, snapshot.sort(selection, column, descending)),
+                        "column " + column + (descending ? " descending" : ""));
+            }
+        }
+    }
+
+    private static int[] all(PatientSnapshot snapshot) {
+        return snapshot.filter(new PatientSnapshot.Filter(0, Integer.MAX_VALUE, null, null, null));
+    }
+
+    @Test
+    void rowsReadBackAsAdded() {
+        List<Patient> rows = patients(new Random(1), 300);
+        PatientSnapshot snapshot = snapshot(rows, 7);
+        assertEquals(rows.size(), snapshot.size());
+        assertEquals(7, snapshot.getChangeToken());
+        for (int row = 0; row < rows.size(); row++) {
+            Patient expected = rows.get(row);
+            Patient actual = snapshot.toPatient(row);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getAge(), actual.getAge());
+            assertEquals(expected.getGender(), actual.getGender());
+            assertEquals(expected.getPhone(), actual.getPhone());
+            assertEquals(expected.getAddress(), actual.getAddress());
+            assertEquals(expected.getBloodGroup(), actual.getBloodGroup());
+            assertEquals(row, snapshot.indexOf(expected.getId()));
+        }
+        assertEquals(-1, snapshot.indexOf(0));
+    }
+
+    @Test
+    void filterKeepsWhatTheListFilterKeeps() {
+        List<Patient> rows = patients(new Random(2), 2000);
+        PatientSnapshot snapshot = snapshot(rows, 0);
+        PatientSearchPlanner planner = new PatientSearchPlanner(false);
+        Random random = new Random(3);
+        for (int round = 0; round < 200; round++) {
+            int minAge = random.nextInt(4) == 0 ? 0 : random.nextInt(110) - 5;
+            int maxAge = random.nextInt(4) == 0 ? Integer.MAX_VALUE : minAge + random.nextInt(40) - 3;
+            String[] genders = random.nextBoolean() ? null : subset(random, GENDERS);
+            String[] bloodGroups = random.nextBoolean() ? null : subset(random, BLOOD_GROUPS);
+            SearchPlan plan = random.nextInt(3) == 0
+                    ? planner.plan(pick(random, new String[] {"ann", "555", "zo", "漢", "SMITH*"})) : null;
+
+            List<Patient> expected = filtered(rows, p -> p.getAge() >= minAge && p.getAge() <= maxAge
+                    && (genders == null || Arrays.asList(genders).contains(p.getGender()))
+                    && (bloodGroups == null || Arrays.asList(bloodGroups).contains(p.getBloodGroup()))
+                    && (plan == null || plan.matches(p)));
+            PatientSnapshot.Filter filter = new PatientSnapshot.Filter(minAge, maxAge, genders, bloodGroups, plan);
+            assertEquals(ids(expected), ids(snapshot, snapshot.filter(filter)),
+                    minAge + ".." + maxAge + " " + plan);
+        }
+    }
+
+    // Any subset, possibly empty; null stands for rows with no value
+    private static String[] subset(Random random, String[] values) {
+        List<String> chosen = new ArrayList<>();
+        for (String value : values) {
+            if (random.nextBoolean()) {
+                chosen.add(value);
+            }
+        }
+        return chosen.toArray(new String[0]);
+    }
+
+    @Test
+    void sortOrdersAsTheListSortDoes() {
+        List<Patient> rows = patients(new Random(4), 3000);
+        PatientSnapshot snapshot = snapshot(rows, 0);
+        assertSorted(rows, snapshot, all(snapshot));
+
+        // A filtered selection sorts by the ranks the whole column was given
+        PatientSnapshot.Filter women = new PatientSnapshot.Filter(20, 60, new String[] {"F"}, null, null);
+        assertSorted(filtered(rows, p -> "F".equals(p.getGender()) && p.getAge() >= 20 && p.getAge() <= 60),
+                snapshot, snapshot.filter(women));
+    }
+
+    @Test
+    void stringsTiedPastThePackedPrefixAreComparedInFull() {
+        List<Patient> rows = new ArrayList<>();
+        String[] names = {"Alexandria Montgomery-Smithson", "alexandria montgomery-smith", "ALEXANDRIA MONTGOMERY-SMITHS",
+                "Alexandria Montgomery-Smith", "", null, "Alexandria Montgomery-Smith", "alexandria", "Alexandria Montgomery-Smitha"};
+        for (int i = 0; i < names.length; i++) {
+            rows.add(new Patient(i + 1, names[i], 30, "F", null, null, null));
+        }
+        PatientSnapshot snapshot = snapshot(rows, 0);
+        List<Patient> expected = new ArrayList<>(rows);
+        expected.sort(reference(PatientSnapshot.NAME, false));
+        assertEquals(List.of(6, 5, 8, 2, 4, 7, 9, 3, 1), ids(expected));
+        assertEquals(ids(expected), ids(snapshot, snapshot.sort(all(snapshot), PatientSnapshot.NAME, false)));
+        assertEquals(List.of(1, 3, 9, 2, 4, 7, 8, 5, 6),
+                ids(snapshot, snapshot.sort(all(snapshot), PatientSnapshot.NAME, true)));
+    }
+
+    @Test
+    void changesApplyAsTheSameEditsToTheList() {
+        Random random = new Random(5);
+        List<Patient> rows = patients(random, 1000);
+        PatientSnapshot before = snapshot(rows, 10);
+        // Ranks computed here must not leak into the next snapshot
+        assertSorted(rows, before, all(before));
+
+        List<Patient> after = new ArrayList<>(rows);
+        PatientChanges.Builder changes = new PatientChanges.Builder(10);
+        long seq = 10;
+        int nextId = rows.get(rows.size() - 1).getId();
+        for (int i = 0; i < 150; i++) {
+            int kind = random.nextInt(3);
+            if (kind == 0 || after.isEmpty()) {
+                Patient added = patient(random, ++nextId);
+                after.add(added);
+                changes.add(++seq, added.getId(), PatientChanges.INSERTED, added);
+            } else {
+                int at = random.nextInt(after.size());
+                int id = after.get(at).getId();
+                if (kind == 1) {
+                    Patient updated = patient(random, id);
+                    after.set(at, updated);
+                    changes.add(++seq, id, PatientChanges.UPDATED, updated);
+                } else {
+                    after.remove(at);
+                    changes.add(++seq, id, PatientChanges.DELETED, null);
+                }
+            }
+        }
+        // An update for a row the snapshot lacks lands in id order, as withChanges() inserts it
+        int gap = 1;
+        while (rows.get(gap).getId() == rows.get(gap - 1).getId() + 1) {
+            gap++;
+        }
+        int lateId = rows.get(gap - 1).getId() + 1;
+        Patient late = new Patient(lateId, "Late Arrival", 44, "M", "5551", null, "B+");
+        int lateAt = 0;
+        while (lateAt < after.size() && after.get(lateAt).getId() < late.getId()) {
+            lateAt++;
+        }
+        after.add(lateAt, late);
+        changes.add(++seq, late.getId(), PatientChanges.UPDATED, late);
+
+        PatientSnapshot next = before.withChanges(changes.build());
+        assertEquals(seq, next.getChangeToken());
+        assertEquals(ids(after), ids(next, all(next)));
+        for (int row = 0; row < after.size(); row++) {
+            assertEquals(after.get(row).getName(), next.getName(row));
+            assertEquals(after.get(row).getAddress(), next.getAddress(row));
+            assertEquals(after.get(row).getBloodGroup(), next.getBloodGroup(row));
+        }
+        assertSorted(after, next, all(next));
+        // The old snapshot is unchanged
+        assertEquals(ids(rows), ids(before, all(before)));
+        assertSorted(rows, before, all(before));
+    }
+}
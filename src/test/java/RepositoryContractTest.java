@@ -0,0 +1,316 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// What every PatientRepository and VisitRepository must do alike, whichever backend it is on.
+// Each subclass hands out an empty pair of repositories per test.
+abstract class RepositoryContractTest {
+
+    protected PatientRepository patients;
+    protected VisitRepository visits;
+
+    // Repositories over empty storage
+    protected abstract void openEmpty() throws Exception;
+
+    @BeforeEach
+    void open() throws Exception {
+        openEmpty();
+    }
+
+    private static Patient patient(String name, String phone) {
+        return new Patient(name, 40, "F", phone, "1 High Street", "A+");
+    }
+
+    private int add(String name, String phone) throws SQLException {
+        return patients.addPatient(patient(name, phone));
+    }
+
+    private static List<Integer> ids(List<Patient> rows) {
+        List<Integer> ids = new ArrayList<>();
+        for (Patient p : rows) {
+            ids.add(p.getId());
+        }
+        return ids;
+    }
+
+    private static List<Integer> visitIds(List<Visit> rows) {
+        List<Integer> ids = new ArrayList<>();
+        for (Visit v : rows) {
+            ids.add(v.getId());
+        }
+        return ids;
+    }
+
+    private static void assertSamePatient(Patient expected, Patient actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getAge(), actual.getAge());
+        assertEquals(expected.getGender(), actual.getGender());
+        assertEquals(expected.getPhone(), actual.getPhone());
+        assertEquals(expected.getAddress(), actual.getAddress());
+        assertEquals(expected.getBloodGroup(), actual.getBloodGroup());
+    }
+
+    @Test
+    void addedPatientIsReadBackUnderItsNewId() throws SQLException {
+        Patient ann = patient("Ann Smith", "5550001");
+        int id = patients.addPatient(ann);
+        assertTrue(id > 0);
+        Patient read = patients.getPatientById(id);
+        assertEquals(id, read.getId());
+        assertSamePatient(ann, read);
+        assertNull(patients.getPatientById(id + 1000));
+    }
+
+    @Test
+    void updateAndDeleteChangeTheStoredRow() throws SQLException {
+        int id = add("Ann Smith", "5550001");
+        Patient changed = new Patient(id, "Ann Jones", 41, "F", "5550002", "2 Low Road", "B-");
+        patients.updatePatient(changed);
+        assertSamePatient(changed, patients.getPatientById(id));
+
+        patients.deletePatient(id);
+        assertNull(patients.getPatientById(id));
+        assertEquals(0, patients.countPatients());
+    }
+
+    @Test
+    void overlongNameIsRefusedAsSqlException() {
+        String name = new String(new char[101]).replace('\0', 'x');
+        assertThrows(SQLException.class, () -> patients.addPatient(patient(name, "5550001")));
+    }
+
+    @Test
+    void bulkInsertIsReadBackInIdOrder() throws SQLException {
+        List<Patient> rows = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            rows.add(patient("Patient " + i, "555" + i));
+        }
+        assertEquals(25, patients.addPatients(rows, 10, 20));
+        assertEquals(25, patients.countPatients());
+        List<Patient> all = patients.getAllPatients();
+        assertEquals(25, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals("Patient " + i, all.get(i).getName());
+            if (i > 0) {
+                assertTrue(all.get(i).getId() > all.get(i - 1).getId());
+            }
+        }
+    }
+
+    @Test
+    void bulkUpdateCountsAndAnnouncesOnlyExistingPatients() throws SQLException {
+        int id = add("Ann Smith", "5550001");
+        List<Integer> announced = new ArrayList<>();
+        patients.addChangeListener(new PatientChangeListener() {
+            @Override
+            public void patientAdded(Patient p) {
+            }
+
+            @Override
+            public void patientUpdated(Patient p) {
+                announced.add(p.getId());
+            }
+
+            @Override
+            public void patientDeleted(int patientId) {
+            }
+
+            @Override
+            public void patientsReloaded() {
+            }
+        });
+        Patient changed = new Patient(id, "Ann Jones", 41, "F", "5550002", "2 Low Road", "B-");
+        Patient missing = new Patient(id + 1000, "Nobody", 1, "M", "0", null, null);
+        // Iterable only once, as a stream read from a file would be
+        Iterable<Patient> once = Arrays.asList(changed, missing).stream()::iterator;
+        assertEquals(1, patients.updatePatients(once, 10, 10));
+        assertSamePatient(changed, patients.getPatientById(id));
+        assertNull(patients.getPatientById(id + 1000));
+        assertEquals(List.of(id), announced);
+    }
+
+    @Test
+    void forEachPatientStreamsInIdOrderAndStopsWhenAsked() throws SQLException {
+        int first = add("Ann", "1");
+        int second = add("Bob", "2");
+        add("Cy", "3");
+        List<Integer> seen = new ArrayList<>();
+        int handled = patients.forEachPatient(1, p -> {
+            seen.add(p.getId());
+            return seen.size() < 2;
+        });
+        assertEquals(2, handled);
+        assertEquals(List.of(first, second), seen);
+    }
+
+    @Test
+    void searchMatchesNameSubstringNamePrefixAndPhonePrefix() throws SQLException {
+        int ann = add("Ann Smith", "5550001");
+        int joanna = add("Joanna Hill", "5551234");
+        int bob = add("Bob Stone", "7770000");
+
+        assertEquals(List.of(ann, joanna), ids(patients.searchPatients("ann")));
+        assertEquals(List.of(ann), ids(patients.searchPatients("ANN*")));
+        assertEquals(List.of(ann, joanna), ids(patients.searchPatients("555")));
+        assertEquals(List.of(joanna), ids(patients.searchPatients("5551234")));
+        assertEquals(List.of(bob), ids(patients.searchPatients("stone")));
+        assertTrue(patients.searchPatients("nobody").isEmpty());
+    }
+
+    @Test
+    void keysetAndOffsetPagesAgree() throws SQLException {
+        List<Integer> added = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            added.add(add("Patient " + i, "555" + i));
+        }
+        PatientPage first = patients.getPatientsPage(0, 2);
+        assertEquals(added.subList(0, 2), ids(first.getPatients()));
+        assertTrue(first.hasMore());
+        PatientPage second = patients.getPatientsPage(first.getLastId(), 2);
+        assertEquals(added.subList(2, 4), ids(second.getPatients()));
+        assertEquals(ids(second.getPatients()), ids(patients.getPatientsPageAt(2, 2).getPatients()));
+        PatientPage last = patients.getPatientsPage(second.getLastId(), 2);
+        assertEquals(added.subList(4, 5), ids(last.getPatients()));
+        assertFalse(last.hasMore());
+    }
+
+    @Test
+    void changesSinceATokenReportEachWriteAfterIt() throws SQLException {
+        int kept = add("Ann Smith", "5550001");
+        int removed = add("Bob Stone", "5550002");
+        long token = patients.getChangeToken();
+        assertTrue(token >= 0);
+        assertTrue(patients.getPatientsChangedSince(token).isEmpty());
+
+        int added = add("Cy Young", "5550003");
+        patients.updatePatient(new Patient(kept, "Ann Jones", 41, "F", "5550001", null, null));
+        patients.deletePatient(removed);
+
+        PatientChanges changes = patients.getPatientsChangedSince(token);
+        assertFalse(changes.isReloadRequired());
+        assertTrue(changes.getToken() > token);
+        List<Integer> touched = new ArrayList<>(ids(changes.getAdded()));
+        touched.addAll(ids(changes.getUpdated()));
+        assertTrue(touched.contains(added), touched.toString());
+        assertTrue(touched.contains(kept), touched.toString());
+        assertEquals(List.of(removed), changes.getDeletedIds());
+        assertTrue(patients.getPatientsChangedSince(changes.getToken()).isEmpty());
+    }
+
+    @Test
+    void updatingAMissingPatientFailsWithoutLoggingOrAnnouncing() throws SQLException {
+        int id = add("Ann Smith", "5550001");
+        patients.deletePatient(id);
+        long token = patients.getChangeToken();
+        List<Patient> announced = new ArrayList<>();
+        patients.addChangeListener(new PatientChangeListener() {
+            @Override
+            public void patientAdded(Patient p) {
+            }
+
+            @Override
+            public void patientUpdated(Patient p) {
+                announced.add(p);
+            }
+
+            @Override
+            public void patientDeleted(int patientId) {
+            }
+        });
+
+        assertThrows(SQLException.class,
+                () -> patients.updatePatient(new Patient(id, "Ann Jones", 41, "F", "5550001", null, null)));
+        assertTrue(announced.isEmpty());
+        assertTrue(patients.getPatientsChangedSince(token).isEmpty());
+        assertNull(patients.getPatientById(id));
+    }
+
+    @Test
+    void tokenAndCountAreReadTogether() throws SQLException {
+        add("Ann Smith", "5550001");
+        int removed = add("Bob Stone", "5550002");
+        patients.deletePatient(removed);
+        long[] tokenAndCount = patients.getChangeTokenAndCount();
+        assertEquals(patients.getChangeToken(), tokenAndCount[0]);
+        assertEquals(1, tokenAndCount[1]);
+        assertTrue(patients.getPatientsChangedSince(tokenAndCount[0]).isEmpty());
+    }
+
+    @Test
+    void visitsAreReadNewestFirstPerPatient() throws SQLException {
+        int ann = add("Ann Smith", "5550001");
+        int bob = add("Bob Stone", "5550002");
+        // Callers pass doctors through DoctorDirectory.canonical() first
+        int older = visits.addVisit(new Visit(ann, Date.valueOf("2024-01-10"), "Grey", "checkup"));
+        int newer = visits.addVisit(new Visit(ann, Date.valueOf("2024-03-05"), "Grey", "follow-up"));
+
+        List<Visit> history = visits.getVisitsForPatient(ann);
+        assertEquals(List.of(newer, older), visitIds(history));
+        Visit latest = history.get(0);
+        assertEquals(ann, latest.getPatientId());
+        assertEquals("2024-03-05", latest.getVisitDate().toString());
+        assertEquals("Grey", latest.getDoctor());
+        assertEquals("follow-up", latest.getNotes());
+
+        Map<Integer, List<Visit>> both = visits.getVisitsForPatients(List.of(ann, bob));
+        assertEquals(List.of(newer, older), visitIds(both.get(ann)));
+        assertTrue(both.get(bob).isEmpty());
+    }
+
+    @Test
+    void visitPagesContinueAfterTheLastVisit() throws SQLException {
+        int ann = add("Ann Smith", "5550001");
+        List<Visit> rows = new ArrayList<>();
+        for (int day = 1; day <= 5; day++) {
+            rows.add(new Visit(ann, Date.valueOf("2024-02-0" + day), "Grey", "visit " + day));
+        }
+        assertEquals(5, visits.addVisits(rows, 2, 4));
+
+        VisitPage first = visits.getVisitsPage(ann, null, 3);
+        assertTrue(first.hasMore());
+        assertEquals("2024-02-05", first.getVisits().get(0).getVisitDate().toString());
+        VisitPage rest = visits.getVisitsPage(ann, first.getLastVisit(), 3);
+        assertFalse(rest.hasMore());
+        assertEquals(2, rest.getVisits().size());
+        assertEquals("2024-02-01", rest.getVisits().get(1).getVisitDate().toString());
+
+        List<Integer> streamed = new ArrayList<>();
+        assertEquals(5, visits.forEachVisit(2, v -> streamed.add(v.getId())));
+        List<Integer> sorted = new ArrayList<>(streamed);
+        sorted.sort(null);
+        assertEquals(sorted, streamed);
+    }
+
+    @Test
+    void bulkVisitInsertReadsItsRowsOnce() throws SQLException {
+        int ann = add("Ann Smith", "5550001");
+        List<Visit> rows = List.of(new Visit(ann, Date.valueOf("2024-02-01"), "Grey", "first"),
+                new Visit(ann, Date.valueOf("2024-02-02"), "Mehta", "second"));
+        // Iterable only once, as rows generated while reading a grid or file would be
+        Iterable<Visit> once = rows.stream()::iterator;
+        assertEquals(2, visits.addVisits(once, 10, 10));
+        List<Visit> history = visits.getVisitsForPatient(ann);
+        assertEquals(2, history.size());
+        assertEquals("Mehta", history.get(0).getDoctor());
+        assertEquals("Grey", history.get(1).getDoctor());
+    }
+
+    @Test
+    void visitForMissingPatientIsRefusedAsSqlException() {
+        assertThrows(SQLException.class,
+                () -> visits.addVisit(new Visit(12345, Date.valueOf("2024-01-10"), "Grey", null)));
+    }
+}